@@ -0,0 +1,267 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.algebra.Service;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.iterator.CollectionIteration;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+import org.openrdf.query.parser.ParsedTupleQuery;
+import org.openrdf.query.parser.QueryParserUtil;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Tests the bound join evaluation of {@link RepositoryFederatedService} against
+ * a local repository.
+ */
+public class RepositoryFederatedServiceTest {
+
+	private static final String EX_NS = "http://example.org/";
+
+	private static final String SERVICE_URL = "http://example.org/service";
+
+	private static final int SUBJECT_COUNT = 100;
+
+	private MemoryStore localStore;
+
+	private SailRepository localRepository;
+
+	private SailRepository serviceRepository;
+
+	private RepositoryFederatedService service;
+
+	private final AtomicInteger requestCount = new AtomicInteger();
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		localStore = new MemoryStore();
+		localRepository = new SailRepository(localStore);
+		localRepository.initialize();
+		serviceRepository = new SailRepository(new MemoryStore());
+		serviceRepository.initialize();
+
+		ValueFactory vf = localRepository.getValueFactory();
+		URI p = vf.createURI(EX_NS, "p");
+		URI q = vf.createURI(EX_NS, "q");
+
+		RepositoryConnection localCon = localRepository.getConnection();
+		RepositoryConnection serviceCon = serviceRepository.getConnection();
+		try {
+			for (int i = 0; i < SUBJECT_COUNT; i++) {
+				URI subj = vf.createURI(EX_NS, "s" + i);
+				localCon.add(subj, p, vf.createLiteral(i));
+				// subjects have zero, one or two values at the service
+				for (int j = 0; j < i % 3; j++) {
+					serviceCon.add(subj, q, vf.createLiteral(i + "-" + j));
+				}
+			}
+		}
+		finally {
+			localCon.close();
+			serviceCon.close();
+		}
+
+		service = new RepositoryFederatedService(serviceRepository, false) {
+
+			@Override
+			protected CloseableIteration<BindingSet, QueryEvaluationException> evaluateInternal(
+					Service service, CloseableIteration<BindingSet, QueryEvaluationException> bindings,
+					String baseUri)
+				throws QueryEvaluationException
+			{
+				requestCount.incrementAndGet();
+				return super.evaluateInternal(service, bindings, baseUri);
+			}
+		};
+		((FederatedServiceResolverBase)localStore.getFederatedServiceResolver()).registerService(SERVICE_URL,
+				service);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		localRepository.shutDown();
+		serviceRepository.shutDown();
+	}
+
+	@Test
+	public void testBoundJoinConcurrency()
+		throws Exception
+	{
+		List<String> expected = evaluate();
+		assertEquals(99, expected.size());
+		assertEquals(7, requestCount.getAndSet(0));
+
+		service.setBoundJoinBlockSize(7);
+		service.setBoundJoinConcurrency(4);
+		assertEquals(expected, evaluate());
+		assertEquals(15, requestCount.get());
+	}
+
+	@Test(timeout = 60000)
+	public void testManyConcurrentBlocks()
+		throws Exception
+	{
+		// more blocks than the result queue of a bound join can hold
+		service.setBoundJoinBlockSize(1);
+		service.setBoundJoinConcurrency(3);
+		assertEquals(99, count(evaluateBoundJoin(1200)));
+		assertEquals(1200, requestCount.get());
+	}
+
+	@Test(timeout = 60000)
+	public void testInterleavedBoundJoins()
+		throws Exception
+	{
+		ValueFactory vf = serviceRepository.getValueFactory();
+		URI q = vf.createURI(EX_NS, "q");
+		RepositoryConnection serviceCon = serviceRepository.getConnection();
+		try {
+			// more results per block than the buffer of a block can hold
+			for (int i = SUBJECT_COUNT; i < 1200; i++) {
+				serviceCon.add(vf.createURI(EX_NS, "s" + i), q, vf.createLiteral(i + "-0"));
+			}
+		}
+		finally {
+			serviceCon.close();
+		}
+
+		service.setBoundJoinBlockSize(300);
+		service.setBoundJoinConcurrency(2);
+
+		// the blocks of the first bound join occupy all background threads and
+		// wait for their results to be consumed, while the second one is read
+		CloseableIteration<BindingSet, QueryEvaluationException> first = evaluateBoundJoin(1200);
+		try {
+			assertTrue(first.hasNext());
+			assertEquals(1199, count(evaluateBoundJoin(1200)));
+			assertEquals(1199, count(first));
+		}
+		finally {
+			first.close();
+		}
+	}
+
+	@Test
+	public void testSingleBlock()
+		throws Exception
+	{
+		List<String> expected = evaluate();
+
+		requestCount.set(0);
+		service.setBoundJoinBlockSize(0);
+		assertEquals(expected, evaluate());
+		assertEquals(1, requestCount.get());
+	}
+
+	private List<String> evaluate()
+		throws Exception
+	{
+		String query = "SELECT ?s ?o WHERE { ?s <" + EX_NS + "p> ?v . SERVICE <" + SERVICE_URL + "> { ?s <"
+				+ EX_NS + "q> ?o } } ORDER BY ?v ?o";
+
+		List<String> result = new ArrayList<String>();
+		RepositoryConnection con = localRepository.getConnection();
+		try {
+			TupleQueryResult res = con.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate();
+			try {
+				while (res.hasNext()) {
+					BindingSet bs = res.next();
+					result.add(bs.getValue("s") + " " + bs.getValue("o"));
+				}
+			}
+			finally {
+				res.close();
+			}
+		}
+		finally {
+			con.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates the bound join of the SERVICE expression directly, with the
+	 * subjects <tt>s0</tt> to <tt>s(subjectCount - 1)</tt> as input bindings,
+	 * independent of the join order that the optimizer picks for a query.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> evaluateBoundJoin(int subjectCount)
+		throws Exception
+	{
+		String query = "SELECT ?s ?o WHERE { SERVICE <" + SERVICE_URL + "> { ?s <" + EX_NS + "q> ?o } }";
+		ParsedTupleQuery parsedQuery = QueryParserUtil.parseTupleQuery(QueryLanguage.SPARQL, query, null);
+		final List<Service> services = new ArrayList<Service>();
+		parsedQuery.getTupleExpr().visit(new QueryModelVisitorBase<RuntimeException>() {
+
+			@Override
+			public void meet(Service node) {
+				services.add(node);
+			}
+		});
+
+		ValueFactory vf = localRepository.getValueFactory();
+		List<BindingSet> bindings = new ArrayList<BindingSet>();
+		for (int i = 0; i < subjectCount; i++) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding("s", vf.createURI(EX_NS, "s" + i));
+			bindings.add(bs);
+		}
+		Service serviceNode = services.get(0);
+		return service.evaluate(serviceNode, new CollectionIteration<BindingSet, QueryEvaluationException>(
+				bindings), serviceNode.getBaseURI());
+	}
+
+	private int count(CloseableIteration<BindingSet, QueryEvaluationException> iter)
+		throws Exception
+	{
+		try {
+			int count = 0;
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+			return count;
+		}
+		finally {
+			iter.close();
+		}
+	}
+}
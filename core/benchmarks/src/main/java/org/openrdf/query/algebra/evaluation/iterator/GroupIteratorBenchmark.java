@@ -0,0 +1,108 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Count;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.GroupElem;
+import org.openrdf.query.algebra.Sum;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+/**
+ * Throughput of {@link GroupIterator} computing a COUNT and a SUM per group,
+ * for few and for many groups, in memory and with groups spilled to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GroupIteratorBenchmark {
+
+	@Param({ "100000" })
+	public int size;
+
+	@Param({ "10", "10000" })
+	public int groupCount;
+
+	private final EvaluationStrategy strategy = new EvaluationStrategyImpl(null, null);
+
+	private Group group;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ValueFactory vf = ValueFactoryImpl.getInstance();
+
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>(size);
+		for (int i = 0; i < size; i++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding("g", vf.createURI("urn:group:" + i % groupCount));
+			b.addBinding("v", vf.createLiteral(i));
+			bindingSets.add(b);
+		}
+		BindingSetAssignment arg = new BindingSetAssignment();
+		arg.setBindingSets(bindingSets);
+
+		group = new Group(arg, Collections.singleton("g"));
+		group.addGroupElement(new GroupElem("count", new Count(new Var("v"))));
+		group.addGroupElement(new GroupElem("sum", new Sum(new Var("v"))));
+	}
+
+	@Benchmark
+	public int group()
+		throws QueryEvaluationException
+	{
+		return JoinBenchmark.count(new GroupIterator(strategy, group, EmptyBindingSet.getInstance()));
+	}
+
+	@Benchmark
+	public int groupSpilled()
+		throws QueryEvaluationException
+	{
+		// keep a tenth of the groups in memory
+		long threshold = Math.max(1, groupCount / 10);
+		return JoinBenchmark.count(new GroupIterator(strategy, group, EmptyBindingSet.getInstance(), threshold));
+	}
+}
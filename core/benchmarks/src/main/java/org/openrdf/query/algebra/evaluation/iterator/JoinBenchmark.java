@@ -0,0 +1,134 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+/**
+ * Throughput of {@link HashJoinIteration} and the nested loop
+ * {@link JoinIterator} for a join of <tt>leftSize</tt> solutions with
+ * <tt>leftSize / 100</tt> solutions on one shared variable. The hash join is
+ * measured both in memory and with its build side spilled to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JoinBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int leftSize;
+
+	private final EvaluationStrategy strategy = new EvaluationStrategyImpl(null, null);
+
+	private Join join;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ValueFactory vf = ValueFactoryImpl.getInstance();
+		int rightSize = leftSize / 100;
+
+		List<BindingSet> left = new ArrayList<BindingSet>(leftSize);
+		for (int i = 0; i < leftSize; i++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding("x", vf.createURI("urn:x:" + i));
+			b.addBinding("y", vf.createURI("urn:y:" + i % rightSize));
+			left.add(b);
+		}
+
+		List<BindingSet> right = new ArrayList<BindingSet>(rightSize);
+		for (int i = 0; i < rightSize; i++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding("y", vf.createURI("urn:y:" + i));
+			b.addBinding("z", vf.createLiteral(i));
+			right.add(b);
+		}
+
+		BindingSetAssignment leftArg = new BindingSetAssignment();
+		leftArg.setBindingSets(left);
+		BindingSetAssignment rightArg = new BindingSetAssignment();
+		rightArg.setBindingSets(right);
+		join = new Join(leftArg, rightArg);
+	}
+
+	@Benchmark
+	public int hashJoin()
+		throws QueryEvaluationException
+	{
+		return count(new HashJoinIteration(strategy, join, EmptyBindingSet.getInstance()));
+	}
+
+	@Benchmark
+	public int hashJoinSpilled()
+		throws QueryEvaluationException
+	{
+		return count(new HashJoinIteration(strategy, join, EmptyBindingSet.getInstance(), leftSize / 1000));
+	}
+
+	@Benchmark
+	public int nestedLoopJoin()
+		throws QueryEvaluationException
+	{
+		return count(new JoinIterator(strategy, join, EmptyBindingSet.getInstance()));
+	}
+
+	static int count(CloseableIteration<BindingSet, QueryEvaluationException> iter)
+		throws QueryEvaluationException
+	{
+		int count = 0;
+		try {
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+		}
+		finally {
+			iter.close();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,118 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Order;
+import org.openrdf.query.algebra.OrderElem;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.util.OrderComparator;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
+
+/**
+ * Throughput of {@link OrderIterator} for a full sort in memory, a full
+ * external merge sort and a top-10 sort.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OrderIteratorBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int size;
+
+	private final EvaluationStrategy strategy = new EvaluationStrategyImpl(null, null);
+
+	private List<BindingSet> bindingSets;
+
+	private OrderComparator comparator;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ValueFactory vf = ValueFactoryImpl.getInstance();
+		Random random = new Random(42);
+
+		bindingSets = new ArrayList<BindingSet>(size);
+		for (int i = 0; i < size; i++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding("s", vf.createURI("urn:s:" + i));
+			b.addBinding("v", vf.createLiteral(random.nextInt(size)));
+			bindingSets.add(b);
+		}
+
+		Order order = new Order();
+		order.addElement(new OrderElem(new Var("v")));
+		order.addElement(new OrderElem(new Var("s"), false));
+		comparator = new OrderComparator(strategy, order, new ValueComparator());
+	}
+
+	@Benchmark
+	public int sort()
+		throws QueryEvaluationException
+	{
+		return JoinBenchmark.count(new OrderIterator(createIteration(), comparator));
+	}
+
+	@Benchmark
+	public int sortSpilled()
+		throws QueryEvaluationException
+	{
+		return JoinBenchmark.count(new OrderIterator(createIteration(), comparator, Integer.MAX_VALUE, false,
+				size / 20));
+	}
+
+	@Benchmark
+	public int top10()
+		throws QueryEvaluationException
+	{
+		return JoinBenchmark.count(new OrderIterator(createIteration(), comparator, 10, false));
+	}
+
+	private CloseableIteration<BindingSet, QueryEvaluationException> createIteration() {
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindingSets.iterator());
+	}
+}
@@ -0,0 +1,152 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.rio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Parse and write throughput of the Turtle, N-Triples and binary RDF formats
+ * on a generated document with URIs, blank nodes, language-tagged and typed
+ * literals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RioBenchmark {
+
+	private static final String NAMESPACE = "http://example.org/benchmark/";
+
+	@Param({ "text/turtle", "application/n-triples", "application/x-binary-rdf" })
+	public String mimeType;
+
+	@Param({ "100000" })
+	public int statementCount;
+
+	private RDFFormat format;
+
+	private Model model;
+
+	private byte[] document;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws RDFHandlerException
+	{
+		format = Rio.getParserFormatForMIMEType(mimeType);
+
+		ValueFactory vf = ValueFactoryImpl.getInstance();
+		URI knows = vf.createURI(NAMESPACE, "knows");
+		URI age = vf.createURI(NAMESPACE, "age");
+		URI homepage = vf.createURI(NAMESPACE, "homepage");
+		URI person = vf.createURI(NAMESPACE, "Person");
+
+		model = new LinkedHashModel();
+		model.setNamespace("ex", NAMESPACE);
+		model.setNamespace(RDFS.PREFIX, RDFS.NAMESPACE);
+		for (int i = 0; model.size() < statementCount; i++) {
+			URI subj = vf.createURI(NAMESPACE, "person" + i);
+			model.add(subj, RDF.TYPE, person);
+			model.add(subj, RDFS.LABEL, vf.createLiteral("Person number " + i, i % 2 == 0 ? "en" : "nl"));
+			model.add(subj, age, vf.createLiteral(Integer.toString(i % 100), XMLSchema.INTEGER));
+			model.add(subj, knows, vf.createURI(NAMESPACE, "person" + (i * 7 % (i + 1))));
+			BNode address = vf.createBNode();
+			model.add(subj, homepage, address);
+			model.add(address, RDFS.COMMENT, vf.createLiteral("line one\nline \"two\"\t\u00e9\u4e2d"));
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Rio.write(model, out, format);
+		document = out.toByteArray();
+	}
+
+	@Benchmark
+	public long parse()
+		throws IOException, RDFParseException, RDFHandlerException
+	{
+		StatementCounter counter = new StatementCounter();
+		RDFParser parser = Rio.createParser(format);
+		parser.setRDFHandler(counter);
+		parser.parse(new ByteArrayInputStream(document), NAMESPACE);
+		return counter.count;
+	}
+
+	@Benchmark
+	public long write()
+		throws RDFHandlerException
+	{
+		CountingOutputStream out = new CountingOutputStream();
+		Rio.write(model, out, format);
+		return out.count;
+	}
+
+	private static class StatementCounter extends RDFHandlerBase {
+
+		private long count;
+
+		@Override
+		public void handleStatement(Statement st) {
+			count++;
+		}
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.aduna.io.FileUtil;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+
+/**
+ * Base class for benchmarks of the add, remove and commit throughput of a
+ * {@link Sail}. Every benchmark operates on a fresh batch of statements, so
+ * that adds are never no-ops for duplicates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public abstract class SailBenchmark {
+
+	/**
+	 * The number of statements that is added or removed in one transaction.
+	 */
+	@Param({ "1", "1000", "100000" })
+	public int batchSize;
+
+	private File dataDir;
+
+	private Sail sail;
+
+	private SailConnection con;
+
+	private List<Statement> batch;
+
+	private int batchCount;
+
+	/**
+	 * Creates the sail to benchmark. The sail will be initialized by the caller.
+	 * 
+	 * @param dataDir
+	 *        An empty directory that the sail can use to store its data.
+	 */
+	protected abstract Sail createSail(File dataDir)
+		throws SailException;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("sail-benchmark");
+		sail = createSail(dataDir);
+		sail.initialize();
+		con = sail.getConnection();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+		throws Exception
+	{
+		try {
+			con.close();
+			sail.shutDown();
+		}
+		finally {
+			FileUtil.deleteDir(dataDir);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void createBatch() {
+		ValueFactory vf = sail.getValueFactory();
+		URI type = vf.createURI("urn:benchmark:type");
+		URI label = vf.createURI("urn:benchmark:label");
+		URI next = vf.createURI("urn:benchmark:next");
+		URI context = vf.createURI("urn:benchmark:batch:" + batchCount++);
+
+		batch = new ArrayList<Statement>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			URI subj = vf.createURI("urn:benchmark:" + batchCount + ":" + i);
+			switch (i % 3) {
+				case 0:
+					batch.add(vf.createStatement(subj, type, vf.createURI("urn:benchmark:class:" + i % 50),
+							context));
+					break;
+				case 1:
+					batch.add(vf.createStatement(subj, label, vf.createLiteral("label " + i, "en"), context));
+					break;
+				default:
+					batch.add(vf.createStatement(subj, next, vf.createLiteral(i), context));
+			}
+		}
+	}
+
+	/**
+	 * Adds a batch of new statements in a single transaction. The store grows
+	 * by one batch per invocation.
+	 */
+	@Benchmark
+	public void add()
+		throws SailException
+	{
+		con.begin();
+		for (Statement st : batch) {
+			con.addStatement(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+		}
+		con.commit();
+	}
+
+	/**
+	 * Adds a batch of new statements and removes them again, each in their own
+	 * transaction. The size of the store does not change.
+	 */
+	@Benchmark
+	public void addAndRemove()
+		throws SailException
+	{
+		add();
+
+		con.begin();
+		for (Statement st : batch) {
+			con.removeStatements(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+		}
+		con.commit();
+	}
+}
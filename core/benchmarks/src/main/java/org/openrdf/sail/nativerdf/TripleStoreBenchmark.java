@@ -0,0 +1,153 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.aduna.io.FileUtil;
+
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.nativerdf.btree.RecordIterator;
+
+/**
+ * Scan throughput of {@link TripleStore#getTriples(int, int, int, int)} on
+ * the default <tt>spoc,posc</tt> indexes: full scans, scans that are answered
+ * by a range of one of the indexes, and scans on the object that have to
+ * filter a full index scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TripleStoreBenchmark {
+
+	private static final int PREDICATE_COUNT = 20;
+
+	private static final int OBJECT_COUNT = 10000;
+
+	@Param({ "100000", "1000000" })
+	public int tripleCount;
+
+	private File dataDir;
+
+	private TripleStore tripleStore;
+
+	private int subjectCount;
+
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws IOException, SailException
+	{
+		dataDir = FileUtil.createTempDir("triplestore-benchmark");
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+		subjectCount = tripleCount / 10;
+
+		// IDs 1 - PREDICATE_COUNT are predicates, the remaining IDs are shared
+		// by subjects and objects
+		Random data = new Random(42);
+		tripleStore.startTransaction();
+		for (int i = 0; i < tripleCount; i++) {
+			int subj = PREDICATE_COUNT + 1 + i / 10;
+			int pred = 1 + data.nextInt(PREDICATE_COUNT);
+			int obj = PREDICATE_COUNT + 1 + data.nextInt(OBJECT_COUNT);
+			tripleStore.storeTriple(subj, pred, obj, 0);
+		}
+		tripleStore.commit();
+
+		random = new Random(7);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+		throws IOException
+	{
+		try {
+			tripleStore.close();
+		}
+		finally {
+			FileUtil.deleteDir(dataDir);
+		}
+	}
+
+	@Benchmark
+	public int scanAll()
+		throws IOException
+	{
+		return count(tripleStore.getTriples(-1, -1, -1, -1));
+	}
+
+	@Benchmark
+	public int scanSubject()
+		throws IOException
+	{
+		int subj = PREDICATE_COUNT + 1 + random.nextInt(subjectCount);
+		return count(tripleStore.getTriples(subj, -1, -1, -1));
+	}
+
+	@Benchmark
+	public int scanPredicateObject()
+		throws IOException
+	{
+		int pred = 1 + random.nextInt(PREDICATE_COUNT);
+		int obj = PREDICATE_COUNT + 1 + random.nextInt(OBJECT_COUNT);
+		return count(tripleStore.getTriples(-1, pred, obj, -1));
+	}
+
+	@Benchmark
+	public int scanObject()
+		throws IOException
+	{
+		int obj = PREDICATE_COUNT + 1 + random.nextInt(OBJECT_COUNT);
+		return count(tripleStore.getTriples(-1, -1, obj, -1));
+	}
+
+	private int count(RecordIterator iter)
+		throws IOException
+	{
+		int count = 0;
+		try {
+			while (iter.next() != null) {
+				count++;
+			}
+		}
+		finally {
+			iter.close();
+		}
+		return count;
+	}
+}
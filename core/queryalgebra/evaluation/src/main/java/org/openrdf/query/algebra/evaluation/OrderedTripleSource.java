@@ -0,0 +1,71 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation;
+
+import java.util.Comparator;
+
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.QueryEvaluationException;
+
+/**
+ * A {@link TripleSource} that is able to return statements sorted on one of
+ * their components, for example because the statements are read from a sorted
+ * index. This allows query operators such as merge joins to stream the
+ * results of several statement patterns in the same order.
+ */
+public interface OrderedTripleSource extends TripleSource {
+
+	/**
+	 * Gets all statements that have a specific subject, predicate and/or
+	 * object, sorted on the specified statement component according to the
+	 * order of {@link #getComparator()}. Statements for which the sorted
+	 * component is equal can be returned in any order.
+	 * 
+	 * @param order
+	 *        The statement component on which the statements should be sorted.
+	 * @param subj
+	 *        A Resource specifying the subject, or <tt>null</tt> for a
+	 *        wildcard.
+	 * @param pred
+	 *        A URI specifying the predicate, or <tt>null</tt> for a wildcard.
+	 * @param obj
+	 *        A Value specifying the object, or <tt>null</tt> for a wildcard.
+	 * @param contexts
+	 *        The context(s) to get the statements from.
+	 * @return An iterator over the relevant statements, or <tt>null</tt> if
+	 *         the statements can not be returned in the requested order.
+	 * @throws QueryEvaluationException
+	 *         If the triple source failed to get the statements.
+	 */
+	public CloseableIteration<? extends Statement, QueryEvaluationException> getOrderedStatements(
+			StatementOrder order, Resource subj, URI pred, Value obj, Resource... contexts)
+		throws QueryEvaluationException;
+
+	/**
+	 * Gets the comparator that defines the order of the values in the results
+	 * of {@link #getOrderedStatements}.
+	 * 
+	 * @return A comparator, or <tt>null</tt> if this triple source does not
+	 *         currently support ordered statements.
+	 */
+	public Comparator<Value> getComparator();
+}
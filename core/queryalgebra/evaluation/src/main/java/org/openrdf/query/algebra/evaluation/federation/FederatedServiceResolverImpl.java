@@ -48,6 +48,10 @@ public class FederatedServiceResolverImpl extends FederatedServiceResolverBase i
 	/** dependent life cycle */
 	private SesameClientImpl dependentClient;
 
+	private int boundJoinBlockSize = RepositoryFederatedService.DEFAULT_BOUND_JOIN_BLOCK_SIZE;
+
+	private int boundJoinConcurrency = 1;
+
 	public synchronized SesameClient getSesameClient() {
 		if (client == null) {
 			client = dependentClient = new SesameClientImpl();
@@ -70,10 +74,55 @@ public class FederatedServiceResolverImpl extends FederatedServiceResolverBase i
 		dependentClient.setHttpClient(httpClient);
 	}
 	
+	/**
+	 * Gets the number of input bindings that the services created by this
+	 * resolver send to their endpoint in a single request.
+	 * 
+	 * @see RepositoryFederatedService#getBoundJoinBlockSize()
+	 */
+	public synchronized int getBoundJoinBlockSize() {
+		return boundJoinBlockSize;
+	}
+
+	/**
+	 * Sets the number of input bindings that services created after this call
+	 * send to their endpoint in a single request.
+	 * 
+	 * @see RepositoryFederatedService#setBoundJoinBlockSize(int)
+	 */
+	public synchronized void setBoundJoinBlockSize(int boundJoinBlockSize) {
+		this.boundJoinBlockSize = boundJoinBlockSize;
+	}
+
+	/**
+	 * Gets the maximum number of concurrent requests per SERVICE join of the
+	 * services created by this resolver.
+	 * 
+	 * @see RepositoryFederatedService#getBoundJoinConcurrency()
+	 */
+	public synchronized int getBoundJoinConcurrency() {
+		return boundJoinConcurrency;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent requests per SERVICE join of the
+	 * services created after this call.
+	 * 
+	 * @see RepositoryFederatedService#setBoundJoinConcurrency(int)
+	 */
+	public synchronized void setBoundJoinConcurrency(int boundJoinConcurrency) {
+		this.boundJoinConcurrency = boundJoinConcurrency;
+	}
+
 	@Override
 	protected FederatedService createService(String serviceUrl)
 			throws QueryEvaluationException {
-		return new SPARQLFederatedService(serviceUrl, getSesameClient());
+		SPARQLFederatedService service = new SPARQLFederatedService(serviceUrl, getSesameClient());
+		synchronized (this) {
+			service.setBoundJoinBlockSize(boundJoinBlockSize);
+			service.setBoundJoinConcurrency(boundJoinConcurrency);
+		}
+		return service;
 	}
 
 	@Override
@@ -21,7 +21,17 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.EmptyIteration;
 import info.aduna.iteration.Iterations;
+import info.aduna.iteration.LookAheadIteration;
 
 import org.openrdf.model.Literal;
 import org.openrdf.model.URI;
@@ -109,6 +120,438 @@ public class RepositoryFederatedService implements FederatedService {
 		}
 	}
 
+	/**
+	 * Evaluates the blocks of input bindings of a SERVICE expression
+	 * concurrently. Blocks are read from the input bindings and submitted to the
+	 * block executor as the consumer advances: no more than
+	 * <tt>concurrency</tt> blocks are evaluated or buffered ahead of the block
+	 * that is being consumed. The results are returned in the order of the
+	 * blocks. A block that no worker has started by the time it is consumed is
+	 * evaluated by the consumer itself, as the workers may all be blocked on
+	 * the full buffers of blocks that are consumed later.
+	 */
+	private class ConcurrentBatchingServiceIteration extends
+			LookAheadIteration<BindingSet, QueryEvaluationException>
+	{
+
+		private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+
+		private final int blockSize;
+
+		private final int concurrency;
+
+		private final Service service;
+
+		/**
+		 * The blocks that have been submitted, in the order of the input
+		 * bindings.
+		 */
+		private final Queue<BlockEvaluation> window = new LinkedList<BlockEvaluation>();
+
+		private volatile boolean closed;
+
+		/**
+		 * The number of blocks that are being evaluated by a worker thread,
+		 * guarded by {@link #workerLock}.
+		 */
+		private int activeWorkers;
+
+		private final Object workerLock = new Object();
+
+		public ConcurrentBatchingServiceIteration(
+				CloseableIteration<BindingSet, QueryEvaluationException> inputBindings, int blockSize,
+				int concurrency, Service service)
+		{
+			this.leftIter = inputBindings;
+			this.blockSize = blockSize;
+			this.concurrency = concurrency;
+			this.service = service;
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			try {
+				while (!closed) {
+					while (window.size() < concurrency && leftIter.hasNext()) {
+						List<BindingSet> blockBindings = new ArrayList<BindingSet>(blockSize);
+						while (blockBindings.size() < blockSize && leftIter.hasNext()) {
+							blockBindings.add(leftIter.next());
+						}
+						BlockEvaluation block = new BlockEvaluation(blockBindings);
+						block.executor = getBlockExecutor();
+						block.executor.execute(block.task);
+						window.add(block);
+					}
+
+					BlockEvaluation head = window.peek();
+					if (head == null) {
+						return null;
+					}
+
+					if (head.claim()) {
+						// no worker has started the block, evaluate it here rather
+						// than wait for one
+						head.executor.remove(head.task);
+					}
+					if (head.inline) {
+						BindingSet next = head.nextInline();
+						if (next != null) {
+							return next;
+						}
+						window.remove();
+						head.closeInline();
+						continue;
+					}
+
+					// poll rather than wait indefinitely: this iteration can be
+					// closed by another thread, after which the workers stop without
+					// reporting their end
+					Object next = head.results.poll(100, TimeUnit.MILLISECONDS);
+					if (next == null) {
+						continue;
+					}
+					else if (next instanceof BlockEnd) {
+						window.remove();
+						Exception e = ((BlockEnd)next).exception;
+						if (e instanceof QueryEvaluationException) {
+							throw (QueryEvaluationException)e;
+						}
+						else if (e instanceof RuntimeException) {
+							throw (RuntimeException)e;
+						}
+					}
+					else {
+						return (BindingSet)next;
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new QueryEvaluationException(e);
+			}
+
+			return null;
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			synchronized (workerLock) {
+				closed = true;
+			}
+			try {
+				for (BlockEvaluation block : window) {
+					block.task.cancel(true);
+				}
+				awaitWorkers();
+				for (BlockEvaluation block : window) {
+					block.closeInline();
+				}
+			}
+			finally {
+				window.clear();
+				try {
+					leftIter.close();
+				}
+				finally {
+					super.handleClose();
+				}
+			}
+		}
+
+		/**
+		 * Waits until no worker thread is evaluating a block anymore, so that
+		 * their connections have been closed once this iteration has been
+		 * closed. Workers that start after this iteration has been closed do not
+		 * evaluate their block.
+		 */
+		private void awaitWorkers() {
+			boolean interrupted = false;
+			synchronized (workerLock) {
+				while (activeWorkers > 0) {
+					try {
+						workerLock.wait();
+					}
+					catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Evaluates one block of input bindings on its own connection and
+		 * streams the results to its buffer, followed by a {@link BlockEnd}
+		 * marker. The worker blocks while the buffer is full, so that the
+		 * results of a block are only read from the endpoint as fast as they are
+		 * consumed. A block that has been claimed by the consumer is evaluated
+		 * inline and its results are read directly, without the buffer.
+		 */
+		private class BlockEvaluation implements Callable<Void> {
+
+			private final List<BindingSet> blockBindings;
+
+			private final BlockingQueue<Object> results = new ArrayBlockingQueue<Object>(
+					BLOCK_RESULT_BUFFER_SIZE);
+
+			private final FutureTask<Void> task = new FutureTask<Void>(this);
+
+			private ThreadPoolExecutor executor;
+
+			/**
+			 * Flag indicating whether a worker or the consumer has started the
+			 * evaluation, guarded by {@link #workerLock}.
+			 */
+			private boolean started;
+
+			/**
+			 * Flag indicating whether the consumer evaluates this block.
+			 */
+			private boolean inline;
+
+			private RepositoryConnection inlineConnection;
+
+			private CloseableIteration<BindingSet, QueryEvaluationException> inlineResults;
+
+			public BlockEvaluation(List<BindingSet> blockBindings) {
+				this.blockBindings = blockBindings;
+			}
+
+			public Void call() {
+				synchronized (workerLock) {
+					if (closed || started) {
+						return null;
+					}
+					started = true;
+					activeWorkers++;
+				}
+				try {
+					evaluate();
+				}
+				finally {
+					synchronized (workerLock) {
+						activeWorkers--;
+						workerLock.notifyAll();
+					}
+				}
+				return null;
+			}
+
+			/**
+			 * Lets the consumer evaluate this block if no worker has started it.
+			 * 
+			 * @return <tt>true</tt> if the block has been claimed by this call.
+			 */
+			boolean claim() {
+				synchronized (workerLock) {
+					if (started) {
+						return false;
+					}
+					started = true;
+					inline = true;
+					return true;
+				}
+			}
+
+			/**
+			 * Reads the next result of a block that is evaluated by the consumer.
+			 * 
+			 * @return The next result, or <tt>null</tt> if there are no more
+			 *         results.
+			 */
+			BindingSet nextInline()
+				throws QueryEvaluationException
+			{
+				RepositoryConnection outer = blockConnection.get();
+				try {
+					if (inlineResults == null) {
+						try {
+							inlineConnection = rep.getConnection();
+						}
+						catch (RepositoryException e) {
+							if (service.isSilent()) {
+								inlineResults = new CollectionIteration<BindingSet, QueryEvaluationException>(
+										blockBindings);
+								return inlineResults.hasNext() ? inlineResults.next() : null;
+							}
+							throw new QueryEvaluationException("Repository for endpoint " + rep.toString()
+									+ " could not be initialized.", e);
+						}
+						blockConnection.set(inlineConnection);
+						inlineResults = evaluateInternal(service,
+								new CollectionIteration<BindingSet, QueryEvaluationException>(blockBindings),
+								service.getBaseURI());
+					}
+					else if (inlineConnection != null) {
+						blockConnection.set(inlineConnection);
+					}
+					return inlineResults.hasNext() ? inlineResults.next() : null;
+				}
+				finally {
+					if (outer == null) {
+						blockConnection.remove();
+					}
+					else {
+						blockConnection.set(outer);
+					}
+				}
+			}
+
+			/**
+			 * Closes the results and connection of a block that has been
+			 * evaluated by the consumer.
+			 */
+			void closeInline()
+				throws QueryEvaluationException
+			{
+				try {
+					if (inlineResults != null) {
+						inlineResults.close();
+					}
+				}
+				finally {
+					inlineResults = null;
+					if (inlineConnection != null) {
+						try {
+							inlineConnection.close();
+						}
+						catch (RepositoryException e) {
+							logger.debug("Could not close connection properly: " + e.getMessage(), e);
+						}
+						inlineConnection = null;
+					}
+				}
+			}
+
+			private void evaluate() {
+				Exception exception = null;
+				try {
+					if (!evaluateBlock()) {
+						return;
+					}
+				}
+				catch (QueryEvaluationException e) {
+					exception = e;
+				}
+				catch (RuntimeException e) {
+					exception = e;
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+
+				try {
+					put(new BlockEnd(exception));
+				}
+				catch (InterruptedException e) {
+					// the consumer is gone
+				}
+			}
+
+			/**
+			 * Evaluates the block on its own connection, which is closed once
+			 * the results have been read, and puts the results in the buffer.
+			 * 
+			 * @return <tt>false</tt> if the iteration has been closed in the
+			 *         meantime.
+			 */
+			private boolean evaluateBlock()
+				throws QueryEvaluationException, InterruptedException
+			{
+				RepositoryConnection con;
+				try {
+					con = rep.getConnection();
+				}
+				catch (RepositoryException e) {
+					if (service.isSilent()) {
+						for (BindingSet bindings : blockBindings) {
+							if (!put(bindings)) {
+								return false;
+							}
+						}
+						return true;
+					}
+					throw new QueryEvaluationException("Repository for endpoint " + rep.toString()
+							+ " could not be initialized.", e);
+				}
+
+				blockConnection.set(con);
+				try {
+					CloseableIteration<BindingSet, QueryEvaluationException> result = evaluateInternal(service,
+							new CollectionIteration<BindingSet, QueryEvaluationException>(blockBindings),
+							service.getBaseURI());
+					try {
+						while (!closed && result.hasNext()) {
+							if (!put(result.next())) {
+								return false;
+							}
+						}
+						return !closed;
+					}
+					finally {
+						result.close();
+					}
+				}
+				finally {
+					blockConnection.remove();
+					try {
+						con.close();
+					}
+					catch (RepositoryException e) {
+						logger.debug("Could not close connection properly: " + e.getMessage(), e);
+					}
+				}
+			}
+
+			/**
+			 * Puts an item in the buffer, waiting while the buffer is full.
+			 * 
+			 * @return <tt>false</tt> if the iteration has been closed in the
+			 *         meantime.
+			 */
+			private boolean put(Object item)
+				throws InterruptedException
+			{
+				while (!closed) {
+					if (results.offer(item, 100, TimeUnit.MILLISECONDS)) {
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Marks the end of the results of a block.
+	 */
+	private static final class BlockEnd {
+
+		private final Exception exception;
+
+		public BlockEnd(Exception exception) {
+			this.exception = exception;
+		}
+	}
+
+	/**
+	 * The default number of input bindings that is sent to the endpoint in a
+	 * single request.
+	 */
+	public static final int DEFAULT_BOUND_JOIN_BLOCK_SIZE = 15;
+
+	/**
+	 * The number of results of a block that are buffered ahead of the consumer
+	 * when blocks are evaluated concurrently.
+	 */
+	private static final int BLOCK_RESULT_BUFFER_SIZE = 256;
+
 	protected final Repository rep;
 	
 	// flag indicating whether the repository shall be closed in #shutdown()
@@ -116,6 +559,17 @@ public class RepositoryFederatedService implements FederatedService {
 
 	protected RepositoryConnection conn = null;
 
+	private volatile int boundJoinBlockSize = DEFAULT_BOUND_JOIN_BLOCK_SIZE;
+
+	private volatile int boundJoinConcurrency = 1;
+
+	// evaluates blocks of input bindings if boundJoinConcurrency > 1, with at
+	// most boundJoinConcurrency threads
+	private ThreadPoolExecutor blockExecutor;
+
+	// the connection used by a BlockEvaluation
+	private final ThreadLocal<RepositoryConnection> blockConnection = new ThreadLocal<RepositoryConnection>();
+
 	/**
 	 * @param repo
 	 * 			the repository to be used
@@ -136,6 +590,59 @@ public class RepositoryFederatedService implements FederatedService {
 		this.shutDown = shutDown;
 	}
 
+	/**
+	 * Gets the number of input bindings that is sent to the endpoint in a
+	 * single request, as a VALUES clause.
+	 */
+	public int getBoundJoinBlockSize() {
+		return boundJoinBlockSize;
+	}
+
+	/**
+	 * Sets the number of input bindings that is sent to the endpoint in a
+	 * single request, as a VALUES clause. If set to 0, all input bindings are
+	 * sent in a single request. Defaults to
+	 * {@link #DEFAULT_BOUND_JOIN_BLOCK_SIZE}.
+	 */
+	public void setBoundJoinBlockSize(int boundJoinBlockSize) {
+		this.boundJoinBlockSize = boundJoinBlockSize;
+	}
+
+	/**
+	 * Gets the maximum number of blocks of input bindings that are evaluated at
+	 * the endpoint concurrently.
+	 */
+	public int getBoundJoinConcurrency() {
+		return boundJoinConcurrency;
+	}
+
+	/**
+	 * Sets the maximum number of blocks of input bindings that are evaluated at
+	 * the endpoint concurrently. With a value larger than 1, each block is sent
+	 * on its own connection from a background thread, and up to this number of
+	 * blocks are evaluated ahead of the consumer of the results. The results
+	 * are streamed in the order of the input bindings. The background threads
+	 * are shared by all queries that use this service, so the value also bounds
+	 * the number of background requests to the endpoint. A query whose next
+	 * block has not been started by a background thread evaluates that block
+	 * itself. Defaults to 1, which evaluates the blocks one after the other.
+	 */
+	public void setBoundJoinConcurrency(int boundJoinConcurrency) {
+		synchronized (this) {
+			this.boundJoinConcurrency = boundJoinConcurrency;
+			if (blockExecutor != null && boundJoinConcurrency > 1) {
+				if (boundJoinConcurrency > blockExecutor.getMaximumPoolSize()) {
+					blockExecutor.setMaximumPoolSize(boundJoinConcurrency);
+					blockExecutor.setCorePoolSize(boundJoinConcurrency);
+				}
+				else {
+					blockExecutor.setCorePoolSize(boundJoinConcurrency);
+					blockExecutor.setMaximumPoolSize(boundJoinConcurrency);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Evaluate the provided sparqlQueryString at the initialized
 	 * {@link Repository} of this {@link FederatedService}. Insert bindings
@@ -216,9 +723,13 @@ public class RepositoryFederatedService implements FederatedService {
 		// if blockSize is set to 0, the entire input stream is used as block
 		// input
 		// the block size effectively determines the number of remote requests
-		int blockSize = 15; // TODO configurable block size
+		int blockSize = boundJoinBlockSize;
 
 		if (blockSize > 0) {
+			int concurrency = boundJoinConcurrency;
+			if (concurrency > 1) {
+				return new ConcurrentBatchingServiceIteration(bindings, blockSize, concurrency, service);
+			}
 			return new BatchingServiceIteration(bindings, blockSize, service);
 		}
 		else {
@@ -369,6 +880,12 @@ public class RepositoryFederatedService implements FederatedService {
 		throws QueryEvaluationException
 	{
 		boolean foundException = false;
+		synchronized (this) {
+			if (blockExecutor != null) {
+				blockExecutor.shutdownNow();
+				blockExecutor = null;
+			}
+		}
 		try {
 			if (conn != null) {
 				conn.close();
@@ -398,6 +915,12 @@ public class RepositoryFederatedService implements FederatedService {
 	protected RepositoryConnection getConnection()
 		throws RepositoryException
 	{
+		RepositoryConnection blockConn = blockConnection.get();
+		if (blockConn != null) {
+			// evaluating a block in the background
+			return blockConn;
+		}
+
 		// use a cache connection if possible
 		// (TODO add mechanism to unset/close connection)
 		if (conn == null) {
@@ -406,6 +929,27 @@ public class RepositoryFederatedService implements FederatedService {
 		return conn;
 	}
 
+	private synchronized ThreadPoolExecutor getBlockExecutor() {
+		if (blockExecutor == null) {
+			final String name = getClass().getSimpleName() + "-" + rep + "-";
+			int threads = Math.max(1, boundJoinConcurrency);
+			blockExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, name + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			// release the threads of a service that is no longer used
+			blockExecutor.allowCoreThreadTimeOut(true);
+		}
+		return blockExecutor;
+	}
+
 	/**
 	 * Compute the relevant binding names using the variables occuring in the
 	 * service expression and the input bindings. The idea is find all variables
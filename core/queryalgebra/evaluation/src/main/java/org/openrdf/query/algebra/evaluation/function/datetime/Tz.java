@@ -36,6 +36,8 @@ import org.openrdf.query.algebra.evaluation.function.Function;
  */
 public class Tz implements Function {
 
+	private static final Pattern TIMEZONE_PATTERN = Pattern.compile("Z|[+-]\\d\\d:\\d\\d");
+
 	public String getURI() {
 		return "TZ";
 	}
@@ -56,8 +58,7 @@ public class Tz implements Function {
 			if (datatype != null && XMLDatatypeUtil.isCalendarDatatype(datatype)) {
 				String lexValue = literal.getLabel();
 
-				Pattern pattern = Pattern.compile("Z|[+-]\\d\\d:\\d\\d");
-				Matcher m = pattern.matcher(lexValue);
+				Matcher m = TIMEZONE_PATTERN.matcher(lexValue);
 
 				String timeZone = "";
 				if (m.find()) {
@@ -27,6 +27,7 @@ import org.openrdf.model.vocabulary.XMLSchema;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
 import org.openrdf.query.algebra.evaluation.function.Function;
 import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+import org.openrdf.query.algebra.evaluation.util.RegexPatterns;
 
 /**
  * The SPARQL built-in {@link Function} REPLACE, as defined in <a
@@ -81,35 +82,7 @@ public class Replace implements Function {
 			String patternString = pattern.getLabel();
 			String replacementString = replacement.getLabel();
 
-			int f = 0;
-			if (flagString != null) {
-				for (char c : flagString.toCharArray()) {
-					switch (c) {
-						case 's':
-							f |= Pattern.DOTALL;
-							break;
-						case 'm':
-							f |= Pattern.MULTILINE;
-							break;
-						case 'i':
-							f |= Pattern.CASE_INSENSITIVE;
-							break;
-						case 'x':
-							f |= Pattern.COMMENTS;
-							break;
-						case 'd':
-							f |= Pattern.UNIX_LINES;
-							break;
-						case 'u':
-							f |= Pattern.UNICODE_CASE;
-							break;
-						default:
-							throw new ValueExprEvaluationException(flagString);
-					}
-				}
-			}
-
-			Pattern p = Pattern.compile(patternString, f);
+			Pattern p = RegexPatterns.compile(patternString, flagString);
 			String result = p.matcher(argString).replaceAll(replacementString);
 
 			String lang = arg.getLanguage();
@@ -57,6 +57,24 @@ public class EvaluationStatistics {
 		return new CardinalityCalculator();
 	}
 
+	/**
+	 * Checks whether the statements that match the supplied statement pattern
+	 * can be retrieved sorted on the values of the specified variable, e.g.
+	 * because an index exists that is sorted on it. The query optimizer uses
+	 * this to determine whether joins on the variable can be evaluated as merge
+	 * joins. The default implementation returns <tt>false</tt>.
+	 * 
+	 * @param sp
+	 *        A statement pattern.
+	 * @param var
+	 *        One of the unbound variables of the statement pattern.
+	 * @return <tt>true</tt> if the pattern can be evaluated in the order of the
+	 *         variable's values, <tt>false</tt> otherwise.
+	 */
+	public boolean isOrderSupported(StatementPattern sp, Var var) {
+		return false;
+	}
+
 	/*-----------------------------------*
 	 * Inner class CardinalityCalculator *
 	 *-----------------------------------*/
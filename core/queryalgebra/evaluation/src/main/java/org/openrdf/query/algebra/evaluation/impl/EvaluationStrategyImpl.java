@@ -16,12 +16,16 @@
  */
 package org.openrdf.query.algebra.evaluation.impl;
 
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.CloseableIteratorIteration;
 import info.aduna.iteration.ConvertingIteration;
@@ -119,6 +123,8 @@ import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.ZeroLengthPath;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.OrderedTripleSource;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
 import org.openrdf.query.algebra.evaluation.federation.FederatedService;
@@ -135,6 +141,7 @@ import org.openrdf.query.algebra.evaluation.iterator.GroupIterator;
 import org.openrdf.query.algebra.evaluation.iterator.HashJoinIteration;
 import org.openrdf.query.algebra.evaluation.iterator.JoinIterator;
 import org.openrdf.query.algebra.evaluation.iterator.LeftJoinIterator;
+import org.openrdf.query.algebra.evaluation.iterator.MergeJoinIterator;
 import org.openrdf.query.algebra.evaluation.iterator.MultiProjectionIterator;
 import org.openrdf.query.algebra.evaluation.iterator.OrderIterator;
 import org.openrdf.query.algebra.evaluation.iterator.PathIteration;
@@ -146,6 +153,7 @@ import org.openrdf.query.algebra.evaluation.util.EvaluationStrategies;
 import org.openrdf.query.algebra.evaluation.util.MathUtil;
 import org.openrdf.query.algebra.evaluation.util.OrderComparator;
 import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+import org.openrdf.query.algebra.evaluation.util.RegexPatterns;
 import org.openrdf.query.algebra.evaluation.util.ValueComparator;
 import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
 import org.openrdf.query.algebra.helpers.TupleExprs;
@@ -182,6 +190,11 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 
 	private final long iterationCacheSyncThreshold;
 
+	// state derived from the constant operands of value expressions (compiled
+	// regex patterns, LIKE snippets, resolved functions), computed once per
+	// query. Keys are compared on identity.
+	private final Cache<QueryModelNode, Object> preparedExprs = CacheBuilder.newBuilder().weakKeys().build();
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -444,6 +457,20 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(StatementPattern sp,
 			final BindingSet bindings)
 		throws QueryEvaluationException
+	{
+		return evaluate(sp, null, bindings);
+	}
+
+	/**
+	 * Evaluates a statement pattern, optionally retrieving the matching
+	 * statements sorted on the specified statement component.
+	 * 
+	 * @return The results of the statement pattern, or <tt>null</tt> if an order
+	 *         was specified that the triple source can not produce.
+	 */
+	private CloseableIteration<BindingSet, QueryEvaluationException> evaluate(StatementPattern sp,
+			StatementOrder order, final BindingSet bindings)
+		throws QueryEvaluationException
 	{
 		final Var subjVar = sp.getSubjectVar();
 		final Var predVar = sp.getPredicateVar();
@@ -514,7 +541,19 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 				}
 			}
 
-			stIter = tripleSource.getStatements((Resource)subjValue, (URI)predValue, objValue, contexts);
+			if (order == null) {
+				stIter = tripleSource.getStatements((Resource)subjValue, (URI)predValue, objValue, contexts);
+			}
+			else if (tripleSource instanceof OrderedTripleSource && contexts.length <= 1) {
+				stIter = ((OrderedTripleSource)tripleSource).getOrderedStatements(order, (Resource)subjValue,
+						(URI)predValue, objValue, contexts);
+				if (stIter == null) {
+					return null;
+				}
+			}
+			else {
+				return null;
+			}
 
 			if (contexts.length == 0 && sp.getScope() == Scope.NAMED_CONTEXTS) {
 				// Named contexts are matched by retrieving all statements from
@@ -854,14 +893,124 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			return new ServiceJoinIterator(leftIter, (Service)join.getRightArg(), bindings, this);
 		}
 
+		if (join.getMergeJoinVar() != null) {
+			CloseableIteration<BindingSet, QueryEvaluationException> result = evaluateOrdered(join,
+					join.getMergeJoinVar(), bindings);
+			if (result != null) {
+				return result;
+			}
+			// fall back to a regular join if the triple source can not produce
+			// the required order
+		}
+
 		if (TupleExprs.containsProjection(join.getRightArg())) {
-			return new HashJoinIteration(this, join, bindings);
+			return new HashJoinIteration(this, join, bindings, iterationCacheSyncThreshold);
 		}
 		else {
 			return new JoinIterator(this, join, bindings);
 		}
 	}
 
+	/**
+	 * Evaluates a tuple expression such that its results are sorted on the
+	 * value of the specified variable, according to the comparator of the
+	 * (ordered) triple source. Statement patterns are evaluated using an
+	 * ordered index scan, order-preserving filters are evaluated on top of their
+	 * ordered argument and joins that are marked as merge joins on the same
+	 * variable are evaluated using a {@link MergeJoinIterator}.
+	 * 
+	 * @return The sorted results, or <tt>null</tt> if the expression can not be
+	 *         evaluated in the requested order.
+	 */
+	protected CloseableIteration<BindingSet, QueryEvaluationException> evaluateOrdered(TupleExpr expr,
+			String varName, BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		if (!(tripleSource instanceof OrderedTripleSource)) {
+			return null;
+		}
+
+		if (expr instanceof StatementPattern) {
+			StatementPattern sp = (StatementPattern)expr;
+
+			if (bindings.hasBinding(varName)) {
+				// all results share the same value for the variable
+				return evaluate(sp, bindings);
+			}
+
+			StatementOrder order = getStatementOrder(sp, varName);
+			if (order == null) {
+				return null;
+			}
+			return evaluate(sp, order, bindings);
+		}
+		else if (expr instanceof Filter) {
+			Filter filter = (Filter)expr;
+			CloseableIteration<BindingSet, QueryEvaluationException> result = evaluateOrdered(filter.getArg(),
+					varName, bindings);
+			if (result != null) {
+				result = new FilterIterator(filter, result, this);
+			}
+			return result;
+		}
+		else if (expr instanceof Join && varName.equals(((Join)expr).getMergeJoinVar())) {
+			Join join = (Join)expr;
+
+			Comparator<Value> comparator = ((OrderedTripleSource)tripleSource).getComparator();
+			if (comparator == null) {
+				return null;
+			}
+
+			CloseableIteration<BindingSet, QueryEvaluationException> leftIter = evaluateOrdered(
+					join.getLeftArg(), varName, bindings);
+			if (leftIter == null) {
+				return null;
+			}
+
+			CloseableIteration<BindingSet, QueryEvaluationException> rightIter = null;
+			try {
+				rightIter = evaluateOrdered(join.getRightArg(), varName, bindings);
+			}
+			finally {
+				if (rightIter == null) {
+					leftIter.close();
+				}
+			}
+			if (rightIter == null) {
+				return null;
+			}
+
+			Set<String> sharedVars = join.getLeftArg().getBindingNames();
+			sharedVars.retainAll(join.getRightArg().getBindingNames());
+
+			return new MergeJoinIterator(leftIter, rightIter, varName, sharedVars, comparator);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Determines the statement component that corresponds to the specified
+	 * variable. Context variables are not considered, as statements in the
+	 * default context leave them unbound.
+	 */
+	private StatementOrder getStatementOrder(StatementPattern sp, String varName) {
+		if (isUnboundVar(sp.getSubjectVar(), varName)) {
+			return StatementOrder.SUBJECT;
+		}
+		else if (isUnboundVar(sp.getPredicateVar(), varName)) {
+			return StatementOrder.PREDICATE;
+		}
+		else if (isUnboundVar(sp.getObjectVar(), varName)) {
+			return StatementOrder.OBJECT;
+		}
+		return null;
+	}
+
+	private boolean isUnboundVar(Var var, String varName) {
+		return var != null && !var.hasValue() && var.getName().equals(varName);
+	}
+
 	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(LeftJoin leftJoin,
 			final BindingSet bindings)
 		throws QueryEvaluationException
@@ -1416,49 +1565,40 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 		throws ValueExprEvaluationException, QueryEvaluationException
 	{
 		Value arg = evaluate(node.getArg(), bindings);
-		Value parg = evaluate(node.getPatternArg(), bindings);
-		Value farg = null;
-		ValueExpr flagsArg = node.getFlagsArg();
-		if (flagsArg != null) {
-			farg = evaluate(flagsArg, bindings);
-		}
 
-		if (QueryEvaluationUtil.isStringLiteral(arg) && QueryEvaluationUtil.isSimpleLiteral(parg)
-				&& (farg == null || QueryEvaluationUtil.isSimpleLiteral(farg)))
-		{
-			String text = ((Literal)arg).getLabel();
+		Pattern pattern = (Pattern)preparedExprs.getIfPresent(node);
+		if (pattern == null) {
+			ValueExpr patternArg = node.getPatternArg();
+			ValueExpr flagsArg = node.getFlagsArg();
+
+			Value parg = evaluate(patternArg, bindings);
+			Value farg = null;
+			if (flagsArg != null) {
+				farg = evaluate(flagsArg, bindings);
+			}
+
+			if (!QueryEvaluationUtil.isStringLiteral(arg) || !QueryEvaluationUtil.isSimpleLiteral(parg)
+					|| (farg != null && !QueryEvaluationUtil.isSimpleLiteral(farg)))
+			{
+				throw new ValueExprEvaluationException();
+			}
+
 			String ptn = ((Literal)parg).getLabel();
-			String flags = "";
+			String flags = null;
 			if (farg != null) {
 				flags = ((Literal)farg).getLabel();
 			}
-			// TODO should this Pattern be cached?
-			int f = 0;
-			for (char c : flags.toCharArray()) {
-				switch (c) {
-					case 's':
-						f |= Pattern.DOTALL;
-						break;
-					case 'm':
-						f |= Pattern.MULTILINE;
-						break;
-					case 'i':
-						f |= Pattern.CASE_INSENSITIVE;
-						break;
-					case 'x':
-						f |= Pattern.COMMENTS;
-						break;
-					case 'd':
-						f |= Pattern.UNIX_LINES;
-						break;
-					case 'u':
-						f |= Pattern.UNICODE_CASE;
-						break;
-					default:
-						throw new ValueExprEvaluationException(flags);
-				}
+			pattern = RegexPatterns.compile(ptn, flags);
+
+			if (patternArg instanceof ValueConstant && (flagsArg == null || flagsArg instanceof ValueConstant)) {
+				// constant pattern, no need to look it up again for the next
+				// solution
+				preparedExprs.put(node, pattern);
 			}
-			Pattern pattern = Pattern.compile(ptn, f);
+		}
+
+		if (QueryEvaluationUtil.isStringLiteral(arg)) {
+			String text = ((Literal)arg).getLabel();
 			boolean result = pattern.matcher(text).find();
 			return BooleanLiteralImpl.valueOf(result);
 		}
@@ -1529,32 +1669,33 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			strVal = strVal.toLowerCase();
 		}
 
-		int valIndex = 0;
-		int prevPatternIndex = -1;
-		int patternIndex = node.getOpPattern().indexOf('*');
+		String[] snippets = (String[])preparedExprs.getIfPresent(node);
+		if (snippets == null) {
+			// the parts of the pattern between the wildcards
+			snippets = node.getOpPattern().split("\\*", -1);
+			preparedExprs.put(node, snippets);
+		}
 
-		if (patternIndex == -1) {
+		if (snippets.length == 1) {
 			// No wildcards
 			return BooleanLiteralImpl.valueOf(node.getOpPattern().equals(strVal));
 		}
 
-		String snippet;
+		int valIndex = 0;
+		String snippet = snippets[0];
 
-		if (patternIndex > 0) {
+		if (snippet.length() > 0) {
 			// Pattern does not start with a wildcard, first part must match
-			snippet = node.getOpPattern().substring(0, patternIndex);
 			if (!strVal.startsWith(snippet)) {
 				return BooleanLiteralImpl.FALSE;
 			}
 
 			valIndex += snippet.length();
-			prevPatternIndex = patternIndex;
-			patternIndex = node.getOpPattern().indexOf('*', patternIndex + 1);
 		}
 
-		while (patternIndex != -1) {
+		for (int i = 1; i < snippets.length - 1; i++) {
 			// Get snippet between previous wildcard and this wildcard
-			snippet = node.getOpPattern().substring(prevPatternIndex + 1, patternIndex);
+			snippet = snippets[i];
 
 			// Search for the snippet in the value
 			valIndex = strVal.indexOf(snippet, valIndex);
@@ -1563,12 +1704,10 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			}
 
 			valIndex += snippet.length();
-			prevPatternIndex = patternIndex;
-			patternIndex = node.getOpPattern().indexOf('*', patternIndex + 1);
 		}
 
 		// Part after last wildcard
-		snippet = node.getOpPattern().substring(prevPatternIndex + 1);
+		snippet = snippets[snippets.length - 1];
 
 		if (snippet.length() > 0) {
 			// Pattern does not end with a wildcard.
@@ -1602,12 +1741,21 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 	public Value evaluate(FunctionCall node, BindingSet bindings)
 		throws ValueExprEvaluationException, QueryEvaluationException
 	{
-		Function function = FunctionRegistry.getInstance().get(node.getURI());
+		PreparedFunctionCall prepared = (PreparedFunctionCall)preparedExprs.getIfPresent(node);
+
+		if (prepared == null) {
+			Function function = FunctionRegistry.getInstance().get(node.getURI());
 
-		if (function == null) {
-			throw new QueryEvaluationException("Unknown function '" + node.getURI() + "'");
+			if (function == null) {
+				throw new QueryEvaluationException("Unknown function '" + node.getURI() + "'");
+			}
+
+			prepared = new PreparedFunctionCall(function, node.getArgs());
+			preparedExprs.put(node, prepared);
 		}
 
+		Function function = prepared.function;
+
 		// the NOW function is a special case as it needs to keep a shared return
 		// value for the duration of the query.
 		if (function instanceof Now) {
@@ -1615,17 +1763,45 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 		}
 
 		List<ValueExpr> args = node.getArgs();
+		Value[] constantArgs = prepared.constantArgs;
 
 		Value[] argValues = new Value[args.size()];
 
 		for (int i = 0; i < args.size(); i++) {
-			argValues[i] = evaluate(args.get(i), bindings);
+			if (i < constantArgs.length && constantArgs[i] != null) {
+				argValues[i] = constantArgs[i];
+			}
+			else {
+				argValues[i] = evaluate(args.get(i), bindings);
+			}
 		}
 
 		return function.evaluate(tripleSource.getValueFactory(), argValues);
 
 	}
 
+	/**
+	 * The resolved function of a {@link FunctionCall} and the values of its
+	 * constant arguments.
+	 */
+	private static class PreparedFunctionCall {
+
+		private final Function function;
+
+		private final Value[] constantArgs;
+
+		public PreparedFunctionCall(Function function, List<ValueExpr> args) {
+			this.function = function;
+			this.constantArgs = new Value[args.size()];
+			for (int i = 0; i < constantArgs.length; i++) {
+				ValueExpr arg = args.get(i);
+				if (arg instanceof ValueConstant) {
+					constantArgs[i] = ((ValueConstant)arg).getValue();
+				}
+			}
+		}
+	}
+
 	public Value evaluate(And node, BindingSet bindings)
 		throws ValueExprEvaluationException, QueryEvaluationException
 	{
@@ -1970,6 +2146,18 @@ public class EvaluationStrategyImpl implements EvaluationStrategy {
 			}
 		}
 		QueryModelNode parent = node.getParentNode();
+		if (parent instanceof Projection || parent instanceof Extension) {
+			// projections and extensions produce one solution per input
+			// solution, so the limit of a slice directly above them also applies
+			// to their input (unless duplicates are removed in between)
+			QueryModelNode ancestor = parent.getParentNode();
+			while (ancestor instanceof Projection || ancestor instanceof Extension) {
+				ancestor = ancestor.getParentNode();
+			}
+			if (ancestor instanceof Slice && ((Slice)ancestor).hasLimit()) {
+				parent = ancestor;
+			}
+		}
 		if (parent instanceof Distinct || parent instanceof Reduced || parent instanceof Slice) {
 			long limit = getLimit(parent);
 			if (offset > 0L && limit < Long.MAX_VALUE) {
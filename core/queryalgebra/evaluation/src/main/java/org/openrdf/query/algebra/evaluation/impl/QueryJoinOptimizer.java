@@ -44,6 +44,13 @@ import org.openrdf.query.algebra.helpers.TupleExprs;
  */
 public class QueryJoinOptimizer implements QueryOptimizer {
 
+	/**
+	 * The estimated cost of an index lookup, relative to the cost of reading a
+	 * single statement in an index scan. Used to decide between nested loop
+	 * joins and merge joins.
+	 */
+	private static final double MERGE_JOIN_LOOKUP_COST = 10;
+
 	protected final EvaluationStatistics statistics;
 
 	public QueryJoinOptimizer() {
@@ -155,10 +162,14 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 					// argument
 					int i = orderedJoinArgs.size() - 1;
 					TupleExpr replacement = orderedJoinArgs.get(i);
+					Join[] joins = new Join[i];
 					for (i--; i >= 0; i--) {
-						replacement = new Join(orderedJoinArgs.get(i), replacement);
+						joins[i] = new Join(orderedJoinArgs.get(i), replacement);
+						replacement = joins[i];
 					}
 
+					markMergeJoins(orderedJoinArgs, joins, origBoundVars);
+
 					if (subselectJoins != null) {
 						replacement = new Join(subselectJoins, replacement);
 					}
@@ -177,6 +188,88 @@ public class QueryJoinOptimizer implements QueryOptimizer {
 			}
 		}
 
+		/**
+		 * Marks the innermost joins of a generated join hierarchy as merge joins
+		 * when the joined statement patterns share a variable on which all of
+		 * them can be evaluated in sorted order, and when a merge join is
+		 * expected to be cheaper than looking up the matches for each binding of
+		 * the left argument.
+		 * 
+		 * @param orderedJoinArgs
+		 *        The ordered join arguments.
+		 * @param joins
+		 *        The generated joins, where <tt>joins[i]</tt> has
+		 *        <tt>orderedJoinArgs[i]</tt> as its left argument.
+		 * @param boundVars
+		 *        The variables that are bound before the join is evaluated.
+		 */
+		protected void markMergeJoins(List<TupleExpr> orderedJoinArgs, Join[] joins, Set<String> boundVars) {
+			int last = orderedJoinArgs.size() - 1;
+			if (last < 1 || !(orderedJoinArgs.get(last) instanceof StatementPattern)) {
+				return;
+			}
+
+			StatementPattern lastPattern = (StatementPattern)orderedJoinArgs.get(last);
+			double mergedCardinality = statistics.getCardinality(lastPattern);
+			int mergedCount = 1;
+			String mergeJoinVar = null;
+
+			for (int i = last - 1; i >= 0; i--) {
+				if (!(orderedJoinArgs.get(i) instanceof StatementPattern)) {
+					break;
+				}
+
+				StatementPattern sp = (StatementPattern)orderedJoinArgs.get(i);
+
+				if (mergeJoinVar == null) {
+					mergeJoinVar = getMergeJoinVar(sp, lastPattern, boundVars);
+					if (mergeJoinVar == null) {
+						break;
+					}
+				}
+				else if (!isOrderSupported(sp, mergeJoinVar, boundVars)) {
+					break;
+				}
+
+				// A nested loop join performs an index lookup in each of the merged
+				// patterns for every result of the left argument, a merge join
+				// scans the merged patterns once
+				double cardinality = statistics.getCardinality(sp);
+				if (cardinality * mergedCount * MERGE_JOIN_LOOKUP_COST < mergedCardinality) {
+					break;
+				}
+
+				joins[i].setMergeJoinVar(mergeJoinVar);
+				mergedCardinality += cardinality;
+				mergedCount++;
+			}
+		}
+
+		private String getMergeJoinVar(StatementPattern left, StatementPattern right, Set<String> boundVars) {
+			Var[] vars = { left.getSubjectVar(), left.getPredicateVar(), left.getObjectVar() };
+			for (Var var : vars) {
+				String name = var.getName();
+				if (isOrderSupported(left, name, boundVars) && isOrderSupported(right, name, boundVars)) {
+					return name;
+				}
+			}
+			return null;
+		}
+
+		private boolean isOrderSupported(StatementPattern sp, String varName, Set<String> boundVars) {
+			if (boundVars.contains(varName)) {
+				return false;
+			}
+
+			Var[] vars = { sp.getSubjectVar(), sp.getPredicateVar(), sp.getObjectVar() };
+			for (Var var : vars) {
+				if (!var.hasValue() && var.getName().equals(varName)) {
+					return statistics.isOrderSupported(sp, var);
+				}
+			}
+			return false;
+		}
+
 		protected <L extends List<TupleExpr>> L getJoinArgs(TupleExpr tupleExpr, L joinArgs) {
 			if (tupleExpr instanceof Join) {
 				Join join = (Join)tupleExpr;
@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -74,6 +75,12 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * The number of partitions that solutions of new groups are split into once
+	 * the number of groups exceeds the iteration cache sync threshold.
+	 */
+	private static final int PARTITION_COUNT = 32;
+
 	private final ValueFactoryImpl vf = ValueFactoryImpl.getInstance();
 
 	private final EvaluationStrategy strategy;
@@ -187,9 +194,64 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 	private Iterator<BindingSet> createIterator()
 		throws QueryEvaluationException
 	{
-		Collection<Entry> entries = buildEntries();
 		Set<BindingSet> bindingSets = createSet("bindingsets");
 
+		SpilledBindingSets[] partitions = null;
+		if (iterationCacheSyncThreshold > 0) {
+			partitions = new SpilledBindingSets[PARTITION_COUNT];
+		}
+
+		try {
+			CloseableIteration<BindingSet, QueryEvaluationException> iter;
+			iter = strategy.evaluate(group.getArg(), parentBindings);
+			try {
+				if (!iter.hasNext()) {
+					// no solutions, still need to process aggregates to produce a
+					// zero-result.
+					Entry entry = new Entry(EmptyBindingSet.getInstance());
+					addSolutions(Collections.singleton(entry), bindingSets);
+				}
+				else {
+					addSolutions(buildEntries(iter, partitions), bindingSets);
+				}
+			}
+			finally {
+				iter.close();
+			}
+
+			if (partitions != null) {
+				// the solutions of the groups that did not fit in memory have been
+				// partitioned on their group key, aggregate one partition at a time
+				for (int i = 0; i < partitions.length; i++) {
+					if (partitions[i] != null) {
+						iter = partitions[i].iteration();
+						try {
+							addSolutions(buildEntries(iter, null), bindingSets);
+						}
+						finally {
+							iter.close();
+						}
+						partitions[i].delete();
+					}
+				}
+			}
+		}
+		finally {
+			if (partitions != null) {
+				for (SpilledBindingSets partition : partitions) {
+					if (partition != null) {
+						partition.delete();
+					}
+				}
+			}
+		}
+
+		return bindingSets.iterator();
+	}
+
+	private void addSolutions(Collection<Entry> entries, Set<BindingSet> bindingSets)
+		throws QueryEvaluationException
+	{
 		for (Entry entry : entries) {
 			QueryBindingSet sol = new QueryBindingSet(parentBindings);
 
@@ -208,52 +270,49 @@ public class GroupIterator extends CloseableIteratorIteration<BindingSet, QueryE
 
 			bindingSets.add(sol);
 		}
-
-		return bindingSets.iterator();
 	}
 
-	private Collection<Entry> buildEntries()
+	/**
+	 * Aggregates the supplied solutions per group. If partitions are supplied,
+	 * at most iterationCacheSyncThreshold groups are kept in memory: solutions
+	 * that belong to any other group are written to the partition for their
+	 * group key instead, to be aggregated later.
+	 */
+	private Collection<Entry> buildEntries(CloseableIteration<BindingSet, QueryEvaluationException> iter,
+			SpilledBindingSets[] partitions)
 		throws QueryEvaluationException
 	{
-		CloseableIteration<BindingSet, QueryEvaluationException> iter;
-		iter = strategy.evaluate(group.getArg(), parentBindings);
-
-		try {
-			Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+		Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
 
-			if (!iter.hasNext()) {
-				// no solutions, still need to process aggregates to produce a
-				// zero-result.
-				entries.put(new Key(EmptyBindingSet.getInstance()), new Entry(EmptyBindingSet.getInstance()));
+		while (iter.hasNext()) {
+			BindingSet sol;
+			try {
+				sol = iter.next();
 			}
+			catch (NoSuchElementException e) {
+				break; // closed
+			}
+			Key key = new Key(sol);
+			Entry entry = entries.get(key);
 
-			// long count = 0;
-
-			while (iter.hasNext()) {
-				BindingSet sol;
-				try {
-					sol = iter.next();
-				}
-				catch (NoSuchElementException e) {
-					break; // closed
-				}
-				Key key = new Key(sol);
-				Entry entry = entries.get(key);
-
-				if (entry == null) {
-					entry = new Entry(sol);
-					entries.put(key, entry);
+			if (entry == null) {
+				if (partitions != null && entries.size() >= iterationCacheSyncThreshold) {
+					int index = (key.hashCode() & Integer.MAX_VALUE) % partitions.length;
+					if (partitions[index] == null) {
+						partitions[index] = new SpilledBindingSets("group-eval", iterationCacheSyncThreshold);
+					}
+					partitions[index].add(sol);
+					continue;
 				}
 
-				entry.addSolution(sol);
+				entry = new Entry(sol);
+				entries.put(key, entry);
 			}
 
-			return entries.values();
-		}
-		finally {
-			iter.close();
+			entry.addSolution(sol);
 		}
 
+		return entries.values();
 	}
 
 	/**
@@ -41,10 +41,24 @@ import org.openrdf.query.impl.EmptyBindingSet;
 
 /**
  * Generic hash join implementation suitable for use by Sail implementations.
+ * When an iteration cache sync threshold is specified and both join arguments
+ * turn out to be larger than it, the join falls back to a partitioned (grace)
+ * hash join: both arguments are hash-partitioned on the join attributes into
+ * temporary files, and the partitions are joined one at a time.
  * @author MJAHale
  */
 public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of partitions that the join arguments are split into when the
+	 * join spills to disk.
+	 */
+	private static final int PARTITION_COUNT = 32;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -66,7 +80,16 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	private Iterator<BindingSet> hashTableValues;
 
 	private final boolean leftJoin;
-	
+
+	/**
+	 * Number of binding sets that are kept in memory before the join spills its
+	 * arguments to disk. If set to 0, no disk-syncing is done and all binding
+	 * sets are kept in memory.
+	 */
+	private final long iterationCacheSyncThreshold;
+
+	private PartitionedJoinIteration partitionedJoin;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -74,17 +97,38 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	public HashJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings)
 		throws QueryEvaluationException
 	{
-		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, false);
+		this(strategy, join, bindings, 0);
+	}
+
+	public HashJoinIteration(EvaluationStrategy strategy, Join join, BindingSet bindings,
+			long iterationCacheSyncThreshold)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, false, iterationCacheSyncThreshold);
 	}
 
 	public HashJoinIteration(EvaluationStrategy strategy, LeftJoin join, BindingSet bindings)
 			throws QueryEvaluationException
 	{
-		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, true);
+		this(strategy, join, bindings, 0);
+	}
+
+	public HashJoinIteration(EvaluationStrategy strategy, LeftJoin join, BindingSet bindings,
+			long iterationCacheSyncThreshold)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), bindings, true, iterationCacheSyncThreshold);
 	}
 
 	public HashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right, BindingSet bindings, boolean leftJoin)
 			throws QueryEvaluationException
+	{
+		this(strategy, left, right, bindings, leftJoin, 0);
+	}
+
+	public HashJoinIteration(EvaluationStrategy strategy, TupleExpr left, TupleExpr right,
+			BindingSet bindings, boolean leftJoin, long iterationCacheSyncThreshold)
+		throws QueryEvaluationException
 	{
 		leftIter = strategy.evaluate(left, bindings);
 		rightIter = strategy.evaluate(right, bindings);
@@ -94,6 +138,7 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 		joinAttributes = joinAttributeNames.toArray(new String[joinAttributeNames.size()]);
 
 		this.leftJoin = leftJoin;
+		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
 	}
 
 	/*---------*
@@ -104,10 +149,14 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	protected BindingSet getNextElement()
 		throws QueryEvaluationException
 	{
-		if (hashTable == null) {
+		if (hashTable == null && partitionedJoin == null) {
 			setupHashTable();
 		}
 
+		if (partitionedJoin != null) {
+			return partitionedJoin.hasNext() ? partitionedJoin.next() : null;
+		}
+
 		while (currentScanElem == null) {
 			if (scanList.hasNext()) {
 				currentScanElem = nextFromCache(scanList);
@@ -151,19 +200,7 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			}
 		}
 
-		BindingSet nextHashTableValue = hashTableValues.next();
-
-		QueryBindingSet result = new QueryBindingSet(currentScanElem);
-
-		for (String name : nextHashTableValue.getBindingNames()) {
-			if (!result.hasBinding(name)) {
-				Value v = nextHashTableValue.getValue(name);
-				if(v != null)
-				{
-					result.addBinding(name, v);
-				}
-			}
-		}
+		BindingSet result = merge(currentScanElem, hashTableValues.next());
 
 		if (!hashTableValues.hasNext()) {
 			// we've exhausted the current scanlist entry
@@ -184,6 +221,11 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 		leftIter.close();
 		rightIter.close();
 
+		if (partitionedJoin != null) {
+			partitionedJoin.close();
+			partitionedJoin = null;
+		}
+
 		if(hashTableValues != null)
 		{
 			closeHashValue(hashTableValues);
@@ -212,6 +254,11 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			leftArgResults = makeIterationCache(leftIter);
 
 			while (leftIter.hasNext() && rightIter.hasNext()) {
+				if (isSpillRequired(leftArgResults.size() + rightArgResults.size())) {
+					// neither argument fits in memory
+					setupPartitionedJoin(leftArgResults, rightArgResults);
+					return;
+				}
 				add(leftArgResults, leftIter.next());
 				add(rightArgResults, rightIter.next());
 			}
@@ -221,6 +268,10 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 			leftArgResults = Collections.emptyList();
 
 			while (rightIter.hasNext()) {
+				if (isSpillRequired(rightArgResults.size())) {
+					setupPartitionedJoin(leftArgResults, rightArgResults);
+					return;
+				}
 				add(rightArgResults, rightIter.next());
 			}
 		}
@@ -264,6 +315,51 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 
 	}
 
+	private boolean isSpillRequired(long cachedCount) {
+		return iterationCacheSyncThreshold > 0 && cachedCount >= iterationCacheSyncThreshold;
+	}
+
+	/**
+	 * Partitions the already cached and the remaining binding sets of both join
+	 * arguments to disk and sets up the partitioned join over them.
+	 */
+	private void setupPartitionedJoin(Collection<BindingSet> leftArgResults,
+			Collection<BindingSet> rightArgResults)
+		throws QueryEvaluationException
+	{
+		partitionedJoin = new PartitionedJoinIteration();
+
+		for (BindingSet b : leftArgResults) {
+			partitionedJoin.addLeft(b);
+		}
+		for (BindingSet b : rightArgResults) {
+			partitionedJoin.addRight(b);
+		}
+
+		while (leftIter.hasNext()) {
+			partitionedJoin.addLeft(leftIter.next());
+		}
+		while (rightIter.hasNext()) {
+			partitionedJoin.addRight(rightIter.next());
+		}
+	}
+
+	private BindingSet merge(BindingSet scanElem, BindingSet hashTableValue) {
+		QueryBindingSet result = new QueryBindingSet(scanElem);
+
+		for (String name : hashTableValue.getBindingNames()) {
+			if (!result.hasBinding(name)) {
+				Value v = hashTableValue.getValue(name);
+				if(v != null)
+				{
+					result.addBinding(name, v);
+				}
+			}
+		}
+
+		return result;
+	}
+
 	protected void putHashTableEntry(Map<BindingSetHashKey, List<BindingSet>> hashTable, BindingSetHashKey hashKey,
 			List<BindingSet> hashValue, boolean newEntry)
 		throws QueryEvaluationException
@@ -357,4 +453,280 @@ public class HashJoinIteration extends LookAheadIteration<BindingSet, QueryEvalu
 	{
 		col.addAll(values);
 	}
+
+	/*--------------------------------------*
+	 * Inner class PartitionedJoinIteration *
+	 *--------------------------------------*/
+
+	/**
+	 * Joins binding sets that have been hash-partitioned on the join attributes
+	 * to temporary files. Each pair of partitions is joined in memory by
+	 * building a hash table from the smaller partition (or from the right
+	 * partition for a left join) and streaming the other one. Empty binding
+	 * sets are not partitioned but counted, as they are compatible with every
+	 * binding set; they are joined in two additional passes after all
+	 * partitions have been processed.
+	 */
+	private class PartitionedJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final SpilledBindingSets[] leftPartitions = new SpilledBindingSets[PARTITION_COUNT];
+
+		private final SpilledBindingSets[] rightPartitions = new SpilledBindingSets[PARTITION_COUNT];
+
+		private long leftEmptyCount;
+
+		private long rightEmptyCount;
+
+		private long rightCount;
+
+		/**
+		 * The partition that is currently being joined, a value of
+		 * PARTITION_COUNT and PARTITION_COUNT + 1 denote the passes for the
+		 * empty binding sets of the left and the right argument.
+		 */
+		private int currentPartition = -1;
+
+		private Map<BindingSetHashKey, List<BindingSet>> partitionTable;
+
+		private CloseableIteration<BindingSet, QueryEvaluationException> partitionScan;
+
+		private BindingSet scanElem;
+
+		private Iterator<BindingSet> matches;
+
+		private int emptyMatchCount;
+
+		public void addLeft(BindingSet bindingSet)
+			throws QueryEvaluationException
+		{
+			if (bindingSet.size() == 0) {
+				leftEmptyCount++;
+			}
+			else {
+				getPartition(leftPartitions, bindingSet, "left").add(bindingSet);
+			}
+		}
+
+		public void addRight(BindingSet bindingSet)
+			throws QueryEvaluationException
+		{
+			rightCount++;
+			if (bindingSet.size() == 0) {
+				rightEmptyCount++;
+			}
+			else {
+				getPartition(rightPartitions, bindingSet, "right").add(bindingSet);
+			}
+		}
+
+		private SpilledBindingSets getPartition(SpilledBindingSets[] partitions, BindingSet bindingSet,
+				String side)
+		{
+			BindingSetHashKey key = BindingSetHashKey.create(joinAttributes, bindingSet);
+			int index = (key.hashCode() & Integer.MAX_VALUE) % PARTITION_COUNT;
+			if (partitions[index] == null) {
+				partitions[index] = new SpilledBindingSets("hashjoin-" + side, iterationCacheSyncThreshold);
+			}
+			return partitions[index];
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			while (true) {
+				if (matches != null && matches.hasNext()) {
+					return merge(scanElem, matches.next());
+				}
+				matches = null;
+
+				if (partitionScan != null && partitionScan.hasNext()) {
+					scanElem = partitionScan.next();
+					matches = getMatches(scanElem);
+				}
+				else {
+					closePartition();
+
+					if (!nextPartition()) {
+						return null;
+					}
+				}
+			}
+		}
+
+		private Iterator<BindingSet> getMatches(BindingSet scanElem) {
+			if (partitionTable == null) {
+				// one of the passes for the empty binding sets
+				return Collections.nCopies(emptyMatchCount, (BindingSet)EmptyBindingSet.getInstance()).iterator();
+			}
+
+			List<BindingSet> hashValue = partitionTable.get(BindingSetHashKey.create(joinAttributes, scanElem));
+			if (hashValue != null) {
+				return hashValue.iterator();
+			}
+			else if (leftJoin && rightEmptyCount == 0) {
+				// a left binding set without any compatible right binding set
+				return Collections.singletonList((BindingSet)EmptyBindingSet.getInstance()).iterator();
+			}
+			return null;
+		}
+
+		private boolean nextPartition()
+			throws QueryEvaluationException
+		{
+			currentPartition++;
+
+			if (currentPartition < PARTITION_COUNT) {
+				SpilledBindingSets left = leftPartitions[currentPartition];
+				SpilledBindingSets right = rightPartitions[currentPartition];
+				long leftSize = left == null ? 0 : left.size();
+				long rightSize = right == null ? 0 : right.size();
+
+				boolean buildLeft = !leftJoin && leftSize < rightSize;
+				SpilledBindingSets build = buildLeft ? left : right;
+				SpilledBindingSets scan = buildLeft ? right : left;
+
+				partitionTable = new HashMap<BindingSetHashKey, List<BindingSet>>();
+				if (build != null) {
+					CloseableIteration<BindingSet, QueryEvaluationException> iter = build.iteration();
+					try {
+						while (iter.hasNext()) {
+							BindingSet b = iter.next();
+							BindingSetHashKey key = BindingSetHashKey.create(joinAttributes, b);
+							List<BindingSet> hashValue = partitionTable.get(key);
+							if (hashValue == null) {
+								hashValue = new ArrayList<BindingSet>(1);
+								partitionTable.put(key, hashValue);
+							}
+							hashValue.add(b);
+						}
+					}
+					finally {
+						iter.close();
+					}
+				}
+				partitionScan = scan == null ? null : scan.iteration();
+			}
+			else if (currentPartition == PARTITION_COUNT) {
+				// each empty left binding set is compatible with every right
+				// binding set
+				partitionTable = null;
+				if (leftEmptyCount > 0 && rightCount > 0) {
+					emptyMatchCount = (int)leftEmptyCount;
+					partitionScan = new PartitionsIteration(rightPartitions, rightEmptyCount);
+				}
+				else if (leftEmptyCount > 0 && leftJoin) {
+					emptyMatchCount = 1;
+					partitionScan = new PartitionsIteration(new SpilledBindingSets[0], leftEmptyCount);
+				}
+				else {
+					partitionScan = null;
+				}
+			}
+			else if (currentPartition == PARTITION_COUNT + 1) {
+				// each empty right binding set is compatible with every non-empty
+				// left binding set, the empty ones have been joined in the
+				// previous pass
+				if (rightEmptyCount > 0) {
+					emptyMatchCount = (int)rightEmptyCount;
+					partitionScan = new PartitionsIteration(leftPartitions, 0);
+				}
+				else {
+					partitionScan = null;
+				}
+			}
+			else {
+				return false;
+			}
+
+			return true;
+		}
+
+		private void closePartition()
+			throws QueryEvaluationException
+		{
+			partitionTable = null;
+			if (partitionScan != null) {
+				partitionScan.close();
+				partitionScan = null;
+			}
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			super.handleClose();
+			try {
+				closePartition();
+			}
+			finally {
+				for (int i = 0; i < PARTITION_COUNT; i++) {
+					if (leftPartitions[i] != null) {
+						leftPartitions[i].delete();
+					}
+					if (rightPartitions[i] != null) {
+						rightPartitions[i].delete();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Iterates over the binding sets of all partitions, followed by a number of
+	 * empty binding sets.
+	 */
+	private static class PartitionsIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final SpilledBindingSets[] partitions;
+
+		private long emptyCount;
+
+		private int nextPartition = 0;
+
+		private CloseableIteration<BindingSet, QueryEvaluationException> current;
+
+		public PartitionsIteration(SpilledBindingSets[] partitions, long emptyCount) {
+			this.partitions = partitions;
+			this.emptyCount = emptyCount;
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			while (current == null || !current.hasNext()) {
+				if (current != null) {
+					current.close();
+					current = null;
+				}
+				if (nextPartition < partitions.length) {
+					SpilledBindingSets partition = partitions[nextPartition++];
+					if (partition != null) {
+						current = partition.iteration();
+					}
+				}
+				else if (emptyCount > 0) {
+					emptyCount--;
+					return EmptyBindingSet.getInstance();
+				}
+				else {
+					return null;
+				}
+			}
+			return current.next();
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			super.handleClose();
+			if (current != null) {
+				current.close();
+				current = null;
+			}
+		}
+	}
 }
@@ -0,0 +1,254 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+/**
+ * Merge join implementation that joins two iterations that are both sorted on
+ * the value of the join variable. Both iterations are consumed only once; for
+ * each distinct value of the join variable, the matching binding sets of the
+ * right argument are buffered and combined with all matching binding sets of
+ * the left argument. The results are returned in the order of the join
+ * variable, which allows merge joins to be nested.
+ */
+public class MergeJoinIterator extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> rightIter;
+
+	private final String joinVar;
+
+	private final String[] sharedVars;
+
+	private final Comparator<Value> comparator;
+
+	private BindingSet nextLeft;
+
+	private BindingSet nextRight;
+
+	/**
+	 * The binding sets of the right argument that share the current value of
+	 * the join variable.
+	 */
+	private final List<BindingSet> rightGroup = new ArrayList<BindingSet>();
+
+	private Value groupValue;
+
+	private BindingSet currentLeft;
+
+	private int groupIdx;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Creates a new merge join iterator.
+	 * 
+	 * @param leftIter
+	 *        The left argument of the join, sorted on the join variable.
+	 * @param rightIter
+	 *        The right argument of the join, sorted on the join variable.
+	 * @param joinVar
+	 *        The name of the join variable, which must be bound in all binding
+	 *        sets of both arguments.
+	 * @param sharedVars
+	 *        The names of all variables that the arguments have in common,
+	 *        including the join variable.
+	 * @param comparator
+	 *        The comparator that defines the order of both arguments.
+	 */
+	public MergeJoinIterator(CloseableIteration<BindingSet, QueryEvaluationException> leftIter,
+			CloseableIteration<BindingSet, QueryEvaluationException> rightIter, String joinVar,
+			Set<String> sharedVars, Comparator<Value> comparator)
+	{
+		this.leftIter = leftIter;
+		this.rightIter = rightIter;
+		this.joinVar = joinVar;
+		this.sharedVars = sharedVars.toArray(new String[sharedVars.size()]);
+		this.comparator = comparator;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		while (true) {
+			// Combine the current left binding set with the buffered group
+			while (currentLeft != null && groupIdx < rightGroup.size()) {
+				BindingSet right = rightGroup.get(groupIdx++);
+				if (isCompatible(currentLeft, right)) {
+					return join(currentLeft, right);
+				}
+			}
+			currentLeft = null;
+
+			BindingSet left = nextLeft();
+			if (left == null) {
+				return null;
+			}
+
+			Value leftValue = left.getValue(joinVar);
+
+			if (groupValue != null && comparator.compare(leftValue, groupValue) == 0) {
+				// Another left binding set for the current group
+				currentLeft = left;
+				groupIdx = 0;
+				continue;
+			}
+
+			// Advance the right argument to the left binding set's value
+			rightGroup.clear();
+			groupValue = null;
+
+			BindingSet right = nextRight();
+			int cmp = -1;
+			while (right != null && (cmp = comparator.compare(right.getValue(joinVar), leftValue)) < 0) {
+				right = nextRight();
+			}
+
+			if (right == null) {
+				// Right argument exhausted, no more results
+				return null;
+			}
+
+			if (cmp > 0) {
+				// No match for this left binding set, advance left
+				nextRight = right;
+				nextLeft = skipLeft(right.getValue(joinVar));
+				continue;
+			}
+
+			// Buffer all right binding sets with the same value
+			groupValue = leftValue;
+			rightGroup.add(right);
+			while ((right = nextRight()) != null && comparator.compare(right.getValue(joinVar), groupValue) == 0) {
+				rightGroup.add(right);
+			}
+			nextRight = right;
+
+			currentLeft = left;
+			groupIdx = 0;
+		}
+	}
+
+	private BindingSet nextLeft()
+		throws QueryEvaluationException
+	{
+		BindingSet result = nextLeft;
+		if (result != null) {
+			nextLeft = null;
+		}
+		else if (leftIter.hasNext()) {
+			result = leftIter.next();
+		}
+		return result;
+	}
+
+	private BindingSet nextRight()
+		throws QueryEvaluationException
+	{
+		BindingSet result = nextRight;
+		if (result != null) {
+			nextRight = null;
+		}
+		else if (rightIter.hasNext()) {
+			result = rightIter.next();
+		}
+		return result;
+	}
+
+	/**
+	 * Skips all left binding sets with a join value smaller than the specified
+	 * value and returns the first one that is not, if any.
+	 */
+	private BindingSet skipLeft(Value value)
+		throws QueryEvaluationException
+	{
+		BindingSet left;
+		while ((left = nextLeft()) != null && comparator.compare(left.getValue(joinVar), value) < 0) {
+			// skip
+		}
+		return left;
+	}
+
+	private boolean isCompatible(BindingSet left, BindingSet right) {
+		for (String name : sharedVars) {
+			Value leftValue = left.getValue(name);
+			if (leftValue != null) {
+				Value rightValue = right.getValue(name);
+				if (rightValue != null && !leftValue.equals(rightValue)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private BindingSet join(BindingSet left, BindingSet right) {
+		QueryBindingSet result = new QueryBindingSet(left);
+
+		for (String name : right.getBindingNames()) {
+			if (!result.hasBinding(name)) {
+				Value v = right.getValue(name);
+				if (v != null) {
+					result.addBinding(name, v);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		try {
+			super.handleClose();
+		}
+		finally {
+			try {
+				leftIter.close();
+			}
+			finally {
+				rightIter.close();
+			}
+		}
+	}
+}
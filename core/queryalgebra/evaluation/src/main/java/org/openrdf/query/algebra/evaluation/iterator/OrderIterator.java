@@ -16,22 +16,21 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
-import java.io.File;
-import java.io.IOError;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.TreeMap;
-
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
+import java.util.TreeSet;
 
 import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
 import info.aduna.iteration.DelayedIteration;
 import info.aduna.iteration.Iteration;
 import info.aduna.iteration.LookAheadIteration;
@@ -40,13 +39,26 @@ import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
 
 /**
- * Sorts the input and optionally applies limit and distinct.
+ * Sorts the input and optionally applies limit and distinct. If a limit is
+ * specified that fits in memory, only the first binding sets are kept in a
+ * bounded heap. Otherwise, if an iteration sync threshold is specified, the
+ * input is sorted with an external merge sort: sorted runs of at most that
+ * many binding sets are written to temporary files and merged afterwards.
  * 
  * @author James Leigh
  * @author Arjohn Kampman
  */
 public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationException> {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The maximum number of sorted runs that are merged at once.
+	 */
+	private static final int MERGE_FAN_IN = 16;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -59,14 +71,12 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 
 	private final boolean distinct;
 
-	private final File tempFile;
-
-	private final DB db;
+	private final List<SpilledBindingSets> runs = new ArrayList<SpilledBindingSets>();
 
 	/**
-	 * Number of items cached before internal collection is synced to disk. If
-	 * set to 0, no disk-syncing is done and all internal caching is kept in
-	 * memory.
+	 * Number of items cached in memory before they are sorted and written to
+	 * disk. If set to 0, no disk-syncing is done and all internal caching is
+	 * kept in memory.
 	 */
 	private final long iterationSyncThreshold;
 
@@ -94,20 +104,6 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 		this.limit = limit;
 		this.distinct = distinct;
 		this.iterationSyncThreshold = iterationSyncThreshold;
-
-		if (iterationSyncThreshold > 0) {
-			try {
-				this.tempFile = File.createTempFile("order-eval", null);
-			}
-			catch (IOException e) {
-				throw new IOError(e);
-			}
-			this.db = DBMaker.newFileDB(tempFile).deleteFilesAfterClose().closeOnJvmShutdown().make();
-		}
-		else {
-			this.tempFile = null;
-			this.db = null;
-		}
 	}
 
 	/*---------*
@@ -115,65 +111,72 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 	 *---------*/
 
 	protected NavigableMap<BindingSet, Integer> makeOrderedMap() {
-		if (db == null) {
-			// no disk-syncing - we use a simple in-memory TreeMap instead.
-			return new TreeMap<BindingSet, Integer>(comparator);
+		return new TreeMap<BindingSet, Integer>(comparator);
+	}
+
+	protected Iteration<BindingSet, QueryEvaluationException> createIteration()
+		throws QueryEvaluationException
+	{
+		try {
+			if (limit < Integer.MAX_VALUE && (iterationSyncThreshold <= 0 || limit <= iterationSyncThreshold))
+			{
+				return createTopIteration();
+			}
+			else if (iterationSyncThreshold > 0) {
+				return createMergeIteration();
+			}
+			else {
+				return createMapIteration();
+			}
 		}
-		else {
-			return db.createTreeMap("iteration").comparator(comparator).makeOrGet();
+		finally {
+			iter.close();
 		}
 	}
 
-	protected Iteration<BindingSet, QueryEvaluationException> createIteration()
+	/**
+	 * Sorts the input using an in-memory map from binding sets to the number of
+	 * times they occur.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createMapIteration()
 		throws QueryEvaluationException
 	{
 		final NavigableMap<BindingSet, Integer> map = makeOrderedMap();
 		long size = 0;
 
-		try {
-			while (iter.hasNext()) {
-				BindingSet next = iter.next();
+		while (iter.hasNext()) {
+			BindingSet next = iter.next();
 
-				// Add this binding set if the limit hasn't been reached yet, or if
-				// it is sorted before the current lowest value
-				if (size < limit || comparator.compare(next, map.lastKey()) < 0) {
+			// Add this binding set if the limit hasn't been reached yet, or if
+			// it is sorted before the current lowest value
+			if (size < limit || comparator.compare(next, map.lastKey()) < 0) {
 
-					Integer count = map.get(next);
+				Integer count = map.get(next);
 
-					if (count == null) {
-						put(map, next, 1);
-						size++;
-					}
-					else if (!distinct) {
-						put(map, next, ++count);
-						size++;
-					}
+				if (count == null) {
+					put(map, next, 1);
+					size++;
+				}
+				else if (!distinct) {
+					put(map, next, ++count);
+					size++;
+				}
 
-					if (db != null && size % iterationSyncThreshold == 0L) {
-						// sync collection to disk every X new entries (where X is a
-						// multiple of the cache size)
-						db.commit();
-					}
+				if (size > limit) {
+					// Discard binding set that is currently sorted last
+					BindingSet lastKey = map.lastKey();
 
-					if (size > limit) {
-						// Discard binding set that is currently sorted last
-						BindingSet lastKey = map.lastKey();
-
-						Integer lastCount = map.get(lastKey);
-						if (lastCount > 1) {
-							put(map, lastKey, --lastCount);
-						}
-						else {
-							removeLast(map.navigableKeySet());
-						}
-						size--;
+					Integer lastCount = map.get(lastKey);
+					if (lastCount > 1) {
+						put(map, lastKey, --lastCount);
+					}
+					else {
+						removeLast(map.navigableKeySet());
 					}
+					size--;
 				}
 			}
 		}
-		finally {
-			iter.close();
-		}
 
 		return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
 
@@ -200,6 +203,136 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 		};
 	}
 
+	/**
+	 * Keeps the first <tt>limit</tt> binding sets of the input in a bounded
+	 * heap, with the binding set that is currently sorted last at its head.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createTopIteration()
+		throws QueryEvaluationException
+	{
+		int capacity = (int)Math.min(limit, 1024) + 1;
+		PriorityQueue<BindingSet> heap = new PriorityQueue<BindingSet>(capacity,
+				Collections.reverseOrder(comparator));
+		Set<BindingSet> members = distinct ? new TreeSet<BindingSet>(comparator) : null;
+
+		while (iter.hasNext()) {
+			BindingSet next = iter.next();
+
+			if (heap.size() < limit || !heap.isEmpty() && comparator.compare(next, heap.peek()) < 0) {
+				if (members != null && !members.add(next)) {
+					// duplicate
+					continue;
+				}
+
+				add(next, heap);
+
+				if (heap.size() > limit) {
+					// Discard binding set that is currently sorted last
+					if (members != null) {
+						members.remove(heap.peek());
+					}
+					removeLast(heap);
+				}
+			}
+		}
+
+		List<BindingSet> result = new ArrayList<BindingSet>(heap);
+		Collections.sort(result, comparator);
+
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(result.iterator());
+	}
+
+	/**
+	 * Sorts the input with an external merge sort: the input is read in runs of
+	 * at most <tt>iterationSyncThreshold</tt> binding sets, which are sorted in
+	 * memory and written to disk, and the runs are then merged.
+	 */
+	private Iteration<BindingSet, QueryEvaluationException> createMergeIteration()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> buffer = new ArrayList<BindingSet>();
+
+		while (iter.hasNext()) {
+			add(iter.next(), buffer);
+
+			if (buffer.size() >= iterationSyncThreshold) {
+				writeRun(buffer);
+				buffer.clear();
+			}
+		}
+
+		if (runs.isEmpty()) {
+			// everything fits in memory
+			List<BindingSet> result = sortRun(buffer);
+			return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(result.iterator());
+		}
+
+		if (!buffer.isEmpty()) {
+			writeRun(buffer);
+			buffer.clear();
+		}
+
+		// merge runs until they can all be merged at once
+		while (runs.size() > MERGE_FAN_IN) {
+			List<SpilledBindingSets> merged = new ArrayList<SpilledBindingSets>(runs.subList(0, MERGE_FAN_IN));
+			runs.subList(0, MERGE_FAN_IN).clear();
+
+			SpilledBindingSets run = createRun();
+			CloseableIteration<BindingSet, QueryEvaluationException> mergeIter = new MergeIteration(merged);
+			try {
+				while (mergeIter.hasNext()) {
+					run.add(mergeIter.next());
+				}
+			}
+			finally {
+				mergeIter.close();
+				for (SpilledBindingSets m : merged) {
+					m.delete();
+				}
+			}
+			runs.add(run);
+		}
+
+		return new MergeIteration(runs);
+	}
+
+	/**
+	 * Sorts the supplied binding sets, removing duplicates and binding sets that
+	 * are beyond the limit.
+	 */
+	private List<BindingSet> sortRun(List<BindingSet> bindingSets) {
+		Collections.sort(bindingSets, comparator);
+
+		List<BindingSet> result = new ArrayList<BindingSet>(bindingSets.size());
+		BindingSet previous = null;
+		for (BindingSet b : bindingSets) {
+			if (result.size() >= limit) {
+				break;
+			}
+			if (!distinct || previous == null || comparator.compare(previous, b) != 0) {
+				result.add(b);
+			}
+			previous = b;
+		}
+		return result;
+	}
+
+	private void writeRun(List<BindingSet> bindingSets)
+		throws QueryEvaluationException
+	{
+		SpilledBindingSets run = createRun();
+		runs.add(run);
+		for (BindingSet b : sortRun(bindingSets)) {
+			run.add(b);
+		}
+	}
+
+	private SpilledBindingSets createRun() {
+		// a run is merged with up to MERGE_FAN_IN - 1 others, and each needs a
+		// chunk in memory during the merge
+		return new SpilledBindingSets("order-eval", iterationSyncThreshold / MERGE_FAN_IN);
+	}
+
 	protected void removeLast(Collection<BindingSet> lastResults) {
 		if (lastResults instanceof LinkedList<?>) {
 			((LinkedList<BindingSet>)lastResults).removeLast();
@@ -207,6 +340,10 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 		else if (lastResults instanceof List<?>) {
 			((List<BindingSet>)lastResults).remove(lastResults.size() - 1);
 		}
+		else if (lastResults instanceof PriorityQueue<?>) {
+			// the head of the (reverse ordered) heap is sorted last
+			((PriorityQueue<BindingSet>)lastResults).poll();
+		}
 		else {
 			Iterator<BindingSet> iter = lastResults.iterator();
 			while (iter.hasNext()) {
@@ -239,10 +376,99 @@ public class OrderIterator extends DelayedIteration<BindingSet, QueryEvaluationE
 	protected void handleClose()
 		throws QueryEvaluationException
 	{
-		iter.close();
-		if (db != null) {
-			this.db.close();
+		try {
+			iter.close();
+			super.handleClose();
+		}
+		finally {
+			for (SpilledBindingSets run : runs) {
+				run.delete();
+			}
+			runs.clear();
+		}
+	}
+
+	/*----------------------------*
+	 * Inner class MergeIteration *
+	 *----------------------------*/
+
+	/**
+	 * Merges sorted runs, applying limit and distinct to the merged result.
+	 */
+	private class MergeIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+		private final List<CloseableIteration<BindingSet, QueryEvaluationException>> runIters;
+
+		private final PriorityQueue<RunHead> heads;
+
+		private BindingSet previous;
+
+		private long count;
+
+		public MergeIteration(List<SpilledBindingSets> runs)
+			throws QueryEvaluationException
+		{
+			runIters = new ArrayList<CloseableIteration<BindingSet, QueryEvaluationException>>(runs.size());
+			heads = new PriorityQueue<RunHead>(runs.size() + 1);
+
+			for (SpilledBindingSets run : runs) {
+				CloseableIteration<BindingSet, QueryEvaluationException> runIter = run.iteration();
+				runIters.add(runIter);
+				if (runIter.hasNext()) {
+					heads.add(new RunHead(runIter.next(), runIter));
+				}
+			}
+		}
+
+		@Override
+		protected BindingSet getNextElement()
+			throws QueryEvaluationException
+		{
+			while (count < limit) {
+				RunHead head = heads.poll();
+				if (head == null) {
+					return null;
+				}
+
+				BindingSet next = head.bindingSet;
+				if (head.iter.hasNext()) {
+					heads.add(new RunHead(head.iter.next(), head.iter));
+				}
+
+				if (!distinct || previous == null || comparator.compare(previous, next) != 0) {
+					previous = next;
+					count++;
+					return next;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		protected void handleClose()
+			throws QueryEvaluationException
+		{
+			super.handleClose();
+			heads.clear();
+			for (CloseableIteration<BindingSet, QueryEvaluationException> runIter : runIters) {
+				runIter.close();
+			}
+		}
+	}
+
+	private class RunHead implements Comparable<RunHead> {
+
+		private final BindingSet bindingSet;
+
+		private final CloseableIteration<BindingSet, QueryEvaluationException> iter;
+
+		public RunHead(BindingSet bindingSet, CloseableIteration<BindingSet, QueryEvaluationException> iter) {
+			this.bindingSet = bindingSet;
+			this.iter = iter;
+		}
+
+		public int compareTo(RunHead other) {
+			return comparator.compare(bindingSet, other.bindingSet);
 		}
-		super.handleClose();
 	}
 }
@@ -0,0 +1,268 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.OpenRDFException;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.TupleQueryResultHandlerBase;
+import org.openrdf.query.TupleQueryResultHandlerException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.resultio.binary.BinaryQueryResultParser;
+import org.openrdf.query.resultio.binary.BinaryQueryResultWriter;
+
+/**
+ * An append-only sequence of binding sets that is stored in temporary files,
+ * used by iterators that need to buffer more binding sets than they are
+ * allowed to keep in memory. The binding sets are written in the binary query
+ * result format, in chunks of a bounded number of binding sets, so that they
+ * can be read back without loading the entire sequence into memory.
+ */
+final class SpilledBindingSets {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final String prefix;
+
+	private final long chunkSize;
+
+	private final List<File> chunks = new ArrayList<File>();
+
+	private OutputStream out;
+
+	private BinaryQueryResultWriter writer;
+
+	private Set<String> chunkBindingNames;
+
+	private long chunkLength;
+
+	private long size;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param prefix
+	 *        The prefix for the names of the temporary files.
+	 * @param chunkSize
+	 *        The maximum number of binding sets per chunk, i.e. the maximum
+	 *        number of binding sets that is read into memory at once.
+	 */
+	public SpilledBindingSets(String prefix, long chunkSize) {
+		this.prefix = prefix;
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the number of binding sets that have been added.
+	 */
+	public long size() {
+		return size;
+	}
+
+	public void add(BindingSet bindingSet)
+		throws QueryEvaluationException
+	{
+		Set<String> bindingNames = bindingSet.getBindingNames();
+
+		if (writer == null || chunkLength >= chunkSize || !chunkBindingNames.containsAll(bindingNames)) {
+			// the header of a chunk lists all binding names of its binding sets,
+			// so start a new chunk with a wider header when new names show up
+			Set<String> names = new LinkedHashSet<String>(bindingNames);
+			if (writer != null && chunkLength < chunkSize) {
+				names.addAll(chunkBindingNames);
+			}
+			finishChunk();
+			startChunk(names);
+		}
+
+		try {
+			writer.handleSolution(bindingSet);
+		}
+		catch (TupleQueryResultHandlerException e) {
+			throw new QueryEvaluationException(e);
+		}
+
+		chunkLength++;
+		size++;
+	}
+
+	/**
+	 * Creates an iteration over all binding sets that have been added so far,
+	 * reading them back one chunk at a time.
+	 */
+	public CloseableIteration<BindingSet, QueryEvaluationException> iteration()
+		throws QueryEvaluationException
+	{
+		finishChunk();
+
+		final List<File> files = new ArrayList<File>(chunks);
+
+		return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
+
+			private int nextChunk = 0;
+
+			private Iterator<BindingSet> chunk = Collections.<BindingSet> emptyList().iterator();
+
+			@Override
+			protected BindingSet getNextElement()
+				throws QueryEvaluationException
+			{
+				while (!chunk.hasNext()) {
+					if (nextChunk >= files.size()) {
+						return null;
+					}
+					chunk = readChunk(files.get(nextChunk++)).iterator();
+				}
+				return chunk.next();
+			}
+
+			@Override
+			protected void handleClose()
+				throws QueryEvaluationException
+			{
+				super.handleClose();
+				chunk = Collections.<BindingSet> emptyList().iterator();
+			}
+		};
+	}
+
+	/**
+	 * Deletes all temporary files of this sequence.
+	 */
+	public void delete() {
+		try {
+			finishChunk();
+		}
+		catch (QueryEvaluationException e) {
+			// the file is discarded anyway
+		}
+
+		for (File file : chunks) {
+			file.delete();
+		}
+		chunks.clear();
+		size = 0;
+	}
+
+	private void startChunk(Set<String> bindingNames)
+		throws QueryEvaluationException
+	{
+		try {
+			File file = File.createTempFile(prefix, null);
+			chunks.add(file);
+
+			out = new BufferedOutputStream(new FileOutputStream(file));
+			writer = new BinaryQueryResultWriter(out);
+			writer.startQueryResult(new ArrayList<String>(bindingNames));
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException("could not create temp file", e);
+		}
+		catch (TupleQueryResultHandlerException e) {
+			throw new QueryEvaluationException(e);
+		}
+
+		chunkBindingNames = bindingNames;
+		chunkLength = 0;
+	}
+
+	private void finishChunk()
+		throws QueryEvaluationException
+	{
+		if (writer != null) {
+			try {
+				writer.endQueryResult();
+				out.close();
+			}
+			catch (IOException e) {
+				throw new QueryEvaluationException(e);
+			}
+			catch (TupleQueryResultHandlerException e) {
+				throw new QueryEvaluationException(e);
+			}
+			finally {
+				writer = null;
+				out = null;
+				chunkBindingNames = null;
+			}
+		}
+	}
+
+	private List<BindingSet> readChunk(File file)
+		throws QueryEvaluationException
+	{
+		final List<BindingSet> result = new ArrayList<BindingSet>();
+
+		BinaryQueryResultParser parser = new BinaryQueryResultParser();
+		parser.setQueryResultHandler(new TupleQueryResultHandlerBase() {
+
+			@Override
+			public void handleSolution(BindingSet bindingSet) {
+				if (bindingSet.size() > 0) {
+					// drop the names of unbound values that the parsed binding set
+					// reports because they are in the header of the chunk
+					bindingSet = new QueryBindingSet(bindingSet);
+				}
+				result.add(bindingSet);
+			}
+		});
+
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try {
+				parser.parseQueryResult(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException(e);
+		}
+		catch (OpenRDFException e) {
+			throw new QueryEvaluationException(e);
+		}
+
+		return result;
+	}
+}
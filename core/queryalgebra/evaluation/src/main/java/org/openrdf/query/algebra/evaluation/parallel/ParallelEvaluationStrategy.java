@@ -0,0 +1,220 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.LeftJoin;
+import org.openrdf.query.algebra.Service;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Union;
+import org.openrdf.query.algebra.evaluation.TripleSource;
+import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.helpers.TupleExprs;
+import org.openrdf.query.algebra.helpers.VarNameCollector;
+
+/**
+ * An evaluation strategy that evaluates independent parts of a query
+ * concurrently on a (bounded) executor: the branches of a UNION, the optional
+ * part of a well designed OPTIONAL for consecutive solutions of its left
+ * argument, and the right argument of a join for the binding sets of a
+ * VALUES clause. Results are handed over to the consuming thread through
+ * bounded queues, so that a slow consumer pauses the workers.
+ * <p>
+ * Parallelism is only applied at the outermost level: parts of the query that
+ * are already evaluated on one of the executor's threads are evaluated
+ * sequentially, which prevents workers from waiting on tasks that are queued
+ * behind them.
+ */
+public class ParallelEvaluationStrategy extends EvaluationStrategyImpl {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default number of binding sets that may be queued per parallel
+	 * operator.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final ExecutorService executor;
+
+	private final int queueCapacity;
+
+	private final int windowSize;
+
+	private final ThreadLocal<Boolean> worker = new ThreadLocal<Boolean>();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ParallelEvaluationStrategy(TripleSource tripleSource, Dataset dataset,
+			FederatedServiceResolver serviceResolver, long iterationCacheSyncThreshold,
+			ExecutorService executor)
+	{
+		this(tripleSource, dataset, serviceResolver, iterationCacheSyncThreshold, executor,
+				DEFAULT_QUEUE_CAPACITY, 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param executor
+	 *        The executor to evaluate the parallel parts of queries on. Its
+	 *        number of threads bounds the parallelism.
+	 * @param queueCapacity
+	 *        The maximum number of binding sets that are queued for the
+	 *        consumer of a UNION, or of an OPTIONAL or VALUES join across its
+	 *        window.
+	 * @param windowSize
+	 *        The maximum number of left binding sets for which the right
+	 *        argument of an OPTIONAL or VALUES join is evaluated ahead of the
+	 *        consumer.
+	 */
+	public ParallelEvaluationStrategy(TripleSource tripleSource, Dataset dataset,
+			FederatedServiceResolver serviceResolver, long iterationCacheSyncThreshold,
+			ExecutorService executor, int queueCapacity, int windowSize)
+	{
+		super(tripleSource, dataset, serviceResolver, iterationCacheSyncThreshold);
+		this.executor = executor;
+		this.queueCapacity = queueCapacity;
+		this.windowSize = windowSize;
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Union union, BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		if (isWorker()) {
+			return super.evaluate(union, bindings);
+		}
+
+		List<TupleExpr> branches = new ArrayList<TupleExpr>();
+		addBranches(union, branches);
+		return new ParallelUnionIteration(this, branches, bindings, queueCapacity);
+	}
+
+	private void addBranches(TupleExpr expr, List<TupleExpr> branches) {
+		if (expr instanceof Union) {
+			addBranches(((Union)expr).getLeftArg(), branches);
+			addBranches(((Union)expr).getRightArg(), branches);
+		}
+		else {
+			branches.add(expr);
+		}
+	}
+
+	@Override
+	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Join join, BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		if (!isWorker() && join.getLeftArg() instanceof BindingSetAssignment
+				&& !(join.getRightArg() instanceof Service) && join.getMergeJoinVar() == null
+				&& !TupleExprs.containsProjection(join.getRightArg()))
+		{
+			return new ParallelJoinIteration(this, join, bindings, windowSize, getWindowBufferSize());
+		}
+		return super.evaluate(join, bindings);
+	}
+
+	@Override
+	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(LeftJoin leftJoin,
+			BindingSet bindings)
+		throws QueryEvaluationException
+	{
+		if (!isWorker() && isWellDesigned(leftJoin, bindings)) {
+			return new ParallelJoinIteration(this, leftJoin, bindings, windowSize, getWindowBufferSize());
+		}
+		return super.evaluate(leftJoin, bindings);
+	}
+
+	/**
+	 * Gets the number of binding sets that are buffered for each left binding
+	 * set in the window of a parallel join.
+	 */
+	private int getWindowBufferSize() {
+		return Math.max(1, queueCapacity / Math.max(1, windowSize));
+	}
+
+	/**
+	 * Checks whether the optional join is "well designed", in which case the
+	 * optional part only depends on the solutions of the left argument.
+	 */
+	private boolean isWellDesigned(LeftJoin leftJoin, BindingSet bindings) {
+		VarNameCollector optionalVarCollector = new VarNameCollector();
+		leftJoin.getRightArg().visit(optionalVarCollector);
+		if (leftJoin.hasCondition()) {
+			leftJoin.getCondition().visit(optionalVarCollector);
+		}
+
+		Set<String> problemVars = optionalVarCollector.getVarNames();
+		problemVars.removeAll(leftJoin.getLeftArg().getBindingNames());
+		problemVars.retainAll(bindings.getBindingNames());
+
+		return problemVars.isEmpty();
+	}
+
+	/**
+	 * Checks whether the current thread is one of the executor's threads,
+	 * running a task of this strategy.
+	 */
+	protected boolean isWorker() {
+		return Boolean.TRUE.equals(worker.get());
+	}
+
+	/**
+	 * Submits a task to the executor. While the task runs, evaluation on its
+	 * thread is sequential.
+	 */
+	<T> Future<T> submit(final Callable<T> task) {
+		return executor.submit(new Callable<T>() {
+
+			public T call()
+				throws Exception
+			{
+				worker.set(Boolean.TRUE);
+				try {
+					return task.call();
+				}
+				finally {
+					worker.remove();
+				}
+			}
+		});
+	}
+}
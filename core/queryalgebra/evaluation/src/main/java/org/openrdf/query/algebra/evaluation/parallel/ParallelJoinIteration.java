@@ -0,0 +1,356 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.parallel;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.LeftJoin;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+
+/**
+ * A nested loop (left) join that evaluates the right argument for a window of
+ * consecutive left binding sets concurrently, on the threads of the strategy's
+ * executor. The results are returned in the order of the left binding sets;
+ * no more than <tt>windowSize</tt> left binding sets are evaluated ahead of
+ * the consumer. The results for each left binding set are streamed through a
+ * buffer of <tt>bufferSize</tt> binding sets; a worker blocks while its buffer
+ * is full, so at most <tt>windowSize * bufferSize</tt> results are held in
+ * memory for a slow consumer.
+ */
+public class ParallelJoinIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final ParallelEvaluationStrategy strategy;
+
+	private final TupleExpr rightArg;
+
+	private final boolean leftJoin;
+
+	private final ValueExpr condition;
+
+	/**
+	 * The set of binding names that are "in scope" for the condition of a left
+	 * join.
+	 */
+	private final Set<String> scopeBindingNames;
+
+	private final int windowSize;
+
+	private final int bufferSize;
+
+	private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+
+	/**
+	 * The evaluations of the right argument, in the order of their left binding
+	 * sets.
+	 */
+	private final Queue<RightEvaluation> window = new LinkedList<RightEvaluation>();
+
+	private volatile boolean closed;
+
+	/**
+	 * The number of right evaluations that are running on a worker thread,
+	 * guarded by {@link #workerLock}.
+	 */
+	private int activeWorkers;
+
+	private final Object workerLock = new Object();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ParallelJoinIteration(ParallelEvaluationStrategy strategy, Join join, BindingSet bindings,
+			int windowSize, int bufferSize)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), false, null, null, bindings, windowSize,
+				bufferSize);
+	}
+
+	public ParallelJoinIteration(ParallelEvaluationStrategy strategy, LeftJoin join, BindingSet bindings,
+			int windowSize, int bufferSize)
+		throws QueryEvaluationException
+	{
+		this(strategy, join.getLeftArg(), join.getRightArg(), true, join.getCondition(),
+				join.getBindingNames(), bindings, windowSize, bufferSize);
+	}
+
+	private ParallelJoinIteration(ParallelEvaluationStrategy strategy, TupleExpr leftArg, TupleExpr rightArg,
+			boolean leftJoin, ValueExpr condition, Set<String> scopeBindingNames, BindingSet bindings,
+			int windowSize, int bufferSize)
+		throws QueryEvaluationException
+	{
+		this.strategy = strategy;
+		this.rightArg = rightArg;
+		this.leftJoin = leftJoin;
+		this.condition = condition;
+		this.scopeBindingNames = scopeBindingNames;
+		this.windowSize = Math.max(1, windowSize);
+		this.bufferSize = Math.max(1, bufferSize);
+
+		leftIter = strategy.evaluate(leftArg, bindings);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		try {
+			while (!closed) {
+				while (window.size() < windowSize && leftIter.hasNext()) {
+					RightEvaluation evaluation = new RightEvaluation(leftIter.next());
+					evaluation.future = strategy.submit(evaluation);
+					window.add(evaluation);
+				}
+
+				RightEvaluation head = window.peek();
+				if (head == null) {
+					return null;
+				}
+
+				// poll rather than wait indefinitely: this iteration can be closed
+				// by another thread, after which the workers stop without
+				// reporting their end
+				Object next = head.results.poll(100, TimeUnit.MILLISECONDS);
+				if (next == null) {
+					continue;
+				}
+				else if (next instanceof EvaluationEnd) {
+					window.remove();
+					Exception e = ((EvaluationEnd)next).exception;
+					if (e instanceof QueryEvaluationException) {
+						throw (QueryEvaluationException)e;
+					}
+					else if (e instanceof RuntimeException) {
+						throw (RuntimeException)e;
+					}
+				}
+				else {
+					return (BindingSet)next;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			throw new QueryEvaluationException(e);
+		}
+
+		return null;
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		synchronized (workerLock) {
+			closed = true;
+		}
+		try {
+			for (RightEvaluation evaluation : window) {
+				evaluation.future.cancel(true);
+			}
+			awaitWorkers();
+		}
+		finally {
+			window.clear();
+			try {
+				leftIter.close();
+			}
+			finally {
+				super.handleClose();
+			}
+		}
+	}
+
+	/**
+	 * Waits until no worker thread is evaluating the right argument anymore, so
+	 * that the resources used by the evaluations are no longer in use once this
+	 * iteration has been closed. Workers that start after this iteration has
+	 * been closed do not evaluate the right argument.
+	 */
+	private void awaitWorkers() {
+		boolean interrupted = false;
+		synchronized (workerLock) {
+			while (activeWorkers > 0) {
+				try {
+					workerLock.wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Evaluates the right argument for a single left binding set and streams
+	 * the results to its buffer, followed by an {@link EvaluationEnd} marker.
+	 */
+	private final class RightEvaluation implements Callable<Void> {
+
+		private final BindingSet leftBindings;
+
+		private final BlockingQueue<Object> results = new ArrayBlockingQueue<Object>(bufferSize);
+
+		private Future<Void> future;
+
+		public RightEvaluation(BindingSet leftBindings) {
+			this.leftBindings = leftBindings;
+		}
+
+		public Void call() {
+			synchronized (workerLock) {
+				if (closed) {
+					return null;
+				}
+				activeWorkers++;
+			}
+			try {
+				evaluate();
+			}
+			finally {
+				synchronized (workerLock) {
+					activeWorkers--;
+					workerLock.notifyAll();
+				}
+			}
+			return null;
+		}
+
+		private void evaluate() {
+			Exception exception = null;
+			try {
+				boolean joined = false;
+
+				CloseableIteration<BindingSet, QueryEvaluationException> rightIter;
+				rightIter = strategy.evaluate(rightArg, leftBindings);
+				try {
+					while (!closed && rightIter.hasNext()) {
+						BindingSet rightBindings = rightIter.next();
+
+						if (matches(rightBindings)) {
+							joined = true;
+							if (!put(rightBindings)) {
+								return;
+							}
+						}
+					}
+				}
+				finally {
+					rightIter.close();
+				}
+
+				if (leftJoin && !joined && !put(leftBindings)) {
+					// Join failed, the left arg's bindings could not be returned
+					// since this iteration has been closed
+					return;
+				}
+			}
+			catch (QueryEvaluationException e) {
+				exception = e;
+			}
+			catch (RuntimeException e) {
+				exception = e;
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+
+			try {
+				put(new EvaluationEnd(exception));
+			}
+			catch (InterruptedException e) {
+				// the consumer is gone
+			}
+		}
+
+		private boolean matches(BindingSet rightBindings)
+			throws QueryEvaluationException
+		{
+			if (condition == null) {
+				return true;
+			}
+
+			// Limit the bindings to the ones that are in scope for this filter
+			QueryBindingSet scopeBindings = new QueryBindingSet(rightBindings);
+			scopeBindings.retainAll(scopeBindingNames);
+
+			try {
+				return strategy.isTrue(condition, scopeBindings);
+			}
+			catch (ValueExprEvaluationException e) {
+				// Ignore, condition not evaluated successfully
+				return false;
+			}
+		}
+
+		/**
+		 * Puts an item in the buffer, waiting while the buffer is full.
+		 * 
+		 * @return <tt>false</tt> if this iteration has been closed in the
+		 *         meantime.
+		 */
+		private boolean put(Object item)
+			throws InterruptedException
+		{
+			while (!closed) {
+				if (results.offer(item, 100, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Marks the end of the results of a {@link RightEvaluation}.
+	 */
+	private static final class EvaluationEnd {
+
+		private final Exception exception;
+
+		public EvaluationEnd(Exception exception) {
+			this.exception = exception;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.TupleExpr;
+
+/**
+ * Evaluates the branches of a union concurrently, each on a thread of the
+ * strategy's executor. The results of all branches are collected in a single
+ * bounded queue; branches block while the queue is full. The results are
+ * returned in no particular order.
+ */
+public class ParallelUnionIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final ParallelEvaluationStrategy strategy;
+
+	private final List<TupleExpr> branches;
+
+	private final BindingSet bindings;
+
+	/**
+	 * Contains binding sets and, for every branch, a {@link BranchEnd} marker.
+	 */
+	private final BlockingQueue<Object> queue;
+
+	private final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+	private volatile boolean closed;
+
+	/**
+	 * The number of branches that are being evaluated by a worker thread,
+	 * guarded by {@link #workerLock}.
+	 */
+	private int activeWorkers;
+
+	private final Object workerLock = new Object();
+
+	private int runningBranches = -1;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ParallelUnionIteration(ParallelEvaluationStrategy strategy, List<TupleExpr> branches,
+			BindingSet bindings, int queueCapacity)
+	{
+		this.strategy = strategy;
+		this.branches = branches;
+		this.bindings = bindings;
+		this.queue = new ArrayBlockingQueue<Object>(queueCapacity);
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	@Override
+	protected BindingSet getNextElement()
+		throws QueryEvaluationException
+	{
+		if (runningBranches < 0) {
+			// start evaluating the branches on the first request
+			runningBranches = branches.size();
+			for (final TupleExpr branch : branches) {
+				futures.add(strategy.submit(new Callable<Void>() {
+
+					public Void call() {
+						synchronized (workerLock) {
+							if (closed) {
+								return null;
+							}
+							activeWorkers++;
+						}
+						try {
+							evaluateBranch(branch);
+						}
+						finally {
+							synchronized (workerLock) {
+								activeWorkers--;
+								workerLock.notifyAll();
+							}
+						}
+						return null;
+					}
+				}));
+			}
+		}
+
+		try {
+			while (runningBranches > 0 && !closed) {
+				// poll rather than wait indefinitely: this iteration can be closed
+				// by another thread, after which the branches stop without
+				// reporting their end
+				Object next = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (next == null) {
+					continue;
+				}
+				else if (next instanceof BranchEnd) {
+					runningBranches--;
+					Exception e = ((BranchEnd)next).exception;
+					if (e instanceof QueryEvaluationException) {
+						throw (QueryEvaluationException)e;
+					}
+					else if (e instanceof RuntimeException) {
+						throw (RuntimeException)e;
+					}
+				}
+				else {
+					return (BindingSet)next;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			throw new QueryEvaluationException(e);
+		}
+
+		return null;
+	}
+
+	private void evaluateBranch(TupleExpr branch) {
+		Exception exception = null;
+		try {
+			CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(branch, bindings);
+			try {
+				while (!closed && iter.hasNext()) {
+					if (!put(iter.next())) {
+						return;
+					}
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+		catch (QueryEvaluationException e) {
+			exception = e;
+		}
+		catch (RuntimeException e) {
+			exception = e;
+		}
+		catch (InterruptedException e) {
+			return;
+		}
+
+		try {
+			put(new BranchEnd(exception));
+		}
+		catch (InterruptedException e) {
+			// the consumer is gone
+		}
+	}
+
+	/**
+	 * Puts an item in the queue, waiting while the queue is full.
+	 * 
+	 * @return <tt>false</tt> if this iteration has been closed in the meantime.
+	 */
+	private boolean put(Object item)
+		throws InterruptedException
+	{
+		while (!closed) {
+			if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		synchronized (workerLock) {
+			closed = true;
+		}
+		try {
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+			awaitWorkers();
+		}
+		finally {
+			queue.clear();
+			super.handleClose();
+		}
+	}
+
+	/**
+	 * Waits until no worker thread is evaluating a branch anymore, so that the
+	 * resources used by the branches are no longer in use once this iteration
+	 * has been closed. Workers that start after this iteration has been closed
+	 * do not evaluate their branch.
+	 */
+	private void awaitWorkers() {
+		boolean interrupted = false;
+		synchronized (workerLock) {
+			while (activeWorkers > 0) {
+				try {
+					workerLock.wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Marks the end of the results of a branch.
+	 */
+	private static class BranchEnd {
+
+		private final Exception exception;
+
+		public BranchEnd(Exception exception) {
+			this.exception = exception;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.util;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+
+/**
+ * Bounded cache of compiled regular expressions, shared by all queries in the
+ * VM. Queries such as <tt>FILTER(REGEX(?label, "...", "i"))</tt> evaluate the
+ * same pattern once for every solution; compiling it over and over again
+ * easily dominates the cost of the actual matching.
+ */
+public class RegexPatterns {
+
+	/**
+	 * The maximum number of compiled patterns that is kept in the cache.
+	 */
+	public static final int MAX_CACHE_SIZE = 1024;
+
+	private static final Cache<PatternKey, Pattern> cache = CacheBuilder.newBuilder().maximumSize(
+			MAX_CACHE_SIZE).build();
+
+	/**
+	 * Compiles the supplied regular expression with the supplied SPARQL/XPath
+	 * flags, reusing a previously compiled pattern if available.
+	 * 
+	 * @param regex
+	 *        The regular expression.
+	 * @param flags
+	 *        The flags string, may be <tt>null</tt>.
+	 * @return The compiled pattern.
+	 * @throws ValueExprEvaluationException
+	 *         If the flags string contains an unknown flag.
+	 * @throws PatternSyntaxException
+	 *         If the regular expression is not valid.
+	 */
+	public static Pattern compile(String regex, String flags)
+		throws ValueExprEvaluationException
+	{
+		return compile(regex, parseFlags(flags));
+	}
+
+	/**
+	 * Compiles the supplied regular expression with the supplied
+	 * {@link Pattern} flags, reusing a previously compiled pattern if
+	 * available.
+	 */
+	public static Pattern compile(String regex, int flags) {
+		PatternKey key = new PatternKey(regex, flags);
+		Pattern pattern = cache.getIfPresent(key);
+		if (pattern == null) {
+			pattern = Pattern.compile(regex, flags);
+			cache.put(key, pattern);
+		}
+		return pattern;
+	}
+
+	/**
+	 * Converts a SPARQL/XPath flags string to the equivalent {@link Pattern}
+	 * flags.
+	 * 
+	 * @param flags
+	 *        The flags string, may be <tt>null</tt>.
+	 * @throws ValueExprEvaluationException
+	 *         If the flags string contains an unknown flag.
+	 */
+	public static int parseFlags(String flags)
+		throws ValueExprEvaluationException
+	{
+		int f = 0;
+		if (flags != null) {
+			for (int i = 0; i < flags.length(); i++) {
+				switch (flags.charAt(i)) {
+					case 's':
+						f |= Pattern.DOTALL;
+						break;
+					case 'm':
+						f |= Pattern.MULTILINE;
+						break;
+					case 'i':
+						f |= Pattern.CASE_INSENSITIVE;
+						break;
+					case 'x':
+						f |= Pattern.COMMENTS;
+						break;
+					case 'd':
+						f |= Pattern.UNIX_LINES;
+						break;
+					case 'u':
+						f |= Pattern.UNICODE_CASE;
+						break;
+					default:
+						throw new ValueExprEvaluationException(flags);
+				}
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * Prevent instantiation: util class
+	 */
+	private RegexPatterns() {
+	}
+
+	/*------------------------*
+	 * Inner class PatternKey *
+	 *------------------------*/
+
+	private static final class PatternKey {
+
+		private final String regex;
+
+		private final int flags;
+
+		public PatternKey(String regex, int flags) {
+			this.regex = regex;
+			this.flags = flags;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (other instanceof PatternKey) {
+				PatternKey o = (PatternKey)other;
+				return flags == o.flags && regex.equals(o.regex);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return regex.hashCode() * 31 + flags;
+		}
+	}
+}
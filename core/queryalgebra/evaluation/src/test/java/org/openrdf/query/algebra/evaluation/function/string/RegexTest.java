@@ -16,6 +16,7 @@
  */
 package org.openrdf.query.algebra.evaluation.function.string;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -27,10 +28,13 @@ import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.algebra.Regex;
+import org.openrdf.query.algebra.ValueConstant;
 import org.openrdf.query.algebra.ValueExpr;
 import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolverImpl;
 import org.openrdf.query.algebra.evaluation.impl.EmptyTripleSource;
@@ -152,6 +156,32 @@ public class RegexTest {
 		}
 	}
 
+	@Test
+	public void testEvaluateConstantPattern() throws QueryEvaluationException {
+		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(new EmptyTripleSource(vf), serviceResolver);
+		Regex regex = new Regex(new Var("expr"), new ValueConstant(vf.createLiteral("^FOO")), new ValueConstant(
+				vf.createLiteral("i")));
+
+		// the pattern is compiled once and reused for subsequent solutions
+		assertTrue(((Literal)strategy.evaluate(regex, bind("expr", vf.createLiteral("foobar")))).booleanValue());
+		assertFalse(((Literal)strategy.evaluate(regex, bind("expr", vf.createLiteral("barfoo")))).booleanValue());
+		assertTrue(((Literal)strategy.evaluate(regex, bind("expr", vf.createLiteral("Foo", "en")))).booleanValue());
+
+		try {
+			strategy.evaluate(regex, bind("expr", vf.createLiteral("foo", XMLSchema.TOKEN)));
+			fail("Regex should not process typed literals");
+		}
+		catch (ValueExprEvaluationException e) {
+			// do nothing, expected
+		}
+	}
+
+	private BindingSet bind(String name, Value value) {
+		QueryBindingSet bindings = new QueryBindingSet();
+		bindings.addBinding(name, value);
+		return bindings;
+	}
+
 	private Literal evaluate(Value... args) throws ValueExprEvaluationException, QueryEvaluationException {
 		EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(new EmptyTripleSource(vf), serviceResolver);
 		ValueExpr expr = new Var("expr", args[0]);
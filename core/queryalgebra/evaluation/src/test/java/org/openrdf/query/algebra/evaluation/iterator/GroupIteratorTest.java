@@ -0,0 +1,108 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Count;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.GroupElem;
+import org.openrdf.query.algebra.Sum;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class GroupIteratorTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private final EvaluationStrategy evaluator = new EvaluationStrategyImpl(null, null);
+
+	@Test
+	public void testSpilledGroups()
+		throws QueryEvaluationException
+	{
+		Group group = createGroup(500, 40);
+
+		List<String> expected = evaluate(new GroupIterator(evaluator, group, EmptyBindingSet.getInstance()));
+		List<String> actual = evaluate(new GroupIterator(evaluator, group, EmptyBindingSet.getInstance(), 5));
+
+		assertEquals(40, expected.size());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testSpilledGroupsWithoutSolutions()
+		throws QueryEvaluationException
+	{
+		Group group = createGroup(0, 1);
+
+		List<String> actual = evaluate(new GroupIterator(evaluator, group, EmptyBindingSet.getInstance(), 5));
+
+		assertEquals(Collections.singletonList("null 0 0"), actual);
+	}
+
+	private Group createGroup(int count, int groupCount) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int n = 0; n < count; n++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding("g", vf.createURI("urn:group:" + (n % groupCount)));
+			b.addBinding("v", vf.createLiteral(n));
+			bindingSets.add(b);
+		}
+		BindingSetAssignment arg = new BindingSetAssignment();
+		arg.setBindingSets(bindingSets);
+
+		Group group = new Group(arg, Collections.singleton("g"));
+		group.addGroupElement(new GroupElem("count", new Count(new Var("v"))));
+		group.addGroupElement(new GroupElem("sum", new Sum(new Var("v"))));
+		return group;
+	}
+
+	private List<String> evaluate(GroupIterator iter)
+		throws QueryEvaluationException
+	{
+		List<String> result = new ArrayList<String>();
+		try {
+			while (iter.hasNext()) {
+				BindingSet b = iter.next();
+				Literal count = (Literal)b.getValue("count");
+				Literal sum = (Literal)b.getValue("sum");
+				result.add(b.getValue("g") + " " + count.intValue() + (sum == null ? "" : " " + sum.intValue()));
+			}
+		}
+		finally {
+			iter.close();
+		}
+		Collections.sort(result);
+		return result;
+	}
+}
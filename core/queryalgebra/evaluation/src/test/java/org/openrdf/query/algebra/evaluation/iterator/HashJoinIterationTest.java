@@ -16,7 +16,11 @@
  */
 package org.openrdf.query.algebra.evaluation.iterator;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
 
 import org.junit.Test;
 
@@ -115,4 +119,87 @@ public class HashJoinIterationTest {
 		assertEquals("x", actual.getValue("i").stringValue());
 		assertFalse(actual.hasBinding("b"));
 	}
+
+	@Test
+	public void testSpilledInnerJoin() throws QueryEvaluationException {
+		BindingSetAssignment left = createBindingSets("a", 200, 7);
+		BindingSetAssignment right = createBindingSets("b", 150, 5);
+
+		List<String> expected = evaluate(new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), false));
+		List<String> actual = evaluate(new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), false, 10));
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testSpilledLeftJoin() throws QueryEvaluationException {
+		BindingSetAssignment left = createBindingSets("a", 200, 11);
+		BindingSetAssignment right = createBindingSets("b", 150, 5);
+
+		List<String> expected = evaluate(new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), true));
+		List<String> actual = evaluate(new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), true, 10));
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testSpilledJoinWithEmptyBindingSets() throws QueryEvaluationException {
+		BindingSetAssignment left = createBindingSets("a", 20, 3);
+		List<BindingSet> leftBindingSets = new ArrayList<BindingSet>();
+		for (BindingSet b : left.getBindingSets()) {
+			leftBindingSets.add(b);
+		}
+		leftBindingSets.add(EmptyBindingSet.getInstance());
+		left.setBindingSets(leftBindingSets);
+
+		BindingSetAssignment right = createBindingSets("b", 20, 4);
+
+		List<String> actual = evaluate(new HashJoinIteration(evaluator, left, right, EmptyBindingSet.getInstance(), false, 4));
+
+		// the empty binding set is compatible with every right binding set
+		List<String> expected = evaluate(new HashJoinIteration(evaluator, createBindingSets("a", 20, 3), right, EmptyBindingSet.getInstance(), false));
+		for (BindingSet b : right.getBindingSets()) {
+			expected.add(toString(b));
+		}
+		Collections.sort(expected);
+
+		assertEquals(expected, actual);
+	}
+
+	private BindingSetAssignment createBindingSets(String name, int count, int keyCount) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int n = 0; n < count; n++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding(name, vf.createLiteral(n));
+			b.addBinding("i", vf.createURI("urn:key:" + (n % keyCount)));
+			bindingSets.add(b);
+		}
+		BindingSetAssignment bsa = new BindingSetAssignment();
+		bsa.setBindingSets(bindingSets);
+		return bsa;
+	}
+
+	private List<String> evaluate(HashJoinIteration iter) throws QueryEvaluationException {
+		List<String> result = new ArrayList<String>();
+		try {
+			while (iter.hasNext()) {
+				result.add(toString(iter.next()));
+			}
+		}
+		finally {
+			iter.close();
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private String toString(BindingSet bindingSet) {
+		StringBuilder sb = new StringBuilder();
+		for (String name : new TreeSet<String>(bindingSet.getBindingNames())) {
+			sb.append(name).append('=').append(bindingSet.getValue(name)).append(';');
+		}
+		return sb.toString();
+	}
 }
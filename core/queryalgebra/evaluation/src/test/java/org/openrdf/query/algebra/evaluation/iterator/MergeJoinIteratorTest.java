@@ -0,0 +1,142 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
+
+public class MergeJoinIteratorTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	@Test
+	public void testOneToOne()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> left = bindings("a", 1, "b", 10, "a", 2, "b", 20, "a", 4, "b", 40);
+		List<BindingSet> right = bindings("a", 2, "c", 200, "a", 3, "c", 300, "a", 4, "c", 400);
+
+		List<BindingSet> result = join(left, right, "a");
+
+		assertEquals(2, result.size());
+		assertEquals(vf.createLiteral(2), result.get(0).getValue("a"));
+		assertEquals(vf.createLiteral(20), result.get(0).getValue("b"));
+		assertEquals(vf.createLiteral(200), result.get(0).getValue("c"));
+		assertEquals(vf.createLiteral(4), result.get(1).getValue("a"));
+		assertEquals(vf.createLiteral(40), result.get(1).getValue("b"));
+		assertEquals(vf.createLiteral(400), result.get(1).getValue("c"));
+	}
+
+	@Test
+	public void testManyToMany()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> left = bindings("a", 1, "b", 10, "a", 1, "b", 11, "a", 3, "b", 30);
+		List<BindingSet> right = bindings("a", 0, "c", 0, "a", 1, "c", 100, "a", 1, "c", 101, "a", 1, "c", 102,
+				"a", 3, "c", 300);
+
+		List<BindingSet> result = join(left, right, "a");
+
+		assertEquals(7, result.size());
+
+		Set<String> pairs = new HashSet<String>();
+		for (BindingSet bs : result) {
+			pairs.add(bs.getValue("b").stringValue() + "-" + bs.getValue("c").stringValue());
+		}
+		assertEquals(new HashSet<String>(Arrays.asList("10-100", "10-101", "10-102", "11-100", "11-101",
+				"11-102", "30-300")), pairs);
+
+		// results are sorted on the join variable
+		for (int i = 1; i < result.size(); i++) {
+			assertTrue(new ValueComparator().compare(result.get(i - 1).getValue("a"),
+					result.get(i).getValue("a")) <= 0);
+		}
+	}
+
+	@Test
+	public void testSharedVariables()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> left = bindings("a", 1, "b", 10, "a", 2, "b", 20);
+		List<BindingSet> right = bindings("a", 1, "b", 10, "a", 1, "b", 11, "a", 2, "b", 21);
+
+		List<BindingSet> result = join(left, right, "a", "b");
+
+		assertEquals(1, result.size());
+		assertEquals(vf.createLiteral(1), result.get(0).getValue("a"));
+		assertEquals(vf.createLiteral(10), result.get(0).getValue("b"));
+	}
+
+	@Test
+	public void testEmptyArgument()
+		throws QueryEvaluationException
+	{
+		List<BindingSet> left = bindings("a", 1, "b", 10);
+		List<BindingSet> right = bindings();
+
+		assertEquals(0, join(left, right, "a").size());
+		assertEquals(0, join(right, left, "a").size());
+	}
+
+	private List<BindingSet> join(List<BindingSet> left, List<BindingSet> right, String joinVar,
+			String... otherSharedVars)
+		throws QueryEvaluationException
+	{
+		Set<String> sharedVars = new HashSet<String>(Arrays.asList(otherSharedVars));
+		sharedVars.add(joinVar);
+
+		MergeJoinIterator iter = new MergeJoinIterator(
+				new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(left.iterator()),
+				new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(right.iterator()), joinVar,
+				sharedVars, new ValueComparator());
+
+		return Iterations.asList(iter);
+	}
+
+	/**
+	 * Creates binding sets with two bindings each from a list of alternating
+	 * names and integer values.
+	 */
+	private List<BindingSet> bindings(Object... namesAndValues) {
+		List<BindingSet> result = new ArrayList<BindingSet>();
+		for (int i = 0; i < namesAndValues.length; i += 4) {
+			QueryBindingSet bs = new QueryBindingSet();
+			bs.addBinding((String)namesAndValues[i], vf.createLiteral((Integer)namesAndValues[i + 1]));
+			bs.addBinding((String)namesAndValues[i + 2], vf.createLiteral((Integer)namesAndValues[i + 3]));
+			result.add(bs);
+		}
+		return result;
+	}
+}
@@ -22,16 +22,20 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
 
 import info.aduna.iteration.CloseableIteratorIteration;
 
+import org.openrdf.model.Literal;
 import org.openrdf.model.Value;
+import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.query.Binding;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 
 
 /**
@@ -186,6 +190,69 @@ public class OrderIteratorTest extends TestCase {
 		assertFalse(order.hasNext());
 	}
 
+	public void testLimit() throws Exception {
+		order = new OrderIterator(iteration, cmp, 3, false);
+		assertEquals(b1, order.next());
+		assertEquals(b2, order.next());
+		assertEquals(b2, order.next());
+		assertFalse(order.hasNext());
+	}
+
+	public void testLimitDistinct() throws Exception {
+		order = new OrderIterator(iteration, cmp, 3, true);
+		assertEquals(b1, order.next());
+		assertEquals(b2, order.next());
+		assertEquals(b3, order.next());
+		assertFalse(order.hasNext());
+	}
+
+	public void testExternalSort() throws Exception {
+		List<BindingSet> input = createBindingSets(1000);
+		List<BindingSet> sorted = new ArrayList<BindingSet>(input);
+		Collections.sort(sorted, new ValueOrder());
+
+		iteration.setIterator(input.iterator());
+		order = new OrderIterator(iteration, new ValueOrder(), Integer.MAX_VALUE, false, 20);
+		for (BindingSet b : sorted) {
+			assertEquals(b.getValue("v"), order.next().getValue("v"));
+		}
+		assertFalse(order.hasNext());
+		order.close();
+	}
+
+	public void testExternalSortLimitDistinct() throws Exception {
+		List<BindingSet> input = createBindingSets(1000);
+		input.addAll(createBindingSets(1000));
+
+		iteration.setIterator(input.iterator());
+		order = new OrderIterator(iteration, new ValueOrder(), 50, true, 20);
+		for (int i = 0; i < 50; i++) {
+			assertEquals(i, ((Literal)order.next().getValue("v")).intValue());
+		}
+		assertFalse(order.hasNext());
+		order.close();
+	}
+
+	private List<BindingSet> createBindingSets(int count) {
+		List<BindingSet> result = new ArrayList<BindingSet>();
+		Random random = new Random(count);
+		for (int i = 0; i < count; i++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding("v", ValueFactoryImpl.getInstance().createLiteral(i));
+			result.add(b);
+		}
+		Collections.shuffle(result, random);
+		return result;
+	}
+
+	class ValueOrder implements Comparator<BindingSet> {
+		public int compare(BindingSet o1, BindingSet o2) {
+			int v1 = ((Literal)o1.getValue("v")).intValue();
+			int v2 = ((Literal)o2.getValue("v")).intValue();
+			return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+		}
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		list = Arrays.asList(b3, b5, b2, b1, b4, b2);
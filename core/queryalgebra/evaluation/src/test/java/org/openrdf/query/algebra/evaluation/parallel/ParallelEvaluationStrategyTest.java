@@ -0,0 +1,327 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.query.algebra.evaluation.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.EmptySet;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.LeftJoin;
+import org.openrdf.query.algebra.SingletonSet;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Union;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+public class ParallelEvaluationStrategyTest {
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+	private ExecutorService executor;
+
+	private EvaluationStrategy sequential;
+
+	private ParallelEvaluationStrategy parallel;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(3);
+		sequential = new EvaluationStrategyImpl(null, null, null, 0);
+		parallel = new ParallelEvaluationStrategy(null, null, null, 0, executor, 4, 3);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testUnion()
+		throws QueryEvaluationException
+	{
+		TupleExpr expr = new Union(new Union(createBindingSets("a", 100, 10), createBindingSets("b", 50, 5)),
+				createBindingSets("a", 30, 3));
+
+		List<String> expected = evaluate(sequential, expr);
+		assertEquals(180, expected.size());
+		assertEquals(expected, evaluate(parallel, expr));
+	}
+
+	@Test
+	public void testUnionClosedEarly()
+		throws QueryEvaluationException
+	{
+		TupleExpr expr = new Union(createBindingSets("a", 1000, 10), createBindingSets("b", 1000, 10));
+
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = parallel.evaluate(expr,
+				EmptyBindingSet.getInstance());
+		assertTrue(iter.hasNext());
+		iter.next();
+		iter.close();
+		assertFalse(iter.hasNext());
+	}
+
+	@Test(timeout = 10000)
+	public void testUnionClosedByOtherThread()
+		throws Exception
+	{
+		final TupleExpr blocking = new SingletonSet();
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean branchClosed = new AtomicBoolean();
+
+		parallel = new ParallelEvaluationStrategy(null, null, null, 0, executor, 4, 3) {
+
+			@Override
+			public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(TupleExpr expr,
+					BindingSet bindings)
+				throws QueryEvaluationException
+			{
+				if (expr != blocking) {
+					return super.evaluate(expr, bindings);
+				}
+				// a branch that does not produce any results until it is
+				// interrupted
+				return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
+
+					@Override
+					protected BindingSet getNextElement()
+						throws QueryEvaluationException
+					{
+						started.countDown();
+						try {
+							new CountDownLatch(1).await();
+							return null;
+						}
+						catch (InterruptedException e) {
+							throw new QueryEvaluationException(e);
+						}
+					}
+
+					@Override
+					protected void handleClose()
+						throws QueryEvaluationException
+					{
+						branchClosed.set(true);
+						super.handleClose();
+					}
+				};
+			}
+		};
+
+		final CloseableIteration<BindingSet, QueryEvaluationException> iter = parallel.evaluate(new Union(
+				blocking, new EmptySet()), EmptyBindingSet.getInstance());
+		final Exception[] consumerException = new Exception[1];
+		Thread consumer = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					iter.hasNext();
+				}
+				catch (Exception e) {
+					consumerException[0] = e;
+				}
+			}
+		};
+		consumer.start();
+
+		// close the union while the consumer waits for the blocking branch
+		started.await();
+		iter.close();
+		assertTrue(branchClosed.get());
+
+		consumer.join();
+		if (consumerException[0] != null) {
+			throw consumerException[0];
+		}
+		assertFalse(iter.hasNext());
+	}
+
+	@Test
+	public void testValuesJoin()
+		throws QueryEvaluationException
+	{
+		TupleExpr expr = new Join(createBindingSets("a", 40, 8), createBindingSets("b", 60, 8));
+
+		List<String> expected = evaluate(sequential, expr);
+		assertEquals(300, expected.size());
+		assertEquals(expected, evaluate(parallel, expr));
+	}
+
+	@Test(timeout = 10000)
+	public void testJoinClosedByOtherThread()
+		throws Exception
+	{
+		final TupleExpr blocking = new SingletonSet();
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean rightClosed = new AtomicBoolean();
+
+		parallel = new ParallelEvaluationStrategy(null, null, null, 0, executor, 4, 3) {
+
+			@Override
+			public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(TupleExpr expr,
+					BindingSet bindings)
+				throws QueryEvaluationException
+			{
+				if (expr != blocking) {
+					return super.evaluate(expr, bindings);
+				}
+				// a right argument that does not produce any results until it is
+				// interrupted
+				return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
+
+					@Override
+					protected BindingSet getNextElement()
+						throws QueryEvaluationException
+					{
+						started.countDown();
+						try {
+							new CountDownLatch(1).await();
+							return null;
+						}
+						catch (InterruptedException e) {
+							throw new QueryEvaluationException(e);
+						}
+					}
+
+					@Override
+					protected void handleClose()
+						throws QueryEvaluationException
+					{
+						rightClosed.set(true);
+						super.handleClose();
+					}
+				};
+			}
+		};
+
+		final CloseableIteration<BindingSet, QueryEvaluationException> iter = parallel.evaluate(new Join(
+				createBindingSets("a", 10, 2), blocking), EmptyBindingSet.getInstance());
+		final Exception[] consumerException = new Exception[1];
+		Thread consumer = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					iter.hasNext();
+				}
+				catch (Exception e) {
+					consumerException[0] = e;
+				}
+			}
+		};
+		consumer.start();
+
+		// close the join while a worker evaluates the right argument
+		started.await();
+		iter.close();
+		assertTrue(rightClosed.get());
+
+		consumer.join();
+		if (consumerException[0] != null) {
+			throw consumerException[0];
+		}
+		assertFalse(iter.hasNext());
+	}
+
+	@Test
+	public void testOptional()
+		throws QueryEvaluationException
+	{
+		TupleExpr expr = new LeftJoin(createBindingSets("a", 40, 12), createBindingSets("b", 60, 6));
+
+		List<String> expected = evaluate(sequential, expr);
+		assertEquals(238, expected.size());
+		assertEquals(expected, evaluate(parallel, expr));
+	}
+
+	@Test
+	public void testOptionalWithCondition()
+		throws QueryEvaluationException
+	{
+		TupleExpr expr = new LeftJoin(createBindingSets("a", 40, 12), createBindingSets("b", 60, 6),
+				new Compare(new Var("b"), new ValueConstant(vf.createLiteral(30)), CompareOp.LT));
+
+		List<String> expected = evaluate(sequential, expr);
+		assertEquals(expected, evaluate(parallel, expr));
+	}
+
+	private BindingSetAssignment createBindingSets(String name, int count, int keyCount) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (int n = 0; n < count; n++) {
+			QueryBindingSet b = new QueryBindingSet();
+			b.addBinding(name, vf.createLiteral(n));
+			b.addBinding("i", vf.createURI("urn:key:" + (n % keyCount)));
+			bindingSets.add(b);
+		}
+		BindingSetAssignment bsa = new BindingSetAssignment();
+		bsa.setBindingSets(bindingSets);
+		return bsa;
+	}
+
+	private List<String> evaluate(EvaluationStrategy strategy, TupleExpr expr)
+		throws QueryEvaluationException
+	{
+		List<String> result = new ArrayList<String>();
+		CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(expr,
+				EmptyBindingSet.getInstance());
+		try {
+			while (iter.hasNext()) {
+				BindingSet bindingSet = iter.next();
+				StringBuilder sb = new StringBuilder();
+				for (String name : new TreeSet<String>(bindingSet.getBindingNames())) {
+					sb.append(name).append('=').append(bindingSet.getValue(name)).append(';');
+				}
+				result.add(sb.toString());
+			}
+		}
+		finally {
+			iter.close();
+		}
+		Collections.sort(result);
+		return result;
+	}
+}
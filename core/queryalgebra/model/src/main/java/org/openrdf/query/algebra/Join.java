@@ -27,6 +27,12 @@ import org.openrdf.query.algebra.helpers.TupleExprs;
  */
 public class Join extends BinaryTupleOperator {
 
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private String mergeJoinVar;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -56,6 +62,31 @@ public class Join extends BinaryTupleOperator {
 		return TupleExprs.containsProjection(rightArg);
 	}
 
+	/**
+	 * Gets the name of the variable on which this join can be evaluated as a
+	 * merge join, if any. This is an evaluation hint that is set by query
+	 * optimizers when both arguments can be produced in the order of this
+	 * variable's values.
+	 * 
+	 * @return The name of the merge join variable, or <tt>null</tt> if this join
+	 *         should not be evaluated as a merge join.
+	 */
+	public String getMergeJoinVar() {
+		return mergeJoinVar;
+	}
+
+	/**
+	 * Sets the name of the variable on which this join can be evaluated as a
+	 * merge join.
+	 * 
+	 * @param mergeJoinVar
+	 *        The name of the merge join variable, or <tt>null</tt> to evaluate
+	 *        this join as a regular join.
+	 */
+	public void setMergeJoinVar(String mergeJoinVar) {
+		this.mergeJoinVar = mergeJoinVar;
+	}
+
 	public Set<String> getBindingNames() {
 		Set<String> bindingNames = new LinkedHashSet<String>(16);
 		bindingNames.addAll(getLeftArg().getBindingNames());
@@ -76,6 +107,18 @@ public class Join extends BinaryTupleOperator {
 		visitor.meet(this);
 	}
 
+	@Override
+	public String getSignature() {
+		if (mergeJoinVar == null) {
+			return super.getSignature();
+		}
+
+		StringBuilder sb = new StringBuilder(64);
+		sb.append(super.getSignature());
+		sb.append(" (merge on ").append(mergeJoinVar).append(")");
+		return sb.toString();
+	}
+
 	@Override
 	public boolean equals(Object other) {
 		return other instanceof Join && super.equals(other);
@@ -43,10 +43,14 @@ public class SailConfigSchema {
 	/** <tt>http://www.openrdf.org/config/sail#iterationCacheSyncTreshold</tt> */
 	public final static URI ITERATION_CACHE_SYNC_THRESHOLD;
 
+	/** <tt>http://www.openrdf.org/config/sail#evaluationThreads</tt> */
+	public final static URI EVALUATION_THREADS;
+
 	static {
 		ValueFactory factory = ValueFactoryImpl.getInstance();
 		SAILTYPE = factory.createURI(NAMESPACE, "sailType");
 		DELEGATE = factory.createURI(NAMESPACE, "delegate");
 		ITERATION_CACHE_SYNC_THRESHOLD = factory.createURI(NAMESPACE, "iterationCacheSyncTreshold");
+		EVALUATION_THREADS = factory.createURI(NAMESPACE, "evaluationThreads");
 	}
 }
@@ -33,6 +33,8 @@ public class SailImplConfigBase implements SailImplConfig {
 	private String type;
 
 	private long iterationCacheSyncThreshold;
+
+	private int evaluationThreads;
 	
 	/**
 	 * Create a new RepositoryConfigImpl.
@@ -75,6 +77,10 @@ public class SailImplConfigBase implements SailImplConfig {
 		{
 			graph.add(implNode, SailConfigSchema.ITERATION_CACHE_SYNC_THRESHOLD, graph.getValueFactory().createLiteral(iterationCacheSyncThreshold));
 		}
+
+		if (evaluationThreads > 0) {
+			graph.add(implNode, SailConfigSchema.EVALUATION_THREADS, graph.getValueFactory().createLiteral(evaluationThreads));
+		}
 		
 		return implNode;
 	}
@@ -92,6 +98,11 @@ public class SailImplConfigBase implements SailImplConfig {
 			if (sizeLit != null) {
 				setIterationCacheSyncThreshold(sizeLit.longValue());
 			}
+
+			Literal threadsLit = GraphUtil.getOptionalObjectLiteral(graph, implNode, SailConfigSchema.EVALUATION_THREADS);
+			if (threadsLit != null) {
+				setEvaluationThreads(threadsLit.intValue());
+			}
 		}
 		catch (GraphUtilException e) {
 			throw new SailConfigException(e.getMessage(), e);
@@ -112,4 +123,19 @@ public class SailImplConfigBase implements SailImplConfig {
 	public void setIterationCacheSyncThreshold(long iterationCacheSyncThreshold) {
 		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
 	}
+
+	/**
+	 * @return Returns the number of threads used for parallel query evaluation.
+	 */
+	public int getEvaluationThreads() {
+		return evaluationThreads;
+	}
+
+	/**
+	 *
+	 * @param evaluationThreads The number of threads used for parallel query evaluation, 0 to disable it.
+	 */
+	public void setEvaluationThreads(int evaluationThreads) {
+		this.evaluationThreads = evaluationThreads;
+	}
 }
@@ -23,6 +23,10 @@ import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
@@ -125,6 +129,14 @@ public abstract class SailBase implements Sail {
 
 	private long iterationCacheSyncThreshold = DEFAULT_ITERATION_SYNC_THRESHOLD;
 
+	/**
+	 * The number of threads used to evaluate parts of queries in parallel, 0 for
+	 * sequential evaluation.
+	 */
+	private volatile int evaluationThreads = 0;
+
+	private ExecutorService evaluationExecutor;
+
 	/**
 	 * Map used to track active connections and where these were acquired. The
 	 * Throwable value may be null in case debugging was disable at the time the
@@ -271,6 +283,12 @@ public abstract class SailBase implements Sail {
 			shutDownInternal();
 		}
 		finally {
+			synchronized (this) {
+				if (evaluationExecutor != null) {
+					evaluationExecutor.shutdown();
+					evaluationExecutor = null;
+				}
+			}
 			initialized = false;
 			initializationLock.writeLock().unlock();
 		}
@@ -424,6 +442,10 @@ public abstract class SailBase implements Sail {
 
 	/**
 	 * Set the threshold for syncing query evaluation iteration caches to disk.
+	 * Besides the caches of ORDER BY and DISTINCT aggregates, the threshold
+	 * also bounds the number of binding sets that hash joins and the number of
+	 * groups that GROUP BY keep in memory before they spill to temporary
+	 * files. A value of 0 (the default) keeps all of these in memory.
 	 * 
 	 * @param iterationCacheSyncThreshold
 	 *        The iterationCacheSyncThreshold to set. 
@@ -431,4 +453,54 @@ public abstract class SailBase implements Sail {
 	public void setIterationCacheSyncThreshold(long iterationCacheSyncThreshold) {
 		this.iterationCacheSyncThreshold = iterationCacheSyncThreshold;
 	}
+
+	/**
+	 * Retrieves the number of threads that are used to evaluate parts of
+	 * queries in parallel.
+	 * 
+	 * @return The number of threads, or 0 if queries are evaluated sequentially.
+	 */
+	public int getEvaluationThreads() {
+		return evaluationThreads;
+	}
+
+	/**
+	 * Sets the number of threads that are used to evaluate parts of queries in
+	 * parallel. A value of 0 (the default) means that queries are evaluated
+	 * sequentially on the calling thread.
+	 * 
+	 * @param evaluationThreads
+	 *        The number of threads to set.
+	 */
+	public void setEvaluationThreads(int evaluationThreads) {
+		this.evaluationThreads = evaluationThreads;
+	}
+
+	/**
+	 * Gets the executor that parts of queries can be evaluated on in parallel.
+	 * The executor is created on first use and shut down together with the
+	 * sail.
+	 * 
+	 * @return An executor with {@link #getEvaluationThreads()} threads, or
+	 *         <tt>null</tt> if queries are to be evaluated sequentially.
+	 */
+	public synchronized ExecutorService getEvaluationExecutor() {
+		if (evaluationThreads <= 0) {
+			return null;
+		}
+		if (evaluationExecutor == null) {
+			final String name = getClass().getSimpleName() + "-evaluation-";
+			evaluationExecutor = Executors.newFixedThreadPool(evaluationThreads, new ThreadFactory() {
+
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, name + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return evaluationExecutor;
+	}
 }
@@ -16,6 +16,8 @@
  */
 package org.openrdf.sail.base;
 
+import java.util.Comparator;
+
 import info.aduna.iteration.CloseableIteration;
 
 import org.openrdf.model.Namespace;
@@ -23,6 +25,7 @@ import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.sail.SailException;
 
 /**
@@ -78,4 +81,15 @@ abstract class DelegatingSailDataset implements SailDataset {
 	{
 		return delegate.getStatements(subj, pred, obj, contexts);
 	}
+
+	public CloseableIteration<? extends Statement, SailException> getOrderedStatements(StatementOrder order,
+			Resource subj, URI pred, Value obj, Resource... contexts)
+		throws SailException
+	{
+		return delegate.getOrderedStatements(order, subj, pred, obj, contexts);
+	}
+
+	public Comparator<Value> getComparator() {
+		return delegate.getComparator();
+	}
 }
@@ -23,6 +23,7 @@ import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.sail.SailException;
 
 /**
@@ -83,4 +84,13 @@ class ObservingSailDataset extends DelegatingSailDataset {
 		return super.getStatements(subj, pred, obj, contexts);
 	}
 
+	@Override
+	public CloseableIteration<? extends Statement, SailException> getOrderedStatements(StatementOrder order,
+			Resource subj, URI pred, Value obj, Resource... contexts)
+		throws SailException
+	{
+		observer.observe(subj, pred, obj, contexts);
+		return super.getOrderedStatements(order, subj, pred, obj, contexts);
+	}
+
 }
@@ -0,0 +1,130 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.base;
+
+import java.util.Comparator;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
+import org.openrdf.sail.SailException;
+
+/**
+ * Merges several iterations of statements that are sorted on the same
+ * statement component into a single sorted iteration.
+ */
+class OrderedUnionIteration extends LookAheadIteration<Statement, SailException> {
+
+	private final StatementOrder order;
+
+	private final Comparator<Value> comparator;
+
+	private final CloseableIteration<? extends Statement, SailException>[] iterations;
+
+	/**
+	 * The next statement of each of the iterations, <tt>null</tt> if it needs to
+	 * be fetched.
+	 */
+	private final Statement[] heads;
+
+	public OrderedUnionIteration(StatementOrder order, Comparator<Value> comparator,
+			CloseableIteration<? extends Statement, SailException>[] iterations)
+	{
+		this.order = order;
+		this.comparator = comparator;
+		this.iterations = iterations;
+		this.heads = new Statement[iterations.length];
+	}
+
+	@Override
+	protected Statement getNextElement()
+		throws SailException
+	{
+		int next = -1;
+
+		for (int i = 0; i < iterations.length; i++) {
+			if (heads[i] == null && iterations[i].hasNext()) {
+				heads[i] = iterations[i].next();
+			}
+			if (heads[i] != null && (next == -1 || compare(heads[i], heads[next]) < 0)) {
+				next = i;
+			}
+		}
+
+		if (next == -1) {
+			return null;
+		}
+
+		Statement result = heads[next];
+		heads[next] = null;
+		return result;
+	}
+
+	private int compare(Statement st1, Statement st2) {
+		Value v1 = getValue(st1);
+		Value v2 = getValue(st2);
+
+		if (v1 == null) {
+			return v2 == null ? 0 : -1;
+		}
+		else if (v2 == null) {
+			return 1;
+		}
+		return comparator.compare(v1, v2);
+	}
+
+	private Value getValue(Statement st) {
+		switch (order) {
+			case SUBJECT:
+				return st.getSubject();
+			case PREDICATE:
+				return st.getPredicate();
+			case OBJECT:
+				return st.getObject();
+			default:
+				return st.getContext();
+		}
+	}
+
+	@Override
+	protected void handleClose()
+		throws SailException
+	{
+		try {
+			super.handleClose();
+		}
+		finally {
+			SailException exception = null;
+			for (CloseableIteration<? extends Statement, SailException> iter : iterations) {
+				try {
+					iter.close();
+				}
+				catch (SailException e) {
+					if (exception == null) {
+						exception = e;
+					}
+				}
+			}
+			if (exception != null) {
+				throw exception;
+			}
+		}
+	}
+}
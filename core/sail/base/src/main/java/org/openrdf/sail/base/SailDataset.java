@@ -16,6 +16,8 @@
  */
 package org.openrdf.sail.base;
 
+import java.util.Comparator;
+
 import info.aduna.iteration.CloseableIteration;
 
 import org.openrdf.IsolationLevels;
@@ -24,6 +26,7 @@ import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.sail.SailException;
 
 /**
@@ -108,4 +111,37 @@ public interface SailDataset extends SailClosable {
 			Resource... contexts)
 		throws SailException;
 
+	/**
+	 * Gets all statements that have a specific subject, predicate and/or object,
+	 * sorted on the specified statement component according to the order of
+	 * {@link #getComparator()}.
+	 * 
+	 * @param order
+	 *        The statement component on which the statements should be sorted.
+	 * @param subj
+	 *        A Resource specifying the subject, or <tt>null</tt> for a wildcard.
+	 * @param pred
+	 *        A URI specifying the predicate, or <tt>null</tt> for a wildcard.
+	 * @param obj
+	 *        A Value specifying the object, or <tt>null</tt> for a wildcard.
+	 * @param contexts
+	 *        The context(s) to get the statements from.
+	 * @return An iterator over the relevant statements, or <tt>null</tt> if the
+	 *         statements can not be returned in the requested order.
+	 * @throws SailException
+	 *         If the triple source failed to get the statements.
+	 */
+	CloseableIteration<? extends Statement, SailException> getOrderedStatements(StatementOrder order,
+			Resource subj, URI pred, Value obj, Resource... contexts)
+		throws SailException;
+
+	/**
+	 * Gets the comparator that defines the order of the values in the results
+	 * of {@link #getOrderedStatements}.
+	 * 
+	 * @return A comparator, or <tt>null</tt> if this dataset does not support
+	 *         ordered statements.
+	 */
+	Comparator<Value> getComparator();
+
 }
@@ -18,6 +18,7 @@ package org.openrdf.sail.base;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +39,7 @@ import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.NamespaceImpl;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.sail.SailException;
 
 /**
@@ -280,6 +282,37 @@ class SailDatasetImpl implements SailDataset {
 		}
 	}
 
+	@Override
+	public CloseableIteration<? extends Statement, SailException> getOrderedStatements(StatementOrder order,
+			Resource subj, URI pred, Value obj, Resource... contexts)
+		throws SailException
+	{
+		Model approved = changes.getApproved();
+		if (approved != null && !approved.filter(subj, pred, obj, contexts).isEmpty()) {
+			// pending additions are not sorted
+			return null;
+		}
+		Set<Resource> deprecatedContexts = changes.getDeprecatedContexts();
+		if (changes.isStatementCleared() || contexts == null && deprecatedContexts != null
+				&& deprecatedContexts.contains(null) || contexts.length > 0 && deprecatedContexts != null
+				&& deprecatedContexts.containsAll(Arrays.asList(contexts)))
+		{
+			return new EmptyIteration<Statement, SailException>();
+		}
+		CloseableIteration<? extends Statement, SailException> iter;
+		iter = derivedFrom.getOrderedStatements(order, subj, pred, obj, contexts);
+		Model deprecated = changes.getDeprecated();
+		if (deprecated != null && iter != null) {
+			iter = difference(iter, deprecated.filter(subj, pred, obj, contexts));
+		}
+		return iter;
+	}
+
+	@Override
+	public Comparator<Value> getComparator() {
+		return derivedFrom.getComparator();
+	}
+
 	private CloseableIteration<? extends Statement, SailException> difference(
 			CloseableIteration<? extends Statement, SailException> result, final Model excluded)
 	{
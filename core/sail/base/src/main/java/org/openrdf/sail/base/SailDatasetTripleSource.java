@@ -16,6 +16,8 @@
  */
 package org.openrdf.sail.base;
 
+import java.util.Comparator;
+
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.ExceptionConvertingIteration;
 import info.aduna.iteration.Iteration;
@@ -26,13 +28,14 @@ import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.query.QueryEvaluationException;
-import org.openrdf.query.algebra.evaluation.TripleSource;
+import org.openrdf.query.algebra.evaluation.OrderedTripleSource;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.sail.SailException;
 
 /**
- * Implementation of the TripleSource interface using {@link SailDataset}
+ * Implementation of the OrderedTripleSource interface using {@link SailDataset}
  */
-class SailDatasetTripleSource implements TripleSource {
+class SailDatasetTripleSource implements OrderedTripleSource {
 
 	private final ValueFactory vf;
 
@@ -59,6 +62,27 @@ class SailDatasetTripleSource implements TripleSource {
 		}
 	}
 
+	public CloseableIteration<? extends Statement, QueryEvaluationException> getOrderedStatements(
+			StatementOrder order, Resource subj, URI pred, Value obj, Resource... contexts)
+		throws QueryEvaluationException
+	{
+		try {
+			CloseableIteration<? extends Statement, SailException> iter;
+			iter = dataset.getOrderedStatements(order, subj, pred, obj, contexts);
+			if (iter == null) {
+				return null;
+			}
+			return new Eval(iter);
+		}
+		catch (SailException e) {
+			throw new QueryEvaluationException(e);
+		}
+	}
+
+	public Comparator<Value> getComparator() {
+		return dataset.getComparator();
+	}
+
 	public ValueFactory getValueFactory() {
 		return vf;
 	}
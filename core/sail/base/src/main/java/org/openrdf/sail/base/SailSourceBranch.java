@@ -16,9 +16,11 @@
  */
 package org.openrdf.sail.base;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
@@ -49,12 +51,25 @@ class SailSourceBranch implements SailSource {
 	 */
 	private final ReentrantLock semaphore = new ReentrantLock();
 
+	/**
+	 * Used to write the changes to the backing {@link SailSource} one group at
+	 * a time, while the changes of concurrent transactions are merged into the
+	 * next group.
+	 */
+	private final ReentrantLock flushLock = new ReentrantLock();
+
 	/**
 	 * The difference between this {@link SailSource} and the backing
 	 * {@link SailSource}.
 	 */
 	private final LinkedList<Changeset> changes = new LinkedList<Changeset>();
 
+	/**
+	 * Changes that are being written to the backing {@link SailSource}, but may
+	 * not be visible in it yet.
+	 */
+	private final LinkedList<Changeset> flushing = new LinkedList<Changeset>();
+
 	/**
 	 * {@link SailSink} that have been created, but not yet
 	 * {@link SailSink#flush()}ed to this {@link SailSource}.
@@ -148,6 +163,15 @@ class SailSourceBranch implements SailSource {
 					snapshot = null;
 				}
 			}
+			if (prepared != null && prepared != serializable) {
+				// prepared, but never flushed
+				try {
+					prepared.close();
+				}
+				finally {
+					prepared = null;
+				}
+			}
 			if (serializable != null) {
 				try {
 					serializable.close();
@@ -282,6 +306,10 @@ class SailSourceBranch implements SailSource {
 	public void flush()
 		throws SailException
 	{
+		if (autoFlush) {
+			flushGroups(false);
+			return;
+		}
 		try {
 			semaphore.lock();
 			if (!changes.isEmpty()) {
@@ -369,15 +397,80 @@ class SailSourceBranch implements SailSource {
 	void autoFlush()
 		throws SailException
 	{
-		if (autoFlush && semaphore.tryLock()) {
-			try {
-				if (serializable == null && observers.isEmpty()) {
-					flush();
-				}
+		if (autoFlush) {
+			flushGroups(true);
+		}
+	}
+
+	/**
+	 * Writes the merged changes to the backing {@link SailSource}. Only the
+	 * merging of changes holds the semaphore, so concurrent transactions can
+	 * merge their changes while a group is written. A transaction that waits
+	 * for the group in progress finds its changes either written already or
+	 * writes them together with all other changes merged in the meantime, so
+	 * that they share a single {@link SailSink#flush()} of the backing source.
+	 * 
+	 * @param onlyIfUnused
+	 *        if the changes should only be written when no {@link SailDataset}
+	 *        is using this {@link SailSource}
+	 */
+	private void flushGroups(boolean onlyIfUnused)
+		throws SailException
+	{
+		if (semaphore.isHeldByCurrentThread()) {
+			// the group in progress needs the semaphore to complete, the thread
+			// that writes it will pick up our changes
+			if (!flushLock.tryLock()) {
+				return;
 			}
-			finally {
-				semaphore.unlock();
+		}
+		else {
+			flushLock.lock();
+		}
+		try {
+			do {
+				List<Changeset> group;
+				SailSink sink;
+				try {
+					semaphore.lock();
+					if (changes.isEmpty() || onlyIfUnused && (serializable != null || !observers.isEmpty())) {
+						return;
+					}
+					if (prepared == null) {
+						prepare();
+					}
+					sink = prepared;
+					prepared = null;
+					group = new ArrayList<Changeset>(changes);
+					changes.clear();
+					flushing.addAll(group);
+				}
+				finally {
+					semaphore.unlock();
+				}
+				try {
+					for (Changeset change : group) {
+						flush(change, sink);
+					}
+					sink.flush();
+				}
+				finally {
+					try {
+						semaphore.lock();
+						flushing.removeAll(group);
+						if (sink != serializable) {
+							sink.close();
+						}
+					}
+					finally {
+						semaphore.unlock();
+					}
+				}
 			}
+			while (!flushLock.hasQueuedThreads());
+		}
+		finally {
+			flushLock.unlock();
 		}
 	}
 
@@ -443,7 +536,13 @@ class SailSourceBranch implements SailSource {
 					};
 				}
 			}
-			Iterator<Changeset> iter = changes.iterator();
+			// changes that are being written may or may not be visible already,
+			// applying them again does not alter the result
+			Iterator<Changeset> iter = flushing.iterator();
+			while (iter.hasNext()) {
+				derivedFrom = new SailDatasetImpl(derivedFrom, iter.next());
+			}
+			iter = changes.iterator();
 			while (iter.hasNext()) {
 				derivedFrom = new SailDatasetImpl(derivedFrom, iter.next());
 			}
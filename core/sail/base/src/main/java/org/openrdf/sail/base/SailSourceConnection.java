@@ -99,6 +99,12 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 	 */
 	private SailSink inferredSink;
 
+	/**
+	 * true if {@link #inferredSink} has removed inferred statements, which the
+	 * {@link #inferredDataset} does not reflect yet.
+	 */
+	private boolean inferredRemoved;
+
 	/**
 	 * {@link ValueFactory} used by this connection.
 	 */
@@ -372,6 +378,7 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 			if (inferredSink != null) {
 				inferredSink.close();
 				inferredSink = null;
+				inferredRemoved = false;
 			}
 		}
 		if (includeInferredBranch != null) {
@@ -459,6 +466,7 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 				finally {
 					inferredSink.close();
 					inferredSink = null;
+					inferredRemoved = false;
 				}
 			}
 			if (explicitOnlyDataset != null) {
@@ -504,8 +512,12 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 						// only report inferred statements that don't already exist
 						notifyStatementAdded(vf.createStatement(subj, pred, obj));
 						modified = true;
+						inferredSink.approve(subj, pred, obj, null);
+					}
+					else if (inferredRemoved) {
+						// it may have been removed since the dataset was created
+						inferredSink.approve(subj, pred, obj, null);
 					}
-					inferredSink.approve(subj, pred, obj, null);
 				}
 			}
 			else {
@@ -516,8 +528,12 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 							// only report inferred statements that don't already exist
 							notifyStatementAdded(vf.createStatement(subj, pred, obj, ctx));
 							modified = true;
+							inferredSink.approve(subj, pred, obj, ctx);
+						}
+						else if (inferredRemoved) {
+							// it may have been removed since the dataset was created
+							inferredSink.approve(subj, pred, obj, ctx);
 						}
-						inferredSink.approve(subj, pred, obj, ctx);
 					}
 				}
 			}
@@ -563,6 +579,7 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 				explicitOnlyDataset = branch(false).dataset(level);
 			}
 			removeStatementsInternal(subj, pred, obj, contexts);
+			inferredRemoved = true;
 			return remove(subj, pred, obj, inferredDataset, inferredSink, contexts);
 		}
 	}
@@ -624,6 +641,7 @@ public abstract class SailSourceConnection extends NotifyingSailConnectionBase i
 			if (this.hasConnectionListeners()) {
 				remove(null, null, null, inferredDataset, inferredSink, contexts);
 			}
+			inferredRemoved = true;
 			inferredSink.clear(contexts);
 		}
 	}
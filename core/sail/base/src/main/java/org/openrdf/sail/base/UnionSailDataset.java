@@ -17,6 +17,7 @@
 package org.openrdf.sail.base;
 
 import java.util.Arrays;
+import java.util.Comparator;
 
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.UnionIteration;
@@ -26,6 +27,7 @@ import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.sail.SailException;
 
 /**
@@ -113,6 +115,55 @@ class UnionSailDataset implements SailDataset {
 		return union(result);
 	}
 
+	@Override
+	public CloseableIteration<? extends Statement, SailException> getOrderedStatements(StatementOrder order,
+			Resource subj, URI pred, Value obj, Resource... contexts)
+		throws SailException
+	{
+		Comparator<Value> comparator = getComparator();
+		if (comparator == null) {
+			return null;
+		}
+
+		CloseableIteration<? extends Statement, SailException>[] result;
+		result = new CloseableIteration[datasets.length];
+		try {
+			for (int i = 0; i < datasets.length; i++) {
+				result[i] = datasets[i].getOrderedStatements(order, subj, pred, obj, contexts);
+				if (result[i] == null) {
+					return null;
+				}
+			}
+			CloseableIteration<? extends Statement, SailException> union;
+			union = new OrderedUnionIteration(order, comparator, result);
+			result = null;
+			return union;
+		}
+		finally {
+			if (result != null) {
+				for (CloseableIteration<? extends Statement, SailException> iter : result) {
+					if (iter != null) {
+						iter.close();
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public Comparator<Value> getComparator() {
+		Comparator<Value> result = null;
+		for (int i = 0; i < datasets.length; i++) {
+			Comparator<Value> comparator = datasets[i].getComparator();
+			if (comparator == null || result != null && !result.equals(comparator)) {
+				// the datasets can not be merged in a common order
+				return null;
+			}
+			result = comparator;
+		}
+		return result;
+	}
+
 	private <T> CloseableIteration<? extends T, SailException> union(
 			CloseableIteration<? extends T, SailException>[] items)
 	{
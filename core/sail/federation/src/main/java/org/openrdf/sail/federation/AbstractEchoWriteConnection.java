@@ -76,6 +76,11 @@ abstract class AbstractEchoWriteConnection extends AbstractFederationConnection
 				con.commit();
 			}
 		});
+		SourceSelectionCache cache = getFederation().getSourceSelectionCache();
+		if (cache != null) {
+			// members that do not notify of changes
+			cache.invalidateAll();
+		}
 	}
 
 	public void setNamespaceInternal(final String prefix, final String name)
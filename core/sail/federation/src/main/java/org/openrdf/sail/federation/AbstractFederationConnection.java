@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
@@ -71,7 +72,9 @@ import org.openrdf.repository.sail.config.RepositoryResolverClient;
 import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.federation.evaluation.FederationStrategy;
+import org.openrdf.sail.federation.evaluation.MemberPermitScope;
 import org.openrdf.sail.federation.optimizers.EmptyPatternOptimizer;
+import org.openrdf.sail.federation.optimizers.EvaluationStatistics;
 import org.openrdf.sail.federation.optimizers.FederationJoinOptimizer;
 import org.openrdf.sail.federation.optimizers.OwnedTupleExprPruner;
 import org.openrdf.sail.federation.optimizers.PrepareOwnedTupleExpr;
@@ -104,6 +107,12 @@ abstract class AbstractFederationConnection extends SailConnectionBase implement
 	 */
 	private FederatedServiceResolver federatedServiceResolver;
 
+	/**
+	 * The scope of the member permits that are held by the open results of this
+	 * connection.
+	 */
+	private final MemberPermitScope permitScope = new MemberPermitScope();
+
 	public AbstractFederationConnection(Federation federation, List<RepositoryConnection> members) {
 		super(new SailBase() {
 
@@ -160,6 +169,10 @@ abstract class AbstractFederationConnection extends SailConnectionBase implement
 		return valueFactory;
 	}
 
+	protected Federation getFederation() {
+		return federation;
+	}
+
 	@Override
 	public void closeInternal()
 		throws SailException
@@ -386,6 +399,9 @@ abstract class AbstractFederationConnection extends SailConnectionBase implement
 		TripleSource tripleSource = new FederationTripleSource(inf);
 		EvaluationStrategy strategy = federation.createEvaluationStrategy(tripleSource, dataset,
 				getFederatedServiceResolver());
+		if (strategy instanceof FederationStrategy) {
+			((FederationStrategy)strategy).setMemberPermitScope(permitScope);
+		}
 		TupleExpr qry = optimize(query, dataset, bindings, strategy);
 		try {
 			return strategy.evaluate(qry, EmptyBindingSet.getInstance());
@@ -445,16 +461,20 @@ abstract class AbstractFederationConnection extends SailConnectionBase implement
 		new SameTermFilterOptimizer().optimize(query, dataset, bindings);
 		new QueryModelPruner().optimize(query, dataset, bindings);
 
-		new QueryMultiJoinOptimizer().optimize(query, dataset, bindings);
+		// uncommitted changes of this connection are not reflected by the cache
+		SourceSelectionCache cache = transactionActive() ? null : federation.getSourceSelectionCache();
+		EvaluationStatistics statistics = new EvaluationStatistics(members, cache);
+
+		new QueryMultiJoinOptimizer(statistics).optimize(query, dataset, bindings);
 		// new FilterOptimizer().optimize(query, dataset, bindings);
 
-		new EmptyPatternOptimizer(members).optimize(query, dataset, bindings);
+		new EmptyPatternOptimizer(members, cache).optimize(query, dataset, bindings);
 		boolean distinct = federation.isDistinct();
 		PrefixHashSet local = federation.getLocalPropertySpace();
-		new FederationJoinOptimizer(members, distinct, local).optimize(query, dataset, bindings);
+		new FederationJoinOptimizer(members, distinct, local, cache).optimize(query, dataset, bindings);
 		new OwnedTupleExprPruner().optimize(query, dataset, bindings);
 		new QueryModelPruner().optimize(query, dataset, bindings);
-		new QueryMultiJoinOptimizer().optimize(query, dataset, bindings);
+		new QueryMultiJoinOptimizer(statistics).optimize(query, dataset, bindings);
 
 		new PrepareOwnedTupleExpr().optimize(query, dataset, bindings);
 
@@ -515,7 +535,7 @@ abstract class AbstractFederationConnection extends SailConnectionBase implement
 
 		try {
 			for (RepositoryConnection member : members) {
-				cursors.add(function.call(member));
+				cursors.add(call(function, member));
 			}
 			UnionIteration<E, RepositoryException> result = new UnionIteration<E, RepositoryException>(cursors);
 			return new ExceptionConvertingIteration<E, SailException>(result) {
@@ -536,6 +556,38 @@ abstract class AbstractFederationConnection extends SailConnectionBase implement
 		}
 	}
 
+	private <E> CloseableIteration<? extends E, RepositoryException> call(Function<E> function,
+			RepositoryConnection member)
+		throws RepositoryException
+	{
+		Semaphore permits = federation.getMemberPermits(member.getRepository());
+		if (permits == null) {
+			return function.call(member);
+		}
+		boolean acquired;
+		try {
+			acquired = permitScope.acquire(permits);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RepositoryException(e);
+		}
+		if (!acquired) {
+			return function.call(member);
+		}
+		try {
+			// the request is in flight until its results have been consumed
+			CloseableIteration<? extends E, RepositoryException> result = function.call(member);
+			acquired = false;
+			return permitScope.releaseOnClose(result, permits);
+		}
+		finally {
+			if (acquired) {
+				permitScope.release(permits);
+			}
+		}
+	}
+
 	private boolean isLocal(URI pred) {
 		if (pred == null) {
 			return false; // NOPMD
@@ -20,10 +20,18 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
@@ -46,12 +54,17 @@ import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.repository.sail.config.RepositoryResolver;
 import org.openrdf.repository.sail.config.RepositoryResolverClient;
+import org.openrdf.sail.NotifyingSail;
 import org.openrdf.sail.Sail;
+import org.openrdf.sail.SailChangedListener;
 import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.federation.evaluation.FederationStrategy;
+import org.openrdf.sail.federation.evaluation.MemberPermitScope;
+import org.openrdf.sail.federation.evaluation.ParallelJoinCursor;
 
 /**
  * Union multiple (possibly remote) Repositories into a single RDF store.
@@ -63,11 +76,30 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 		HttpClientDependent, SesameClientDependent
 {
 
+	/**
+	 * The default maximum number of threads that evaluate joins concurrently.
+	 */
+	public static final int DEFAULT_MAX_THREADS = 64;
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(Federation.class);
 
 	private final List<Repository> members = new ArrayList<Repository>();
 
-	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final Map<Repository, Semaphore> memberPermits = new HashMap<Repository, Semaphore>();
+
+	private ExecutorService executor;
+
+	private int maxThreads = DEFAULT_MAX_THREADS;
+
+	private int queueCapacity = ParallelJoinCursor.DEFAULT_QUEUE_CAPACITY;
+
+	private int maxMemberConcurrency;
+
+	private long sourceSelectionCacheTTL;
+
+	private volatile SourceSelectionCache sourceSelectionCache;
+
+	private final Map<NotifyingSail, SailChangedListener> changeListeners = new HashMap<NotifyingSail, SailChangedListener>();
 
 	private PrefixHashSet localPropertySpace; // NOPMD
 
@@ -137,6 +169,97 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 		this.readOnly = readOnly;
 	}
 
+	public synchronized int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads that evaluate joins in parallel. When
+	 * all threads are busy, further joins are evaluated in the thread that
+	 * consumes their results. A value of zero or less removes the limit. Must be
+	 * set before the first query is evaluated.
+	 */
+	public synchronized void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Sets the number of evaluated right hand join arguments that a parallel
+	 * join buffers before its evaluation thread blocks until the results are
+	 * consumed.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("queue capacity must be positive: " + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+	}
+
+	public synchronized int getMaxMemberConcurrency() {
+		return maxMemberConcurrency;
+	}
+
+	/**
+	 * Sets the maximum number of requests that are sent to a single member
+	 * concurrently. A request counts until its results have been consumed or
+	 * closed. A connection that already has a request in flight does not wait
+	 * for further requests, so that its results cannot wait for each other;
+	 * these requests exceed the limit when no permit is available. A value of
+	 * zero or less removes the limit. Must be set before the first query is
+	 * evaluated.
+	 *
+	 * @see MemberPermitScope
+	 */
+	public synchronized void setMaxMemberConcurrency(int maxMemberConcurrency) {
+		this.maxMemberConcurrency = maxMemberConcurrency;
+	}
+
+	public long getSourceSelectionCacheTTL() {
+		return sourceSelectionCacheTTL;
+	}
+
+	/**
+	 * Sets the number of milliseconds that the members known to contain a
+	 * statement pattern are remembered, avoiding repeated hasStatement probes
+	 * for the same pattern. Results for local members that notify of changes
+	 * are dropped when they change, remote members may be stale for up to this
+	 * time. A value of zero or less disables the cache. Must be set before
+	 * this federation is initialized.
+	 */
+	public void setSourceSelectionCacheTTL(long sourceSelectionCacheTTL) {
+		this.sourceSelectionCacheTTL = sourceSelectionCacheTTL;
+	}
+
+	/**
+	 * @return The source selection cache, or <tt>null</tt> if it is disabled.
+	 */
+	public SourceSelectionCache getSourceSelectionCache() {
+		return sourceSelectionCache;
+	}
+
+	/**
+	 * Gets the permits that limit the number of concurrent requests to the
+	 * given member.
+	 * 
+	 * @return A semaphore shared by all requests to the member, or
+	 *         <tt>null</tt> if the number of requests is not limited.
+	 */
+	public synchronized Semaphore getMemberPermits(Repository member) {
+		if (maxMemberConcurrency <= 0) {
+			return null;
+		}
+		Semaphore permits = memberPermits.get(member);
+		if (permits == null) {
+			permits = new Semaphore(maxMemberConcurrency, true);
+			memberPermits.put(member, permits);
+		}
+		return permits;
+	}
+
 	/**
 	 * @return Returns the SERVICE resolver.
 	 */
@@ -231,11 +354,30 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 				throw new SailException(e);
 			}
 		}
+		if (sourceSelectionCacheTTL > 0) {
+			SourceSelectionCache cache = new SourceSelectionCache(sourceSelectionCacheTTL);
+			for (Repository member : members) {
+				if (member instanceof SailRepository) {
+					Sail sail = ((SailRepository)member).getSail();
+					if (sail instanceof NotifyingSail) {
+						SailChangedListener listener = cache.createListener(member);
+						((NotifyingSail)sail).addSailChangedListener(listener);
+						changeListeners.put((NotifyingSail)sail, listener);
+					}
+				}
+			}
+			sourceSelectionCache = cache;
+		}
 	}
 
 	public void shutDown()
 		throws SailException
 	{
+		for (Map.Entry<NotifyingSail, SailChangedListener> entry : changeListeners.entrySet()) {
+			entry.getKey().removeSailChangedListener(entry.getValue());
+		}
+		changeListeners.clear();
+		sourceSelectionCache = null; // NOPMD
 		for (Repository member : members) {
 			try {
 				member.shutDown();
@@ -244,7 +386,12 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 				throw new SailException(e);
 			}
 		}
-		executor.shutdown();
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdown();
+				executor = null; // NOPMD
+			}
+		}
 		if (dependentServiceResolver != null) {
 			dependentServiceResolver.shutDown();
 		}
@@ -252,9 +399,33 @@ public class Federation implements Sail, Executor, FederatedServiceResolverClien
 
 	/**
 	 * Required by {@link java.util.concurrent.Executor Executor} interface.
+	 * 
+	 * @throws RejectedExecutionException
+	 *         If the maximum number of threads are already busy.
 	 */
 	public void execute(Runnable command) {
-		executor.execute(command);
+		getExecutor().execute(command);
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			ThreadFactory threadFactory = new ThreadFactory() {
+
+				private final AtomicInteger threadCount = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "federation-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+			// hand off directly to an idle or new thread and reject when all are
+			// busy, so that the caller can evaluate the join itself
+			int poolSize = maxThreads > 0 ? maxThreads : Integer.MAX_VALUE;
+			executor = new ThreadPoolExecutor(0, poolSize, 60L, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), threadFactory);
+		}
+		return executor;
 	}
 
 	public SailConnection getConnection()
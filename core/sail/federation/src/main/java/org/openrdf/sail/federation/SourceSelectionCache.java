@@ -0,0 +1,270 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.federation;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.util.RepositoryConnectionUtil;
+import org.openrdf.sail.SailChangedEvent;
+import org.openrdf.sail.SailChangedListener;
+
+/**
+ * Remembers which members contain statements matching a pattern, so that
+ * source selection does not have to probe every member for every query.
+ * Entries expire after a configurable time to live and are dropped when a
+ * member reports a change through a {@link SailChangedEvent}.
+ * <p>
+ * Before probing a pattern with a bound subject or object, the predicate
+ * summary of the member (or the class summary for <tt>rdf:type</tt>) is
+ * consulted: a member that does not use the predicate at all cannot contain
+ * the pattern.
+ */
+public class SourceSelectionCache {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final int MAX_CACHE_SIZE = 10000;
+
+	private final Cache<Probe, Boolean> probes;
+
+	/**
+	 * Counts the invalidations of all members, see {@link #getGeneration}.
+	 */
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * Counts the invalidations per member, see {@link #getGeneration}.
+	 */
+	private final ConcurrentMap<Repository, AtomicLong> memberGenerations = new ConcurrentHashMap<Repository, AtomicLong>();
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * @param timeToLive
+	 *        The number of milliseconds a probe result is kept.
+	 */
+	public SourceSelectionCache(long timeToLive) {
+		probes = CacheBuilder.newBuilder().maximumSize(MAX_CACHE_SIZE).expireAfterWrite(timeToLive,
+				TimeUnit.MILLISECONDS).build();
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Checks whether the member contains statements matching the pattern,
+	 * probing the member if the answer is not cached. Members whose
+	 * hasStatement is not optimized are assumed to contain the pattern.
+	 */
+	public boolean hasStatement(RepositoryConnection member, Resource subj, URI pred, Value obj,
+			Resource... ctx)
+		throws RepositoryException
+	{
+		if (!RepositoryConnectionUtil.isHasStatementOptimized(member)) {
+			return true;
+		}
+		Probe summary = getSummary(member.getRepository(), subj, pred, obj, ctx);
+		if (summary != null && !probe(member, summary)) {
+			return false;
+		}
+		return probe(member, new Probe(member.getRepository(), subj, pred, obj, ctx));
+	}
+
+	/**
+	 * Counts the members that are known to contain statements matching the
+	 * pattern, without probing any member.
+	 * 
+	 * @return The number of members that contain the pattern, or <tt>-1</tt>
+	 *         if this is not known for every member.
+	 */
+	public int countKnownSources(Iterable<? extends RepositoryConnection> members, Resource subj, URI pred,
+			Value obj, Resource... ctx)
+	{
+		int count = 0;
+		for (RepositoryConnection member : members) {
+			Repository repository = member.getRepository();
+			Boolean cached = probes.getIfPresent(new Probe(repository, subj, pred, obj, ctx));
+			if (cached == null) {
+				Probe summary = getSummary(repository, subj, pred, obj, ctx);
+				if (summary == null || !Boolean.FALSE.equals(probes.getIfPresent(summary))) {
+					return -1;
+				}
+			}
+			else if (cached.booleanValue()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Drops all cached probe results of the given member.
+	 */
+	public void invalidate(Repository member) {
+		// invalidate probes that are running, before their results are cached
+		getMemberGeneration(member).incrementAndGet();
+		for (Probe probe : probes.asMap().keySet()) {
+			if (probe.member == member) {
+				probes.invalidate(probe);
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		probes.invalidateAll();
+	}
+
+	/**
+	 * Creates a listener that drops the cached probe results of the given
+	 * member when its statements change.
+	 */
+	public SailChangedListener createListener(final Repository member) {
+		return new SailChangedListener() {
+
+			public void sailChanged(SailChangedEvent event) {
+				if (event.statementsAdded() || event.statementsRemoved()) {
+					invalidate(member);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Gets the predicate or class summary that must hold for the pattern to
+	 * match, or <tt>null</tt> if the pattern is a summary itself.
+	 */
+	private Probe getSummary(Repository member, Resource subj, URI pred, Value obj, Resource... ctx) {
+		if (pred == null || (subj == null && obj == null)) {
+			return null;
+		}
+		if (RDF.TYPE.equals(pred) && obj != null) {
+			// class summary
+			return subj == null ? null : new Probe(member, null, pred, obj, ctx);
+		}
+		// predicate summary
+		return new Probe(member, null, pred, null, ctx);
+	}
+
+	private boolean probe(RepositoryConnection member, Probe probe)
+		throws RepositoryException
+	{
+		Boolean cached = probes.getIfPresent(probe);
+		if (cached == null) {
+			long before = getGeneration(probe.member);
+			cached = Boolean.valueOf(member.hasStatement(probe.subj, probe.pred, probe.obj, true, probe.ctx));
+			probes.put(probe, cached);
+			if (getGeneration(probe.member) != before) {
+				// the member has changed while it was probed, the result may be
+				// stale and an invalidation may have missed it
+				probes.invalidate(probe);
+			}
+		}
+		return cached.booleanValue();
+	}
+
+	/**
+	 * Gets a number that changes whenever the probe results of the member are
+	 * invalidated. Invalidation increments it before the cached results are
+	 * dropped, so a probe that finds it unchanged after caching its result
+	 * knows that no invalidation has been missed.
+	 */
+	private long getGeneration(Repository member) {
+		return generation.get() + getMemberGeneration(member).get();
+	}
+
+	private AtomicLong getMemberGeneration(Repository member) {
+		AtomicLong memberGeneration = memberGenerations.get(member);
+		if (memberGeneration == null) {
+			AtomicLong created = new AtomicLong();
+			memberGeneration = memberGenerations.putIfAbsent(member, created);
+			if (memberGeneration == null) {
+				memberGeneration = created;
+			}
+		}
+		return memberGeneration;
+	}
+
+	/*-------------------*
+	 * Inner class Probe *
+	 *-------------------*/
+
+	private static class Probe {
+
+		final Repository member;
+
+		final Resource subj;
+
+		final URI pred;
+
+		final Value obj;
+
+		final Resource[] ctx;
+
+		private final int hashCode;
+
+		public Probe(Repository member, Resource subj, URI pred, Value obj, Resource... ctx) {
+			this.member = member;
+			this.subj = subj;
+			this.pred = pred;
+			this.obj = obj;
+			this.ctx = ctx;
+			this.hashCode = Arrays.hashCode(new Object[] { member, subj, pred, obj, Arrays.hashCode(ctx) });
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Probe)) {
+				return false;
+			}
+			Probe o = (Probe)other;
+			return member == o.member && equals(subj, o.subj) && equals(pred, o.pred) && equals(obj, o.obj)
+					&& Arrays.equals(ctx, o.ctx);
+		}
+
+		private static boolean equals(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
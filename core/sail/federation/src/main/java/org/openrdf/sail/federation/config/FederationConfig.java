@@ -37,6 +37,8 @@ import org.openrdf.repository.config.RepositoryConfigException;
 import org.openrdf.repository.config.RepositoryImplConfig;
 import org.openrdf.sail.config.SailConfigException;
 import org.openrdf.sail.config.SailImplConfigBase;
+import org.openrdf.sail.federation.Federation;
+import org.openrdf.sail.federation.evaluation.ParallelJoinCursor;
 
 /**
  * Lists the members of a federation and which properties describe a resource
@@ -68,6 +70,30 @@ public class FederationConfig extends SailImplConfigBase {
 	 */
 	public static final URI READ_ONLY = new URIImpl(NAMESPACE + "readOnly");
 
+	/**
+	 * The maximum number of threads that evaluate joins in parallel, zero for
+	 * no limit.
+	 */
+	public static final URI MAX_THREADS = new URIImpl(NAMESPACE + "maxThreads");
+
+	/**
+	 * The number of evaluated join arguments a parallel join buffers before
+	 * blocking.
+	 */
+	public static final URI QUEUE_CAPACITY = new URIImpl(NAMESPACE + "queueCapacity");
+
+	/**
+	 * The maximum number of concurrent requests to a single member, zero for no
+	 * limit.
+	 */
+	public static final URI MAX_MEMBER_CONCURRENCY = new URIImpl(NAMESPACE + "maxMemberConcurrency");
+
+	/**
+	 * The number of milliseconds the members that contain a statement pattern
+	 * are remembered, zero to disable the source selection cache.
+	 */
+	public static final URI SOURCE_SELECTION_CACHE_TTL = new URIImpl(NAMESPACE + "sourceSelectionCacheTTL");
+
 	private List<RepositoryImplConfig> members = new ArrayList<RepositoryImplConfig>();
 
 	private final Set<String> localPropertySpace = new HashSet<String>(); // NOPMD
@@ -76,6 +102,14 @@ public class FederationConfig extends SailImplConfigBase {
 
 	private boolean readOnly;
 
+	private int maxThreads = Federation.DEFAULT_MAX_THREADS;
+
+	private int queueCapacity = ParallelJoinCursor.DEFAULT_QUEUE_CAPACITY;
+
+	private int maxMemberConcurrency;
+
+	private long sourceSelectionCacheTTL;
+
 	public List<RepositoryImplConfig> getMembers() {
 		return members;
 	}
@@ -112,6 +146,38 @@ public class FederationConfig extends SailImplConfigBase {
 		this.readOnly = readOnly;
 	}
 
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public int getMaxMemberConcurrency() {
+		return maxMemberConcurrency;
+	}
+
+	public void setMaxMemberConcurrency(int maxMemberConcurrency) {
+		this.maxMemberConcurrency = maxMemberConcurrency;
+	}
+
+	public long getSourceSelectionCacheTTL() {
+		return sourceSelectionCacheTTL;
+	}
+
+	public void setSourceSelectionCacheTTL(long sourceSelectionCacheTTL) {
+		this.sourceSelectionCacheTTL = sourceSelectionCacheTTL;
+	}
+
 	@Override
 	public Resource export(Graph model) {
 		ValueFactory valueFactory = ValueFactoryImpl.getInstance();
@@ -124,6 +190,18 @@ public class FederationConfig extends SailImplConfigBase {
 		}
 		model.add(self, DISTINCT, valueFactory.createLiteral(distinct));
 		model.add(self, READ_ONLY, valueFactory.createLiteral(readOnly));
+		if (maxThreads != Federation.DEFAULT_MAX_THREADS) {
+			model.add(self, MAX_THREADS, valueFactory.createLiteral(maxThreads));
+		}
+		if (queueCapacity != ParallelJoinCursor.DEFAULT_QUEUE_CAPACITY) {
+			model.add(self, QUEUE_CAPACITY, valueFactory.createLiteral(queueCapacity));
+		}
+		if (maxMemberConcurrency > 0) {
+			model.add(self, MAX_MEMBER_CONCURRENCY, valueFactory.createLiteral(maxMemberConcurrency));
+		}
+		if (sourceSelectionCacheTTL > 0) {
+			model.add(self, SOURCE_SELECTION_CACHE_TTL, valueFactory.createLiteral(sourceSelectionCacheTTL));
+		}
 		return self;
 	}
 
@@ -153,10 +231,29 @@ public class FederationConfig extends SailImplConfigBase {
 			if (bool != null && bool.booleanValue()) {
 				readOnly = true;
 			}
+			Literal lit = model.filter(implNode, MAX_THREADS, null).objectLiteral();
+			if (lit != null) {
+				maxThreads = lit.intValue();
+			}
+			lit = model.filter(implNode, QUEUE_CAPACITY, null).objectLiteral();
+			if (lit != null) {
+				queueCapacity = lit.intValue();
+			}
+			lit = model.filter(implNode, MAX_MEMBER_CONCURRENCY, null).objectLiteral();
+			if (lit != null) {
+				maxMemberConcurrency = lit.intValue();
+			}
+			lit = model.filter(implNode, SOURCE_SELECTION_CACHE_TTL, null).objectLiteral();
+			if (lit != null) {
+				sourceSelectionCacheTTL = lit.longValue();
+			}
 		}
 		catch (ModelException e) {
 			throw new SailConfigException(e);
 		}
+		catch (NumberFormatException e) {
+			throw new SailConfigException(e);
+		}
 	}
 
 	@Override
@@ -167,6 +264,9 @@ public class FederationConfig extends SailImplConfigBase {
 		if (members.isEmpty()) {
 			throw new SailConfigException("No federation members specified");
 		}
+		if (queueCapacity < 1) {
+			throw new SailConfigException("Queue capacity must be positive: " + queueCapacity);
+		}
 		for (RepositoryImplConfig member : members) {
 			try {
 				member.validate();
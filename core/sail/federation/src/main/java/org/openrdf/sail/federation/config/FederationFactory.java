@@ -76,6 +76,10 @@ public class FederationFactory implements SailFactory {
 		sail.setLocalPropertySpace(cfg.getLocalPropertySpace());
 		sail.setDistinct(cfg.isDistinct());
 		sail.setReadOnly(cfg.isReadOnly());
+		sail.setMaxThreads(cfg.getMaxThreads());
+		sail.setQueueCapacity(cfg.getQueueCapacity());
+		sail.setMaxMemberConcurrency(cfg.getMaxMemberConcurrency());
+		sail.setSourceSelectionCacheTTL(cfg.getSourceSelectionCacheTTL());
 		return sail;
 	}
 }
@@ -22,6 +22,8 @@ import info.aduna.iteration.UnionIteration;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
@@ -35,6 +37,7 @@ import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.federation.FederatedServiceResolver;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
 import org.openrdf.query.algebra.evaluation.iterator.BadlyDesignedLeftJoinIterator;
+import org.openrdf.sail.federation.Federation;
 import org.openrdf.sail.federation.algebra.NaryJoin;
 import org.openrdf.sail.federation.algebra.OwnedTupleExpr;
 
@@ -50,11 +53,46 @@ public class FederationStrategy extends EvaluationStrategyImpl {
 
 	private final Executor executor;
 
+	/** The federation that limits member concurrency, may be null. */
+	private final Federation federation;
+
+	private final int queueCapacity;
+
+	/** The scope of the member permits that the results of this strategy hold. */
+	private MemberPermitScope permitScope = new MemberPermitScope();
+
 	public FederationStrategy(Executor executor, TripleSource tripleSource, Dataset dataset,
 			FederatedServiceResolver serviceManager)
 	{
 		super(tripleSource, dataset, serviceManager);
 		this.executor = executor;
+		this.federation = null;
+		this.queueCapacity = ParallelJoinCursor.DEFAULT_QUEUE_CAPACITY;
+	}
+
+	public FederationStrategy(Federation federation, TripleSource tripleSource, Dataset dataset,
+			FederatedServiceResolver serviceManager)
+	{
+		super(tripleSource, dataset, serviceManager);
+		this.executor = federation;
+		this.federation = federation;
+		this.queueCapacity = federation.getQueueCapacity();
+	}
+
+	private FederationStrategy(FederationStrategy parent, TripleSource tripleSource) {
+		super(tripleSource, parent.dataset, parent.serviceResolver);
+		this.executor = parent.executor;
+		this.federation = parent.federation;
+		this.queueCapacity = parent.queueCapacity;
+		this.permitScope = parent.permitScope;
+	}
+
+	/**
+	 * Sets the scope of the member permits that the results of this strategy
+	 * hold, to share it with the other results of the same connection.
+	 */
+	public void setMemberPermitScope(MemberPermitScope permitScope) {
+		this.permitScope = permitScope;
 	}
 
 	@Override
@@ -81,8 +119,7 @@ public class FederationStrategy extends EvaluationStrategyImpl {
 	{
 		CloseableIteration<BindingSet, QueryEvaluationException> result = evaluate(join.getLeftArg(), bindings);
 		for (int i = 1, n = 2; i < n; i++) {
-			result = new ParallelJoinCursor(this, result, join.getRightArg()); // NOPMD
-			executor.execute((Runnable)result);
+			result = execute(new ParallelJoinCursor(this, result, join.getRightArg(), queueCapacity)); // NOPMD
 		}
 		return result;
 	}
@@ -93,8 +130,7 @@ public class FederationStrategy extends EvaluationStrategyImpl {
 		assert join.getNumberOfArguments() > 0;
 		CloseableIteration<BindingSet, QueryEvaluationException> result = evaluate(join.getArg(0), bindings);
 		for (int i = 1, n = join.getNumberOfArguments(); i < n; i++) {
-			result = new ParallelJoinCursor(this, result, join.getArg(i)); // NOPMD
-			executor.execute((Runnable)result);
+			result = execute(new ParallelJoinCursor(this, result, join.getArg(i), queueCapacity)); // NOPMD
 		}
 		return result;
 	}
@@ -117,8 +153,14 @@ public class FederationStrategy extends EvaluationStrategyImpl {
 		CloseableIteration<BindingSet, QueryEvaluationException> result;
 		if (problemVars.isEmpty()) {
 			// left join is "well designed"
-			result = new ParallelLeftJoinCursor(this, leftJoin, bindings);
-			executor.execute((Runnable)result);
+			ParallelLeftJoinCursor cursor = new ParallelLeftJoinCursor(this, leftJoin, bindings, queueCapacity);
+			try {
+				executor.execute(cursor);
+			}
+			catch (RejectedExecutionException e) {
+				cursor.runInline();
+			}
+			result = cursor;
 		}
 		else {
 			result = new BadlyDesignedLeftJoinIterator(this, leftJoin, bindings, problemVars);
@@ -137,17 +179,54 @@ public class FederationStrategy extends EvaluationStrategyImpl {
 		return new UnionIteration<BindingSet, QueryEvaluationException>(iters);
 	}
 
+	private CloseableIteration<BindingSet, QueryEvaluationException> execute(ParallelJoinCursor cursor) {
+		try {
+			executor.execute(cursor);
+		}
+		catch (RejectedExecutionException e) {
+			// all threads are busy, evaluate the join in the consuming thread
+			cursor.runInline();
+		}
+		return cursor;
+	}
+
 	private CloseableIteration<BindingSet, QueryEvaluationException> evaluate(OwnedTupleExpr expr,
 			BindingSet bindings)
 		throws QueryEvaluationException
 	{
-		CloseableIteration<BindingSet, QueryEvaluationException> result = expr.evaluate(dataset, bindings);
-		if (result == null) {
-			TripleSource source = new RepositoryTripleSource(expr.getOwner());
-			EvaluationStrategy eval = new FederationStrategy(executor, source, dataset, serviceResolver);
-			result = eval.evaluate(expr.getArg(), bindings);
+		Semaphore permits = null;
+		if (federation != null) {
+			permits = federation.getMemberPermits(expr.getOwner().getRepository());
+		}
+		boolean acquired = false;
+		if (permits != null) {
+			try {
+				acquired = permitScope.acquire(permits);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new QueryEvaluationException(e);
+			}
+		}
+		try {
+			CloseableIteration<BindingSet, QueryEvaluationException> result = expr.evaluate(dataset, bindings);
+			if (result == null) {
+				TripleSource source = new RepositoryTripleSource(expr.getOwner());
+				EvaluationStrategy eval = new FederationStrategy(this, source);
+				result = eval.evaluate(expr.getArg(), bindings);
+			}
+			if (acquired) {
+				// the request is in flight until its results have been consumed
+				result = permitScope.releaseOnClose(result, permits);
+				acquired = false;
+			}
+			return result;
+		}
+		finally {
+			if (acquired) {
+				permitScope.release(permits);
+			}
 		}
-		return result;
 	}
 
 }
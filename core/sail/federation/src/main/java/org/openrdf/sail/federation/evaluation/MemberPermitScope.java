@@ -0,0 +1,135 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.federation.evaluation;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.IterationWrapper;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the member permits that are held by the open results of a
+ * single federation connection. A permit is held from the moment a request
+ * is sent to a member until its results have been consumed or closed.
+ * <p>
+ * A scope that does not hold any permit waits for a permit to become
+ * available. A scope that already holds a permit, for example for the left
+ * argument of a join whose right argument is sent to the same member, does
+ * not wait: if no permit is available, the request is sent without one.
+ * Otherwise the results of one scope could wait for each other, or two scopes
+ * could wait for the permits that the other one holds.
+ *
+ * @see org.openrdf.sail.federation.Federation#getMemberPermits
+ */
+public class MemberPermitScope {
+
+	/**
+	 * The interval in which a waiting request checks whether its scope has
+	 * acquired a permit in the meantime.
+	 */
+	private static final long POLL_INTERVAL = 100;
+
+	private final AtomicInteger held = new AtomicInteger();
+
+	/**
+	 * Acquires one of the supplied permits for a request of this scope.
+	 *
+	 * @return <tt>true</tt> if a permit has been acquired, which must be
+	 *         returned by {@link #release(Semaphore)}, <tt>false</tt> if the
+	 *         request is to be sent without a permit.
+	 */
+	public boolean acquire(Semaphore permits)
+		throws InterruptedException
+	{
+		if (held.get() > 0) {
+			if (!permits.tryAcquire()) {
+				return false;
+			}
+		}
+		else {
+			while (!permits.tryAcquire(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (held.get() > 0) {
+					// another request of this scope got a permit, do not wait for it
+					return false;
+				}
+			}
+		}
+		held.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Returns a permit that has been acquired by {@link #acquire(Semaphore)}.
+	 */
+	public void release(Semaphore permits) {
+		held.decrementAndGet();
+		permits.release();
+	}
+
+	/**
+	 * Wraps the results of a request so that its permit is returned once the
+	 * results have been consumed or closed.
+	 */
+	public <E, X extends Exception> CloseableIteration<E, X> releaseOnClose(
+			CloseableIteration<? extends E, ? extends X> result, Semaphore permits)
+	{
+		return new PermitReleasingIteration<E, X>(result, permits);
+	}
+
+	private class PermitReleasingIteration<E, X extends Exception> extends IterationWrapper<E, X> {
+
+		private final Semaphore permits;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		public PermitReleasingIteration(CloseableIteration<? extends E, ? extends X> iter, Semaphore permits) {
+			super(iter);
+			this.permits = permits;
+		}
+
+		@Override
+		public boolean hasNext()
+			throws X
+		{
+			if (isClosed()) {
+				return false;
+			}
+			boolean result = super.hasNext();
+			if (!result) {
+				close();
+			}
+			return result;
+		}
+
+		@Override
+		protected void handleClose()
+			throws X
+		{
+			try {
+				super.handleClose();
+			}
+			finally {
+				if (released.compareAndSet(false, true)) {
+					release(permits);
+				}
+			}
+		}
+	}
+}
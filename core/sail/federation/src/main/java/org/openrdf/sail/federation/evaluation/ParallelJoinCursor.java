@@ -38,6 +38,8 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 	 * Constants *
 	 *-----------*/
 
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
 	private final EvaluationStrategy strategy;
 
 	private final TupleExpr rightArg;
@@ -54,8 +56,9 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 
 	private volatile boolean closed;
 
-	private final QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>> rightQueue = new QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>>(
-			1024);
+	private volatile boolean inline;
+
+	private final QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>> rightQueue;
 
 	/*--------------*
 	 * Constructors *
@@ -64,17 +67,42 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 	public ParallelJoinCursor(EvaluationStrategy strategy,
 			CloseableIteration<BindingSet, QueryEvaluationException> leftIter, TupleExpr rightArg)
 		throws QueryEvaluationException
+	{
+		this(strategy, leftIter, rightArg, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param queueCapacity
+	 *        The maximum number of evaluated right sides that is queued for the
+	 *        consuming thread. The evaluation thread blocks while the queue is
+	 *        full.
+	 */
+	public ParallelJoinCursor(EvaluationStrategy strategy,
+			CloseableIteration<BindingSet, QueryEvaluationException> leftIter, TupleExpr rightArg,
+			int queueCapacity)
+		throws QueryEvaluationException
 	{
 		super();
 		this.strategy = strategy;
 		this.leftIter = leftIter;
 		this.rightArg = rightArg;
+		this.rightQueue = new QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>>(
+				queueCapacity);
 	}
 
 	/*---------*
 	 * Methods *
 	 *---------*/
 
+	/**
+	 * Evaluates the right side in the thread that consumes this cursor, one
+	 * left binding set at a time, instead of running this cursor on a separate
+	 * thread. Used when no thread is available to run it on.
+	 */
+	public void runInline() {
+		inline = true;
+	}
+
 	public void run() {
 		evaluationThread = Thread.currentThread();
 		try {
@@ -102,10 +130,7 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 		throws QueryEvaluationException
 	{
 		BindingSet result = null;
-		while (rightIter != null || rightQueue.hasNext()) {
-			if (rightIter == null) {
-				rightIter = rightQueue.next();
-			}
+		while (rightIter != null || (rightIter = nextRightIter()) != null) {
 			if (rightIter.hasNext()) {
 				result = rightIter.next();
 				break;
@@ -119,6 +144,21 @@ public class ParallelJoinCursor extends LookAheadIteration<BindingSet, QueryEval
 		return result;
 	}
 
+	private CloseableIteration<BindingSet, QueryEvaluationException> nextRightIter()
+		throws QueryEvaluationException
+	{
+		if (inline) {
+			if (!closed && leftIter.hasNext()) {
+				return strategy.evaluate(rightArg, leftIter.next());
+			}
+			return null;
+		}
+		else if (rightQueue.hasNext()) {
+			return rightQueue.next();
+		}
+		return null;
+	}
+
 	@Override
 	public synchronized void handleClose()
 		throws QueryEvaluationException
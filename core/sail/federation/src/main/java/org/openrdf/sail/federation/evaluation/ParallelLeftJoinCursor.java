@@ -67,8 +67,9 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 
 	private volatile boolean closed;
 
-	private final QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>> rightQueue = new QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>>(
-			1024);
+	private volatile boolean inline;
+
+	private final QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>> rightQueue;
 
 	/*--------------*
 	 * Constructors *
@@ -76,25 +77,47 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 
 	public ParallelLeftJoinCursor(EvaluationStrategy strategy, LeftJoin join, BindingSet bindings)
 		throws QueryEvaluationException
+	{
+		this(strategy, join, bindings, ParallelJoinCursor.DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param queueCapacity
+	 *        The maximum number of evaluated right sides that is queued for the
+	 *        consuming thread. The evaluation thread blocks while the queue is
+	 *        full.
+	 */
+	public ParallelLeftJoinCursor(EvaluationStrategy strategy, LeftJoin join, BindingSet bindings,
+			int queueCapacity)
+		throws QueryEvaluationException
 	{
 		super();
 		this.strategy = strategy;
 		this.join = join;
 		this.scopeBindingNames = join.getBindingNames();
 		this.leftIter = strategy.evaluate(join.getLeftArg(), bindings);
+		this.rightQueue = new QueueCursor<CloseableIteration<BindingSet, QueryEvaluationException>>(
+				queueCapacity);
 	}
 
 	/*---------*
 	 * Methods *
 	 *---------*/
 
+	/**
+	 * Evaluates the right side in the thread that consumes this cursor, one
+	 * left binding set at a time, instead of running this cursor on a separate
+	 * thread. Used when no thread is available to run it on.
+	 */
+	public void runInline() {
+		inline = true;
+	}
+
 	public void run() {
 		evaluationThread = Thread.currentThread();
 		try {
-			ValueExpr condition = join.getCondition();
 			while (!closed && leftIter.hasNext()) {
-				BindingSet leftBindings = leftIter.next();
-				addToRightQueue(condition, leftBindings);
+				rightQueue.put(evaluateRight(leftIter.next()));
 			}
 		}
 		catch (RuntimeException e) {
@@ -112,17 +135,18 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 		}
 	}
 
-	private void addToRightQueue(ValueExpr condition, BindingSet leftBindings)
-		throws QueryEvaluationException, InterruptedException
+	private CloseableIteration<BindingSet, QueryEvaluationException> evaluateRight(BindingSet leftBindings)
+		throws QueryEvaluationException
 	{
 		CloseableIteration<BindingSet, QueryEvaluationException> result = strategy.evaluate(join.getRightArg(),
 				leftBindings);
+		ValueExpr condition = join.getCondition();
 		if (condition != null) {
 			result = new FilterCursor(result, condition, scopeBindingNames, strategy);
 		}
 		CloseableIteration<BindingSet, QueryEvaluationException> alt = new SingletonIteration<BindingSet, QueryEvaluationException>(
 				leftBindings);
-		rightQueue.put(new AlternativeCursor<BindingSet>(result, alt));
+		return new AlternativeCursor<BindingSet>(result, alt);
 	}
 
 	@Override
@@ -130,10 +154,7 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 		throws QueryEvaluationException
 	{
 		BindingSet result = null;
-		while (rightIter != null || rightQueue.hasNext()) {
-			if (rightIter == null) {
-				rightIter = rightQueue.next();
-			}
+		while (rightIter != null || (rightIter = nextRightIter()) != null) {
 			if (rightIter.hasNext()) {
 				result = rightIter.next();
 				break;
@@ -147,6 +168,21 @@ public class ParallelLeftJoinCursor extends LookAheadIteration<BindingSet, Query
 		return result;
 	}
 
+	private CloseableIteration<BindingSet, QueryEvaluationException> nextRightIter()
+		throws QueryEvaluationException
+	{
+		if (inline) {
+			if (!closed && leftIter.hasNext()) {
+				return evaluateRight(leftIter.next());
+			}
+			return null;
+		}
+		else if (rightQueue.hasNext()) {
+			return rightQueue.next();
+		}
+		return null;
+	}
+
 	@Override
 	public synchronized void handleClose()
 		throws QueryEvaluationException
@@ -33,6 +33,7 @@ import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.util.RepositoryConnectionUtil;
+import org.openrdf.sail.federation.SourceSelectionCache;
 
 /**
  * Remove StatementPatterns that have no statements.
@@ -45,9 +46,22 @@ public class EmptyPatternOptimizer extends QueryModelVisitorBase<RepositoryExcep
 
 	private final Collection<? extends RepositoryConnection> members;
 
+	private final SourceSelectionCache cache;
+
 	public EmptyPatternOptimizer(Collection<? extends RepositoryConnection> members) {
+		this(members, null);
+	}
+
+	/**
+	 * @param cache
+	 *        Remembers the result of earlier probes, may be <tt>null</tt>.
+	 */
+	public EmptyPatternOptimizer(Collection<? extends RepositoryConnection> members,
+			SourceSelectionCache cache)
+	{
 		super();
 		this.members = members;
+		this.cache = cache;
 	}
 
 	public void optimize(TupleExpr query, Dataset dataset, BindingSet bindings) {
@@ -68,13 +82,24 @@ public class EmptyPatternOptimizer extends QueryModelVisitorBase<RepositoryExcep
 		Value obj = node.getObjectVar().getValue();
 		Resource[] ctx = getContexts(node.getContextVar());
 		for (RepositoryConnection member : members) {
-			if (!RepositoryConnectionUtil.isHasStatementOptimized(member) || member.hasStatement(subj, pred, obj, true, ctx)) {
+			if (hasStatement(member, subj, pred, obj, ctx)) {
 				return;
 			}
 		}
 		node.replaceWith(new EmptySet());
 	}
 
+	private boolean hasStatement(RepositoryConnection member, Resource subj, URI pred, Value obj,
+			Resource[] ctx)
+		throws RepositoryException
+	{
+		if (cache != null) {
+			return cache.hasStatement(member, subj, pred, obj, ctx);
+		}
+		return !RepositoryConnectionUtil.isHasStatementOptimized(member)
+				|| member.hasStatement(subj, pred, obj, true, ctx);
+	}
+
 	private Resource[] getContexts(Var var) {
 		return (var == null || !var.hasValue()) ? new Resource[0] : new Resource[] { (Resource)var.getValue() };
 	}
@@ -16,8 +16,13 @@
  */
 package org.openrdf.sail.federation.optimizers;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+
 import org.openrdf.query.algebra.BinaryTupleOperator;
 import org.openrdf.query.algebra.EmptySet;
 import org.openrdf.query.algebra.Join;
@@ -28,6 +33,8 @@ import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.sail.federation.SourceSelectionCache;
 import org.openrdf.sail.federation.algebra.NaryJoin;
 
 /**
@@ -42,6 +49,28 @@ public class EvaluationStatistics {
 
 	private final Object lock = new Object();
 
+	private final Collection<? extends RepositoryConnection> members;
+
+	private final SourceSelectionCache cache;
+
+	public EvaluationStatistics() {
+		this(null, null);
+	}
+
+	/**
+	 * Scales the estimated cardinality of statement patterns by the fraction of
+	 * members that are known to contain them.
+	 * 
+	 * @param cache
+	 *        Remembers which members contain a pattern, may be <tt>null</tt>.
+	 */
+	public EvaluationStatistics(Collection<? extends RepositoryConnection> members,
+			SourceSelectionCache cache)
+	{
+		this.members = members;
+		this.cache = cache;
+	}
+
 	public double getCardinality(TupleExpr expr) {
 		synchronized (lock) {
 			if (calculator == null) {
@@ -53,6 +82,9 @@ public class EvaluationStatistics {
 	}
 
 	protected CardinalityCalculator createCardinalityCalculator() {
+		if (cache != null && !members.isEmpty()) {
+			return new SourceCardinalityCalculator(members, cache);
+		}
 		return new CardinalityCalculator();
 	}
 
@@ -154,4 +186,39 @@ public class EvaluationStatistics {
 			cardinality = cost;
 		}
 	}
+
+	/*-----------------------------------------*
+	 * Inner class SourceCardinalityCalculator *
+	 *-----------------------------------------*/
+
+	private static class SourceCardinalityCalculator extends CardinalityCalculator {
+
+		private final Collection<? extends RepositoryConnection> members;
+
+		private final SourceSelectionCache cache;
+
+		public SourceCardinalityCalculator(Collection<? extends RepositoryConnection> members,
+				SourceSelectionCache cache)
+		{
+			super();
+			this.members = members;
+			this.cache = cache;
+		}
+
+		@Override
+		protected double getCardinality(StatementPattern pattern) {
+			double result = super.getCardinality(pattern);
+			Resource subj = (Resource)pattern.getSubjectVar().getValue();
+			URI pred = (URI)pattern.getPredicateVar().getValue();
+			Value obj = pattern.getObjectVar().getValue();
+			Var ctxVar = pattern.getContextVar();
+			Resource[] ctx = (ctxVar == null || !ctxVar.hasValue()) ? new Resource[0]
+					: new Resource[] { (Resource)ctxVar.getValue() };
+			int sources = cache.countKnownSources(members, subj, pred, obj, ctx);
+			if (sources >= 0) {
+				result = result * sources / members.size();
+			}
+			return result;
+		}
+	}
 }
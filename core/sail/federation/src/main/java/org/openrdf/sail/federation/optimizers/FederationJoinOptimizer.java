@@ -48,6 +48,7 @@ import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.util.RepositoryConnectionUtil;
 import org.openrdf.sail.federation.PrefixHashSet;
+import org.openrdf.sail.federation.SourceSelectionCache;
 import org.openrdf.sail.federation.algebra.NaryJoin;
 import org.openrdf.sail.federation.algebra.OwnedTupleExpr;
 
@@ -69,15 +70,28 @@ public class FederationJoinOptimizer extends QueryModelVisitorBase<RepositoryExc
 
 	private final boolean distinct;
 
+	private final SourceSelectionCache cache;
+
 	private Dataset dataset;
 
 	public FederationJoinOptimizer(Collection<? extends RepositoryConnection> members, boolean distinct,
 			PrefixHashSet localSpace)
+	{
+		this(members, distinct, localSpace, null);
+	}
+
+	/**
+	 * @param cache
+	 *        Remembers the result of earlier probes, may be <tt>null</tt>.
+	 */
+	public FederationJoinOptimizer(Collection<? extends RepositoryConnection> members, boolean distinct,
+			PrefixHashSet localSpace, SourceSelectionCache cache)
 	{
 		super();
 		this.members = members;
 		this.localSpace = localSpace;
 		this.distinct = distinct;
+		this.cache = cache;
 	}
 
 	private static Map<Resource, List<RepositoryConnection>> createContextToMemberMap(
@@ -372,7 +386,9 @@ public class FederationJoinOptimizer extends QueryModelVisitorBase<RepositoryExc
 						result = null;
 						break;
 					}
-					if (member.hasStatement(subj, pred, obj, true, ctx)) {
+					boolean found = cache == null ? member.hasStatement(subj, pred, obj, true, ctx)
+							: cache.hasStatement(member, subj, pred, obj, ctx);
+					if (found) {
 						if (result == null) {
 							result = member;
 						}
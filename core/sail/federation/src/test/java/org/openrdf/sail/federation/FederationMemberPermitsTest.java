@@ -0,0 +1,112 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Semaphore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Tests that a member permit is held until the results of a request have been
+ * consumed or closed.
+ */
+public class FederationMemberPermitsTest {
+
+	private SailRepository member;
+
+	private SailRepository repo;
+
+	private Federation federation;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		member = new SailRepository(new MemoryStore());
+		member.initialize();
+		RepositoryConnection con = member.getConnection();
+		try {
+			con.add(RDFS.RESOURCE, RDF.TYPE, RDFS.CLASS);
+			con.add(RDFS.CLASS, RDF.TYPE, RDFS.CLASS);
+		}
+		finally {
+			con.close();
+		}
+		federation = new Federation();
+		federation.setMaxMemberConcurrency(1);
+		federation.addMember(member);
+		repo = new SailRepository(federation);
+		repo.initialize();
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		repo.shutDown();
+	}
+
+	@Test
+	public void testPermitHeldUntilClosed()
+		throws Exception
+	{
+		Semaphore permits = federation.getMemberPermits(member);
+		RepositoryConnection con = repo.getConnection();
+		try {
+			RepositoryResult<Statement> result = con.getStatements(null, RDF.TYPE, null, false);
+			try {
+				assertTrue(result.hasNext());
+				assertEquals(0, permits.availablePermits());
+
+				// a second request of the same connection does not wait for the
+				// permit of the first one
+				RepositoryResult<Statement> nested = con.getStatements(null, RDF.TYPE, RDFS.CLASS, false);
+				try {
+					assertEquals(2, nested.asList().size());
+				}
+				finally {
+					nested.close();
+				}
+				assertEquals(0, permits.availablePermits());
+			}
+			finally {
+				result.close();
+			}
+			assertEquals(1, permits.availablePermits());
+
+			// consuming all results returns the permit as well
+			assertEquals(2, con.getStatements(null, RDF.TYPE, null, false).asList().size());
+			assertEquals(1, permits.availablePermits());
+		}
+		finally {
+			con.close();
+		}
+	}
+}
@@ -100,6 +100,9 @@ public class FederationQueryTest {
 
 	private RepositoryConnection con;
 
+	/** a federation with a single thread and a single request per member */
+	private RepositoryConnection boundedCon;
+
 	private RepositoryConnection reference;
 
 	private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
@@ -116,10 +119,17 @@ public class FederationQueryTest {
 	public void test()
 		throws OpenRDFException
 	{
-		assertQuery(pattern);
+		assertQuery(con, pattern);
+	}
+
+	@Test
+	public void testBounded()
+		throws OpenRDFException
+	{
+		assertQuery(boundedCon, pattern);
 	}
 
-	private void assertQuery(String qry)
+	private void assertQuery(RepositoryConnection con, String qry)
 		throws OpenRDFException
 	{
 		TupleQueryResult expected = reference.prepareTupleQuery(SPARQL, WHERE + qry).evaluate();
@@ -137,11 +147,23 @@ public class FederationQueryTest {
 		Federation federation = new Federation();
 		SailRepository repo = new SailRepository(federation);
 		repo.initialize();
-		federation.addMember(createMember("1"));
-		federation.addMember(createMember("2"));
-		federation.addMember(createMember("3"));
+		List<Repository> members = Arrays.asList(createMember("1"), createMember("2"), createMember("3"));
+		for (Repository member : members) {
+			federation.addMember(member);
+		}
 		federation.setLocalPropertySpace(Arrays.asList("urn:schema:b:", "urn:schema:d:"));
 		con = repo.getConnection();
+		Federation bounded = new Federation();
+		bounded.setMaxThreads(1);
+		bounded.setQueueCapacity(1);
+		bounded.setMaxMemberConcurrency(1);
+		SailRepository boundedRepo = new SailRepository(bounded);
+		boundedRepo.initialize();
+		for (Repository member : members) {
+			bounded.addMember(member);
+		}
+		bounded.setLocalPropertySpace(Arrays.asList("urn:schema:b:", "urn:schema:d:"));
+		boundedCon = boundedRepo.getConnection();
 	}
 
 	private Repository createMember(String memberID)
@@ -0,0 +1,164 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.openrdf.query.QueryLanguage.SPARQL;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.base.RepositoryConnectionWrapper;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+public class SourceSelectionCacheTest {
+
+	private SailRepository member1;
+
+	private SailRepository member2;
+
+	private SailRepository repo;
+
+	private Federation federation;
+
+	private final URI person = RDFS.RESOURCE;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		member1 = new SailRepository(new MemoryStore());
+		member1.initialize();
+		member2 = new SailRepository(new MemoryStore());
+		member2.initialize();
+		federation = new Federation();
+		federation.addMember(member1);
+		federation.addMember(member2);
+		federation.setSourceSelectionCacheTTL(60000);
+		repo = new SailRepository(federation);
+		repo.initialize();
+		RepositoryConnection con = member1.getConnection();
+		try {
+			con.add(person, RDF.TYPE, RDFS.CLASS);
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		repo.shutDown();
+	}
+
+	@Test
+	public void testCachedProbes()
+		throws Exception
+	{
+		SourceSelectionCache cache = federation.getSourceSelectionCache();
+		RepositoryConnection con1 = member1.getConnection();
+		RepositoryConnection con2 = member2.getConnection();
+		try {
+			Iterable<RepositoryConnection> members = Arrays.asList(con1, con2);
+			assertEquals(-1, cache.countKnownSources(members, null, RDF.TYPE, RDFS.CLASS));
+			assertTrue(cache.hasStatement(con1, null, RDF.TYPE, RDFS.CLASS));
+			assertFalse(cache.hasStatement(con2, null, RDF.TYPE, RDFS.CLASS));
+			assertEquals(1, cache.countKnownSources(members, null, RDF.TYPE, RDFS.CLASS));
+
+			// the predicate summary rules out the pattern without probing it
+			ValueFactory vf = con2.getValueFactory();
+			URI unknown = vf.createURI("urn:test:unknown");
+			assertFalse(cache.hasStatement(con2, person, RDFS.LABEL, unknown));
+			assertEquals(0, cache.countKnownSources(Arrays.asList(con2), null, RDFS.LABEL, null));
+			assertEquals(0, cache.countKnownSources(Arrays.asList(con2), person, RDFS.LABEL, unknown));
+		}
+		finally {
+			con1.close();
+			con2.close();
+		}
+	}
+
+	@Test
+	public void testInvalidatedWhileProbing()
+		throws Exception
+	{
+		final SourceSelectionCache cache = federation.getSourceSelectionCache();
+		RepositoryConnection con2 = new RepositoryConnectionWrapper(member2, member2.getConnection()) {
+
+			@Override
+			public boolean hasStatement(Resource subj, URI pred, Value obj, boolean includeInferred,
+					Resource... contexts)
+				throws RepositoryException
+			{
+				boolean result = super.hasStatement(subj, pred, obj, includeInferred, contexts);
+				// a change that is reported after the member has been probed
+				cache.invalidate(member2);
+				return result;
+			}
+		};
+		try {
+			assertFalse(cache.hasStatement(con2, null, RDF.TYPE, RDFS.CLASS));
+			assertEquals(-1, cache.countKnownSources(Arrays.asList(con2), null, RDF.TYPE, RDFS.CLASS));
+		}
+		finally {
+			con2.close();
+		}
+	}
+
+	@Test
+	public void testInvalidatedOnChange()
+		throws Exception
+	{
+		String query = "SELECT * WHERE { ?s a <" + RDFS.CLASS + "> ; <" + RDFS.LABEL + "> ?label }";
+		RepositoryConnection con = repo.getConnection();
+		try {
+			assertEquals(0, Iterations.asList(con.prepareTupleQuery(SPARQL, query).evaluate()).size());
+
+			RepositoryConnection con2 = member2.getConnection();
+			try {
+				con2.add(person, RDF.TYPE, RDFS.CLASS);
+				con2.add(person, RDFS.LABEL, con2.getValueFactory().createLiteral("Resource"));
+			}
+			finally {
+				con2.close();
+			}
+
+			assertEquals(1, Iterations.asList(con.prepareTupleQuery(SPARQL, query).evaluate()).size());
+		}
+		finally {
+			con.close();
+		}
+	}
+}
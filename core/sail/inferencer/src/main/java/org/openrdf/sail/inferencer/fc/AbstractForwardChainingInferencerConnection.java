@@ -39,6 +39,13 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	 * Constants *
 	 *-----------*/
 
+	/**
+	 * The maximum number of removed statements for which the dependent inferred
+	 * statements are retracted incrementally. Larger removals recompute all
+	 * inferred statements from scratch.
+	 */
+	protected static final int MAX_INCREMENTAL_REMOVALS = 100000;
+
 	protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
 	/*-----------*
@@ -52,6 +59,19 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	 */
 	private boolean statementsRemoved;
 
+	/**
+	 * Contains the statements that have been reported by the base Sail as
+	 * removed, or null if their number exceeded
+	 * {@link #MAX_INCREMENTAL_REMOVALS}.
+	 */
+	private Model removedStatements;
+
+	/**
+	 * true while the inferred statements that depend on removed statements are
+	 * being retracted.
+	 */
+	private boolean retracting;
+
 	/**
 	 * Contains the statements that have been reported by the base Sail as
 	 */
@@ -76,7 +96,7 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	// Called by base sail
 	@Override
 	public void statementAdded(Statement st) {
-		if (statementsRemoved) {
+		if (statementsRemoved && removedStatements == null) {
 			// No need to record, starting from scratch anyway
 			return;
 		}
@@ -92,7 +112,26 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	// Called by base sail
 	@Override
 	public void statementRemoved(Statement st) {
-		statementsRemoved = true;
+		if (retracting) {
+			if (newStatements != null) {
+				newStatements.remove(st);
+			}
+			return;
+		}
+		if (!statementsRemoved) {
+			statementsRemoved = true;
+			removedStatements = createModel();
+		}
+		if (removedStatements != null) {
+			if (removedStatements.size() < MAX_INCREMENTAL_REMOVALS) {
+				removedStatements.add(st);
+				if (newStatements != null) {
+					newStatements.remove(st);
+				}
+				return;
+			}
+			removedStatements = null;
+		}
 		newStatements = null;
 	}
 
@@ -103,13 +142,29 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 		super.flushUpdates();
 
 		if (statementsRemoved) {
-			logger.debug("statements removed, starting inferencing from scratch");
-			clearInferred();
-			addAxiomStatements();
-
-			newStatements = new SailModel(getWrappedConnection(), true);
+			boolean retracted = false;
+			if (removedStatements != null) {
+				logger.debug("{} statements removed, retracting dependent inferred statements",
+						removedStatements.size());
+				retracting = true;
+				try {
+					retracted = retractInferred(removedStatements);
+				}
+				finally {
+					retracting = false;
+				}
+			}
+
+			if (!retracted) {
+				logger.debug("statements removed, starting inferencing from scratch");
+				clearInferred();
+				addAxiomStatements();
+
+				newStatements = new SailModel(getWrappedConnection(), true);
+			}
 
 			statementsRemoved = false;
+			removedStatements = null;
 		}
 
 		if(hasNewStatements()) {
@@ -150,6 +205,7 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 		super.rollback();
 
 		statementsRemoved = false;
+		removedStatements = null;
 		newStatements = null;
 	}
 
@@ -159,6 +215,25 @@ public abstract class AbstractForwardChainingInferencerConnection extends Infere
 	 */
 	protected abstract void addAxiomStatements() throws SailException;
 
+	/**
+	 * Removes the inferred statements that can no longer be derived now that
+	 * the given statements have been removed, so that inferred statements are
+	 * maintained incrementally instead of being recomputed from scratch.
+	 * Inferred statements that are added again are picked up by the next round
+	 * of inferencing. The default implementation returns <tt>false</tt>.
+	 * 
+	 * @param removed
+	 *        The statements that have been removed, some of which may have been
+	 *        added again.
+	 * @return <tt>true</tt> if the inferred statements have been retracted,
+	 *         <tt>false</tt> to recompute all inferred statements from scratch.
+	 */
+	protected boolean retractInferred(Model removed)
+		throws SailException
+	{
+		return false;
+	}
+
 	protected void doInferencing()
 		throws SailException
 	{
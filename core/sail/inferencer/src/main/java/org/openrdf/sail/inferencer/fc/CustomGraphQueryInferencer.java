@@ -16,9 +16,12 @@
  */
 package org.openrdf.sail.inferencer.fc;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,10 +38,20 @@ import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.UnsupportedQueryLanguageException;
+import org.openrdf.query.algebra.ArbitraryLengthPath;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.MultiProjection;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.ProjectionElem;
+import org.openrdf.query.algebra.Service;
+import org.openrdf.query.algebra.Slice;
 import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.ZeroLengthPath;
 import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
 import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.query.impl.MapBindingSet;
 import org.openrdf.query.parser.ParsedGraphQuery;
 import org.openrdf.query.parser.QueryParserUtil;
 import org.openrdf.rio.RDFHandlerException;
@@ -53,11 +66,25 @@ import org.openrdf.sail.inferencer.fc.config.CustomGraphQueryInferencerConfig;
 /**
  * A forward-chaining inferencer that infers new statements using a SPARQL or
  * SeRQL graph query.
+ * <p>
+ * Changes to statements that match none of the statement patterns of the rule
+ * query do not trigger any evaluation. Where the rule and matcher queries
+ * allow it, the inferred statements are only updated for the values that the
+ * changed statements bind to the variables of the constructed statements,
+ * instead of evaluating both queries against the whole store.
  * 
  * @author Dale Visser
  */
 public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 
+	/**
+	 * The maximum number of distinct bindings of the constructed statements'
+	 * variables for which the inferred statements are updated separately.
+	 * Larger changes evaluate the rule and matcher queries against the whole
+	 * store.
+	 */
+	private static final int MAX_DELTA_BINDINGS = 1000;
+
 	protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
 	private ParsedGraphQuery customQuery;
@@ -70,7 +97,28 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 
 	private final Collection<Value> watchObjects = new HashSet<Value>();
 
-	private boolean hasWatchValues;
+	/**
+	 * The statement patterns of the rule query.
+	 */
+	private final List<StatementPattern> rulePatterns = new ArrayList<StatementPattern>();
+
+	/**
+	 * true if any change may affect the result of the rule query, e.g. because
+	 * it contains a zero-length path.
+	 */
+	private boolean watchAll;
+
+	/**
+	 * The variables of the rule query that appear both in its statement
+	 * patterns and in its constructed statements.
+	 */
+	private final Set<String> headVars = new HashSet<String>();
+
+	/**
+	 * true if the inferred statements can be updated separately for each
+	 * binding of the {@link #headVars}.
+	 */
+	private boolean deltaSupported;
 
 	public CustomGraphQueryInferencer() {
 		super();
@@ -157,12 +205,30 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 			matcherQuery = CustomGraphQueryInferencerConfig.buildMatcherQueryFromRuleQuery(language, queryText);
 		}
 		customMatcher = QueryParserUtil.parseGraphQuery(language, matcherQuery, null);
+		rulePatterns.clear();
+		watchAll = false;
 		customQuery.getTupleExpr().visit(new QueryModelVisitorBase<SailException>() {
 
+			@Override
+			public void meet(ZeroLengthPath node) {
+				watchAll = true;
+			}
+
+			@Override
+			public void meet(ArbitraryLengthPath node)
+				throws SailException
+			{
+				if (node.getMinLength() == 0) {
+					watchAll = true;
+				}
+				super.meet(node);
+			}
+
 			@Override
 			public void meet(StatementPattern statement)
 				throws SailException
 			{
+				rulePatterns.add(statement);
 				Var var = statement.getSubjectVar();
 				if (var.hasValue()) {
 					watchSubjects.add(var.getValue());
@@ -177,7 +243,142 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 				}
 			}
 		});
-		hasWatchValues = !(watchSubjects.isEmpty() && watchPredicates.isEmpty() && watchObjects.isEmpty());
+		watchAll |= rulePatterns.isEmpty();
+
+		headVars.clear();
+		headVars.addAll(getHeadVars(customQuery.getTupleExpr()));
+		headVars.retainAll(getHeadVars(customMatcher.getTupleExpr()));
+		deltaSupported = !headVars.isEmpty() && isDeltaSupported(customQuery.getTupleExpr())
+				&& isDeltaSupported(customMatcher.getTupleExpr());
+	}
+
+	/**
+	 * Determines the variables of a graph query that appear both in its
+	 * statement patterns and in its constructed statements, and that are bound
+	 * in every solution of its WHERE clause. Binding other variables in advance
+	 * would add their values to solutions that do not bind them, e.g. those of
+	 * an OPTIONAL part that did not match or of another UNION branch.
+	 */
+	private static Set<String> getHeadVars(TupleExpr tupleExpr) {
+		final Set<String> projected = new HashSet<String>();
+		final Set<String> matched = new HashSet<String>();
+		final Set<String> assured = new HashSet<String>();
+		tupleExpr.visit(new QueryModelVisitorBase<RuntimeException>() {
+
+			@Override
+			public void meet(Projection node) {
+				assured.addAll(node.getArg().getAssuredBindingNames());
+				super.meet(node);
+			}
+
+			@Override
+			public void meet(MultiProjection node) {
+				assured.addAll(node.getArg().getAssuredBindingNames());
+				super.meet(node);
+			}
+
+			@Override
+			public void meet(ProjectionElem node) {
+				projected.add(node.getSourceName());
+			}
+
+			@Override
+			public void meet(Var node) {
+				if (!node.hasValue()) {
+					matched.add(node.getName());
+				}
+			}
+		});
+		projected.retainAll(matched);
+		projected.retainAll(assured);
+		return projected;
+	}
+
+	/**
+	 * Checks whether binding variables of the supplied graph query restricts
+	 * its results to exactly those with the bound values, which is not the case
+	 * for e.g. property paths, aggregates and sub-queries.
+	 */
+	private static boolean isDeltaSupported(TupleExpr tupleExpr) {
+		final boolean[] supported = { true };
+		tupleExpr.visit(new QueryModelVisitorBase<RuntimeException>() {
+
+			private int projections;
+
+			@Override
+			public void meet(Projection node) {
+				supported[0] &= ++projections == 1;
+				super.meet(node);
+			}
+
+			@Override
+			public void meet(MultiProjection node) {
+				supported[0] &= ++projections == 1;
+				super.meet(node);
+			}
+
+			@Override
+			public void meet(ArbitraryLengthPath node) {
+				supported[0] = false;
+			}
+
+			@Override
+			public void meet(ZeroLengthPath node) {
+				supported[0] = false;
+			}
+
+			@Override
+			public void meet(Group node) {
+				supported[0] = false;
+			}
+
+			@Override
+			public void meet(Slice node) {
+				supported[0] = false;
+			}
+
+			@Override
+			public void meet(Service node) {
+				supported[0] = false;
+			}
+		});
+		return supported[0];
+	}
+
+	/**
+	 * Matches a statement against a statement pattern of the rule query,
+	 * ignoring its context.
+	 * 
+	 * @return the bindings of the {@link #headVars} of the pattern, or
+	 *         <tt>null</tt> if the statement does not match the pattern.
+	 */
+	private BindingSet match(StatementPattern pattern, Statement st) {
+		MapBindingSet bindings = new MapBindingSet();
+		if (bind(pattern.getSubjectVar(), st.getSubject(), bindings)
+				&& bind(pattern.getPredicateVar(), st.getPredicate(), bindings)
+				&& bind(pattern.getObjectVar(), st.getObject(), bindings))
+		{
+			MapBindingSet result = new MapBindingSet();
+			for (String name : bindings.getBindingNames()) {
+				if (headVars.contains(name)) {
+					result.addBinding(name, bindings.getValue(name));
+				}
+			}
+			return result;
+		}
+		return null;
+	}
+
+	private boolean bind(Var var, Value value, MapBindingSet bindings) {
+		if (var.hasValue()) {
+			return var.getValue().equals(value);
+		}
+		Value bound = bindings.getValue(var.getName());
+		if (bound == null) {
+			bindings.addBinding(var.getName(), value);
+			return true;
+		}
+		return bound.equals(value);
 	}
 
 	@Override
@@ -246,6 +447,12 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 		 */
 		private boolean updateNeeded = false;
 
+		/**
+		 * The bindings for which the inferred statements need to be updated, or
+		 * <tt>null</tt> if they need to be updated for the whole store.
+		 */
+		private Set<BindingSet> deltaBindings = createDeltaBindings();
+
 		private Connection(InferencerConnection con) {
 			super(con);
 			con.addConnectionListener(this);
@@ -262,9 +469,29 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 		}
 
 		private void setUpdateNeededIfMatching(Statement statement) {
-			updateNeeded = hasWatchValues ? watchPredicates.contains(statement.getPredicate())
-					|| watchSubjects.contains(statement.getSubject())
-					|| watchObjects.contains(statement.getObject()) : true;
+			if (watchAll) {
+				updateNeeded = true;
+				deltaBindings = null;
+				return;
+			}
+			for (StatementPattern pattern : rulePatterns) {
+				BindingSet bindings = match(pattern, statement);
+				if (bindings != null) {
+					updateNeeded = true;
+					if (deltaBindings != null) {
+						if (bindings.size() == 0 || deltaBindings.size() >= MAX_DELTA_BINDINGS) {
+							deltaBindings = null;
+						}
+						else {
+							deltaBindings.add(bindings);
+						}
+					}
+				}
+			}
+		}
+
+		private Set<BindingSet> createDeltaBindings() {
+			return deltaSupported ? new HashSet<BindingSet>() : null;
 		}
 
 		@Override
@@ -273,6 +500,7 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 		{
 			super.rollback();
 			updateNeeded = false;
+			deltaBindings = createDeltaBindings();
 		}
 
 		@Override
@@ -284,19 +512,27 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 			Collection<Statement> forAddition = new HashSet<Statement>(256);
 			Resource[] contexts = new Resource[] { null };
 			while (updateNeeded) {
+				Collection<BindingSet> bindingSets = deltaBindings;
+				if (bindingSets == null) {
+					bindingSets = Collections.<BindingSet> singleton(EmptyBindingSet.getInstance());
+				}
+				// changes made below are picked up by the next iteration
+				updateNeeded = false;
+				deltaBindings = createDeltaBindings();
 				try {
-					// Determine which statements should be added and which should be
-					// removed
-					forRemoval.clear();
-					forAddition.clear();
-					buildDeltaSets(forRemoval, forAddition);
-					for (Statement st : forRemoval) {
-						removeInferredStatement(st.getSubject(), st.getPredicate(), st.getObject(), contexts);
-					}
-					for (Statement st : forAddition) {
-						addInferredStatement(st.getSubject(), st.getPredicate(), st.getObject(), contexts);
+					for (BindingSet bindings : bindingSets) {
+						// Determine which statements should be added and which should
+						// be removed
+						forRemoval.clear();
+						forAddition.clear();
+						buildDeltaSets(bindings, forRemoval, forAddition);
+						for (Statement st : forRemoval) {
+							removeInferredStatement(st.getSubject(), st.getPredicate(), st.getObject(), contexts);
+						}
+						for (Statement st : forAddition) {
+							addInferredStatement(st.getSubject(), st.getPredicate(), st.getObject(), contexts);
+						}
 					}
-					updateNeeded = false;
 				}
 				catch (RDFHandlerException e) {
 					Throwable cause = e.getCause();
@@ -314,11 +550,16 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 			}
 		}
 
-		private void buildDeltaSets(Collection<Statement> forRemoval, Collection<Statement> forAddition)
+		/**
+		 * Determines the inferred statements to remove and to add for the
+		 * supplied bindings of the variables of the constructed statements.
+		 */
+		private void buildDeltaSets(BindingSet bindings, Collection<Statement> forRemoval,
+				Collection<Statement> forAddition)
 			throws SailException, RDFHandlerException, QueryEvaluationException
 		{
-			evaluateIntoStatements(customMatcher, forRemoval);
-			evaluateIntoStatements(customQuery, forAddition);
+			evaluateIntoStatements(customMatcher, bindings, forRemoval);
+			evaluateIntoStatements(customQuery, bindings, forAddition);
 			logger.debug("existing virtual properties: {}", forRemoval.size());
 			logger.debug("new virtual properties: {}", forAddition.size());
 			Collection<Statement> inCommon = new HashSet<Statement>(forRemoval);
@@ -329,11 +570,12 @@ public class CustomGraphQueryInferencer extends NotifyingSailWrapper {
 			logger.debug("virtual properties to add: {}", forAddition.size());
 		}
 
-		private void evaluateIntoStatements(ParsedGraphQuery query, Collection<Statement> statements)
+		private void evaluateIntoStatements(ParsedGraphQuery query, BindingSet parentBindings,
+				Collection<Statement> statements)
 			throws SailException, RDFHandlerException, QueryEvaluationException
 		{
 			CloseableIteration<? extends BindingSet, QueryEvaluationException> bindingsIter = getWrappedConnection().evaluate(
-					query.getTupleExpr(), null, EmptyBindingSet.getInstance(), true);
+					query.getTupleExpr(), null, parentBindings, true);
 			try {
 				ValueFactory factory = getValueFactory();
 				while (bindingsIter.hasNext()) {
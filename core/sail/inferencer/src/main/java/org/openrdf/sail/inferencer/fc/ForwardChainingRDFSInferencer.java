@@ -16,6 +16,13 @@
  */
 package org.openrdf.sail.inferencer.fc;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.openrdf.sail.NotifyingSail;
 import org.openrdf.sail.Sail;
 import org.openrdf.sail.SailException;
@@ -29,6 +36,19 @@ import org.openrdf.sail.inferencer.InferencerConnection;
  * from their {@link Sail#getConnection()} method.
  */
 public class ForwardChainingRDFSInferencer extends AbstractForwardChainingInferencer {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Applies rules concurrently for all connections, created when first
+	 * needed.
+	 */
+	private ExecutorService ruleExecutor;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -45,13 +65,32 @@ public class ForwardChainingRDFSInferencer extends AbstractForwardChainingInfere
 	 * Methods *
 	 *---------*/
 
+	/**
+	 * Sets the maximum number of rules that are applied concurrently to the
+	 * statements that are new in an iteration, if there are enough of them. A
+	 * value of 1 applies all rules on the thread that commits. Defaults to the
+	 * number of available processors.
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism != this.parallelism && ruleExecutor != null) {
+			// connections that still use it apply their rules themselves
+			ruleExecutor.shutdown();
+			ruleExecutor = null;
+		}
+		this.parallelism = parallelism;
+	}
+
+	public synchronized int getParallelism() {
+		return parallelism;
+	}
+
 	@Override
 	public ForwardChainingRDFSInferencerConnection getConnection()
 		throws SailException
 	{
 		try {
 			InferencerConnection con = (InferencerConnection)super.getConnection();
-			return new ForwardChainingRDFSInferencerConnection(this, con);
+			return new ForwardChainingRDFSInferencerConnection(this, con, getRuleExecutor());
 		}
 		catch (ClassCastException e) {
 			throw new SailException(e.getMessage(), e);
@@ -77,4 +116,44 @@ public class ForwardChainingRDFSInferencer extends AbstractForwardChainingInfere
 			con.close();
 		}
 	}
+
+	@Override
+	public void shutDown()
+		throws SailException
+	{
+		try {
+			super.shutDown();
+		}
+		finally {
+			synchronized (this) {
+				if (ruleExecutor != null) {
+					ruleExecutor.shutdown();
+					ruleExecutor = null;
+				}
+			}
+		}
+	}
+
+	private synchronized ExecutorService getRuleExecutor() {
+		if (parallelism <= 1) {
+			return null;
+		}
+		if (ruleExecutor == null) {
+			ThreadFactory threadFactory = new ThreadFactory() {
+
+				private final AtomicInteger threadCount = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "rdfs-inferencer-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60L,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+			executor.allowCoreThreadTimeOut(true);
+			ruleExecutor = executor;
+		}
+		return ruleExecutor;
+	}
 }
@@ -16,7 +16,17 @@
  */
 package org.openrdf.sail.inferencer.fc;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
 import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.UnionIteration;
 import info.aduna.text.ASCIIUtil;
 
 import org.openrdf.model.Model;
@@ -40,10 +50,32 @@ import org.openrdf.sail.inferencer.InferencerConnection;
  */
 class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInferencerConnection
 {
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The minimum number of new statements in an iteration for which the rules
+	 * are applied concurrently.
+	 */
+	private static final int MIN_CONCURRENT_STATEMENTS = 1000;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
 
+	/**
+	 * Applies rules concurrently, or null if rules are applied one after the
+	 * other.
+	 */
+	private final ExecutorService ruleExecutor;
+
+	/**
+	 * Guards against rules opening statement iterations on the wrapped
+	 * connection concurrently.
+	 */
+	private final Object matchLock = new Object();
+
 	private Model newThisIteration;
 
 	/**
@@ -61,12 +93,39 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 	 */
 	private int[] ruleCount = new int[RDFSRules.RULECOUNT];
 
+	/**
+	 * The removed statements that rules are still matched against while the
+	 * statements depending on them are being retracted, or null.
+	 */
+	private Model retracted;
+
+	/**
+	 * The statements that may no longer be derivable, which are ignored when
+	 * checking whether a statement is still derivable, or null.
+	 */
+	private Model unsupported;
+
+	/**
+	 * Collects the statements that rules produce on the current thread while
+	 * they are applied concurrently or while the statements depending on
+	 * removed statements are being retracted, or null if rules add the
+	 * statements they produce.
+	 */
+	private final ThreadLocal<Model> derived = new ThreadLocal<Model>();
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
 
 	public ForwardChainingRDFSInferencerConnection(Sail sail, InferencerConnection con) {
+		this(sail, con, null);
+	}
+
+	public ForwardChainingRDFSInferencerConnection(Sail sail, InferencerConnection con,
+			ExecutorService ruleExecutor)
+	{
 		super(sail, con);
+		this.ruleExecutor = ruleExecutor;
 	}
 
 	/*---------*
@@ -91,63 +150,63 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 		// RDF axiomatic triples (from RDF Semantics, section 3.1):
 
-		addInferredStatement(RDF.TYPE, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.SUBJECT, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.PREDICATE, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.OBJECT, RDF.TYPE, RDF.PROPERTY);
+		inferStatement(RDF.TYPE, RDF.TYPE, RDF.PROPERTY);
+		inferStatement(RDF.SUBJECT, RDF.TYPE, RDF.PROPERTY);
+		inferStatement(RDF.PREDICATE, RDF.TYPE, RDF.PROPERTY);
+		inferStatement(RDF.OBJECT, RDF.TYPE, RDF.PROPERTY);
 
-		addInferredStatement(RDF.FIRST, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.REST, RDF.TYPE, RDF.PROPERTY);
-		addInferredStatement(RDF.VALUE, RDF.TYPE, RDF.PROPERTY);
+		inferStatement(RDF.FIRST, RDF.TYPE, RDF.PROPERTY);
+		inferStatement(RDF.REST, RDF.TYPE, RDF.PROPERTY);
+		inferStatement(RDF.VALUE, RDF.TYPE, RDF.PROPERTY);
 
-		addInferredStatement(RDF.NIL, RDF.TYPE, RDF.LIST);
+		inferStatement(RDF.NIL, RDF.TYPE, RDF.LIST);
 
 		// RDFS axiomatic triples (from RDF Semantics, section 4.1):
 
-		addInferredStatement(RDF.TYPE, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDFS.DOMAIN, RDFS.DOMAIN, RDF.PROPERTY);
-		addInferredStatement(RDFS.RANGE, RDFS.DOMAIN, RDF.PROPERTY);
-		addInferredStatement(RDFS.SUBPROPERTYOF, RDFS.DOMAIN, RDF.PROPERTY);
-		addInferredStatement(RDFS.SUBCLASSOF, RDFS.DOMAIN, RDFS.CLASS);
-		addInferredStatement(RDF.SUBJECT, RDFS.DOMAIN, RDF.STATEMENT);
-		addInferredStatement(RDF.PREDICATE, RDFS.DOMAIN, RDF.STATEMENT);
-		addInferredStatement(RDF.OBJECT, RDFS.DOMAIN, RDF.STATEMENT);
-		addInferredStatement(RDFS.MEMBER, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDF.FIRST, RDFS.DOMAIN, RDF.LIST);
-		addInferredStatement(RDF.REST, RDFS.DOMAIN, RDF.LIST);
-		addInferredStatement(RDFS.SEEALSO, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDFS.ISDEFINEDBY, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDFS.COMMENT, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDFS.LABEL, RDFS.DOMAIN, RDFS.RESOURCE);
-		addInferredStatement(RDF.VALUE, RDFS.DOMAIN, RDFS.RESOURCE);
-
-		addInferredStatement(RDF.TYPE, RDFS.RANGE, RDFS.CLASS);
-		addInferredStatement(RDFS.DOMAIN, RDFS.RANGE, RDFS.CLASS);
-		addInferredStatement(RDFS.RANGE, RDFS.RANGE, RDFS.CLASS);
-		addInferredStatement(RDFS.SUBPROPERTYOF, RDFS.RANGE, RDF.PROPERTY);
-		addInferredStatement(RDFS.SUBCLASSOF, RDFS.RANGE, RDFS.CLASS);
-		addInferredStatement(RDF.SUBJECT, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDF.PREDICATE, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDF.OBJECT, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDFS.MEMBER, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDF.FIRST, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDF.REST, RDFS.RANGE, RDF.LIST);
-		addInferredStatement(RDFS.SEEALSO, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDFS.ISDEFINEDBY, RDFS.RANGE, RDFS.RESOURCE);
-		addInferredStatement(RDFS.COMMENT, RDFS.RANGE, RDFS.LITERAL);
-		addInferredStatement(RDFS.LABEL, RDFS.RANGE, RDFS.LITERAL);
-		addInferredStatement(RDF.VALUE, RDFS.RANGE, RDFS.RESOURCE);
-
-		addInferredStatement(RDF.ALT, RDFS.SUBCLASSOF, RDFS.CONTAINER);
-		addInferredStatement(RDF.BAG, RDFS.SUBCLASSOF, RDFS.CONTAINER);
-		addInferredStatement(RDF.SEQ, RDFS.SUBCLASSOF, RDFS.CONTAINER);
-		addInferredStatement(RDFS.CONTAINERMEMBERSHIPPROPERTY, RDFS.SUBCLASSOF, RDF.PROPERTY);
-
-		addInferredStatement(RDFS.ISDEFINEDBY, RDFS.SUBPROPERTYOF, RDFS.SEEALSO);
-
-		addInferredStatement(RDF.XMLLITERAL, RDF.TYPE, RDFS.DATATYPE);
-		addInferredStatement(RDF.XMLLITERAL, RDFS.SUBCLASSOF, RDFS.LITERAL);
-		addInferredStatement(RDFS.DATATYPE, RDFS.SUBCLASSOF, RDFS.CLASS);
+		inferStatement(RDF.TYPE, RDFS.DOMAIN, RDFS.RESOURCE);
+		inferStatement(RDFS.DOMAIN, RDFS.DOMAIN, RDF.PROPERTY);
+		inferStatement(RDFS.RANGE, RDFS.DOMAIN, RDF.PROPERTY);
+		inferStatement(RDFS.SUBPROPERTYOF, RDFS.DOMAIN, RDF.PROPERTY);
+		inferStatement(RDFS.SUBCLASSOF, RDFS.DOMAIN, RDFS.CLASS);
+		inferStatement(RDF.SUBJECT, RDFS.DOMAIN, RDF.STATEMENT);
+		inferStatement(RDF.PREDICATE, RDFS.DOMAIN, RDF.STATEMENT);
+		inferStatement(RDF.OBJECT, RDFS.DOMAIN, RDF.STATEMENT);
+		inferStatement(RDFS.MEMBER, RDFS.DOMAIN, RDFS.RESOURCE);
+		inferStatement(RDF.FIRST, RDFS.DOMAIN, RDF.LIST);
+		inferStatement(RDF.REST, RDFS.DOMAIN, RDF.LIST);
+		inferStatement(RDFS.SEEALSO, RDFS.DOMAIN, RDFS.RESOURCE);
+		inferStatement(RDFS.ISDEFINEDBY, RDFS.DOMAIN, RDFS.RESOURCE);
+		inferStatement(RDFS.COMMENT, RDFS.DOMAIN, RDFS.RESOURCE);
+		inferStatement(RDFS.LABEL, RDFS.DOMAIN, RDFS.RESOURCE);
+		inferStatement(RDF.VALUE, RDFS.DOMAIN, RDFS.RESOURCE);
+
+		inferStatement(RDF.TYPE, RDFS.RANGE, RDFS.CLASS);
+		inferStatement(RDFS.DOMAIN, RDFS.RANGE, RDFS.CLASS);
+		inferStatement(RDFS.RANGE, RDFS.RANGE, RDFS.CLASS);
+		inferStatement(RDFS.SUBPROPERTYOF, RDFS.RANGE, RDF.PROPERTY);
+		inferStatement(RDFS.SUBCLASSOF, RDFS.RANGE, RDFS.CLASS);
+		inferStatement(RDF.SUBJECT, RDFS.RANGE, RDFS.RESOURCE);
+		inferStatement(RDF.PREDICATE, RDFS.RANGE, RDFS.RESOURCE);
+		inferStatement(RDF.OBJECT, RDFS.RANGE, RDFS.RESOURCE);
+		inferStatement(RDFS.MEMBER, RDFS.RANGE, RDFS.RESOURCE);
+		inferStatement(RDF.FIRST, RDFS.RANGE, RDFS.RESOURCE);
+		inferStatement(RDF.REST, RDFS.RANGE, RDF.LIST);
+		inferStatement(RDFS.SEEALSO, RDFS.RANGE, RDFS.RESOURCE);
+		inferStatement(RDFS.ISDEFINEDBY, RDFS.RANGE, RDFS.RESOURCE);
+		inferStatement(RDFS.COMMENT, RDFS.RANGE, RDFS.LITERAL);
+		inferStatement(RDFS.LABEL, RDFS.RANGE, RDFS.LITERAL);
+		inferStatement(RDF.VALUE, RDFS.RANGE, RDFS.RESOURCE);
+
+		inferStatement(RDF.ALT, RDFS.SUBCLASSOF, RDFS.CONTAINER);
+		inferStatement(RDF.BAG, RDFS.SUBCLASSOF, RDFS.CONTAINER);
+		inferStatement(RDF.SEQ, RDFS.SUBCLASSOF, RDFS.CONTAINER);
+		inferStatement(RDFS.CONTAINERMEMBERSHIPPROPERTY, RDFS.SUBCLASSOF, RDF.PROPERTY);
+
+		inferStatement(RDFS.ISDEFINEDBY, RDFS.SUBPROPERTYOF, RDFS.SEEALSO);
+
+		inferStatement(RDF.XMLLITERAL, RDF.TYPE, RDFS.DATATYPE);
+		inferStatement(RDF.XMLLITERAL, RDFS.SUBCLASSOF, RDFS.LITERAL);
+		inferStatement(RDFS.DATATYPE, RDFS.SUBCLASSOF, RDFS.CLASS);
 	}
 
 	@Override
@@ -171,10 +230,287 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		logger.debug("---end of statistics:---");
 	}
 
+	/**
+	 * Retracts inferred statements using the delete and rederive approach. All
+	 * inferred statements other than the axioms that can be derived from the
+	 * removed statements, directly or through other affected statements, may
+	 * no longer be derivable. Those that can still be derived in a single step
+	 * from statements that are not affected, or from statements found to be
+	 * derivable this way, are kept and the others are removed.
+	 */
+	@Override
+	protected boolean retractInferred(Model removed)
+		throws SailException
+	{
+		Model removedNow = createModel();
+		for (Statement st : removed) {
+			if (!exists(st.getSubject(), st.getPredicate(), st.getObject(), true, st.getContext())) {
+				removedNow.add(st);
+			}
+		}
+
+		Model axioms = createModel();
+		Model overdeleted = createModel();
+		retracted = removedNow;
+		try {
+			derived.set(axioms);
+			addAxiomStatements();
+
+			Model delta = removedNow;
+			while (!delta.isEmpty()) {
+				Model derivedNow = createModel();
+				derived.set(derivedNow);
+				newThisIteration = delta;
+				for (int i = 0; i < RDFSRules.RULECOUNT; i++) {
+					applyRuleInternal(i);
+				}
+				delta = createModel();
+				for (Statement st : derivedNow) {
+					if (!axioms.contains(st) && !overdeleted.contains(st) && isInferredOnly(st)) {
+						overdeleted.add(st);
+						delta.add(st);
+					}
+				}
+			}
+		}
+		finally {
+			newThisIteration = null;
+			derived.remove();
+			retracted = null;
+		}
+
+		// removed statements may be derivable themselves
+		Model candidates = createModel();
+		candidates.addAll(overdeleted);
+		candidates.addAll(removedNow);
+
+		// keep the statements that are derivable from statements that are not
+		// affected by the removal, until no more of them are found
+		Model supported = createModel();
+		unsupported = candidates;
+		try {
+			boolean found = true;
+			while (found) {
+				found = false;
+				for (Statement st : candidates) {
+					if (isDerivable(st.getSubject(), st.getPredicate(), st.getObject())) {
+						supported.add(st);
+						found = true;
+					}
+				}
+				candidates.removeAll(supported);
+			}
+		}
+		finally {
+			unsupported = null;
+		}
+
+		int nofRetracted = 0;
+		for (Statement st : overdeleted) {
+			if (candidates.contains(st)) {
+				removeInferredStatement(st.getSubject(), st.getPredicate(), st.getObject());
+				nofRetracted++;
+			}
+		}
+		logger.debug("retracted {} of {} affected inferred statements", nofRetracted, overdeleted.size());
+
+		for (Statement st : removedNow) {
+			if (supported.contains(st)) {
+				addInferredStatement(st.getSubject(), st.getPredicate(), st.getObject());
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks whether any of the RDFS rules derives the statement from a single
+	 * combination of statements in the store.
+	 */
+	private boolean isDerivable(Resource subj, URI pred, Value obj)
+		throws SailException
+	{
+		// xxx aaa yyy && aaa rdfs:subPropertyOf bbb --> xxx bbb yyy
+		if (existsJoin(null, RDFS.SUBPROPERTYOF, pred, false, subj, null, obj)) {
+			return true;
+		}
+
+		if (RDF.TYPE.equals(pred)) {
+			// xxx aaa yyy --> aaa rdf:type rdf:Property
+			if (RDF.PROPERTY.equals(obj) && subj instanceof URI && exists(null, (URI)subj, null, true)) {
+				return true;
+			}
+			// xxx aaa yyy --> xxx rdf:type rdfs:Resource
+			// xxx aaa uuu --> uuu rdf:type rdfs:Resource
+			if (RDFS.RESOURCE.equals(obj) && (exists(subj, null, null, true) || exists(null, null, subj, true))) {
+				return true;
+			}
+			// xxx rdf:_* yyy --> rdf:_* rdf:type rdfs:ContainerMembershipProperty
+			if (RDFS.CONTAINERMEMBERSHIPPROPERTY.equals(obj) && subj instanceof URI
+					&& subj.stringValue().startsWith(RDF.NAMESPACE + "_") && exists(null, (URI)subj, null, true))
+			{
+				return true;
+			}
+			// xxx aaa yyy && aaa rdfs:domain zzz --> xxx rdf:type zzz
+			// xxx aaa uuu && aaa rdfs:range zzz --> uuu rdf:type zzz
+			// xxx rdfs:subClassOf yyy && aaa rdf:type xxx --> aaa rdf:type yyy
+			return existsJoin(null, RDFS.DOMAIN, obj, false, subj, null, null)
+					|| existsJoin(null, RDFS.RANGE, obj, false, null, null, subj)
+					|| existsJoin(null, RDFS.SUBCLASSOF, obj, false, subj, RDF.TYPE, null);
+		}
+		else if (RDFS.SUBPROPERTYOF.equals(pred)) {
+			// aaa rdf:type rdf:Property --> aaa rdfs:subPropertyOf aaa
+			if (subj.equals(obj) && exists(subj, RDF.TYPE, RDF.PROPERTY, true)) {
+				return true;
+			}
+			// xxx rdf:type rdfs:ContainerMembershipProperty --> xxx
+			// rdfs:subPropertyOf rdfs:member
+			if (RDFS.MEMBER.equals(obj) && exists(subj, RDF.TYPE, RDFS.CONTAINERMEMBERSHIPPROPERTY, true)) {
+				return true;
+			}
+			// aaa rdfs:subPropertyOf bbb && bbb rdfs:subPropertyOf ccc --> aaa
+			// rdfs:subPropertyOf ccc
+			return existsJoin(subj, RDFS.SUBPROPERTYOF, null, true, null, RDFS.SUBPROPERTYOF, obj);
+		}
+		else if (RDFS.SUBCLASSOF.equals(pred)) {
+			// xxx rdf:type rdfs:Class --> xxx rdfs:subClassOf rdfs:Resource
+			if (RDFS.RESOURCE.equals(obj) && exists(subj, RDF.TYPE, RDFS.CLASS, true)) {
+				return true;
+			}
+			// xxx rdf:type rdfs:Class --> xxx rdfs:subClassOf xxx
+			if (subj.equals(obj) && exists(subj, RDF.TYPE, RDFS.CLASS, true)) {
+				return true;
+			}
+			// xxx rdf:type rdfs:Datatype --> xxx rdfs:subClassOf rdfs:Literal
+			if (RDFS.LITERAL.equals(obj) && exists(subj, RDF.TYPE, RDFS.DATATYPE, true)) {
+				return true;
+			}
+			// xxx rdfs:subClassOf yyy && yyy rdfs:subClassOf zzz --> xxx
+			// rdfs:subClassOf zzz
+			return existsJoin(subj, RDFS.SUBCLASSOF, null, true, null, RDFS.SUBCLASSOF, obj);
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether a statement matching the given pattern exists for any
+	 * statement matching the schema pattern. The subject (or, if
+	 * <tt>joinOnObject</tt>, the object) of the schema statement takes the
+	 * place of the predicate of the pattern if that is null, otherwise of its
+	 * subject if that is null, otherwise of its object.
+	 */
+	private boolean existsJoin(Resource schemaSubj, URI schemaPred, Value schemaObj, boolean joinOnObject,
+			Resource subj, URI pred, Value obj)
+		throws SailException
+	{
+		CloseableIteration<? extends Statement, SailException> iter = getWrappedConnection().getStatements(
+				schemaSubj, schemaPred, schemaObj, true);
+		try {
+			while (iter.hasNext()) {
+				Statement schema = iter.next();
+				if (isUnsupported(schema)) {
+					continue;
+				}
+				Value joinValue = joinOnObject ? schema.getObject() : schema.getSubject();
+				boolean found;
+				if (pred == null) {
+					found = joinValue instanceof URI && exists(subj, (URI)joinValue, obj, true);
+				}
+				else if (subj == null) {
+					found = joinValue instanceof Resource && exists((Resource)joinValue, pred, obj, true);
+				}
+				else {
+					found = exists(subj, pred, joinValue, true);
+				}
+				if (found) {
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	private boolean isInferredOnly(Statement st)
+		throws SailException
+	{
+		Resource subj = st.getSubject();
+		URI pred = st.getPredicate();
+		Value obj = st.getObject();
+		return exists(subj, pred, obj, true) && !exists(subj, pred, obj, false);
+	}
+
+	private boolean exists(Resource subj, URI pred, Value obj, boolean includeInferred, Resource... contexts)
+		throws SailException
+	{
+		CloseableIteration<? extends Statement, SailException> iter = getWrappedConnection().getStatements(
+				subj, pred, obj, includeInferred, contexts);
+		try {
+			while (iter.hasNext()) {
+				if (!isUnsupported(iter.next())) {
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	private boolean isUnsupported(Statement st) {
+		return unsupported != null && unsupported.contains(st);
+	}
+
+	/**
+	 * Adds an axiom or a statement produced by a rule, or collects it while
+	 * statements are being retracted.
+	 */
+	private boolean inferStatement(Resource subj, URI pred, Value obj)
+		throws SailException
+	{
+		Model model = derived.get();
+		if (model != null) {
+			model.add(subj, pred, obj);
+			return false;
+		}
+		return addInferredStatement(subj, pred, obj);
+	}
+
+	/**
+	 * Gets the statements that a rule is matched against, including the
+	 * removed statements while statements are being retracted.
+	 */
+	@SuppressWarnings("unchecked")
+	private CloseableIteration<? extends Statement, SailException> match(Resource subj, URI pred, Value obj)
+		throws SailException
+	{
+		CloseableIteration<? extends Statement, SailException> iter;
+		synchronized (matchLock) {
+			iter = getWrappedConnection().getStatements(subj, pred, obj, true);
+		}
+		if (retracted == null) {
+			return iter;
+		}
+		return new UnionIteration<Statement, SailException>(iter,
+				new CloseableIteratorIteration<Statement, SailException>(
+						retracted.filter(subj, pred, obj).iterator()));
+	}
+
 	@Override
 	protected int applyRules(Model iteration) throws SailException
 	{
 		newThisIteration = iteration;
+		if (ruleExecutor != null && iteration.size() >= MIN_CONCURRENT_STATEMENTS) {
+			try {
+				return applyRulesConcurrently();
+			}
+			finally {
+				newThisIteration = null;
+			}
+		}
 		int nofInferred = 0;
 		nofInferred += applyRule(RDFSRules.Rdf1);
 		nofInferred += applyRule(RDFSRules.Rdfs2_1);
@@ -201,6 +537,98 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		return nofInferred;
 	}
 
+	/**
+	 * Applies the rules that need to be checked concurrently. The rules only
+	 * read from the wrapped connection, which is not modified until all of them
+	 * are done, and the statements they produce are then added in rule order.
+	 * Statements produced by one rule are therefore not seen by the other rules
+	 * until the next iteration, which the rule triggers as usual.
+	 */
+	private int applyRulesConcurrently()
+		throws SailException
+	{
+		List<FutureTask<Model>> tasks = new ArrayList<FutureTask<Model>>(RDFSRules.RULECOUNT);
+		for (int i = 0; i < RDFSRules.RULECOUNT; i++) {
+			if (!checkRule[i]) {
+				tasks.add(null);
+				continue;
+			}
+			final int rule = i;
+			FutureTask<Model> task = new FutureTask<Model>(new Callable<Model>() {
+
+				public Model call()
+					throws SailException
+				{
+					Model model = createModel();
+					derived.set(model);
+					try {
+						applyRuleInternal(rule);
+					}
+					finally {
+						derived.remove();
+					}
+					return model;
+				}
+			});
+			tasks.add(task);
+			try {
+				ruleExecutor.execute(task);
+			}
+			catch (RejectedExecutionException e) {
+				// the executor has been shut down
+				task.run();
+			}
+		}
+
+		// wait for all rules before adding anything to the wrapped connection
+		List<Model> results = new ArrayList<Model>(RDFSRules.RULECOUNT);
+		Throwable failure = null;
+		for (FutureTask<Model> task : tasks) {
+			Model result = null;
+			if (task != null) {
+				try {
+					result = task.get();
+				}
+				catch (ExecutionException e) {
+					failure = failure == null ? e.getCause() : failure;
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					failure = failure == null ? e : failure;
+				}
+			}
+			results.add(result);
+		}
+		if (failure instanceof SailException) {
+			throw (SailException)failure;
+		}
+		else if (failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		}
+		else if (failure instanceof Error) {
+			throw (Error)failure;
+		}
+		else if (failure != null) {
+			throw new SailException(failure);
+		}
+
+		int nofInferred = 0;
+		for (int rule = 0; rule < RDFSRules.RULECOUNT; rule++) {
+			Model result = results.get(rule);
+			if (result != null) {
+				int nofRuleInferred = 0;
+				for (Statement st : result) {
+					if (addInferredStatement(st.getSubject(), st.getPredicate(), st.getObject())) {
+						nofRuleInferred++;
+					}
+				}
+				updateTriggers(rule, nofRuleInferred);
+				nofInferred += nofRuleInferred;
+			}
+		}
+		return nofInferred;
+	}
+
 	@Override
 	protected Model prepareIteration() {
 		for (int i = 0; i < RDFSRules.RULECOUNT; i++) {
@@ -328,7 +756,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		Model iter = newThisIteration.filter(null, null, null);
 
 		for(Statement st : iter) {
-			boolean added = addInferredStatement(st.getPredicate(), RDF.TYPE, RDF.PROPERTY);
+			boolean added = inferStatement(st.getPredicate(), RDF.TYPE, RDF.PROPERTY);
 
 			if (added) {
 				nofInferred++;
@@ -351,14 +779,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			URI aaa = nt.getPredicate();
 
 			CloseableIteration<? extends Statement, SailException> t1Iter;
-			t1Iter = getWrappedConnection().getStatements(aaa, RDFS.DOMAIN, null, true);
+			t1Iter = match(aaa, RDFS.DOMAIN, null);
 
 			while (t1Iter.hasNext()) {
 				Statement t1 = t1Iter.next();
 
 				Value zzz = t1.getObject();
 				if (zzz instanceof Resource) {
-					boolean added = addInferredStatement(xxx, RDF.TYPE, zzz);
+					boolean added = inferStatement(xxx, RDF.TYPE, zzz);
 					if (added) {
 						nofInferred++;
 					}
@@ -384,13 +812,13 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (aaa instanceof URI && zzz instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, (URI)aaa, null, true);
+				t1Iter = match(null, (URI)aaa, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Resource xxx = t1.getSubject();
-					boolean added = addInferredStatement(xxx, RDF.TYPE, zzz);
+					boolean added = inferStatement(xxx, RDF.TYPE, zzz);
 					if (added) {
 						nofInferred++;
 					}
@@ -416,14 +844,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (uuu instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(aaa, RDFS.RANGE, null, true);
+				t1Iter = match(aaa, RDFS.RANGE, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Value zzz = t1.getObject();
 					if (zzz instanceof Resource) {
-						boolean added = addInferredStatement((Resource)uuu, RDF.TYPE, zzz);
+						boolean added = inferStatement((Resource)uuu, RDF.TYPE, zzz);
 						if (added) {
 							nofInferred++;
 						}
@@ -449,14 +877,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (aaa instanceof URI && zzz instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, (URI)aaa, null, true);
+				t1Iter = match(null, (URI)aaa, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Value uuu = t1.getObject();
 					if (uuu instanceof Resource) {
-						boolean added = addInferredStatement((Resource)uuu, RDF.TYPE, zzz);
+						boolean added = inferStatement((Resource)uuu, RDF.TYPE, zzz);
 						if (added) {
 							nofInferred++;
 						}
@@ -479,7 +907,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		Model iter = newThisIteration.filter(null, null, null);
 
 		for(Statement st : iter) {
-			boolean added = addInferredStatement(st.getSubject(), RDF.TYPE, RDFS.RESOURCE);
+			boolean added = inferStatement(st.getSubject(), RDF.TYPE, RDFS.RESOURCE);
 			if (added) {
 				nofInferred++;
 			}
@@ -499,7 +927,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Value uuu = st.getObject();
 			if (uuu instanceof Resource) {
-				boolean added = addInferredStatement((Resource)uuu, RDF.TYPE, RDFS.RESOURCE);
+				boolean added = inferStatement((Resource)uuu, RDF.TYPE, RDFS.RESOURCE);
 				if (added) {
 					nofInferred++;
 				}
@@ -524,14 +952,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (bbb instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements((Resource)bbb, RDFS.SUBPROPERTYOF, null, true);
+				t1Iter = match((Resource)bbb, RDFS.SUBPROPERTYOF, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Value ccc = t1.getObject();
 					if (ccc instanceof Resource) {
-						boolean added = addInferredStatement(aaa, RDFS.SUBPROPERTYOF, ccc);
+						boolean added = inferStatement(aaa, RDFS.SUBPROPERTYOF, ccc);
 						if (added) {
 							nofInferred++;
 						}
@@ -560,13 +988,13 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (ccc instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, RDFS.SUBPROPERTYOF, bbb, true);
+				t1Iter = match(null, RDFS.SUBPROPERTYOF, bbb);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Resource aaa = t1.getSubject();
-					boolean added = addInferredStatement(aaa, RDFS.SUBPROPERTYOF, ccc);
+					boolean added = inferStatement(aaa, RDFS.SUBPROPERTYOF, ccc);
 					if (added) {
 						nofInferred++;
 					}
@@ -588,7 +1016,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
-			boolean added = addInferredStatement(xxx, RDFS.SUBPROPERTYOF, xxx);
+			boolean added = inferStatement(xxx, RDFS.SUBPROPERTYOF, xxx);
 			if (added) {
 				nofInferred++;
 			}
@@ -611,14 +1039,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			Value yyy = nt.getObject();
 
 			CloseableIteration<? extends Statement, SailException> t1Iter;
-			t1Iter = getWrappedConnection().getStatements(aaa, RDFS.SUBPROPERTYOF, null, true);
+			t1Iter = match(aaa, RDFS.SUBPROPERTYOF, null);
 
 			while (t1Iter.hasNext()) {
 				Statement t1 = t1Iter.next();
 
 				Value bbb = t1.getObject();
 				if (bbb instanceof URI) {
-					boolean added = addInferredStatement(xxx, (URI)bbb, yyy);
+					boolean added = inferStatement(xxx, (URI)bbb, yyy);
 					if (added) {
 						nofInferred++;
 					}
@@ -644,7 +1072,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (aaa instanceof URI && bbb instanceof URI) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, (URI)aaa, null, true);
+				t1Iter = match(null, (URI)aaa, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
@@ -652,7 +1080,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 					Resource xxx = t1.getSubject();
 					Value yyy = t1.getObject();
 
-					boolean added = addInferredStatement(xxx, (URI)bbb, yyy);
+					boolean added = inferStatement(xxx, (URI)bbb, yyy);
 					if (added) {
 						nofInferred++;
 					}
@@ -675,7 +1103,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
 
-			boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, RDFS.RESOURCE);
+			boolean added = inferStatement(xxx, RDFS.SUBCLASSOF, RDFS.RESOURCE);
 			if (added) {
 				nofInferred++;
 			}
@@ -698,14 +1126,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (yyy instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, RDF.TYPE, xxx, true);
+				t1Iter = match(null, RDF.TYPE, xxx);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Resource aaa = t1.getSubject();
 
-					boolean added = addInferredStatement(aaa, RDF.TYPE, yyy);
+					boolean added = inferStatement(aaa, RDF.TYPE, yyy);
 					if (added) {
 						nofInferred++;
 					}
@@ -731,7 +1159,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (xxx instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements((Resource)xxx, RDFS.SUBCLASSOF, null, true);
+				t1Iter = match((Resource)xxx, RDFS.SUBCLASSOF, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
@@ -739,7 +1167,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 					Value yyy = t1.getObject();
 
 					if (yyy instanceof Resource) {
-						boolean added = addInferredStatement(aaa, RDF.TYPE, yyy);
+						boolean added = inferStatement(aaa, RDF.TYPE, yyy);
 						if (added) {
 							nofInferred++;
 						}
@@ -763,7 +1191,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
 
-			boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, xxx);
+			boolean added = inferStatement(xxx, RDFS.SUBCLASSOF, xxx);
 			if (added) {
 				nofInferred++;
 			}
@@ -787,7 +1215,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (yyy instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements((Resource)yyy, RDFS.SUBCLASSOF, null, true);
+				t1Iter = match((Resource)yyy, RDFS.SUBCLASSOF, null);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
@@ -795,7 +1223,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 					Value zzz = t1.getObject();
 
 					if (zzz instanceof Resource) {
-						boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, zzz);
+						boolean added = inferStatement(xxx, RDFS.SUBCLASSOF, zzz);
 						if (added) {
 							nofInferred++;
 						}
@@ -823,14 +1251,14 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 
 			if (zzz instanceof Resource) {
 				CloseableIteration<? extends Statement, SailException> t1Iter;
-				t1Iter = getWrappedConnection().getStatements(null, RDFS.SUBCLASSOF, yyy, true);
+				t1Iter = match(null, RDFS.SUBCLASSOF, yyy);
 
 				while (t1Iter.hasNext()) {
 					Statement t1 = t1Iter.next();
 
 					Resource xxx = t1.getSubject();
 
-					boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, zzz);
+					boolean added = inferStatement(xxx, RDFS.SUBCLASSOF, zzz);
 					if (added) {
 						nofInferred++;
 					}
@@ -854,7 +1282,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
 
-			boolean added = addInferredStatement(xxx, RDFS.SUBPROPERTYOF, RDFS.MEMBER);
+			boolean added = inferStatement(xxx, RDFS.SUBPROPERTYOF, RDFS.MEMBER);
 			if (added) {
 				nofInferred++;
 			}
@@ -874,7 +1302,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 		for(Statement st : iter) {
 			Resource xxx = st.getSubject();
 
-			boolean added = addInferredStatement(xxx, RDFS.SUBCLASSOF, RDFS.LITERAL);
+			boolean added = inferStatement(xxx, RDFS.SUBCLASSOF, RDFS.LITERAL);
 			if (added) {
 				nofInferred++;
 			}
@@ -899,7 +1327,7 @@ class ForwardChainingRDFSInferencerConnection extends AbstractForwardChainingInf
 			String predURI = predNode.toString();
 
 			if (predURI.startsWith(prefix) && isValidPredicateNumber(predURI.substring(prefix.length()))) {
-				boolean added = addInferredStatement(predNode, RDF.TYPE, RDFS.CONTAINERMEMBERSHIPPROPERTY);
+				boolean added = inferStatement(predNode, RDF.TYPE, RDFS.CONTAINERMEMBERSHIPPROPERTY);
 				if (added) {
 					nofInferred++;
 				}
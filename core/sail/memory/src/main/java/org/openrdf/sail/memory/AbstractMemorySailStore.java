@@ -0,0 +1,851 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.aduna.concurrent.locks.Lock;
+import info.aduna.concurrent.locks.ReadPrefReadWriteLockManager;
+import info.aduna.concurrent.locks.ReadWriteLockManager;
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.IsolationLevel;
+import org.openrdf.IsolationLevels;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.sail.SailConflictException;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.base.BackingSailSource;
+import org.openrdf.sail.base.SailDataset;
+import org.openrdf.sail.base.SailSink;
+import org.openrdf.sail.base.SailSource;
+
+/**
+ * The snapshot isolation and transaction handling that the
+ * {@link MemorySailStore} and the {@link CompactSailStore} share. Statements
+ * are versioned with the snapshots since and till which they are visible;
+ * subclasses decide how statements of type <tt>S</tt> are stored and found.
+ * 
+ * @param <S>
+ *        The type that refers to a stored statement.
+ */
+abstract class AbstractMemorySailStore<S> implements LoggingSailStore {
+
+	/**
+	 * The maximum number of changes that a sink buffers until it is flushed.
+	 * Sinks with more changes acquire the exclusive transaction lock and write
+	 * them directly.
+	 */
+	static final int MAX_BUFFERED_OPERATIONS = 1024;
+
+	final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Identifies the current snapshot.
+	 */
+	volatile int currentSnapshot;
+
+	/**
+	 * Store for namespace prefix info.
+	 */
+	final MemNamespaceStore namespaceStore = new MemNamespaceStore();
+
+	/**
+	 * Lock manager used to give the snapshot cleanup thread exclusive access to
+	 * the statements.
+	 */
+	final ReadWriteLockManager statementLockManager;
+
+	/**
+	 * Lock manager used to coordinate transactions. Transactions that buffer
+	 * their changes hold the read lock while they commit, transactions that
+	 * write their changes directly hold the write lock until they are closed.
+	 */
+	final ReentrantReadWriteLock txnLockManager = new ReentrantReadWriteLock();
+
+	/**
+	 * Semaphore used to serialize the modifications of the statements and the
+	 * commits of concurrent transactions.
+	 */
+	final Object writeSemaphore = new Object();
+
+	/**
+	 * The last pending snapshot that has been assigned to a transaction.
+	 * Pending snapshots count down from {@link Integer#MAX_VALUE}, so that they
+	 * are higher than any committed snapshot and the changes of uncommitted
+	 * transactions are invisible to readers.
+	 */
+	private final AtomicInteger lastPendingSnapshot = new AtomicInteger(Integer.MAX_VALUE - 1);
+
+	/**
+	 * The changes of the transaction that holds the write lock of the
+	 * {@link #txnLockManager}, shared with the other sinks of its thread.
+	 */
+	private final ThreadLocal<PendingChanges> threadChanges = new ThreadLocal<PendingChanges>();
+
+	/**
+	 * The sinks of the current thread that have been prepared and are
+	 * committed together.
+	 */
+	private final ThreadLocal<CommitGroup> commitGroup = new ThreadLocal<CommitGroup>();
+
+	/**
+	 * The log to which committed changes are appended, or null if changes are
+	 * not logged.
+	 */
+	volatile ChangeLog changeLog;
+
+	protected AbstractMemorySailStore(boolean debug) {
+		statementLockManager = new ReadPrefReadWriteLockManager(debug);
+	}
+
+	@Override
+	public void setChangeLog(ChangeLog changeLog) {
+		synchronized (writeSemaphore) {
+			this.changeLog = changeLog;
+		}
+	}
+
+	@Override
+	public SailDataset[] rotateChangeLog(File target)
+		throws IOException, SailException
+	{
+		synchronized (writeSemaphore) {
+			changeLog.rotate(target);
+			SailDataset explicit = createDataset(true, currentSnapshot);
+			try {
+				return new SailDataset[] { explicit, createDataset(false, currentSnapshot) };
+			}
+			catch (SailException e) {
+				explicit.close();
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	public SailSource getExplicitSailSource() {
+		return new MemorySailSource(true);
+	}
+
+	@Override
+	public SailSource getInferredSailSource() {
+		return new MemorySailSource(false);
+	}
+
+	Lock openStatementsReadLock()
+		throws SailException
+	{
+		try {
+			return statementLockManager.getReadLock();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * Creates a dataset of the latest committed state, which does not block
+	 * the snapshot cleanup.
+	 */
+	protected abstract SailDataset createDataset(boolean explicit)
+		throws SailException;
+
+	/**
+	 * Creates a dataset of the specified snapshot, which holds the statement
+	 * read lock until it is closed.
+	 */
+	protected abstract SailDataset createDataset(boolean explicit, int snapshot)
+		throws SailException;
+
+	/**
+	 * Iterates over all versions of the statements that match the specified
+	 * pattern, regardless of the snapshots in which they are visible.
+	 */
+	protected abstract CloseableIteration<S, SailException> getStatementVersions(Resource subj, URI pred,
+			Value obj, Boolean explicit, Resource... contexts);
+
+	/**
+	 * Stores a new statement that is visible from the specified snapshot on.
+	 * Must be called while holding the {@link #writeSemaphore}.
+	 */
+	protected abstract S addStatement(Resource subj, URI pred, Value obj, Resource context,
+			boolean explicit, int sinceSnapshot);
+
+	protected abstract Statement getStatement(S st);
+
+	protected abstract boolean isExplicit(S st);
+
+	protected abstract int getSinceSnapshot(S st);
+
+	protected abstract void setSinceSnapshot(S st, int snapshot);
+
+	protected abstract int getTillSnapshot(S st);
+
+	protected abstract void setTillSnapshot(S st, int snapshot);
+
+	/**
+	 * Called after the specified number of statements has become invisible in
+	 * any later snapshot, by a commit that removed them or a rollback that
+	 * discarded them.
+	 */
+	protected void statementsExpired(int count) {
+	}
+
+	protected abstract void scheduleSnapshotCleanup();
+
+	private final class MemorySailSource extends BackingSailSource {
+
+		private final boolean explicit;
+
+		public MemorySailSource(boolean explicit) {
+			this.explicit = explicit;
+		}
+
+		@Override
+		public SailSink sink(IsolationLevel level)
+			throws SailException
+		{
+			return new MemorySailSink(explicit, level.isCompatibleWith(IsolationLevels.SERIALIZABLE));
+		}
+
+		@Override
+		public SailDataset dataset(IsolationLevel level)
+			throws SailException
+		{
+			if (level.isCompatibleWith(IsolationLevels.SNAPSHOT_READ)) {
+				return createDataset(explicit, currentSnapshot);
+			}
+			else {
+				return createDataset(explicit);
+			}
+		}
+	}
+
+	/**
+	 * A change of a {@link MemorySailSink} that is applied to the statements
+	 * when the sink is flushed.
+	 */
+	private abstract class SinkOperation {
+
+		abstract void apply(PendingChanges txn)
+			throws SailException;
+	}
+
+	/**
+	 * The prepared sinks of one thread, such as the explicit and inferred sinks
+	 * of a connection commit. The sinks that are flushed first hand their
+	 * changes to the group, the last one commits the changes of all of them in
+	 * a single snapshot.
+	 */
+	private final class CommitGroup {
+
+		/**
+		 * The sinks that have been prepared, but not flushed or closed yet.
+		 */
+		final Set<MemorySailSink> prepared = new HashSet<MemorySailSink>();
+
+		/**
+		 * The buffered changes of the sinks that have been flushed.
+		 */
+		final List<SinkOperation> operations = new ArrayList<SinkOperation>();
+
+		/**
+		 * The number of holds of the write lock of the {@link #txnLockManager}
+		 * that flushed sinks have handed over to this group.
+		 */
+		int writeLocks;
+	}
+
+	/**
+	 * The uncommitted changes of a transaction, which are marked with a
+	 * pending snapshot until they become visible together.
+	 */
+	private final class PendingChanges {
+
+		final int pendingSnapshot;
+
+		/**
+		 * The statements that have been added and are not yet committed.
+		 */
+		final List<S> added = new ArrayList<S>();
+
+		/**
+		 * The statements that have been deprecated and are not yet committed.
+		 */
+		final List<S> deprecated = new ArrayList<S>();
+
+		PendingChanges(int pendingSnapshot) {
+			this.pendingSnapshot = pendingSnapshot;
+		}
+
+		/**
+		 * Checks whether the supplied statement is part of the state that this
+		 * transaction operates on: the latest committed state plus its own
+		 * changes.
+		 */
+		boolean isVisible(S st) {
+			int since = getSinceSnapshot(st);
+			int till = getTillSnapshot(st);
+			return (since <= currentSnapshot || since == pendingSnapshot) && till > currentSnapshot
+					&& till != pendingSnapshot;
+		}
+
+		/**
+		 * Makes the changes visible in a new snapshot, after they have been
+		 * appended to the change log. Must be called while holding the
+		 * {@link #writeSemaphore}.
+		 */
+		void commit()
+			throws SailException
+		{
+			ChangeLog log = changeLog;
+			if (log != null) {
+				try {
+					// only the net changes, a statement that was both added and
+					// removed by this transaction is not logged at all
+					for (S st : deprecated) {
+						if (getSinceSnapshot(st) != pendingSnapshot) {
+							log.deprecate(getStatement(st), isExplicit(st));
+						}
+					}
+					for (S st : added) {
+						if (getTillSnapshot(st) != pendingSnapshot) {
+							log.approve(getStatement(st), isExplicit(st));
+						}
+					}
+					log.commit();
+				}
+				catch (SailException e) {
+					log.rollback();
+					throw e;
+				}
+			}
+			int snapshot = currentSnapshot + 1;
+			for (S st : added) {
+				setSinceSnapshot(st, snapshot);
+			}
+			for (S st : deprecated) {
+				setTillSnapshot(st, snapshot);
+			}
+			statementsExpired(deprecated.size());
+			added.clear();
+			deprecated.clear();
+			currentSnapshot = snapshot;
+		}
+
+		/**
+		 * Reverts the uncommitted changes. Must be called while holding the
+		 * {@link #writeSemaphore}.
+		 */
+		void rollback() {
+			ChangeLog log = changeLog;
+			if (log != null) {
+				try {
+					// drop the namespace changes that have been logged
+					log.rollback();
+				}
+				catch (SailException e) {
+					logger.error("Failed to discard uncommitted changes from the change log", e);
+				}
+			}
+			for (S st : deprecated) {
+				setTillSnapshot(st, Integer.MAX_VALUE);
+			}
+			for (S st : added) {
+				// invisible in any snapshot and removed by the next cleanup; the
+				// pending since-snapshot is kept so that concurrent readers never
+				// see the statement as visible
+				setTillSnapshot(st, 0);
+			}
+			statementsExpired(added.size());
+			added.clear();
+			deprecated.clear();
+		}
+	}
+
+	private final class MemorySailSink implements SailSink {
+
+		private boolean explicit;
+
+		private final int serializable;
+
+		private final Lock txnStLock;
+
+		private Set<StatementPattern> observations;
+
+		/**
+		 * Flag indicating whether this sink holds the write lock of the
+		 * {@link #txnLockManager} and writes its changes directly.
+		 */
+		private boolean txnLock;
+
+		/**
+		 * The changes of the transaction of this thread to which this sink
+		 * writes directly, while it holds the write lock.
+		 */
+		private PendingChanges txn;
+
+		/**
+		 * The changes that are applied when this sink is flushed.
+		 */
+		private List<SinkOperation> operations = new ArrayList<SinkOperation>();
+
+		public MemorySailSink(boolean explicit, boolean serializable)
+			throws SailException
+		{
+			this.explicit = explicit;
+			if (serializable) {
+				this.serializable = currentSnapshot;
+			}
+			else {
+				this.serializable = Integer.MAX_VALUE;
+			}
+			txnStLock = openStatementsReadLock();
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			if (explicit) {
+				sb.append("explicit ");
+			}
+			else {
+				sb.append("inferred ");
+			}
+			if (txnLock) {
+				sb.append("snapshot ").append(txn.pendingSnapshot);
+			}
+			else {
+				sb.append(super.toString());
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public synchronized void prepare()
+			throws SailException
+		{
+			CommitGroup group = commitGroup.get();
+			if (group == null) {
+				group = new CommitGroup();
+				commitGroup.set(group);
+			}
+			group.prepared.add(this);
+
+			if (observations != null) {
+				// the observed state must not change until this sink is closed
+				acquireExclusiveTransactionLock();
+				validateObservations();
+			}
+		}
+
+		@Override
+		public synchronized void flush()
+			throws SailException
+		{
+			CommitGroup group = commitGroup.get();
+			boolean grouped = group != null && group.prepared.remove(this);
+			if (grouped && !group.prepared.isEmpty()) {
+				// the other prepared sinks of this thread are flushed next, the
+				// last one commits the changes of all of them
+				group.operations.addAll(operations);
+				operations = new ArrayList<SinkOperation>();
+				if (txnLock) {
+					group.writeLocks++;
+					txnLock = false;
+					txn = null;
+				}
+				return;
+			}
+
+			List<SinkOperation> changes = operations;
+			operations = new ArrayList<SinkOperation>();
+			int writeLocks = 0;
+			if (grouped) {
+				commitGroup.remove();
+				group.operations.addAll(changes);
+				changes = group.operations;
+				writeLocks = group.writeLocks;
+			}
+			try {
+				commit(changes);
+			}
+			finally {
+				for (int i = 0; i < writeLocks; i++) {
+					releaseWriteLock();
+				}
+			}
+			scheduleSnapshotCleanup();
+		}
+
+		@Override
+		public synchronized void close() {
+			operations = new ArrayList<SinkOperation>();
+			CommitGroup group = commitGroup.get();
+			if (group != null && group.prepared.remove(this) && group.prepared.isEmpty()) {
+				// the commit has been abandoned, discard the changes of the
+				// sinks that have been flushed already
+				commitGroup.remove();
+				if (group.writeLocks > 0) {
+					synchronized (writeSemaphore) {
+						threadChanges.get().rollback();
+					}
+					for (int i = 0; i < group.writeLocks; i++) {
+						releaseWriteLock();
+					}
+				}
+			}
+			if (txnLock) {
+				synchronized (writeSemaphore) {
+					txn.rollback();
+				}
+				releaseWriteLock();
+				txnLock = false;
+				txn = null;
+			}
+			if (txnStLock != null) {
+				txnStLock.release();
+			}
+		}
+
+		@Override
+		public synchronized void setNamespace(final String prefix, final String name)
+			throws SailException
+		{
+			addOperation(new SinkOperation() {
+
+				public void apply(PendingChanges txn)
+					throws SailException
+				{
+					namespaceStore.setNamespace(prefix, name);
+					ChangeLog log = changeLog;
+					if (log != null) {
+						log.setNamespace(prefix, name);
+					}
+				}
+			});
+		}
+
+		@Override
+		public synchronized void removeNamespace(final String prefix)
+			throws SailException
+		{
+			addOperation(new SinkOperation() {
+
+				public void apply(PendingChanges txn)
+					throws SailException
+				{
+					namespaceStore.removeNamespace(prefix);
+					ChangeLog log = changeLog;
+					if (log != null) {
+						log.removeNamespace(prefix);
+					}
+				}
+			});
+		}
+
+		@Override
+		public synchronized void clearNamespaces()
+			throws SailException
+		{
+			addOperation(new SinkOperation() {
+
+				public void apply(PendingChanges txn)
+					throws SailException
+				{
+					namespaceStore.clear();
+					ChangeLog log = changeLog;
+					if (log != null) {
+						log.clearNamespaces();
+					}
+				}
+			});
+		}
+
+		@Override
+		public synchronized void observe(Resource subj, URI pred, Value obj, Resource... contexts)
+			throws SailException
+		{
+			if (observations == null) {
+				observations = new HashSet<StatementPattern>();
+			}
+			if (contexts == null) {
+				observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred), new Var("o", obj),
+						new Var("g", null)));
+			}
+			else if (contexts.length == 0) {
+				observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred), new Var("o", obj)));
+			}
+			else {
+				for (Resource ctx : contexts) {
+					observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred),
+							new Var("o", obj), new Var("g", ctx)));
+				}
+			}
+		}
+
+		@Override
+		public synchronized void clear(final Resource... contexts)
+			throws SailException
+		{
+			addOperation(new SinkOperation() {
+
+				public void apply(PendingChanges txn)
+					throws SailException
+				{
+					removeStatements(txn, null, null, null, contexts);
+				}
+			});
+		}
+
+		@Override
+		public synchronized void approve(final Resource subj, final URI pred, final Value obj,
+				final Resource ctx)
+			throws SailException
+		{
+			addOperation(new SinkOperation() {
+
+				public void apply(PendingChanges txn)
+					throws SailException
+				{
+					approveStatement(txn, subj, pred, obj, ctx);
+				}
+			});
+		}
+
+		@Override
+		public synchronized void deprecate(final Resource subj, final URI pred, final Value obj,
+				final Resource ctx)
+			throws SailException
+		{
+			addOperation(new SinkOperation() {
+
+				public void apply(PendingChanges txn)
+					throws SailException
+				{
+					removeStatements(txn, subj, pred, obj, ctx);
+				}
+			});
+		}
+
+		/**
+		 * Buffers the supplied change until this sink is flushed. Once more than
+		 * {@link #MAX_BUFFERED_OPERATIONS} changes have been buffered, this sink
+		 * acquires the exclusive transaction lock and writes its changes
+		 * directly.
+		 */
+		private void addOperation(SinkOperation operation)
+			throws SailException
+		{
+			if (!txnLock && operations.size() < MAX_BUFFERED_OPERATIONS) {
+				operations.add(operation);
+			}
+			else {
+				acquireExclusiveTransactionLock();
+				synchronized (writeSemaphore) {
+					operation.apply(txn);
+				}
+			}
+		}
+
+		private void acquireExclusiveTransactionLock()
+			throws SailException
+		{
+			if (!txnLock) {
+				boolean nested = txnLockManager.isWriteLockedByCurrentThread();
+				txnLockManager.writeLock().lock();
+				if (nested) {
+					// join the transaction of the other sinks of this thread
+					txn = threadChanges.get();
+				}
+				else {
+					txn = new PendingChanges(lastPendingSnapshot.decrementAndGet());
+					threadChanges.set(txn);
+				}
+				txnLock = true;
+
+				// write the buffered changes directly from now on
+				synchronized (writeSemaphore) {
+					for (SinkOperation buffered : operations) {
+						buffered.apply(txn);
+					}
+				}
+				operations.clear();
+			}
+		}
+
+		private void releaseWriteLock() {
+			txnLockManager.writeLock().unlock();
+			if (!txnLockManager.isWriteLockedByCurrentThread()) {
+				threadChanges.remove();
+			}
+		}
+
+		/**
+		 * Applies the supplied changes and commits them in a new snapshot. If
+		 * this thread holds the write lock of the {@link #txnLockManager}, the
+		 * changes that its sinks have written directly are committed as well.
+		 */
+		private void commit(List<SinkOperation> changes)
+			throws SailException
+		{
+			if (txnLockManager.isWriteLockedByCurrentThread()) {
+				PendingChanges txn = threadChanges.get();
+				synchronized (writeSemaphore) {
+					try {
+						for (SinkOperation operation : changes) {
+							operation.apply(txn);
+						}
+						txn.commit();
+					}
+					finally {
+						txn.rollback();
+					}
+				}
+			}
+			else if (!changes.isEmpty()) {
+				txnLockManager.readLock().lock();
+				try {
+					synchronized (writeSemaphore) {
+						PendingChanges txn = new PendingChanges(lastPendingSnapshot.decrementAndGet());
+						try {
+							for (SinkOperation operation : changes) {
+								operation.apply(txn);
+							}
+							txn.commit();
+						}
+						finally {
+							txn.rollback();
+						}
+					}
+				}
+				finally {
+					txnLockManager.readLock().unlock();
+				}
+			}
+		}
+
+		/**
+		 * Checks that none of the observed statements has been changed by a
+		 * transaction that committed after this serializable sink was created.
+		 */
+		private void validateObservations()
+			throws SailException
+		{
+			if (observations == null) {
+				return;
+			}
+			for (StatementPattern p : observations) {
+				Resource subj = (Resource)p.getSubjectVar().getValue();
+				URI pred = (URI)p.getPredicateVar().getValue();
+				Value obj = p.getObjectVar().getValue();
+				Var ctxVar = p.getContextVar();
+				Resource[] contexts;
+				if (ctxVar == null) {
+					contexts = new Resource[0];
+				}
+				else {
+					contexts = new Resource[] { (Resource)ctxVar.getValue() };
+				}
+				CloseableIteration<S, SailException> iter;
+				iter = getStatementVersions(subj, pred, obj, null, contexts);
+				try {
+					while (iter.hasNext()) {
+						S st = iter.next();
+						int since = getSinceSnapshot(st);
+						int till = getTillSnapshot(st);
+						if (serializable < since && since <= currentSnapshot || serializable < till
+								&& till <= currentSnapshot)
+						{
+							throw new SailConflictException("Observed State has Changed");
+						}
+					}
+				}
+				finally {
+					iter.close();
+				}
+			}
+		}
+
+		private void approveStatement(PendingChanges txn, Resource subj, URI pred, Value obj,
+				Resource context)
+			throws SailException
+		{
+			CloseableIteration<S, SailException> iter;
+			iter = getStatementVersions(subj, pred, obj, null, context);
+			try {
+				while (iter.hasNext()) {
+					S st = iter.next();
+					if (!txn.isVisible(st)) {
+						// removed statement
+						continue;
+					}
+					else if (!isExplicit(st) && explicit) {
+						// Implicit statement is now added explicitly
+						setTillSnapshot(st, txn.pendingSnapshot);
+						txn.deprecated.add(st);
+					}
+					else {
+						// statement already exists
+						return;
+					}
+				}
+			}
+			finally {
+				iter.close();
+			}
+
+			// completely new statement
+			txn.added.add(addStatement(subj, pred, obj, context, explicit, txn.pendingSnapshot));
+		}
+
+		private void removeStatements(PendingChanges txn, Resource subj, URI pred, Value obj,
+				Resource... contexts)
+			throws SailException
+		{
+			CloseableIteration<S, SailException> iter;
+			iter = getStatementVersions(subj, pred, obj, explicit, contexts);
+			try {
+				while (iter.hasNext()) {
+					S st = iter.next();
+					if (txn.isVisible(st)) {
+						setTillSnapshot(st, txn.pendingSnapshot);
+						txn.deprecated.add(st);
+					}
+				}
+			}
+			finally {
+				iter.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,510 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import info.aduna.io.IOUtil;
+
+import org.openrdf.IsolationLevels;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.base.SailSink;
+import org.openrdf.sail.base.SailSource;
+
+/**
+ * An append-only log of the changesets that have been committed to a
+ * MemoryStore since its data file was last written. Each changeset is a
+ * sequence of namespace and statement records that is terminated by a commit
+ * record, so that a changeset that was only partially written is ignored when
+ * the log is replayed.
+ */
+class ChangeLog {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/** Magic number for Binary Memory Store Log files */
+	private static final byte[] MAGIC_NUMBER = new byte[] { 'B', 'M', 'S', 'L' };
+
+	/** The version number of the current format. */
+	private static final int BMSL_VERSION = 1;
+
+	/* RECORD TYPES, in addition to those of FileIO */
+	public static final int REMOVE_NAMESPACE_MARKER = 11;
+
+	public static final int CLEAR_NAMESPACES_MARKER = 12;
+
+	public static final int EXPL_TRIPLE_REMOVAL_MARKER = 13;
+
+	public static final int EXPL_QUAD_REMOVAL_MARKER = 14;
+
+	public static final int INF_TRIPLE_REMOVAL_MARKER = 15;
+
+	public static final int INF_QUAD_REMOVAL_MARKER = 16;
+
+	public static final int COMMIT_MARKER = 17;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private final File file;
+
+	private final FileIO fileIO;
+
+	private FileOutputStream fileOut;
+
+	private DataOutputStream dataOut;
+
+	/**
+	 * Flag indicating whether records have been written since the last commit
+	 * record.
+	 */
+	private boolean uncommitted;
+
+	/**
+	 * The length of the part of the log file that contains complete
+	 * changesets.
+	 */
+	private long committedSize;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	/**
+	 * Opens the supplied log file for appending, creating it if it does not yet
+	 * exist.
+	 */
+	public ChangeLog(File file, ValueFactory vf)
+		throws IOException
+	{
+		this.file = file;
+		this.fileIO = new FileIO(vf);
+		open();
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the size of the log file in bytes.
+	 */
+	public synchronized long size()
+		throws IOException
+	{
+		dataOut.flush();
+		return fileOut.getChannel().size();
+	}
+
+	/**
+	 * Checks whether this log contains any records.
+	 */
+	public synchronized boolean isEmpty()
+		throws IOException
+	{
+		return size() <= MAGIC_NUMBER.length + 1;
+	}
+
+	public synchronized void setNamespace(String prefix, String name)
+		throws SailException
+	{
+		try {
+			dataOut.writeByte(FileIO.NAMESPACE_MARKER);
+			fileIO.writeString(prefix, dataOut);
+			fileIO.writeString(name, dataOut);
+			uncommitted = true;
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+	}
+
+	public synchronized void removeNamespace(String prefix)
+		throws SailException
+	{
+		try {
+			dataOut.writeByte(REMOVE_NAMESPACE_MARKER);
+			fileIO.writeString(prefix, dataOut);
+			uncommitted = true;
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+	}
+
+	public synchronized void clearNamespaces()
+		throws SailException
+	{
+		try {
+			dataOut.writeByte(CLEAR_NAMESPACES_MARKER);
+			uncommitted = true;
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * Logs the addition of a statement by the current changeset.
+	 */
+	public synchronized void approve(Statement st, boolean explicit)
+		throws SailException
+	{
+		try {
+			if (explicit) {
+				writeStatement(st, FileIO.EXPL_TRIPLE_MARKER, FileIO.EXPL_QUAD_MARKER);
+			}
+			else {
+				writeStatement(st, FileIO.INF_TRIPLE_MARKER, FileIO.INF_QUAD_MARKER);
+			}
+			uncommitted = true;
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * Logs the removal of a statement by the current changeset.
+	 */
+	public synchronized void deprecate(Statement st, boolean explicit)
+		throws SailException
+	{
+		try {
+			if (explicit) {
+				writeStatement(st, EXPL_TRIPLE_REMOVAL_MARKER, EXPL_QUAD_REMOVAL_MARKER);
+			}
+			else {
+				writeStatement(st, INF_TRIPLE_REMOVAL_MARKER, INF_QUAD_REMOVAL_MARKER);
+			}
+			uncommitted = true;
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * Terminates the current changeset, which consists of the records that
+	 * have been logged since the previous changeset, and hands it to the
+	 * operating system.
+	 */
+	public synchronized void commit()
+		throws SailException
+	{
+		if (!uncommitted) {
+			return;
+		}
+		try {
+			dataOut.writeByte(COMMIT_MARKER);
+			dataOut.flush();
+			committedSize = fileOut.getChannel().size();
+			uncommitted = false;
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * Discards the records that have been logged since the previous changeset,
+	 * so that they are not committed by the commit record of a later
+	 * changeset.
+	 */
+	public synchronized void rollback()
+		throws SailException
+	{
+		if (!uncommitted) {
+			return;
+		}
+		try {
+			try {
+				dataOut.flush();
+			}
+			finally {
+				// drops any buffered records along with the written ones
+				dataOut = new DataOutputStream(new BufferedOutputStream(fileOut));
+				fileOut.getChannel().truncate(committedSize);
+			}
+			uncommitted = false;
+		}
+		catch (IOException e) {
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * Forces the committed changesets to be written to disk.
+	 */
+	public synchronized void force()
+		throws IOException
+	{
+		dataOut.flush();
+		fileOut.getFD().sync();
+	}
+
+	/**
+	 * Moves the records of this log to the supplied file and continues with an
+	 * empty log.
+	 */
+	public synchronized void rotate(File target)
+		throws IOException
+	{
+		force();
+		dataOut.close();
+
+		boolean renamed = file.renameTo(target);
+
+		// continue with a fresh log, or with the existing one if it could not be
+		// moved
+		open();
+
+		if (!renamed) {
+			throw new IOException("Could not rename " + file.getAbsolutePath() + " to " + target.getName());
+		}
+	}
+
+	public synchronized void close()
+		throws IOException
+	{
+		dataOut.close();
+	}
+
+	private void open()
+		throws IOException
+	{
+		fileOut = new FileOutputStream(file, true);
+		dataOut = new DataOutputStream(new BufferedOutputStream(fileOut));
+		if (fileOut.getChannel().size() == 0L) {
+			dataOut.write(MAGIC_NUMBER);
+			dataOut.write(BMSL_VERSION);
+			dataOut.flush();
+		}
+		committedSize = fileOut.getChannel().size();
+		uncommitted = false;
+	}
+
+	private void writeStatement(Statement st, int tripleMarker, int quadMarker)
+		throws IOException
+	{
+		Resource context = st.getContext();
+		if (context == null) {
+			dataOut.writeByte(tripleMarker);
+		}
+		else {
+			dataOut.writeByte(quadMarker);
+		}
+		fileIO.writeValue(st.getSubject(), dataOut);
+		fileIO.writeValue(st.getPredicate(), dataOut);
+		fileIO.writeValue(st.getObject(), dataOut);
+		if (context != null) {
+			fileIO.writeValue(context, dataOut);
+		}
+	}
+
+	/**
+	 * Applies the complete changesets of a log file to the supplied sources. A
+	 * changeset that is not terminated by a commit record, as left behind by a
+	 * crash, is ignored.
+	 * 
+	 * @return The length of the part of the file that contains complete
+	 *         changesets.
+	 */
+	public static long replay(File logFile, ValueFactory vf, SailSource explicitSource,
+			SailSource inferredSource)
+		throws IOException, SailException
+	{
+		FileIO fileIO = new FileIO(vf);
+		CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(
+				logFile)));
+		DataInputStream dataIn = new DataInputStream(counter);
+		try {
+			byte[] magicNumber = IOUtil.readBytes(dataIn, MAGIC_NUMBER.length);
+			int formatVersion = dataIn.read();
+			if (magicNumber.length < MAGIC_NUMBER.length || formatVersion < 0) {
+				// the header itself was not completely written
+				return 0L;
+			}
+			if (!Arrays.equals(magicNumber, MAGIC_NUMBER)) {
+				throw new IOException("File is not a binary MemoryStore log file");
+			}
+			if (formatVersion > BMSL_VERSION || formatVersion < 1) {
+				throw new IOException("Incompatible format version: " + formatVersion);
+			}
+
+			long committed = counter.getCount();
+			SailSink explicit = explicitSource.sink(IsolationLevels.NONE);
+			try {
+				SailSink inferred = inferredSource.sink(IsolationLevels.NONE);
+				try {
+					int recordTypeMarker;
+					while ((recordTypeMarker = dataIn.read()) != -1) {
+						switch (recordTypeMarker) {
+							case FileIO.NAMESPACE_MARKER:
+								String prefix = fileIO.readString(dataIn);
+								explicit.setNamespace(prefix, fileIO.readString(dataIn));
+								break;
+							case REMOVE_NAMESPACE_MARKER:
+								explicit.removeNamespace(fileIO.readString(dataIn));
+								break;
+							case CLEAR_NAMESPACES_MARKER:
+								explicit.clearNamespaces();
+								break;
+							case FileIO.EXPL_TRIPLE_MARKER:
+								readStatement(false, true, fileIO, dataIn, explicit);
+								break;
+							case FileIO.EXPL_QUAD_MARKER:
+								readStatement(true, true, fileIO, dataIn, explicit);
+								break;
+							case FileIO.INF_TRIPLE_MARKER:
+								readStatement(false, true, fileIO, dataIn, inferred);
+								break;
+							case FileIO.INF_QUAD_MARKER:
+								readStatement(true, true, fileIO, dataIn, inferred);
+								break;
+							case EXPL_TRIPLE_REMOVAL_MARKER:
+								readStatement(false, false, fileIO, dataIn, explicit);
+								break;
+							case EXPL_QUAD_REMOVAL_MARKER:
+								readStatement(true, false, fileIO, dataIn, explicit);
+								break;
+							case INF_TRIPLE_REMOVAL_MARKER:
+								readStatement(false, false, fileIO, dataIn, inferred);
+								break;
+							case INF_QUAD_REMOVAL_MARKER:
+								readStatement(true, false, fileIO, dataIn, inferred);
+								break;
+							case COMMIT_MARKER:
+								explicit.prepare();
+								explicit.flush();
+								inferred.prepare();
+								inferred.flush();
+								committed = counter.getCount();
+								break;
+							default:
+								throw new IOException("Invalid record type marker: " + recordTypeMarker);
+						}
+					}
+				}
+				catch (EOFException e) {
+					// the last changeset was not completely written
+				}
+				finally {
+					// discards the records of an incomplete changeset
+					inferred.close();
+				}
+			}
+			finally {
+				explicit.close();
+			}
+			return committed;
+		}
+		finally {
+			dataIn.close();
+		}
+	}
+
+	private static void readStatement(boolean hasContext, boolean approve, FileIO fileIO,
+			DataInputStream dataIn, SailSink sink)
+		throws IOException, ClassCastException, SailException
+	{
+		Resource subj = (Resource)fileIO.readValue(dataIn);
+		URI pred = (URI)fileIO.readValue(dataIn);
+		Value obj = fileIO.readValue(dataIn);
+		Resource context = null;
+		if (hasContext) {
+			context = (Resource)fileIO.readValue(dataIn);
+		}
+
+		if (approve) {
+			sink.approve(subj, pred, obj, context);
+		}
+		else {
+			sink.deprecate(subj, pred, obj, context);
+		}
+	}
+
+	/**
+	 * Keeps track of the number of bytes that have been read.
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		public CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public int read()
+			throws IOException
+		{
+			int b = super.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+			throws IOException
+		{
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n)
+			throws IOException
+		{
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
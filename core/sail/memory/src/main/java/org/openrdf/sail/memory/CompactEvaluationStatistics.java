@@ -0,0 +1,93 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.openrdf.sail.memory.model.StatementTable;
+import org.openrdf.sail.memory.model.ValueDictionary;
+
+/**
+ * Uses the row counts of a {@link StatementTable} to give cost estimates based
+ * on the size of the expected results, like {@link MemEvaluationStatistics}.
+ */
+class CompactEvaluationStatistics extends EvaluationStatistics {
+
+	private final ValueDictionary dictionary;
+
+	private final StatementTable table;
+
+	CompactEvaluationStatistics(ValueDictionary dictionary, StatementTable table) {
+		this.dictionary = dictionary;
+		this.table = table;
+	}
+
+	@Override
+	protected CardinalityCalculator createCardinalityCalculator() {
+		return new CompactCardinalityCalculator();
+	}
+
+	protected class CompactCardinalityCalculator extends CardinalityCalculator {
+
+		@Override
+		public double getCardinality(StatementPattern sp) {
+			Value subj = getConstantValue(sp.getSubjectVar());
+			if (!(subj instanceof Resource)) {
+				// can happen when a previous optimizer has inlined a comparison
+				// operator. See SES-970 / SES-998
+				subj = null;
+			}
+			Value pred = getConstantValue(sp.getPredicateVar());
+			if (!(pred instanceof URI)) {
+				pred = null;
+			}
+			Value obj = getConstantValue(sp.getObjectVar());
+			Value context = getConstantValue(sp.getContextVar());
+			if (!(context instanceof Resource)) {
+				context = null;
+			}
+
+			// Search for the smallest row list that can be used by the iterator
+			double cardinality = Integer.MAX_VALUE;
+			Value[] values = { subj, pred, obj, context };
+			for (int column = StatementTable.SUBJECT; column <= StatementTable.CONTEXT; column++) {
+				if (values[column] != null) {
+					int id = dictionary.getID(values[column]);
+					if (id == 0) {
+						// non-existent subject, predicate, object or context
+						return 0.0;
+					}
+					cardinality = Math.min(cardinality, table.getRowCount(column, id));
+				}
+			}
+
+			return cardinality;
+		}
+
+		protected Value getConstantValue(Var var) {
+			if (var != null) {
+				return var.getValue();
+			}
+
+			return null;
+		}
+	}
+}
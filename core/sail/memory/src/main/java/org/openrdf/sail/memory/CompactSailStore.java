@@ -0,0 +1,467 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import info.aduna.concurrent.locks.Lock;
+import info.aduna.concurrent.locks.LockingIteration;
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.EmptyIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+import org.openrdf.model.Namespace;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ContextStatementImpl;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.base.SailDataset;
+import org.openrdf.sail.base.SailStore;
+import org.openrdf.sail.memory.model.StatementTable;
+import org.openrdf.sail.memory.model.StatementTable.RowIterator;
+import org.openrdf.sail.memory.model.ValueDictionary;
+
+/**
+ * An implementation of {@link SailStore} that keeps its statements in a
+ * compact {@link StatementTable} of dictionary-encoded values instead of in
+ * statement objects. It offers the same isolation and concurrency as the
+ * {@link MemorySailStore}, with a fraction of the memory per statement.
+ * Statements that are no longer visible are removed once they make up a
+ * quarter of the table.
+ */
+class CompactSailStore extends AbstractMemorySailStore<Integer> {
+
+	/**
+	 * The minimum number of statements that must be obsolete before the table
+	 * is compacted.
+	 */
+	static final int MIN_CLEANUP_SIZE = 1024;
+
+	/**
+	 * The number of rows, row index entries and values that the compaction
+	 * inspects before it releases the statement table lock, so that readers
+	 * are never blocked for long.
+	 */
+	static final int CLEANUP_CHUNK_SIZE = MemorySailStore.CLEANUP_CHUNK_SIZE;
+
+	private final ValueFactory valueFactory = new ValueFactoryImpl();
+
+	/**
+	 * Dictionary of the values that are used by the statements.
+	 */
+	private final ValueDictionary dictionary = new ValueDictionary();
+
+	/**
+	 * Table containing all available statements.
+	 */
+	private final StatementTable table = new StatementTable();
+
+	/**
+	 * The number of statements that are no longer visible in the current
+	 * snapshot, and in any later one.
+	 */
+	private final AtomicInteger obsoleteRows = new AtomicInteger();
+
+	/**
+	 * Cleanup thread that removes obsolete statements from the table.
+	 */
+	private volatile Thread cleanupThread;
+
+	/**
+	 * Semaphore used to synchronize concurrent access to {@link #cleanupThread}.
+	 */
+	private final Object cleanupThreadSemaphore = new Object();
+
+	public CompactSailStore(boolean debug) {
+		super(debug);
+	}
+
+	@Override
+	public ValueFactory getValueFactory() {
+		return valueFactory;
+	}
+
+	@Override
+	public void close() {
+		try {
+			Lock stLock = statementLockManager.getWriteLock();
+			try {
+				table.clear();
+				dictionary.clear();
+			}
+			finally {
+				stLock.release();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public EvaluationStatistics getEvaluationStatistics() {
+		return new CompactEvaluationStatistics(dictionary, table);
+	}
+
+	@Override
+	protected SailDataset createDataset(boolean explicit)
+		throws SailException
+	{
+		return new CompactSailDataset(explicit);
+	}
+
+	@Override
+	protected SailDataset createDataset(boolean explicit, int snapshot)
+		throws SailException
+	{
+		return new CompactSailDataset(explicit, snapshot);
+	}
+
+	/**
+	 * Creates a RowIterator over the rows that match the specified pattern.
+	 * 
+	 * @return The iterator, or <tt>null</tt> if one of the specified values
+	 *         does not occur in the table.
+	 */
+	RowIterator createRowIterator(Resource subj, URI pred, Value obj, Boolean explicit, int snapshot,
+			Resource... contexts)
+	{
+		// Perform look-ups for the IDs of the specified values
+		int subjID = dictionary.getID(subj);
+		int predID = dictionary.getID(pred);
+		int objID = dictionary.getID(obj);
+		if (subj != null && subjID == 0 || pred != null && predID == 0 || obj != null && objID == 0) {
+			// non-existent subject, predicate or object
+			return null;
+		}
+
+		int[] contextIDs = new int[contexts.length];
+		int contextCount = 0;
+		for (Resource context : contexts) {
+			int contextID = dictionary.getID(context);
+			if (context == null || contextID != 0) {
+				contextIDs[contextCount++] = contextID;
+			}
+		}
+		if (contexts.length > 0 && contextCount == 0) {
+			// no known contexts specified
+			return null;
+		}
+
+		contextIDs = Arrays.copyOf(contextIDs, contextCount);
+		return table.iterator(subjID, predID, objID, contextIDs, explicit, snapshot);
+	}
+
+	CloseableIteration<Statement, SailException> createStatementIterator(Resource subj, URI pred,
+			Value obj, Boolean explicit, int snapshot, Resource... contexts)
+	{
+		final RowIterator rows = createRowIterator(subj, pred, obj, explicit, snapshot, contexts);
+		if (rows == null) {
+			return new EmptyIteration<Statement, SailException>();
+		}
+
+		return new LookAheadIteration<Statement, SailException>() {
+
+			@Override
+			protected Statement getNextElement() {
+				int row = rows.next();
+				return row == 0 ? null : createStatement(row);
+			}
+		};
+	}
+
+	Statement createStatement(int row) {
+		Resource subj = (Resource)dictionary.getValue(table.getSubject(row));
+		URI pred = (URI)dictionary.getValue(table.getPredicate(row));
+		Value obj = dictionary.getValue(table.getObject(row));
+		int context = table.getContext(row);
+		if (context == 0) {
+			return new StatementImpl(subj, pred, obj);
+		}
+		return new ContextStatementImpl(subj, pred, obj, (Resource)dictionary.getValue(context));
+	}
+
+	@Override
+	protected CloseableIteration<Integer, SailException> getStatementVersions(Resource subj, URI pred,
+			Value obj, Boolean explicit, Resource... contexts)
+	{
+		final RowIterator rows = createRowIterator(subj, pred, obj, explicit, -1, contexts);
+		if (rows == null) {
+			return new EmptyIteration<Integer, SailException>();
+		}
+
+		return new LookAheadIteration<Integer, SailException>() {
+
+			@Override
+			protected Integer getNextElement() {
+				int row = rows.next();
+				return row == 0 ? null : row;
+			}
+		};
+	}
+
+	@Override
+	protected Integer addStatement(Resource subj, URI pred, Value obj, Resource context, boolean explicit,
+			int sinceSnapshot)
+	{
+		int subjID = dictionary.getOrCreateID(subj);
+		int predID = dictionary.getOrCreateID(pred);
+		int objID = dictionary.getOrCreateID(obj);
+		int contextID = dictionary.getOrCreateID(context);
+		return table.add(subjID, predID, objID, contextID, explicit, sinceSnapshot);
+	}
+
+	@Override
+	protected Statement getStatement(Integer row) {
+		return createStatement(row);
+	}
+
+	@Override
+	protected boolean isExplicit(Integer row) {
+		return table.isExplicit(row);
+	}
+
+	@Override
+	protected int getSinceSnapshot(Integer row) {
+		return table.getSinceSnapshot(row);
+	}
+
+	@Override
+	protected void setSinceSnapshot(Integer row, int snapshot) {
+		table.setSinceSnapshot(row, snapshot);
+	}
+
+	@Override
+	protected int getTillSnapshot(Integer row) {
+		return table.getTillSnapshot(row);
+	}
+
+	@Override
+	protected void setTillSnapshot(Integer row, int snapshot) {
+		table.setTillSnapshot(row, snapshot);
+	}
+
+	@Override
+	protected void statementsExpired(int count) {
+		obsoleteRows.addAndGet(count);
+	}
+
+	/**
+	 * Removes the statements that are no longer visible from the table, and
+	 * the values that are no longer used. The table is compacted in chunks of
+	 * {@link #CLEANUP_CHUNK_SIZE} rows, row index entries and values, and the
+	 * statement table lock is released after each chunk to let waiting
+	 * readers and transactions through.
+	 * 
+	 * @throws InterruptedException
+	 */
+	protected void cleanSnapshots()
+		throws InterruptedException
+	{
+		StatementTable.Compaction compaction = null;
+		do {
+			Lock stLock = statementLockManager.getWriteLock();
+			try {
+				if (compaction == null) {
+					// no reader or transaction holds on to an older snapshot
+					compaction = table.createCompaction(currentSnapshot, dictionary);
+				}
+				compaction.compact(CLEANUP_CHUNK_SIZE);
+			}
+			finally {
+				stLock.release();
+			}
+		}
+		while (!compaction.isDone());
+
+		int removed = compaction.getRemovedCount();
+		obsoleteRows.addAndGet(-removed);
+		logger.debug("removed {} obsolete statements", removed);
+	}
+
+	@Override
+	protected void scheduleSnapshotCleanup() {
+		int obsolete = obsoleteRows.get();
+		if (obsolete < MIN_CLEANUP_SIZE || obsolete < table.size() / 4) {
+			return;
+		}
+		synchronized (cleanupThreadSemaphore) {
+			if (cleanupThread == null || !cleanupThread.isAlive()) {
+				Runnable runnable = new Runnable() {
+
+					public void run() {
+						try {
+							cleanSnapshots();
+						}
+						catch (InterruptedException e) {
+							logger.warn("snapshot cleanup interrupted");
+						}
+					}
+				};
+
+				cleanupThread = new Thread(runnable, "MemoryStore snapshot cleanup");
+				cleanupThread.setDaemon(true);
+				cleanupThread.start();
+			}
+		}
+	}
+
+	private final class CompactSailDataset implements SailDataset {
+
+		private final boolean explicit;
+
+		private final int snapshot;
+
+		private final Lock lock;
+
+		public CompactSailDataset(boolean explicit)
+			throws SailException
+		{
+			this.explicit = explicit;
+			this.snapshot = -1;
+			this.lock = null;
+		}
+
+		public CompactSailDataset(boolean explicit, int snapshot)
+			throws SailException
+		{
+			this.explicit = explicit;
+			this.snapshot = snapshot;
+			this.lock = openStatementsReadLock();
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			if (explicit) {
+				sb.append("explicit ");
+			}
+			else {
+				sb.append("inferred ");
+			}
+			if (snapshot >= 0) {
+				sb.append("snapshot ").append(snapshot);
+			}
+			else {
+				sb.append(super.toString());
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public void close() {
+			if (lock != null) {
+				// serializable read or higher isolation
+				lock.release();
+			}
+		}
+
+		@Override
+		public String getNamespace(String prefix)
+			throws SailException
+		{
+			return namespaceStore.getNamespace(prefix);
+		}
+
+		@Override
+		public CloseableIteration<? extends Namespace, SailException> getNamespaces() {
+			return new CloseableIteratorIteration<Namespace, SailException>(namespaceStore.iterator());
+		}
+
+		@Override
+		public CloseableIteration<? extends Resource, SailException> getContextIDs()
+			throws SailException
+		{
+			List<Resource> contextIDs = new ArrayList<Resource>(32);
+
+			Lock stLock = openStatementsReadLock();
+			try {
+				int snapshot = getCurrentSnapshot();
+				int idCount = dictionary.getIDCount();
+				for (int id = 1; id < idCount; id++) {
+					// Filter values that are not used as context identifier
+					if (table.getRowCount(StatementTable.CONTEXT, id) > 0) {
+						int[] contexts = { id };
+						if (table.iterator(0, 0, 0, contexts, null, snapshot).next() != 0) {
+							contextIDs.add((Resource)dictionary.getValue(id));
+						}
+					}
+				}
+			}
+			finally {
+				stLock.release();
+			}
+
+			return new CloseableIteratorIteration<Resource, SailException>(contextIDs.iterator());
+		}
+
+		@Override
+		public CloseableIteration<? extends Statement, SailException> getStatements(Resource subj, URI pred,
+				Value obj, Resource... contexts)
+			throws SailException
+		{
+			boolean releaseLock = true;
+			Lock stLock = openStatementsReadLock();
+			try {
+				CloseableIteration<? extends Statement, SailException> ret;
+				ret = createStatementIterator(subj, pred, obj, explicit, getCurrentSnapshot(), contexts);
+				ret = new LockingIteration<Statement, SailException>(stLock, ret);
+				releaseLock = false;
+				return ret;
+			}
+			finally {
+				if (releaseLock) {
+					stLock.release();
+				}
+			}
+		}
+
+		@Override
+		public CloseableIteration<? extends Statement, SailException> getOrderedStatements(
+				StatementOrder order, Resource subj, URI pred, Value obj, Resource... contexts)
+			throws SailException
+		{
+			// statement rows are not sorted
+			return null;
+		}
+
+		@Override
+		public Comparator<Value> getComparator() {
+			return null;
+		}
+
+		private int getCurrentSnapshot() {
+			if (snapshot >= 0) {
+				return snapshot;
+			}
+			else {
+				return currentSnapshot;
+			}
+		}
+	}
+}
@@ -300,7 +300,7 @@ class FileIO {
 		}
 	}
 
-	private void writeValue(Value value, DataOutputStream dataOut)
+	void writeValue(Value value, DataOutputStream dataOut)
 		throws IOException
 	{
 		if (value instanceof URI) {
@@ -334,7 +334,7 @@ class FileIO {
 		}
 	}
 
-	private Value readValue(DataInputStream dataIn)
+	Value readValue(DataInputStream dataIn)
 		throws IOException, ClassCastException
 	{
 		int valueTypeMarker = dataIn.readByte();
@@ -366,7 +366,7 @@ class FileIO {
 		}
 	}
 
-	private void writeString(String s, DataOutputStream dataOut)
+	void writeString(String s, DataOutputStream dataOut)
 		throws IOException
 	{
 		ByteBuffer byteBuf = charsetEncoder.encode(CharBuffer.wrap(s));
@@ -374,7 +374,7 @@ class FileIO {
 		dataOut.write(byteBuf.array(), 0, byteBuf.remaining());
 	}
 
-	private String readString(DataInputStream dataIn)
+	String readString(DataInputStream dataIn)
 		throws IOException
 	{
 		if (formatVersion == 1) {
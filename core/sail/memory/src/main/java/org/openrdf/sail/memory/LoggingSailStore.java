@@ -0,0 +1,51 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.base.SailDataset;
+import org.openrdf.sail.base.SailStore;
+
+/**
+ * A {@link SailStore} of a {@link MemoryStore}, which appends its commits to a
+ * {@link ChangeLog} when the MemoryStore is persistent.
+ */
+interface LoggingSailStore extends SailStore {
+
+	/**
+	 * Sets the log to which the changes of subsequent commits are appended.
+	 * 
+	 * @param changeLog
+	 *        The change log, or null to stop logging changes.
+	 */
+	void setChangeLog(ChangeLog changeLog);
+
+	/**
+	 * Moves the records of the change log to the supplied file and returns
+	 * snapshots of the explicit and inferred statements that include exactly
+	 * the changes of the moved records. Once these snapshots have been written
+	 * to the data file, the moved records are no longer needed.
+	 * 
+	 * @return The explicit and inferred datasets, which must be closed by the
+	 *         caller.
+	 */
+	SailDataset[] rotateChangeLog(File target)
+		throws IOException, SailException;
+}
@@ -27,6 +27,7 @@ import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
 import org.openrdf.sail.memory.model.MemResource;
+import org.openrdf.sail.memory.model.MemStatementList;
 import org.openrdf.sail.memory.model.MemURI;
 import org.openrdf.sail.memory.model.MemValue;
 import org.openrdf.sail.memory.model.MemValueFactory;
@@ -107,6 +108,15 @@ class MemEvaluationStatistics extends EvaluationStatistics {
 			if (memContext != null) {
 				listSizes.add(memContext.getContextStatementCount());
 			}
+			if (memSubj != null && memPred != null) {
+				addListSize(listSizes, memSubj.getSubjectStatementList().getStatementList('p', memPred));
+			}
+			if (memObj != null && memPred != null) {
+				addListSize(listSizes, memObj.getObjectStatementList().getStatementList('p', memPred));
+			}
+			if (memObj != null && memContext != null) {
+				addListSize(listSizes, memObj.getObjectStatementList().getStatementList('c', memContext));
+			}
 
 			double cardinality;
 
@@ -131,6 +141,13 @@ class MemEvaluationStatistics extends EvaluationStatistics {
 			return cardinality;
 		}
 
+		private void addListSize(List<Integer> listSizes, MemStatementList list) {
+			if (list != null) {
+				// composite index of a large list
+				listSizes.add(list.size());
+			}
+		}
+
 		protected Value getConstantValue(Var var) {
 			if (var != null) {
 				return var.getValue();
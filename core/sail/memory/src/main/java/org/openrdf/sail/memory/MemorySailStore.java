@@ -17,39 +17,28 @@
 package org.openrdf.sail.memory;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import info.aduna.concurrent.locks.Lock;
 import info.aduna.concurrent.locks.LockingIteration;
-import info.aduna.concurrent.locks.ReadPrefReadWriteLockManager;
-import info.aduna.concurrent.locks.ReadWriteLockManager;
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.CloseableIteratorIteration;
 import info.aduna.iteration.EmptyIteration;
 
-import org.openrdf.IsolationLevel;
-import org.openrdf.IsolationLevels;
 import org.openrdf.model.Namespace;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
-import org.openrdf.query.algebra.StatementPattern;
-import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
-import org.openrdf.sail.SailConflictException;
 import org.openrdf.sail.SailException;
-import org.openrdf.sail.base.BackingSailSource;
 import org.openrdf.sail.base.SailDataset;
-import org.openrdf.sail.base.SailSink;
-import org.openrdf.sail.base.SailSource;
 import org.openrdf.sail.base.SailStore;
 import org.openrdf.sail.memory.model.MemResource;
 import org.openrdf.sail.memory.model.MemStatement;
@@ -65,9 +54,14 @@ import org.openrdf.sail.memory.model.MemValueFactory;
  * 
  * @author James Leigh
  */
-class MemorySailStore implements SailStore {
+class MemorySailStore extends AbstractMemorySailStore<MemStatement> {
 
-	final Logger logger = LoggerFactory.getLogger(MemorySailStore.class);
+	/**
+	 * The number of statements that the snapshot cleanup inspects before it
+	 * releases the statement list lock, so that readers are never blocked for
+	 * long.
+	 */
+	static final int CLEANUP_CHUNK_SIZE = 8192;
 
 	/**
 	 * Factory/cache for MemValue objects.
@@ -79,27 +73,6 @@ class MemorySailStore implements SailStore {
 	 */
 	private final MemStatementList statements = new MemStatementList(256);
 
-	/**
-	 * Identifies the current snapshot.
-	 */
-	volatile int currentSnapshot;
-
-	/**
-	 * Store for namespace prefix info.
-	 */
-	private final MemNamespaceStore namespaceStore = new MemNamespaceStore();
-
-	/**
-	 * Lock manager used to give the snapshot cleanup thread exclusive access to
-	 * the statement list.
-	 */
-	private final ReadWriteLockManager statementListLockManager;
-
-	/**
-	 * Lock manager used to prevent concurrent writes.
-	 */
-	final ReentrantLock txnLockManager = new ReentrantLock();
-
 	/**
 	 * Cleanup thread that removes deprecated statements when no other threads
 	 * are accessing this list. Seee {@link #scheduleSnapshotCleanup()}.
@@ -113,7 +86,17 @@ class MemorySailStore implements SailStore {
 	private final Object snapshotCleanupThreadSemaphore = new Object();
 
 	public MemorySailStore(boolean debug) {
-		statementListLockManager = new ReadPrefReadWriteLockManager(debug);
+		this(debug, false);
+	}
+
+	/**
+	 * @param compositeIndexes
+	 *        whether large subject and object statement lists keep composite
+	 *        indexes, see {@link MemValueFactory#setCompositeIndexes(boolean)}
+	 */
+	public MemorySailStore(boolean debug, boolean compositeIndexes) {
+		super(debug);
+		valueFactory.setCompositeIndexes(compositeIndexes);
 	}
 
 	@Override
@@ -124,7 +107,7 @@ class MemorySailStore implements SailStore {
 	@Override
 	public void close() {
 		try {
-			Lock stLock = statementListLockManager.getWriteLock();
+			Lock stLock = statementLockManager.getWriteLock();
 			try {
 				valueFactory.clear();
 				statements.clear();
@@ -144,25 +127,17 @@ class MemorySailStore implements SailStore {
 	}
 
 	@Override
-	public SailSource getExplicitSailSource() {
-		return new MemorySailSource(true);
+	protected SailDataset createDataset(boolean explicit)
+		throws SailException
+	{
+		return new MemorySailDataset(explicit);
 	}
 
 	@Override
-	public SailSource getInferredSailSource() {
-		return new MemorySailSource(false);
-	}
-
-	Lock openStatementsReadLock()
+	protected SailDataset createDataset(boolean explicit, int snapshot)
 		throws SailException
 	{
-		try {
-			return statementListLockManager.getReadLock();
-		}
-		catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			throw new SailException(e);
-		}
+		return new MemorySailDataset(explicit, snapshot);
 	}
 
 	/**
@@ -252,68 +227,114 @@ class MemorySailStore implements SailStore {
 			}
 		}
 
+		// Use the composite indexes of large lists for bound pairs
+		if (memSubj != null && memPred != null) {
+			MemStatementList l = memSubj.getSubjectStatementList().getStatementList('p', memPred);
+			if (l != null && l.size() < smallestList.size()) {
+				smallestList = l;
+			}
+		}
+
+		if (memObj != null && memPred != null) {
+			MemStatementList l = memObj.getObjectStatementList().getStatementList('p', memPred);
+			if (l != null && l.size() < smallestList.size()) {
+				smallestList = l;
+			}
+		}
+
+		if (memObj != null && memContexts.length == 1) {
+			MemStatementList l = memObj.getObjectStatementList().getStatementList('c', memContexts[0]);
+			if (l != null && l.size() < smallestList.size()) {
+				smallestList = l;
+			}
+		}
+
 		return new MemStatementIterator<SailException>(smallestList, memSubj, memPred, memObj, explicit,
 				snapshot, memContexts);
 	}
 
+	@Override
+	protected CloseableIteration<MemStatement, SailException> getStatementVersions(Resource subj, URI pred,
+			Value obj, Boolean explicit, Resource... contexts)
+	{
+		return createStatementIterator(subj, pred, obj, explicit, -1, contexts);
+	}
+
+	@Override
+	protected MemStatement addStatement(Resource subj, URI pred, Value obj, Resource context,
+			boolean explicit, int sinceSnapshot)
+	{
+		// Get or create MemValues for the operands
+		MemResource memSubj = valueFactory.getOrCreateMemResource(subj);
+		MemURI memPred = valueFactory.getOrCreateMemURI(pred);
+		MemValue memObj = valueFactory.getOrCreateMemValue(obj);
+		MemResource memContext = (context == null) ? null : valueFactory.getOrCreateMemResource(context);
+
+		MemStatement st = new MemStatement(memSubj, memPred, memObj, memContext, explicit, sinceSnapshot);
+		statements.add(st);
+		st.addToComponentLists();
+		return st;
+	}
+
+	@Override
+	protected Statement getStatement(MemStatement st) {
+		return st;
+	}
+
+	@Override
+	protected boolean isExplicit(MemStatement st) {
+		return st.isExplicit();
+	}
+
+	@Override
+	protected int getSinceSnapshot(MemStatement st) {
+		return st.getSinceSnapshot();
+	}
+
+	@Override
+	protected void setSinceSnapshot(MemStatement st, int snapshot) {
+		st.setSinceSnapshot(snapshot);
+	}
+
+	@Override
+	protected int getTillSnapshot(MemStatement st) {
+		return st.getTillSnapshot();
+	}
+
+	@Override
+	protected void setTillSnapshot(MemStatement st, int snapshot) {
+		st.setTillSnapshot(snapshot);
+	}
+
 	/**
 	 * Removes statements from old snapshots from the main statement list and
-	 * resets the snapshot to 1 for the rest of the statements.
+	 * the component lists of their values. The statements are processed in
+	 * chunks of {@link #CLEANUP_CHUNK_SIZE} statements and the statement list
+	 * lock is released after each chunk to let waiting readers through, also
+	 * in the middle of the component list of a value that is used by many
+	 * statements.
 	 * 
 	 * @throws InterruptedException
 	 */
 	protected void cleanSnapshots()
 		throws InterruptedException
 	{
-		// System.out.println("cleanSnapshots() starting...");
-		// long startTime = System.currentTimeMillis();
-
-		// Sets used to keep track of which lists have already been processed
-		HashSet<MemValue> processedSubjects = new HashSet<MemValue>();
-		HashSet<MemValue> processedPredicates = new HashSet<MemValue>();
-		HashSet<MemValue> processedObjects = new HashSet<MemValue>();
-		HashSet<MemValue> processedContexts = new HashSet<MemValue>();
-
-		Lock stLock = statementListLockManager.getWriteLock();
-		try {
-			for (int i = statements.size() - 1; i >= 0; i--) {
-				MemStatement st = statements.get(i);
-
-				if (st.getTillSnapshot() <= currentSnapshot) {
-					MemResource subj = st.getSubject();
-					if (processedSubjects.add(subj)) {
-						subj.cleanSnapshotsFromSubjectStatements(currentSnapshot);
-					}
+		// statements that expired at or before this snapshot are no longer
+		// visible to any reader that can acquire the statement list lock
+		SnapshotCleanup cleanup = new SnapshotCleanup(currentSnapshot);
 
-					MemURI pred = st.getPredicate();
-					if (processedPredicates.add(pred)) {
-						pred.cleanSnapshotsFromPredicateStatements(currentSnapshot);
-					}
-
-					MemValue obj = st.getObject();
-					if (processedObjects.add(obj)) {
-						obj.cleanSnapshotsFromObjectStatements(currentSnapshot);
-					}
-
-					MemResource context = st.getContext();
-					if (context != null && processedContexts.add(context)) {
-						context.cleanSnapshotsFromContextStatements(currentSnapshot);
-					}
-
-					// stale statement
-					statements.remove(i);
-				}
+		while (!cleanup.isDone()) {
+			Lock stLock = statementLockManager.getWriteLock();
+			try {
+				cleanup.clean(CLEANUP_CHUNK_SIZE);
+			}
+			finally {
+				stLock.release();
 			}
 		}
-		finally {
-			stLock.release();
-		}
-
-		// long endTime = System.currentTimeMillis();
-		// System.out.println("cleanSnapshots() took " + (endTime - startTime) +
-		// " ms");
 	}
 
+	@Override
 	protected void scheduleSnapshotCleanup() {
 		synchronized (snapshotCleanupThreadSemaphore) {
 			if (snapshotCleanupThread == null || !snapshotCleanupThread.isAlive()) {
@@ -336,284 +357,145 @@ class MemorySailStore implements SailStore {
 		}
 	}
 
-	private final class MemorySailSource extends BackingSailSource {
-
-		private final boolean explicit;
-
-		public MemorySailSource(boolean explicit) {
-			this.explicit = explicit;
-		}
-
-		@Override
-		public SailSink sink(IsolationLevel level)
-			throws SailException
-		{
-			return new MemorySailSink(explicit, level.isCompatibleWith(IsolationLevels.SERIALIZABLE));
-		}
-
-		@Override
-		public MemorySailDataset dataset(IsolationLevel level)
-			throws SailException
-		{
-			if (level.isCompatibleWith(IsolationLevels.SNAPSHOT_READ)) {
-				return new MemorySailDataset(explicit, currentSnapshot);
-			}
-			else {
-				return new MemorySailDataset(explicit);
-			}
-		}
-	}
-
-	private final class MemorySailSink implements SailSink {
+	/**
+	 * A cleanup of the statements from old snapshots that is performed in
+	 * steps, each of which must be performed while holding the exclusive
+	 * statement list lock.
+	 */
+	final class SnapshotCleanup {
 
-		private boolean explicit;
+		private final int snapshot;
 
-		private final int serializable;
+		/**
+		 * The position after the next statement of the main statement list to
+		 * inspect.
+		 */
+		private int position = statements.size();
 
-		private final Lock txnStLock;
+		// Sets used to keep track of which lists have already been processed
+		private final HashSet<MemValue> processedSubjects = new HashSet<MemValue>();
 
-		private int nextSnapshot;
+		private final HashSet<MemValue> processedPredicates = new HashSet<MemValue>();
 
-		private Set<StatementPattern> observations;
+		private final HashSet<MemValue> processedObjects = new HashSet<MemValue>();
 
-		private boolean txnLock;
+		private final HashSet<MemValue> processedContexts = new HashSet<MemValue>();
 
-		public MemorySailSink(boolean explicit, boolean serializable)
-			throws SailException
-		{
-			this.explicit = explicit;
-			if (serializable) {
-				this.serializable = currentSnapshot;
-			}
-			else {
-				this.serializable = Integer.MAX_VALUE;
-			}
-			txnStLock = openStatementsReadLock();
-		}
+		/**
+		 * The component lists that remain to be cleaned.
+		 */
+		private final LinkedList<ComponentListCleanup> pending = new LinkedList<ComponentListCleanup>();
 
-		public String toString() {
-			StringBuilder sb = new StringBuilder();
-			if (explicit) {
-				sb.append("explicit ");
-			}
-			else {
-				sb.append("inferred ");
-			}
-			if (txnLock) {
-				sb.append("snapshot ").append(nextSnapshot);
-			}
-			else {
-				sb.append(super.toString());
-			}
-			return sb.toString();
+		public SnapshotCleanup(int snapshot) {
+			this.snapshot = snapshot;
 		}
 
-		@Override
-		public void prepare()
-			throws SailException
-		{
-			acquireExclusiveTransactionLock();
-			if (observations != null) {
-				for (StatementPattern p : observations) {
-					Resource subj = (Resource)p.getSubjectVar().getValue();
-					URI pred = (URI)p.getPredicateVar().getValue();
-					Value obj = p.getObjectVar().getValue();
-					Var ctxVar = p.getContextVar();
-					Resource[] contexts;
-					if (ctxVar == null) {
-						contexts = new Resource[0];
+		public boolean isDone() {
+			return position == 0 && pending.isEmpty();
+		}
+
+		/**
+		 * Continues this cleanup until it is done or the specified number of
+		 * statements has been inspected.
+		 * 
+		 * @return The number of statements that have been inspected.
+		 */
+		public int clean(int maxCount) {
+			int inspected = 0;
+			while (inspected < maxCount && !isDone()) {
+				if (!pending.isEmpty()) {
+					ComponentListCleanup listCleanup = pending.getFirst();
+					inspected += listCleanup.cleanup.clean(maxCount - inspected);
+					if (listCleanup.cleanup.isDone()) {
+						pending.removeFirst();
+						listCleanup.finish(snapshot);
 					}
-					else {
-						contexts = new Resource[] { (Resource)ctxVar.getValue() };
+				}
+				else {
+					position = Math.min(position, statements.size());
+					if (position == 0) {
+						break;
 					}
-					CloseableIteration<MemStatement, SailException> iter;
-					iter = createStatementIterator(subj, pred, obj, null, -1, contexts);
-					try {
-						while (iter.hasNext()) {
-							MemStatement st = iter.next();
-							int since = st.getSinceSnapshot();
-							int till = st.getTillSnapshot();
-							if (serializable < since && since < nextSnapshot || serializable < till
-									&& till < nextSnapshot)
-							{
-								throw new SailConflictException("Observed State has Changed");
-							}
+					int i = --position;
+					MemStatement st = statements.get(i);
+					inspected++;
+
+					if (st.getTillSnapshot() <= snapshot) {
+						MemResource subj = st.getSubject();
+						if (processedSubjects.add(subj)) {
+							pending.add(new ComponentListCleanup(subj, 's', subj.getSubjectStatementList(),
+									snapshot));
 						}
-					}
-					finally {
-						iter.close();
-					}
-				}
-			}
-		}
 
-		@Override
-		public void flush()
-			throws SailException
-		{
-			if (txnLock) {
-				currentSnapshot = Math.max(currentSnapshot, nextSnapshot);
-				scheduleSnapshotCleanup();
-			}
-		}
-
-		@Override
-		public void close() {
-			if (txnLock) {
-				txnLockManager.unlock();
-				txnLock = false;
-			}
-			if (txnStLock != null) {
-				txnStLock.release();
-			}
-		}
-
-		@Override
-		public synchronized void setNamespace(String prefix, String name)
-			throws SailException
-		{
-			acquireExclusiveTransactionLock();
-			namespaceStore.setNamespace(prefix, name);
-		}
+						MemURI pred = st.getPredicate();
+						if (processedPredicates.add(pred)) {
+							pending.add(new ComponentListCleanup(pred, 'p', pred.getPredicateStatementList(),
+									snapshot));
+						}
 
-		@Override
-		public void removeNamespace(String prefix)
-			throws SailException
-		{
-			acquireExclusiveTransactionLock();
-			namespaceStore.removeNamespace(prefix);
-		}
+						MemValue obj = st.getObject();
+						if (processedObjects.add(obj)) {
+							pending.add(new ComponentListCleanup(obj, 'o', obj.getObjectStatementList(), snapshot));
+						}
 
-		@Override
-		public void clearNamespaces()
-			throws SailException
-		{
-			acquireExclusiveTransactionLock();
-			namespaceStore.clear();
-		}
+						MemResource context = st.getContext();
+						if (context != null && processedContexts.add(context)) {
+							pending.add(new ComponentListCleanup(context, 'c', context.getContextStatementList(),
+									snapshot));
+						}
 
-		@Override
-		public void observe(Resource subj, URI pred, Value obj, Resource... contexts)
-			throws SailException
-		{
-			if (observations == null) {
-				observations = new HashSet<StatementPattern>();
-			}
-			if (contexts == null) {
-				observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred), new Var("o", obj),
-						new Var("g", null)));
-			}
-			else if (contexts.length == 0) {
-				observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred), new Var("o", obj)));
-			}
-			else {
-				for (Resource ctx : contexts) {
-					observations.add(new StatementPattern(new Var("s", subj), new Var("p", pred),
-							new Var("o", obj), new Var("g", ctx)));
+						// stale statement
+						statements.remove(i);
+					}
 				}
 			}
+			return inspected;
 		}
+	}
 
-		@Override
-		public void clear(Resource... contexts)
-			throws SailException
-		{
-			acquireExclusiveTransactionLock();
-			CloseableIteration<MemStatement, SailException> iter;
-			iter = createStatementIterator(null, null, null, explicit, nextSnapshot, contexts);
-			try {
-				while (iter.hasNext()) {
-					MemStatement st = iter.next();
-					st.setTillSnapshot(nextSnapshot);
-				}
-			}
-			finally {
-				iter.close();
-			}
-		}
+	/**
+	 * The cleanup of the subject ('s'), predicate ('p'), object ('o') or context
+	 * ('c') statement list of a value.
+	 */
+	private static final class ComponentListCleanup {
 
-		@Override
-		public synchronized void approve(Resource subj, URI pred, Value obj, Resource ctx)
-			throws SailException
-		{
-			acquireExclusiveTransactionLock();
-			addStatement(subj, pred, obj, ctx, explicit);
-		}
+		private final MemValue value;
 
-		@Override
-		public synchronized void deprecate(Resource subj, URI pred, Value obj, Resource ctx)
-			throws SailException
-		{
-			acquireExclusiveTransactionLock();
-			CloseableIteration<MemStatement, SailException> iter;
-			iter = createStatementIterator(subj, pred, obj, explicit, nextSnapshot, ctx);
-			try {
-				while (iter.hasNext()) {
-					MemStatement st = iter.next();
-					st.setTillSnapshot(nextSnapshot);
-				}
-			}
-			finally {
-				iter.close();
-			}
-		}
+		private final char field;
 
-		private void acquireExclusiveTransactionLock()
-			throws SailException
-		{
-			if (!txnLock) {
-				txnLockManager.lock();
-				nextSnapshot = currentSnapshot + 1;
-				txnLock = true;
-			}
+		private final MemStatementList list;
+
+		final MemStatementList.SnapshotCleanup cleanup;
+
+		public ComponentListCleanup(MemValue value, char field, MemStatementList list, int snapshot) {
+			this.value = value;
+			this.field = field;
+			this.list = list;
+			this.cleanup = list.createSnapshotCleanup(snapshot);
 		}
 
-		private MemStatement addStatement(Resource subj, URI pred, Value obj, Resource context, boolean explicit)
-			throws SailException
-		{
-			// Get or create MemValues for the operands
-			MemResource memSubj = valueFactory.getOrCreateMemResource(subj);
-			MemURI memPred = valueFactory.getOrCreateMemURI(pred);
-			MemValue memObj = valueFactory.getOrCreateMemValue(obj);
-			MemResource memContext = (context == null) ? null : valueFactory.getOrCreateMemResource(context);
-
-			if (memSubj.hasStatements() && memPred.hasStatements() && memObj.hasStatements()
-					&& (memContext == null || memContext.hasStatements()))
-			{
-				// All values are used in at least one statement. Possibly, the
-				// statement is already present. Check this.
-				CloseableIteration<MemStatement, SailException> stIter = createStatementIterator(memSubj,
-						memPred, memObj, null, Integer.MAX_VALUE - 1, memContext);
-
-				try {
-					if (stIter.hasNext()) {
-						// statement is already present, update its transaction
-						// status if appropriate
-						MemStatement st = stIter.next();
-
-						if (!st.isExplicit() && explicit) {
-							// Implicit statement is now added explicitly
-							st.setTillSnapshot(nextSnapshot);
-						}
-						else if (!st.isInSnapshot(nextSnapshot)) {
-							st.setSinceSnapshot(nextSnapshot);
-						}
-						else {
-							// statement already exists
-							return null;
-						}
-					}
-				}
-				finally {
-					stIter.close();
-				}
+		/**
+		 * Releases the list of the value if the cleanup has emptied it.
+		 */
+		public void finish(int snapshot) {
+			if (!list.isEmpty()) {
+				return;
+			}
+			// cleaning an empty list takes constant time
+			switch (field) {
+				case 's':
+					((MemResource)value).cleanSnapshotsFromSubjectStatements(snapshot);
+					break;
+				case 'p':
+					((MemURI)value).cleanSnapshotsFromPredicateStatements(snapshot);
+					break;
+				case 'o':
+					value.cleanSnapshotsFromObjectStatements(snapshot);
+					break;
+				case 'c':
+					((MemResource)value).cleanSnapshotsFromContextStatements(snapshot);
+					break;
 			}
-
-			// completely new statement
-			MemStatement st = new MemStatement(memSubj, memPred, memObj, memContext, explicit, nextSnapshot);
-			statements.add(st);
-			st.addToComponentLists();
-			return st;
 		}
 	}
 
@@ -685,11 +567,8 @@ class MemorySailStore implements SailStore {
 		public CloseableIteration<? extends Resource, SailException> getContextIDs()
 			throws SailException
 		{
-			// Note: we can't do this in a streaming fashion due to concurrency
-			// issues; iterating over the set of URIs or bnodes while another
-			// thread
-			// adds statements with new resources would result in
-			// ConcurrentModificationException's (issue SES-544).
+			// Note: we don't do this in a streaming fashion to avoid holding the
+			// statement lock while the results are consumed (issue SES-544).
 
 			// Create a list of all resources that are used as contexts
 			ArrayList<MemResource> contextIDs = new ArrayList<MemResource>(32);
@@ -697,18 +576,16 @@ class MemorySailStore implements SailStore {
 			Lock stLock = openStatementsReadLock();
 
 			try {
-				synchronized (valueFactory) {
-					int snapshot = getCurrentSnapshot();
-					for (MemResource memResource : valueFactory.getMemURIs()) {
-						if (isContextResource(memResource, snapshot)) {
-							contextIDs.add(memResource);
-						}
+				int snapshot = getCurrentSnapshot();
+				for (MemResource memResource : valueFactory.getMemURIs()) {
+					if (isContextResource(memResource, snapshot)) {
+						contextIDs.add(memResource);
 					}
+				}
 
-					for (MemResource memResource : valueFactory.getMemBNodes()) {
-						if (isContextResource(memResource, snapshot)) {
-							contextIDs.add(memResource);
-						}
+				for (MemResource memResource : valueFactory.getMemBNodes()) {
+					if (isContextResource(memResource, snapshot)) {
+						contextIDs.add(memResource);
 					}
 				}
 			}
@@ -740,6 +617,20 @@ class MemorySailStore implements SailStore {
 			}
 		}
 
+		@Override
+		public CloseableIteration<? extends Statement, SailException> getOrderedStatements(
+				StatementOrder order, Resource subj, URI pred, Value obj, Resource... contexts)
+			throws SailException
+		{
+			// statement lists are not sorted
+			return null;
+		}
+
+		@Override
+		public Comparator<Value> getComparator() {
+			return null;
+		}
+
 		private int getCurrentSnapshot() {
 			if (snapshot >= 0) {
 				return snapshot;
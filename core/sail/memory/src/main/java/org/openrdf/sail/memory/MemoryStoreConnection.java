@@ -18,6 +18,8 @@
 package org.openrdf.sail.memory;
 
 
+import java.util.concurrent.ExecutorService;
+
 import org.openrdf.model.Resource;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
@@ -25,6 +27,7 @@ import org.openrdf.query.Dataset;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.parallel.ParallelEvaluationStrategy;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.SailReadOnlyException;
 import org.openrdf.sail.base.SailSourceConnection;
@@ -127,6 +130,11 @@ public class MemoryStoreConnection extends SailSourceConnection {
 	
 	@Override
 	protected EvaluationStrategy getEvaluationStrategy(Dataset dataset, TripleSource tripleSource) {
+		ExecutorService executor = sail.getEvaluationExecutor();
+		if (executor != null) {
+			return new ParallelEvaluationStrategy(tripleSource, dataset, getFederatedServiceResolver(),
+					sail.getIterationCacheSyncThreshold(), executor);
+		}
 		return new EvaluationStrategyImpl(tripleSource, dataset, getFederatedServiceResolver(), sail.getIterationCacheSyncThreshold());
 	}
 
@@ -16,6 +16,8 @@
  */
 package org.openrdf.sail.memory.config;
 
+import static org.openrdf.sail.memory.config.MemoryStoreSchema.COMPACT_STORAGE;
+import static org.openrdf.sail.memory.config.MemoryStoreSchema.COMPOSITE_INDEXES;
 import static org.openrdf.sail.memory.config.MemoryStoreSchema.PERSIST;
 import static org.openrdf.sail.memory.config.MemoryStoreSchema.SYNC_DELAY;
 
@@ -36,6 +38,10 @@ public class MemoryStoreConfig extends SailImplConfigBase {
 
 	private long syncDelay = 0L;
 
+	private boolean compactStorage = false;
+
+	private boolean compositeIndexes = false;
+
 	public MemoryStoreConfig() {
 		super(MemoryStoreFactory.SAIL_TYPE);
 	}
@@ -66,6 +72,22 @@ public class MemoryStoreConfig extends SailImplConfigBase {
 		this.syncDelay = syncDelay;
 	}
 
+	public boolean getCompactStorage() {
+		return compactStorage;
+	}
+
+	public void setCompactStorage(boolean compactStorage) {
+		this.compactStorage = compactStorage;
+	}
+
+	public boolean getCompositeIndexes() {
+		return compositeIndexes;
+	}
+
+	public void setCompositeIndexes(boolean compositeIndexes) {
+		this.compositeIndexes = compositeIndexes;
+	}
+
 	@Override
 	public Resource export(Graph graph)
 	{
@@ -79,6 +101,14 @@ public class MemoryStoreConfig extends SailImplConfigBase {
 			graph.add(implNode, SYNC_DELAY, graph.getValueFactory().createLiteral(syncDelay));
 		}
 
+		if (compactStorage) {
+			graph.add(implNode, COMPACT_STORAGE, graph.getValueFactory().createLiteral(compactStorage));
+		}
+
+		if (compositeIndexes) {
+			graph.add(implNode, COMPOSITE_INDEXES, graph.getValueFactory().createLiteral(compositeIndexes));
+		}
+
 		return implNode;
 	}
 
@@ -110,6 +140,29 @@ public class MemoryStoreConfig extends SailImplConfigBase {
 							+ " property, found " + syncDelayValue);
 				}
 			}
+
+			Literal compactStorageValue = GraphUtil.getOptionalObjectLiteral(graph, implNode, COMPACT_STORAGE);
+			if (compactStorageValue != null) {
+				try {
+					setCompactStorage((compactStorageValue).booleanValue());
+				}
+				catch (IllegalArgumentException e) {
+					throw new SailConfigException("Boolean value required for " + COMPACT_STORAGE
+							+ " property, found " + compactStorageValue);
+				}
+			}
+
+			Literal compositeIndexesValue = GraphUtil.getOptionalObjectLiteral(graph, implNode,
+					COMPOSITE_INDEXES);
+			if (compositeIndexesValue != null) {
+				try {
+					setCompositeIndexes((compositeIndexesValue).booleanValue());
+				}
+				catch (IllegalArgumentException e) {
+					throw new SailConfigException("Boolean value required for " + COMPOSITE_INDEXES
+							+ " property, found " + compositeIndexesValue);
+				}
+			}
 		}
 		catch (GraphUtilException e) {
 			throw new SailConfigException(e.getMessage(), e);
@@ -62,10 +62,15 @@ public class MemoryStoreFactory implements SailFactory {
 
 			memoryStore.setPersist(memConfig.getPersist());
 			memoryStore.setSyncDelay(memConfig.getSyncDelay());
+			memoryStore.setCompactStorage(memConfig.getCompactStorage());
+			memoryStore.setCompositeIndexes(memConfig.getCompositeIndexes());
 			
 			if (memConfig.getIterationCacheSyncThreshold() > 0) {
 				memoryStore.setIterationCacheSyncThreshold(memConfig.getIterationCacheSyncThreshold());
 			}
+			if (memConfig.getEvaluationThreads() > 0) {
+				memoryStore.setEvaluationThreads(memConfig.getEvaluationThreads());
+			}
 		}
 
 		return memoryStore;
@@ -38,9 +38,17 @@ public class MemoryStoreSchema {
 	/** <tt>http://www.openrdf.org/config/sail/memory#syncDelay</tt> */
 	public final static URI SYNC_DELAY;
 
+	/** <tt>http://www.openrdf.org/config/sail/memory#compactStorage</tt> */
+	public final static URI COMPACT_STORAGE;
+
+	/** <tt>http://www.openrdf.org/config/sail/memory#compositeIndexes</tt> */
+	public final static URI COMPOSITE_INDEXES;
+
 	static {
 		ValueFactory factory = ValueFactoryImpl.getInstance();
 		PERSIST = factory.createURI(NAMESPACE, "persist");
 		SYNC_DELAY = factory.createURI(NAMESPACE, "syncDelay");
+		COMPACT_STORAGE = factory.createURI(NAMESPACE, "compactStorage");
+		COMPOSITE_INDEXES = factory.createURI(NAMESPACE, "compositeIndexes");
 	}
 }
@@ -98,7 +98,7 @@ public class MemBNode extends BNodeImpl implements MemResource {
 
 	public void addSubjectStatement(MemStatement st) {
 		if (subjectStatements == null) {
-			subjectStatements = new MemStatementList(4);
+			subjectStatements = new MemStatementList(4, MemValueFactory.getIndexFields(creator, SUBJECT_INDEX_FIELDS));
 		}
 
 		subjectStatements.add(st);
@@ -142,7 +142,7 @@ public class MemBNode extends BNodeImpl implements MemResource {
 
 	public void addObjectStatement(MemStatement st) {
 		if (objectStatements == null) {
-			objectStatements = new MemStatementList(4);
+			objectStatements = new MemStatementList(4, MemValueFactory.getIndexFields(creator, OBJECT_INDEX_FIELDS));
 		}
 
 		objectStatements.add(st);
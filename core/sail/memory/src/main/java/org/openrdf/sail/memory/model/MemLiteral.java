@@ -122,7 +122,7 @@ public class MemLiteral extends LiteralImpl implements MemValue {
 
 	public void addObjectStatement(MemStatement st) {
 		if (objectStatements == null) {
-			objectStatements = new MemStatementList(1);
+			objectStatements = new MemStatementList(1, MemValueFactory.getIndexFields(creator, OBJECT_INDEX_FIELDS));
 		}
 
 		objectStatements.add(st);
@@ -23,6 +23,12 @@ import org.openrdf.model.Resource;
  */
 public interface MemResource extends MemValue, Resource {
 
+	/**
+	 * The fields on which large subject statement lists are indexed, so that
+	 * subject-predicate patterns can be looked up directly.
+	 */
+	static final char[] SUBJECT_INDEX_FIELDS = { 'p' };
+
 	/**
 	 * Gets the list of statements for which this MemResource is the subject.
 	 * @return a MemStatementList containing the statements.
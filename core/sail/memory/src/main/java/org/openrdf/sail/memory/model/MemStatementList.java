@@ -17,13 +17,31 @@
 package org.openrdf.sail.memory.model;
 
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A dedicated data structure for storing MemStatement objects, offering
- * operations optimized for their use in the memory Sail.
+ * operations optimized for their use in the memory Sail. Large lists can keep
+ * composite indexes that group their statements on the value of another
+ * statement field, so that a pattern that binds both fields only needs to
+ * inspect the matching statements.
  */
 public class MemStatementList {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The number of statements from which a list keeps composite indexes on its
+	 * index fields. Smaller lists, and lists without index fields, are filtered
+	 * linearly. Values only create their lists with index fields if composite
+	 * indexes are enabled, see {@link MemValueFactory#setCompositeIndexes}.
+	 */
+	public static final int MIN_INDEXED_SIZE = 32;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -32,6 +50,18 @@ public class MemStatementList {
 
 	private volatile int size;
 
+	/**
+	 * The statement fields on which composite indexes are kept: 's', 'p', 'o'
+	 * or 'c'.
+	 */
+	private final char[] indexFields;
+
+	/**
+	 * The composite indexes on the {@link #indexFields}, or <tt>null</tt> if
+	 * this list is too small to be indexed.
+	 */
+	private volatile StatementIndex[] indexes;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -44,8 +74,21 @@ public class MemStatementList {
 	}
 
 	public MemStatementList(int capacity) {
+		this(capacity, new char[0]);
+	}
+
+	/**
+	 * Creates a new MemStatementList that keeps composite indexes on the
+	 * specified statement fields once it contains {@link #MIN_INDEXED_SIZE}
+	 * statements.
+	 * 
+	 * @param indexFields
+	 *        The statement fields to index: 's', 'p', 'o' or 'c'.
+	 */
+	public MemStatementList(int capacity, char... indexFields) {
 		statements = new MemStatement[capacity];
 		size = 0;
+		this.indexFields = indexFields;
 	}
 
 	public MemStatementList(MemStatementList other) {
@@ -80,6 +123,13 @@ public class MemStatementList {
 
 		statements[size] = st;
 		++size;
+
+		if (indexes != null) {
+			addToIndexes(st);
+		}
+		else if (indexFields.length > 0 && size >= MIN_INDEXED_SIZE) {
+			createIndexes();
+		}
 	}
 
 	public void addAll(MemStatementList other) {
@@ -90,12 +140,25 @@ public class MemStatementList {
 
 		System.arraycopy(other.statements, 0, statements, size, other.size);
 		size += other.size;
+
+		if (indexes != null) {
+			for (int i = size - other.size; i < size; i++) {
+				addToIndexes(statements[i]);
+			}
+		}
+		else if (indexFields.length > 0 && size >= MIN_INDEXED_SIZE) {
+			createIndexes();
+		}
 	}
 
 	public void remove(int index) {
 		assert index >= 0 : "index < 0";
 		assert index < size : "index >= size";
 
+		if (indexes != null) {
+			removeFromIndexes(statements[index]);
+		}
+
 		if (index == size - 1) {
 			// Last statement in array
 			statements[index] = null;
@@ -122,32 +185,73 @@ public class MemStatementList {
 	public void clear() {
 		Arrays.fill(statements, 0, size, null);
 		size = 0;
+		indexes = null;
 	}
 
+	/**
+	 * Removes the statements that are no longer visible from the specified
+	 * snapshot on from this list and its composite indexes.
+	 */
 	public void cleanSnapshots(int currentSnapshot) {
-		int i = size - 1;
+		new SnapshotCleanup(currentSnapshot).clean(Integer.MAX_VALUE);
+	}
 
-		// remove all deprecated statements from the end of the list
-		for (; i >= 0; i--) {
-			if (statements[i].getTillSnapshot() <= currentSnapshot) {
-				--size;
-				statements[i] = null;
-			}
-			else {
-				i--;
-				break;
+	/**
+	 * Creates a cleanup of the statements that are no longer visible from the
+	 * specified snapshot on, which can be performed in steps.
+	 * 
+	 * @see SnapshotCleanup#clean(int)
+	 */
+	public SnapshotCleanup createSnapshotCleanup(int currentSnapshot) {
+		return new SnapshotCleanup(currentSnapshot);
+	}
+
+	/**
+	 * Gets the statements of this list that have the specified value in the
+	 * specified field.
+	 * 
+	 * @param field
+	 *        The statement field: 's', 'p', 'o' or 'c'.
+	 * @param value
+	 *        The value of the field.
+	 * @return A MemStatementList containing the statements, or <tt>null</tt> if
+	 *         this list does not keep a composite index on the specified field.
+	 */
+	public MemStatementList getStatementList(char field, MemValue value) {
+		StatementIndex[] current = indexes;
+		if (current != null && value != null) {
+			for (StatementIndex index : current) {
+				if (index.field == field) {
+					MemStatementList list = index.lists.get(value);
+					return list == null ? MemValue.EMPTY_LIST : list;
+				}
 			}
 		}
+		return null;
+	}
 
-		// remove all deprecated statements that are not at the end of the list
-		for (; i >= 0; i--) {
-			if (statements[i].getTillSnapshot() <= currentSnapshot) {
-				// replace statement with last statement in the list
-				--size;
-				statements[i] = statements[size];
-				statements[size] = null;
+	private void createIndexes() {
+		StatementIndex[] newIndexes = new StatementIndex[indexFields.length];
+		for (int i = 0; i < indexFields.length; i++) {
+			newIndexes[i] = new StatementIndex(indexFields[i]);
+			for (int j = 0; j < size; j++) {
+				newIndexes[i].add(statements[j]);
 			}
 		}
+		// only publish the indexes once they are complete
+		indexes = newIndexes;
+	}
+
+	private void addToIndexes(MemStatement st) {
+		for (StatementIndex index : indexes) {
+			index.add(st);
+		}
+	}
+
+	private void removeFromIndexes(MemStatement st) {
+		for (StatementIndex index : indexes) {
+			index.remove(st);
+		}
 	}
 
 	private void growArray(int newSize) {
@@ -155,4 +259,168 @@ public class MemStatementList {
 		System.arraycopy(statements, 0, newArray, 0, size);
 		statements = newArray;
 	}
+
+	/**
+	 * Groups the statements of a list on the value of one of their fields.
+	 */
+	private static final class StatementIndex {
+
+		final char field;
+
+		final ConcurrentHashMap<MemValue, MemStatementList> lists = new ConcurrentHashMap<MemValue, MemStatementList>();
+
+		public StatementIndex(char field) {
+			this.field = field;
+		}
+
+		public void add(MemStatement st) {
+			MemValue key = getKey(st);
+			if (key != null) {
+				MemStatementList list = lists.get(key);
+				if (list == null) {
+					list = new MemStatementList(1);
+					lists.put(key, list);
+				}
+				list.add(st);
+			}
+		}
+
+		public void remove(MemStatement st) {
+			MemValue key = getKey(st);
+			if (key != null) {
+				MemStatementList list = lists.get(key);
+				if (list != null) {
+					list.remove(st);
+					if (list.isEmpty()) {
+						lists.remove(key);
+					}
+				}
+			}
+		}
+
+		private MemValue getKey(MemStatement st) {
+			switch (field) {
+				case 's':
+					return st.getSubject();
+				case 'p':
+					return st.getPredicate();
+				case 'o':
+					return st.getObject();
+				case 'c':
+					return st.getContext();
+				default:
+					throw new IllegalArgumentException("Unknown statement field: " + field);
+			}
+		}
+	}
+
+	/**
+	 * A cleanup of the statements of this list and its composite indexes that
+	 * are no longer visible, which can be interrupted after any number of
+	 * statements. This lets the cleanup of a large list be spread over several
+	 * holds of the statement list lock. Statements can be added to the list in
+	 * between steps, but must not be removed other than by this cleanup.
+	 */
+	public final class SnapshotCleanup {
+
+		private final int currentSnapshot;
+
+		/**
+		 * The position after the next statement of this list to inspect; the
+		 * list is inspected from its end to its start.
+		 */
+		private int position = size;
+
+		/**
+		 * The composite indexes that are being cleaned, <tt>null</tt> while
+		 * this list itself is being cleaned.
+		 */
+		private StatementIndex[] cleanedIndexes;
+
+		private int indexNo;
+
+		private Iterator<Map.Entry<MemValue, MemStatementList>> indexIter;
+
+		private Map.Entry<MemValue, MemStatementList> indexEntry;
+
+		private SnapshotCleanup indexListCleanup;
+
+		private boolean done;
+
+		SnapshotCleanup(int currentSnapshot) {
+			this.currentSnapshot = currentSnapshot;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Continues this cleanup until it is done or the specified number of
+		 * statements has been inspected. Must be called while holding an
+		 * exclusive lock on the list.
+		 * 
+		 * @return The number of statements that have been inspected.
+		 */
+		public int clean(int maxCount) {
+			int inspected = 0;
+			while (!done && inspected < maxCount) {
+				if (cleanedIndexes == null) {
+					position = Math.min(position, size);
+					if (position > 0) {
+						int i = --position;
+						inspected++;
+						if (statements[i].getTillSnapshot() <= currentSnapshot) {
+							// replace statement with last statement in the list,
+							// which has already been inspected
+							--size;
+							statements[i] = statements[size];
+							statements[size] = null;
+						}
+					}
+					else {
+						startIndexCleanup();
+					}
+				}
+				else if (indexListCleanup != null) {
+					inspected += indexListCleanup.clean(maxCount - inspected);
+					if (indexListCleanup.isDone()) {
+						MemStatementList list = indexEntry.getValue();
+						if (list.isEmpty()) {
+							cleanedIndexes[indexNo].lists.remove(indexEntry.getKey(), list);
+						}
+						indexListCleanup = null;
+					}
+				}
+				else if (indexIter.hasNext()) {
+					indexEntry = indexIter.next();
+					indexListCleanup = indexEntry.getValue().new SnapshotCleanup(currentSnapshot);
+					inspected++;
+				}
+				else if (++indexNo < cleanedIndexes.length) {
+					indexIter = cleanedIndexes[indexNo].lists.entrySet().iterator();
+				}
+				else {
+					done = true;
+				}
+			}
+			return inspected;
+		}
+
+		private void startIndexCleanup() {
+			StatementIndex[] current = indexes;
+			if (current == null) {
+				done = true;
+			}
+			else if (size < MIN_INDEXED_SIZE) {
+				indexes = null;
+				done = true;
+			}
+			else {
+				cleanedIndexes = current;
+				indexNo = 0;
+				indexIter = current[0].lists.entrySet().iterator();
+			}
+		}
+	}
 }
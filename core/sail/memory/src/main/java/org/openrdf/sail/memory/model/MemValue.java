@@ -34,6 +34,12 @@ public interface MemValue extends Value {
 	 */
 	static final MemStatementList EMPTY_LIST = new MemStatementList(0);
 
+	/**
+	 * The fields on which large object statement lists are indexed, so that
+	 * predicate-object and object-context patterns can be looked up directly.
+	 */
+	static final char[] OBJECT_INDEX_FIELDS = { 'p', 'c' };
+
 	/*---------*
 	 * Methods *
 	 *---------*/
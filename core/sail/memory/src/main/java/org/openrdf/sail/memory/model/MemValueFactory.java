@@ -48,6 +48,12 @@ import org.openrdf.model.vocabulary.XMLSchema;
  */
 public class MemValueFactory extends ValueFactoryBase {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final char[] NO_INDEX_FIELDS = new char[0];
+
 	/*------------*
 	 * Attributes *
 	 *------------*/
@@ -80,10 +86,42 @@ public class MemValueFactory extends ValueFactoryBase {
 	 */
 	private final WeakObjectRegistry<String> namespaceRegistry = new WeakObjectRegistry<String>();
 
+	/**
+	 * Flag indicating whether the large statement lists of the created values
+	 * keep composite indexes.
+	 */
+	private volatile boolean compositeIndexes = false;
+
 	/*---------*
 	 * Methods *
 	 *---------*/
 
+	/**
+	 * Sets whether the subject and object statement lists of the values that
+	 * are created from now on keep composite indexes once they contain
+	 * {@link MemStatementList#MIN_INDEXED_SIZE} statements. Defaults to
+	 * <tt>false</tt>.
+	 */
+	public void setCompositeIndexes(boolean compositeIndexes) {
+		this.compositeIndexes = compositeIndexes;
+	}
+
+	public boolean getCompositeIndexes() {
+		return compositeIndexes;
+	}
+
+	/**
+	 * Gets the fields on which the statement lists of a value are indexed: the
+	 * supplied fields if the value was created by a MemValueFactory with
+	 * composite indexes, none otherwise.
+	 */
+	static char[] getIndexFields(Object creator, char[] indexFields) {
+		if (creator instanceof MemValueFactory && ((MemValueFactory)creator).compositeIndexes) {
+			return indexFields;
+		}
+		return NO_INDEX_FIELDS;
+	}
+
 	public void clear() {
 		uriRegistry.clear();
 		bnodeRegistry.clear();
@@ -138,7 +176,7 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * See getMemValue() for description.
 	 */
-	public synchronized MemURI getMemURI(URI uri) {
+	public MemURI getMemURI(URI uri) {
 		if (isOwnMemValue(uri)) {
 			return (MemURI)uri;
 		}
@@ -150,7 +188,7 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * See getMemValue() for description.
 	 */
-	public synchronized MemBNode getMemBNode(BNode bnode) {
+	public MemBNode getMemBNode(BNode bnode) {
 		if (isOwnMemValue(bnode)) {
 			return (MemBNode)bnode;
 		}
@@ -162,7 +200,7 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * See getMemValue() for description.
 	 */
-	public synchronized MemLiteral getMemLiteral(Literal literal) {
+	public MemLiteral getMemLiteral(Literal literal) {
 		if (isOwnMemValue(literal)) {
 			return (MemLiteral)literal;
 		}
@@ -182,9 +220,8 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * Gets all URIs that are managed by this value factory.
 	 * <p>
-	 * <b>Warning:</b> This method is not synchronized. To iterate over the
-	 * returned set in a thread-safe way, this method should only be called while
-	 * synchronizing on this object.
+	 * The returned set can be iterated while values are being added; the
+	 * iteration may or may not include such values.
 	 * 
 	 * @return An unmodifiable Set of MemURI objects.
 	 */
@@ -195,9 +232,8 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * Gets all bnodes that are managed by this value factory.
 	 * <p>
-	 * <b>Warning:</b> This method is not synchronized. To iterate over the
-	 * returned set in a thread-safe way, this method should only be called while
-	 * synchronizing on this object.
+	 * The returned set can be iterated while values are being added; the
+	 * iteration may or may not include such values.
 	 * 
 	 * @return An unmodifiable Set of MemBNode objects.
 	 */
@@ -208,9 +244,8 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * Gets all literals that are managed by this value factory.
 	 * <p>
-	 * <b>Warning:</b> This method is not synchronized. To iterate over the
-	 * returned set in a thread-safe way, this method should only be called while
-	 * synchronizing on this object.
+	 * The returned set can be iterated while values are being added; the
+	 * iteration may or may not include such values.
 	 * 
 	 * @return An unmodifiable Set of MemURI objects.
 	 */
@@ -258,28 +293,17 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * See {@link #getOrCreateMemValue(Value)} for description.
 	 */
-	public synchronized MemURI getOrCreateMemURI(URI uri) {
+	public MemURI getOrCreateMemURI(URI uri) {
 		MemURI memURI = getMemURI(uri);
 
 		if (memURI == null) {
 			// Namespace strings are relatively large objects and are shared
 			// between uris
-			String namespace = uri.getNamespace();
-			String sharedNamespace = namespaceRegistry.get(namespace);
+			String namespace = namespaceRegistry.getOrAdd(uri.getNamespace());
 
-			if (sharedNamespace == null) {
-				// New namespace, add it to the registry
-				namespaceRegistry.add(namespace);
-			}
-			else {
-				// Use the shared namespace
-				namespace = sharedNamespace;
-			}
-
-			// Create a MemURI and add it to the registry
-			memURI = new MemURI(this, namespace, uri.getLocalName());
-			boolean wasNew = uriRegistry.add(memURI);
-			assert wasNew : "Created a duplicate MemURI for URI " + uri;
+			// Create a MemURI and add it to the registry, unless another thread
+			// has just done so
+			memURI = uriRegistry.getOrAdd(new MemURI(this, namespace, uri.getLocalName()));
 		}
 
 		return memURI;
@@ -288,13 +312,11 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * See {@link #getOrCreateMemValue(Value)} for description.
 	 */
-	public synchronized MemBNode getOrCreateMemBNode(BNode bnode) {
+	public MemBNode getOrCreateMemBNode(BNode bnode) {
 		MemBNode memBNode = getMemBNode(bnode);
 
 		if (memBNode == null) {
-			memBNode = new MemBNode(this, bnode.getID());
-			boolean wasNew = bnodeRegistry.add(memBNode);
-			assert wasNew : "Created a duplicate MemBNode for bnode " + bnode;
+			memBNode = bnodeRegistry.getOrAdd(new MemBNode(this, bnode.getID()));
 		}
 
 		return memBNode;
@@ -303,7 +325,7 @@ public class MemValueFactory extends ValueFactoryBase {
 	/**
 	 * See {@link #getOrCreateMemValue(Value)} for description.
 	 */
-	public synchronized MemLiteral getOrCreateMemLiteral(Literal literal) {
+	public MemLiteral getOrCreateMemLiteral(Literal literal) {
 		MemLiteral memLiteral = getMemLiteral(literal);
 
 		if (memLiteral == null) {
@@ -343,21 +365,20 @@ public class MemValueFactory extends ValueFactoryBase {
 				}
 			}
 
-			boolean wasNew = literalRegistry.add(memLiteral);
-			assert wasNew : "Created a duplicate MemLiteral for literal " + literal;
+			memLiteral = literalRegistry.getOrAdd(memLiteral);
 		}
 
 		return memLiteral;
 	}
 
 	@Override
-	public synchronized URI createURI(String uri) {
+	public URI createURI(String uri) {
 		URI tempURI = new URIImpl(uri);
 		return getOrCreateMemURI(tempURI);
 	}
 
 	@Override
-	public synchronized URI createURI(String namespace, String localName) {
+	public URI createURI(String namespace, String localName) {
 		URI tempURI = null;
 
 		// Reuse supplied namespace and local name strings if possible
@@ -376,63 +397,55 @@ public class MemValueFactory extends ValueFactoryBase {
 	}
 
 	@Override
-	public synchronized BNode createBNode(String nodeID) {
+	public BNode createBNode(String nodeID) {
 		BNode tempBNode = new BNodeImpl(nodeID);
 		return getOrCreateMemBNode(tempBNode);
 	}
 
 	@Override
-	public synchronized Literal createLiteral(String value) {
+	public Literal createLiteral(String value) {
 		Literal tempLiteral = new LiteralImpl(value, XMLSchema.STRING);
 		return getOrCreateMemLiteral(tempLiteral);
 	}
 
 	@Override
-	public synchronized Literal createLiteral(String value, String language) {
+	public Literal createLiteral(String value, String language) {
 		Literal tempLiteral = new LiteralImpl(value, language);
 		return getOrCreateMemLiteral(tempLiteral);
 	}
 
 	@Override
-	public synchronized Literal createLiteral(String value, URI datatype) {
+	public Literal createLiteral(String value, URI datatype) {
 		Literal tempLiteral = new LiteralImpl(value, datatype);
 		return getOrCreateMemLiteral(tempLiteral);
 	}
 
 	@Override
-	public synchronized Literal createLiteral(boolean value) {
+	public Literal createLiteral(boolean value) {
 		MemLiteral newLiteral = new BooleanMemLiteral(this, value);
 		return getSharedLiteral(newLiteral);
 	}
 
 	@Override
-	protected synchronized Literal createIntegerLiteral(Number n, URI datatype) {
+	protected Literal createIntegerLiteral(Number n, URI datatype) {
 		MemLiteral newLiteral = new IntegerMemLiteral(this, BigInteger.valueOf(n.longValue()), datatype);
 		return getSharedLiteral(newLiteral);
 	}
 
 	@Override
-	protected synchronized Literal createFPLiteral(Number n, URI datatype) {
+	protected Literal createFPLiteral(Number n, URI datatype) {
 		MemLiteral newLiteral = new NumericMemLiteral(this, n, datatype);
 		return getSharedLiteral(newLiteral);
 	}
 
 	@Override
-	public synchronized Literal createLiteral(XMLGregorianCalendar calendar) {
+	public Literal createLiteral(XMLGregorianCalendar calendar) {
 		MemLiteral newLiteral = new CalendarMemLiteral(this, calendar);
 		return getSharedLiteral(newLiteral);
 	}
 
 	private Literal getSharedLiteral(MemLiteral newLiteral) {
-		MemLiteral sharedLiteral = literalRegistry.get(newLiteral);
-
-		if (sharedLiteral == null) {
-			boolean wasNew = literalRegistry.add(newLiteral);
-			assert wasNew : "Created a duplicate MemLiteral for literal " + newLiteral;
-			sharedLiteral = newLiteral;
-		}
-
-		return sharedLiteral;
+		return literalRegistry.getOrAdd(newLiteral);
 	}
 
 	@Override
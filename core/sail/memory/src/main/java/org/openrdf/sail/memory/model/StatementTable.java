@@ -0,0 +1,691 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A compact, columnar table of statements. Each statement is a row of
+ * primitive columns: the dictionary IDs of its subject, predicate, object and
+ * context, the snapshots since and till which it is visible, and its explicit
+ * flag. For each value, the table keeps the rows in which the value is used as
+ * subject, predicate, object or context as arrays of row numbers. Row 0 is
+ * never used.
+ * <p>
+ * Rows are added and changed by a single writer at a time and can be read
+ * concurrently. Like a {@link MemStatementList}, the table publishes new rows
+ * through a volatile row count: a reader that has read the row count sees all
+ * rows below it, while rows that are being added concurrently are skipped.
+ * Rows are only removed by a {@link Compaction}, which is performed in steps
+ * that each require exclusive access. Removed rows are reused by later
+ * additions.
+ */
+public class StatementTable {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	public static final int SUBJECT = 0;
+
+	public static final int PREDICATE = 1;
+
+	public static final int OBJECT = 2;
+
+	public static final int CONTEXT = 3;
+
+	/**
+	 * The since-snapshot of rows that have been removed. It is higher than any
+	 * snapshot that is read, so such rows are not visible in any snapshot.
+	 */
+	private static final int REMOVED = Integer.MAX_VALUE;
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	private volatile int[] subjects;
+
+	private volatile int[] predicates;
+
+	private volatile int[] objects;
+
+	private volatile int[] contexts;
+
+	private volatile int[] sinceSnapshots;
+
+	private volatile int[] tillSnapshots;
+
+	private volatile boolean[] explicitFlags;
+
+	/**
+	 * The number of the next row to add. All rows are lower than this number.
+	 */
+	private volatile int rowCount;
+
+	/**
+	 * The row indexes on the subject, predicate, object and context columns.
+	 */
+	private volatile RowIndex[] indexes;
+
+	/**
+	 * The removed rows that can be reused by {@link #add}.
+	 */
+	private int[] freeRows;
+
+	/**
+	 * The number of removed rows in {@link #freeRows}.
+	 */
+	private volatile int freeRowCount;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public StatementTable() {
+		clear();
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the number of the next row to add. All rows are lower than this
+	 * number. Reading the row count makes all rows below it visible to the
+	 * current thread.
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the number of rows in this table.
+	 */
+	public int size() {
+		return rowCount - 1 - freeRowCount;
+	}
+
+	public int getSubject(int row) {
+		return subjects[row];
+	}
+
+	public int getPredicate(int row) {
+		return predicates[row];
+	}
+
+	public int getObject(int row) {
+		return objects[row];
+	}
+
+	/**
+	 * Gets the context ID of a row, 0 for the null context.
+	 */
+	public int getContext(int row) {
+		return contexts[row];
+	}
+
+	public boolean isExplicit(int row) {
+		return explicitFlags[row];
+	}
+
+	public int getSinceSnapshot(int row) {
+		return sinceSnapshots[row];
+	}
+
+	public void setSinceSnapshot(int row, int snapshot) {
+		sinceSnapshots[row] = snapshot;
+	}
+
+	public int getTillSnapshot(int row) {
+		return tillSnapshots[row];
+	}
+
+	public void setTillSnapshot(int row, int snapshot) {
+		tillSnapshots[row] = snapshot;
+	}
+
+	public boolean isInSnapshot(int row, int snapshot) {
+		return snapshot >= sinceSnapshots[row] && snapshot < tillSnapshots[row];
+	}
+
+	/**
+	 * Adds a row that is visible from the specified snapshot on, reusing a
+	 * removed row if there is one. Must not be called concurrently with other
+	 * changes.
+	 * 
+	 * @return The number of the new row.
+	 */
+	public int add(int subj, int pred, int obj, int context, boolean explicit, int sinceSnapshot) {
+		if (freeRowCount > 0) {
+			int row = freeRows[freeRowCount - 1];
+			freeRowCount--;
+			subjects[row] = subj;
+			predicates[row] = pred;
+			objects[row] = obj;
+			contexts[row] = context;
+			explicitFlags[row] = explicit;
+			// a concurrent full scan may read the since-snapshot of the removed
+			// row or the pending one, both of which are higher than any snapshot
+			// it reads, so the row stays invisible until the commit sets its
+			// since-snapshot and publishes the new snapshot
+			sinceSnapshots[row] = sinceSnapshot;
+			tillSnapshots[row] = Integer.MAX_VALUE;
+
+			addToIndexes(indexes, row);
+
+			// publishes the row
+			rowCount = rowCount;
+			return row;
+		}
+
+		int row = rowCount;
+		if (row == subjects.length) {
+			int capacity = row + (row >> 1);
+			subjects = Arrays.copyOf(subjects, capacity);
+			predicates = Arrays.copyOf(predicates, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+			contexts = Arrays.copyOf(contexts, capacity);
+			sinceSnapshots = Arrays.copyOf(sinceSnapshots, capacity);
+			tillSnapshots = Arrays.copyOf(tillSnapshots, capacity);
+			explicitFlags = Arrays.copyOf(explicitFlags, capacity);
+		}
+		subjects[row] = subj;
+		predicates[row] = pred;
+		objects[row] = obj;
+		contexts[row] = context;
+		sinceSnapshots[row] = sinceSnapshot;
+		tillSnapshots[row] = Integer.MAX_VALUE;
+		explicitFlags[row] = explicit;
+
+		addToIndexes(indexes, row);
+
+		// publishes the row
+		rowCount = row + 1;
+		return row;
+	}
+
+	/**
+	 * Gets the number of rows in which the specified value is used in the
+	 * specified column.
+	 * 
+	 * @param column
+	 *        {@link #SUBJECT}, {@link #PREDICATE}, {@link #OBJECT} or
+	 *        {@link #CONTEXT}.
+	 */
+	public int getRowCount(int column, int valueID) {
+		return indexes[column].size(valueID);
+	}
+
+	/**
+	 * Iterates over the rows that match the specified IDs.
+	 * 
+	 * @param subj
+	 *        The subject ID, or 0 for any subject.
+	 * @param pred
+	 *        The predicate ID, or 0 for any predicate.
+	 * @param obj
+	 *        The object ID, or 0 for any object.
+	 * @param contexts
+	 *        The context IDs, 0 for the null context, or an empty array for any
+	 *        context.
+	 * @param explicit
+	 *        The explicit flag of the rows, or <tt>null</tt> for both explicit
+	 *        and inferred rows.
+	 * @param snapshot
+	 *        The snapshot in which the rows must be visible, or -1 for all rows.
+	 */
+	public RowIterator iterator(int subj, int pred, int obj, int[] contexts, Boolean explicit, int snapshot) {
+		int maxRow = rowCount;
+		RowIndex[] indexes = this.indexes;
+
+		// Use the smallest row list of the specified values
+		int[] rows = null;
+		int size = maxRow;
+		int[] ids = { subj, pred, obj, contexts.length == 1 ? contexts[0] : 0 };
+		for (int column = SUBJECT; column <= CONTEXT; column++) {
+			if (ids[column] != 0) {
+				int[] list = indexes[column].get(ids[column]);
+				if (list == null) {
+					rows = new int[0];
+					size = 0;
+					break;
+				}
+				int listSize = Math.min(indexes[column].size(ids[column]), list.length);
+				if (rows == null || listSize < size) {
+					rows = list;
+					size = listSize;
+				}
+			}
+		}
+
+		return new RowIterator(rows, size, maxRow, subj, pred, obj, contexts, explicit, snapshot);
+	}
+
+	/**
+	 * Creates a compaction that removes the rows that are no longer visible
+	 * from the specified snapshot on, and the values that are no longer used by
+	 * any row.
+	 * 
+	 * @see Compaction#compact(int)
+	 */
+	public Compaction createCompaction(int snapshot, ValueDictionary dictionary) {
+		return new Compaction(snapshot, dictionary);
+	}
+
+	/**
+	 * Removes all rows. Must not be called concurrently with any other method.
+	 */
+	public void clear() {
+		subjects = new int[256];
+		predicates = new int[256];
+		objects = new int[256];
+		contexts = new int[256];
+		sinceSnapshots = new int[256];
+		tillSnapshots = new int[256];
+		explicitFlags = new boolean[256];
+		indexes = createIndexes(256);
+		freeRows = new int[16];
+		freeRowCount = 0;
+		rowCount = 1;
+	}
+
+	private void addToIndexes(RowIndex[] indexes, int row) {
+		indexes[SUBJECT].add(subjects[row], row);
+		indexes[PREDICATE].add(predicates[row], row);
+		indexes[OBJECT].add(objects[row], row);
+		if (contexts[row] != 0) {
+			indexes[CONTEXT].add(contexts[row], row);
+		}
+	}
+
+	private static RowIndex[] createIndexes(int capacity) {
+		return new RowIndex[] {
+				new RowIndex(capacity),
+				new RowIndex(capacity),
+				new RowIndex(capacity),
+				new RowIndex(capacity) };
+	}
+
+	/*------------------------*
+	 * Inner class Compaction *
+	 *------------------------*/
+
+	/**
+	 * A removal of the rows that are no longer visible and of the values that
+	 * are no longer used, which can be interrupted after any number of rows,
+	 * row index entries or values. This lets the compaction of a large table be
+	 * spread over several holds of an exclusive lock on the table. Rows can be
+	 * added and changed in between steps, but must not be removed other than
+	 * by this compaction. Rows and values keep their numbers; removed ones are
+	 * reused by later additions.
+	 */
+	public final class Compaction {
+
+		private final int snapshot;
+
+		private final ValueDictionary dictionary;
+
+		/**
+		 * The row count when this compaction was created. Higher rows have been
+		 * added during the compaction and are still visible.
+		 */
+		private final int maxRow;
+
+		/**
+		 * The rows that have been marked as removed. They are freed once they
+		 * have been removed from the row indexes.
+		 */
+		private int[] removedRows = new int[16];
+
+		private int removedCount;
+
+		/**
+		 * 0 while marking rows, 1 while cleaning the row indexes, 2 while
+		 * freeing rows and 3 while removing values.
+		 */
+		private int phase;
+
+		/**
+		 * The next row, value or removed row to inspect in the current phase.
+		 */
+		private int position = 1;
+
+		private int column;
+
+		/**
+		 * The next entry to inspect in the row list that is being cleaned.
+		 */
+		private int readIndex;
+
+		/**
+		 * The number of entries that have been kept in the row list that is
+		 * being cleaned.
+		 */
+		private int writeIndex;
+
+		private boolean done;
+
+		Compaction(int snapshot, ValueDictionary dictionary) {
+			this.snapshot = snapshot;
+			this.dictionary = dictionary;
+			this.maxRow = rowCount;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Gets the number of rows that have been removed so far.
+		 */
+		public int getRemovedCount() {
+			return removedCount;
+		}
+
+		/**
+		 * Continues this compaction until it is done or the specified number of
+		 * rows, row index entries and values has been inspected. Must be called
+		 * while holding an exclusive lock on the table.
+		 * 
+		 * @return The number of rows, row index entries and values that have
+		 *         been inspected.
+		 */
+		public int compact(int maxCount) {
+			int inspected = 0;
+			while (!done && inspected < maxCount) {
+				inspected++;
+				if (phase == 0) {
+					markRow();
+				}
+				else if (phase == 1) {
+					cleanIndexEntry();
+				}
+				else if (phase == 2) {
+					freeRow();
+				}
+				else {
+					removeValue();
+				}
+			}
+			return inspected;
+		}
+
+		private void markRow() {
+			if (position < maxRow) {
+				int row = position++;
+				if (sinceSnapshots[row] != REMOVED && tillSnapshots[row] <= snapshot) {
+					sinceSnapshots[row] = REMOVED;
+					if (removedCount == removedRows.length) {
+						removedRows = Arrays.copyOf(removedRows, 2 * removedCount);
+					}
+					removedRows[removedCount++] = row;
+				}
+			}
+			else if (removedCount > 0) {
+				phase = 1;
+				position = 1;
+			}
+			else {
+				done = true;
+			}
+		}
+
+		/**
+		 * Moves the next entry of the current row list down over the entries of
+		 * removed rows. The entries in between are zeroed, so that readers skip
+		 * them until the size of the list has been reduced.
+		 */
+		private void cleanIndexEntry() {
+			RowIndex index = indexes[column];
+			int valueID = position;
+			if (valueID >= index.capacity()) {
+				if (++column <= CONTEXT) {
+					position = 1;
+				}
+				else {
+					phase = 2;
+					position = 0;
+				}
+				return;
+			}
+
+			int[] list = index.get(valueID);
+			if (list != null && readIndex < index.size(valueID)) {
+				int row = list[readIndex];
+				if (sinceSnapshots[row] != REMOVED) {
+					list[writeIndex++] = row;
+				}
+				if (writeIndex <= readIndex) {
+					list[readIndex] = 0;
+				}
+				readIndex++;
+			}
+			else {
+				if (list != null) {
+					if (writeIndex == 0 || writeIndex < list.length / 2) {
+						// release the memory of the removed entries
+						index.set(valueID, writeIndex == 0 ? null : Arrays.copyOf(list, writeIndex));
+					}
+					index.setSize(valueID, writeIndex);
+				}
+				position++;
+				readIndex = 0;
+				writeIndex = 0;
+			}
+		}
+
+		private void freeRow() {
+			if (position < removedCount) {
+				int row = removedRows[position++];
+				subjects[row] = 0;
+				predicates[row] = 0;
+				objects[row] = 0;
+				contexts[row] = 0;
+				explicitFlags[row] = false;
+				tillSnapshots[row] = 0;
+				if (freeRowCount == freeRows.length) {
+					freeRows = Arrays.copyOf(freeRows, 2 * freeRowCount);
+				}
+				freeRows[freeRowCount] = row;
+				freeRowCount++;
+			}
+			else {
+				removedRows = null;
+				phase = 3;
+				position = 1;
+			}
+		}
+
+		private void removeValue() {
+			int id = position++;
+			if (id < dictionary.getIDCount()) {
+				if (dictionary.getValue(id) != null && indexes[SUBJECT].size(id) == 0
+						&& indexes[PREDICATE].size(id) == 0 && indexes[OBJECT].size(id) == 0
+						&& indexes[CONTEXT].size(id) == 0)
+				{
+					dictionary.remove(id);
+				}
+			}
+			else {
+				done = true;
+			}
+		}
+	}
+
+	/*-------------------------*
+	 * Inner class RowIterator *
+	 *-------------------------*/
+
+	/**
+	 * Iterates over the rows of a {@link StatementTable} that match a pattern.
+	 */
+	public final class RowIterator {
+
+		/**
+		 * The candidate rows, or <tt>null</tt> to consider all rows.
+		 */
+		private final int[] rows;
+
+		private final int size;
+
+		/**
+		 * The row count when this iterator was created. Higher rows have been
+		 * added concurrently and are skipped.
+		 */
+		private final int maxRow;
+
+		private final int subj;
+
+		private final int pred;
+
+		private final int obj;
+
+		private final int[] contextIDs;
+
+		private final Boolean explicit;
+
+		private final int snapshot;
+
+		private int index;
+
+		RowIterator(int[] rows, int size, int maxRow, int subj, int pred, int obj, int[] contextIDs,
+				Boolean explicit, int snapshot)
+		{
+			this.rows = rows;
+			this.size = size;
+			this.maxRow = maxRow;
+			this.subj = subj;
+			this.pred = pred;
+			this.obj = obj;
+			this.contextIDs = contextIDs;
+			this.explicit = explicit;
+			this.snapshot = snapshot;
+			this.index = rows == null ? 0 : -1;
+		}
+
+		/**
+		 * Gets the next matching row.
+		 * 
+		 * @return The row number, or 0 if there are no more matching rows.
+		 */
+		public int next() {
+			while (++index < size) {
+				int row = rows == null ? index : rows[index];
+				if (row > 0 && row < maxRow && matches(row)) {
+					return row;
+				}
+			}
+			return 0;
+		}
+
+		private boolean matches(int row) {
+			if (snapshot >= 0 && !isInSnapshot(row, snapshot) || subj != 0 && subj != subjects[row]
+					|| pred != 0 && pred != predicates[row] || obj != 0 && obj != objects[row]
+					|| explicit != null && explicit.booleanValue() != explicitFlags[row])
+			{
+				return false;
+			}
+			if (contextIDs.length == 0) {
+				return true;
+			}
+			int context = contexts[row];
+			for (int contextID : contextIDs) {
+				if (contextID == context) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/*----------------------*
+	 * Inner class RowIndex *
+	 *----------------------*/
+
+	/**
+	 * The rows in which each value is used in a particular column, as arrays of
+	 * row numbers indexed by value ID. New arrays are published through an
+	 * {@link AtomicReferenceArray}, so that a reader never sees an array whose
+	 * elements were not copied yet. Concurrently added entries may be seen as
+	 * 0.
+	 */
+	private static final class RowIndex {
+
+		private volatile AtomicReferenceArray<int[]> lists;
+
+		private volatile int[] sizes;
+
+		public RowIndex(int capacity) {
+			lists = new AtomicReferenceArray<int[]>(capacity);
+			sizes = new int[capacity];
+		}
+
+		public int[] get(int valueID) {
+			AtomicReferenceArray<int[]> lists = this.lists;
+			return valueID < lists.length() ? lists.get(valueID) : null;
+		}
+
+		public int size(int valueID) {
+			int[] sizes = this.sizes;
+			return valueID < sizes.length ? sizes[valueID] : 0;
+		}
+
+		/**
+		 * Gets the number of value IDs for which this index has room. Higher
+		 * value IDs are not used in any row.
+		 */
+		public int capacity() {
+			return sizes.length;
+		}
+
+		public void set(int valueID, int[] list) {
+			lists.set(valueID, list);
+		}
+
+		public void setSize(int valueID, int size) {
+			sizes[valueID] = size;
+		}
+
+		public void add(int valueID, int row) {
+			if (valueID >= sizes.length) {
+				int capacity = Math.max(valueID + 1, sizes.length + (sizes.length >> 1));
+				AtomicReferenceArray<int[]> newLists = new AtomicReferenceArray<int[]>(capacity);
+				for (int i = 0; i < lists.length(); i++) {
+					newLists.set(i, lists.get(i));
+				}
+				int[] newSizes = Arrays.copyOf(sizes, capacity);
+				lists = newLists;
+				sizes = newSizes;
+			}
+
+			int[] list = lists.get(valueID);
+			int size = sizes[valueID];
+			if (list == null) {
+				list = new int[1];
+				lists.set(valueID, list);
+			}
+			else if (size == list.length) {
+				list = Arrays.copyOf(list, size + (size >> 1) + 1);
+				lists.set(valueID, list);
+			}
+			list[size] = row;
+			sizes[valueID] = size + 1;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory.model;
+
+import java.util.Arrays;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+
+/**
+ * A dictionary that encodes values as integer IDs, for use by a
+ * {@link StatementTable}. The IDs of the values are kept in an open-addressing
+ * hash table of ints, so that the dictionary needs no objects besides the
+ * values themselves. ID 0 is reserved for the absence of a value, such as the
+ * null context.
+ * <p>
+ * Values are added by a single writer at a time, look-ups can be performed
+ * concurrently. A reader is guaranteed to find the values that were added
+ * before it last synchronized with the writer; values that are being added
+ * concurrently may or may not be found. The IDs of removed values are reused
+ * for values that are added later.
+ */
+public class ValueDictionary {
+
+	/*-----------*
+	 * Variables *
+	 *-----------*/
+
+	/**
+	 * The values, indexed by their ID.
+	 */
+	private volatile Value[] values;
+
+	/**
+	 * The next ID to assign.
+	 */
+	private volatile int nextID;
+
+	/**
+	 * Hash table of value IDs, using linear probing. Empty slots contain 0.
+	 */
+	private volatile int[] hashTable;
+
+	/**
+	 * The IDs of removed values, which are assigned to new values first.
+	 */
+	private int[] freeIDs;
+
+	private int freeIDCount;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public ValueDictionary() {
+		clear();
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Gets the number of IDs that have been assigned, including the reserved ID
+	 * 0. All IDs are lower than this number.
+	 */
+	public int getIDCount() {
+		return nextID;
+	}
+
+	/**
+	 * Gets the value with the specified ID.
+	 * 
+	 * @return The value, or <tt>null</tt> if no value has this ID.
+	 */
+	public Value getValue(int id) {
+		Value[] values = this.values;
+		return id < values.length ? values[id] : null;
+	}
+
+	/**
+	 * Gets the ID of the specified value.
+	 * 
+	 * @return The ID of the value, or 0 if the value is <tt>null</tt> or not
+	 *         in this dictionary.
+	 */
+	public int getID(Value value) {
+		if (value == null) {
+			return 0;
+		}
+
+		int[] hashTable = this.hashTable;
+		int mask = hashTable.length - 1;
+		for (int i = hash(value) & mask;; i = (i + 1) & mask) {
+			int id = hashTable[i];
+			if (id == 0) {
+				return 0;
+			}
+			if (value.equals(getValue(id))) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Gets the ID of the specified value, adding the value to this dictionary if
+	 * needed. Must not be called concurrently.
+	 * 
+	 * @return The ID of the value, or 0 if the value is <tt>null</tt>.
+	 */
+	public int getOrCreateID(Value value) {
+		int id = getID(value);
+		if (id == 0 && value != null && freeIDCount > 0) {
+			id = freeIDs[--freeIDCount];
+			values[id] = copy(value);
+			insert(hashTable, id);
+		}
+		else if (id == 0 && value != null) {
+			id = nextID;
+			if (id == values.length) {
+				values = Arrays.copyOf(values, id + (id >> 1));
+			}
+			values[id] = copy(value);
+			nextID = id + 1;
+
+			if (2 * nextID > hashTable.length) {
+				rehash(2 * hashTable.length);
+			}
+			else {
+				insert(hashTable, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Removes the value with the specified ID, which is assigned to the next
+	 * value that is added. Must not be called concurrently with any other
+	 * method.
+	 */
+	public void remove(int id) {
+		int[] hashTable = this.hashTable;
+		int mask = hashTable.length - 1;
+		int i = hash(values[id]) & mask;
+		while (hashTable[i] != id) {
+			i = (i + 1) & mask;
+		}
+
+		// Shift the following IDs of the probe sequence back into the slot, so
+		// that look-ups do not stop at it
+		for (int j = (i + 1) & mask; hashTable[j] != 0; j = (j + 1) & mask) {
+			int home = hash(values[hashTable[j]]) & mask;
+			if (i <= j ? home <= i || home > j : home <= i && home > j) {
+				hashTable[i] = hashTable[j];
+				i = j;
+			}
+		}
+		hashTable[i] = 0;
+		values[id] = null;
+
+		if (freeIDCount == freeIDs.length) {
+			freeIDs = Arrays.copyOf(freeIDs, 2 * freeIDCount);
+		}
+		freeIDs[freeIDCount++] = id;
+	}
+
+	public void clear() {
+		values = new Value[256];
+		nextID = 1;
+		hashTable = new int[512];
+		freeIDs = new int[16];
+		freeIDCount = 0;
+	}
+
+	private void rehash(int tableSize) {
+		int[] newTable = new int[tableSize];
+		for (int id = 1; id < nextID; id++) {
+			insert(newTable, id);
+		}
+		hashTable = newTable;
+	}
+
+	private void insert(int[] hashTable, int id) {
+		int mask = hashTable.length - 1;
+		int i = hash(values[id]) & mask;
+		while (hashTable[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		hashTable[i] = id;
+	}
+
+	private static int hash(Value value) {
+		int h = value.hashCode();
+		// spread the bits, as the table size is a power of two
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Copies values of other implementations, such as the MemValues of a
+	 * MemoryStore, so that the dictionary does not keep any of their state.
+	 */
+	private static Value copy(Value value) {
+		Class<?> type = value.getClass();
+		if (type == URIImpl.class || type == BNodeImpl.class || type == LiteralImpl.class) {
+			return value;
+		}
+		else if (value instanceof URI) {
+			return new URIImpl(value.stringValue());
+		}
+		else if (value instanceof BNode) {
+			return new BNodeImpl(((BNode)value).getID());
+		}
+		else if (value instanceof Literal) {
+			Literal literal = (Literal)value;
+			if (literal.getLanguage() != null) {
+				return new LiteralImpl(literal.getLabel(), literal.getLanguage());
+			}
+			return new LiteralImpl(literal.getLabel(), literal.getDatatype());
+		}
+		else {
+			throw new IllegalArgumentException("unexpected value type: " + value.getClass());
+		}
+	}
+}
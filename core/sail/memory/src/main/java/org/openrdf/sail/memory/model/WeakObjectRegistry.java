@@ -16,12 +16,14 @@
  */
 package org.openrdf.sail.memory.model;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * An object registry that uses weak references to keep track of the stored
@@ -30,17 +32,33 @@ import java.util.WeakHashMap;
  * in another data structure, reducing memory usage. The objects that are being
  * stored should properly implement the {@link Object#equals} and
  * {@link Object#hashCode} methods.
+ * <p>
+ * This registry is thread-safe. Lookups do not block; changes lock only one of
+ * a fixed number of segments. Iterators are weakly consistent: they never throw
+ * a {@link java.util.ConcurrentModificationException}, and may or may not
+ * reflect changes made after their creation.
  */
 public class WeakObjectRegistry<E> extends AbstractSet<E> {
 
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private static final int SEGMENT_SHIFT = 28;
+
+	private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
 
 	/**
-	 * The hash map that is used to store the objects.
+	 * The segments that are used to store the objects, selected by the highest
+	 * bits of the objects' hash codes.
 	 */
-	private final Map<E, WeakReference<E>> objectMap = new WeakHashMap<E, WeakReference<E>>();
+	private final Segment<E>[] segments;
 
 	/*--------------*
 	 * Constructors *
@@ -49,8 +67,13 @@ public class WeakObjectRegistry<E> extends AbstractSet<E> {
 	/**
 	 * Constructs a new, empty object registry.
 	 */
+	@SuppressWarnings("unchecked")
 	public WeakObjectRegistry() {
 		super();
+		segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment<E>();
+		}
 	}
 
 	/**
@@ -82,25 +105,40 @@ public class WeakObjectRegistry<E> extends AbstractSet<E> {
 	 *         <tt>null</tt> if no such object was found.
 	 */
 	public E get(Object key) {
-		WeakReference<E> weakRef = objectMap.get(key);
-
-		if (weakRef != null) {
-			return weakRef.get();
+		if (key == null) {
+			return null;
 		}
+		int hash = hash(key);
+		return segmentFor(hash).get(key, hash);
+	}
 
-		return null;
+	/**
+	 * Stores the supplied object, unless an equal object is already stored.
+	 * 
+	 * @param object
+	 *        The object to store.
+	 * @return The stored object that is equal to the supplied object, which is
+	 *         the supplied object itself if no such object was stored yet.
+	 */
+	public E getOrAdd(E object) {
+		int hash = hash(object);
+		return segmentFor(hash).getOrAdd(object, hash);
 	}
 
 	@Override
 	public Iterator<E> iterator()
 	{
-		return objectMap.keySet().iterator();
+		return new RegistryIterator();
 	}
 
 	@Override
 	public int size()
 	{
-		return objectMap.size();
+		int size = 0;
+		for (Segment<E> segment : segments) {
+			size += segment.count;
+		}
+		return size;
 	}
 
 	@Override
@@ -112,30 +150,277 @@ public class WeakObjectRegistry<E> extends AbstractSet<E> {
 	@Override
 	public boolean add(E object)
 	{
-		WeakReference<E> ref = new WeakReference<E>(object);
-
-		ref = objectMap.put(object, ref);
-
-		if (ref != null && ref.get() != null) {
-			// A duplicate was added which replaced the existing object. Undo this
-			// operation.
-			objectMap.put(ref.get(), ref);
-			return false;
-		}
-
-		return true;
+		return getOrAdd(object) == object;
 	}
 
 	@Override
 	public boolean remove(Object o)
 	{
-		WeakReference<E> ref = objectMap.remove(o);
-		return ref != null && ref.get() != null;
+		if (o == null) {
+			return false;
+		}
+		int hash = hash(o);
+		return segmentFor(hash).remove(o, hash);
 	}
 
 	@Override
 	public void clear()
 	{
-		objectMap.clear();
+		for (Segment<E> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	private Segment<E> segmentFor(int hash) {
+		return segments[hash >>> SEGMENT_SHIFT];
+	}
+
+	/**
+	 * Spreads the bits of the object's hash code, so that both the segment and
+	 * the position in the segment depend on all of them.
+	 */
+	private static int hash(Object object) {
+		int h = object.hashCode();
+		h += (h << 15) ^ 0xffffcd7d;
+		h ^= (h >>> 10);
+		h += (h << 3);
+		h ^= (h >>> 6);
+		h += (h << 2) + (h << 14);
+		return h ^ (h >>> 16);
+	}
+
+	/*---------------------*
+	 * Inner class Segment *
+	 *---------------------*/
+
+	/**
+	 * A hash table of weakly referenced objects. The hash chains are immutable,
+	 * so that they can be read without locking; changes replace the head of a
+	 * chain while holding the segment's lock. Entries of garbage collected
+	 * objects are removed when the segment is changed.
+	 */
+	private static final class Segment<E> {
+
+		private final ReferenceQueue<E> queue = new ReferenceQueue<E>();
+
+		private volatile AtomicReferenceArray<Entry<E>> table = new AtomicReferenceArray<Entry<E>>(
+				INITIAL_SEGMENT_CAPACITY);
+
+		volatile int count;
+
+		public E get(Object key, int hash) {
+			AtomicReferenceArray<Entry<E>> table = this.table;
+			for (Entry<E> e = table.get(hash & (table.length() - 1)); e != null; e = e.next) {
+				if (e.hash == hash) {
+					E object = e.get();
+					if (object != null && (key == object || key.equals(object))) {
+						return object;
+					}
+				}
+			}
+			return null;
+		}
+
+		public synchronized E getOrAdd(E object, int hash) {
+			expungeStaleEntries();
+
+			E existing = get(object, hash);
+			if (existing != null) {
+				return existing;
+			}
+
+			AtomicReferenceArray<Entry<E>> table = this.table;
+			if (count >= table.length() - (table.length() >> 2)) {
+				table = rehash(table);
+			}
+			int i = hash & (table.length() - 1);
+			table.set(i, new Entry<E>(object, hash, table.get(i), queue));
+			count++;
+			return object;
+		}
+
+		public synchronized boolean remove(Object key, int hash) {
+			expungeStaleEntries();
+
+			AtomicReferenceArray<Entry<E>> table = this.table;
+			int i = hash & (table.length() - 1);
+			for (Entry<E> e = table.get(i); e != null; e = e.next) {
+				if (e.hash == hash) {
+					E object = e.get();
+					if (object != null && (key == object || key.equals(object))) {
+						removeEntry(table, i, e);
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		public synchronized void clear() {
+			table = new AtomicReferenceArray<Entry<E>>(INITIAL_SEGMENT_CAPACITY);
+			count = 0;
+			while (queue.poll() != null) {
+				// the entries are no longer in the table
+			}
+		}
+
+		public AtomicReferenceArray<Entry<E>> getTable() {
+			return table;
+		}
+
+		/**
+		 * Removes the entries of objects that have been garbage collected. Must
+		 * be called while holding this segment's lock.
+		 */
+		private void expungeStaleEntries() {
+			Reference<? extends E> ref;
+			while ((ref = queue.poll()) != null) {
+				@SuppressWarnings("unchecked")
+				Entry<E> stale = (Entry<E>)ref;
+				AtomicReferenceArray<Entry<E>> table = this.table;
+				int i = stale.hash & (table.length() - 1);
+				for (Entry<E> e = table.get(i); e != null; e = e.next) {
+					if (e == stale) {
+						removeEntry(table, i, e);
+						break;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Removes the specified entry from the chain at position <tt>i</tt> by
+		 * copying the entries that precede it.
+		 */
+		private void removeEntry(AtomicReferenceArray<Entry<E>> table, int i, Entry<E> entry) {
+			Entry<E> head = entry.next;
+			for (Entry<E> e = table.get(i); e != entry; e = e.next) {
+				E object = e.get();
+				if (object != null) {
+					head = new Entry<E>(object, e.hash, head, queue);
+				}
+				else {
+					// collected, but not yet enqueued
+					count--;
+				}
+			}
+			table.set(i, head);
+			count--;
+		}
+
+		/**
+		 * Creates a table of twice the size with new entries for the objects
+		 * that have not been garbage collected. Readers of the old table are not
+		 * affected.
+		 */
+		private AtomicReferenceArray<Entry<E>> rehash(AtomicReferenceArray<Entry<E>> oldTable) {
+			AtomicReferenceArray<Entry<E>> newTable = new AtomicReferenceArray<Entry<E>>(
+					oldTable.length() << 1);
+			int mask = newTable.length() - 1;
+			int newCount = 0;
+			for (int i = 0; i < oldTable.length(); i++) {
+				for (Entry<E> e = oldTable.get(i); e != null; e = e.next) {
+					E object = e.get();
+					if (object != null) {
+						int j = e.hash & mask;
+						newTable.set(j, new Entry<E>(object, e.hash, newTable.get(j), queue));
+						newCount++;
+					}
+				}
+			}
+			table = newTable;
+			count = newCount;
+			return newTable;
+		}
+	}
+
+	/*-------------------*
+	 * Inner class Entry *
+	 *-------------------*/
+
+	private static final class Entry<E> extends WeakReference<E> {
+
+		final int hash;
+
+		final Entry<E> next;
+
+		public Entry(E object, int hash, Entry<E> next, ReferenceQueue<E> queue) {
+			super(object, queue);
+			this.hash = hash;
+			this.next = next;
+		}
+	}
+
+	/*------------------------------*
+	 * Inner class RegistryIterator *
+	 *------------------------------*/
+
+	private final class RegistryIterator implements Iterator<E> {
+
+		private int segmentIndex = -1;
+
+		private AtomicReferenceArray<Entry<E>> table;
+
+		private int tableIndex;
+
+		private Entry<E> entry;
+
+		private E nextObject;
+
+		private E lastReturned;
+
+		public RegistryIterator() {
+			advance();
+		}
+
+		public boolean hasNext() {
+			return nextObject != null;
+		}
+
+		public E next() {
+			if (nextObject == null) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = nextObject;
+			advance();
+			return lastReturned;
+		}
+
+		public void remove() {
+			if (lastReturned == null) {
+				throw new IllegalStateException();
+			}
+			WeakObjectRegistry.this.remove(lastReturned);
+			lastReturned = null;
+		}
+
+		/**
+		 * Moves to the next entry whose object has not been garbage collected,
+		 * keeping a strong reference to that object.
+		 */
+		private void advance() {
+			nextObject = null;
+			while (true) {
+				if (entry != null) {
+					entry = entry.next;
+				}
+				while (entry == null) {
+					if (table != null && tableIndex < table.length()) {
+						entry = table.get(tableIndex++);
+					}
+					else if (segmentIndex + 1 < segments.length) {
+						table = segments[++segmentIndex].getTable();
+						tableIndex = 0;
+					}
+					else {
+						return;
+					}
+				}
+				nextObject = entry.get();
+				if (nextObject != null) {
+					return;
+				}
+			}
+		}
 	}
 }
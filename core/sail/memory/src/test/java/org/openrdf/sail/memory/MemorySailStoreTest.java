@@ -0,0 +1,388 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.IsolationLevels;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.base.SailDataset;
+import org.openrdf.sail.base.SailSink;
+import org.openrdf.sail.base.SailSource;
+import org.openrdf.sail.memory.model.MemStatementList;
+import org.openrdf.sail.memory.model.MemURI;
+import org.openrdf.sail.memory.model.MemValueFactory;
+
+/**
+ * Tests concurrent transactions and snapshot cleanup of the
+ * {@link MemorySailStore}.
+ */
+public class MemorySailStoreTest {
+
+	private MemorySailStore store;
+
+	private ValueFactory vf;
+
+	private URI pred;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		store = new MemorySailStore(false);
+		vf = store.getValueFactory();
+		pred = vf.createURI("urn:test:pred");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		store.close();
+	}
+
+	@Test
+	public void testConcurrentSinks()
+		throws Exception
+	{
+		final int threads = 8;
+		final int txns = 50;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				results.add(executor.submit(new Callable<Void>() {
+
+					public Void call()
+						throws Exception
+					{
+						for (int i = 0; i < txns; i++) {
+							SailSink sink = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+							try {
+								sink.approve(vf.createURI("urn:test:" + thread), pred, vf.createLiteral(i), null);
+								sink.approve(vf.createURI("urn:test:shared"), pred, vf.createLiteral(i), null);
+								sink.flush();
+							}
+							finally {
+								sink.close();
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		assertEquals(threads * txns + txns, size(store.getExplicitSailSource()));
+	}
+
+	@Test
+	public void testBufferedSinkIsIsolated()
+		throws Exception
+	{
+		SailSink sink = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+		try {
+			sink.approve(vf.createURI("urn:test:subj"), pred, vf.createLiteral(1), null);
+
+			// another transaction commits while the first one is active
+			SailSink other = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+			try {
+				other.approve(vf.createURI("urn:test:other"), pred, vf.createLiteral(1), null);
+				other.flush();
+			}
+			finally {
+				other.close();
+			}
+			assertEquals(1, size(store.getExplicitSailSource()));
+		}
+		finally {
+			// closed without flush
+			sink.close();
+		}
+
+		assertEquals(1, size(store.getExplicitSailSource()));
+		assertFalse(store.txnLockManager.isWriteLocked());
+	}
+
+	@Test
+	public void testLargeSinkWritesDirectly()
+		throws Exception
+	{
+		int count = MemorySailStore.MAX_BUFFERED_OPERATIONS * 2;
+		SailSink sink = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+		try {
+			for (int i = 0; i < count; i++) {
+				sink.approve(vf.createURI("urn:test:large"), pred, vf.createLiteral(i), null);
+			}
+			assertTrue(store.txnLockManager.isWriteLockedByCurrentThread());
+			assertEquals(0, size(store.getExplicitSailSource()));
+		}
+		finally {
+			// closed without flush
+			sink.close();
+		}
+
+		assertEquals(0, size(store.getExplicitSailSource()));
+		assertFalse(store.txnLockManager.isWriteLocked());
+	}
+
+	@Test
+	public void testExplicitAndInferredCommitTogether()
+		throws Exception
+	{
+		final int txns = 200;
+		final AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Integer> reader = executor.submit(new Callable<Integer>() {
+
+				public Integer call()
+					throws Exception
+				{
+					int reads = 0;
+					while (running.get() || reads == 0) {
+						int snapshot = store.currentSnapshot;
+						int explicit = size(store.createDataset(true, snapshot));
+						int inferred = size(store.createDataset(false, snapshot));
+						assertEquals(explicit, inferred);
+						reads++;
+					}
+					return reads;
+				}
+			});
+
+			for (int i = 0; i < txns; i++) {
+				SailSink explicit = store.getExplicitSailSource().sink(IsolationLevels.SNAPSHOT);
+				SailSink inferred = store.getInferredSailSource().sink(IsolationLevels.SNAPSHOT);
+				try {
+					explicit.approve(vf.createURI("urn:test:explicit"), pred, vf.createLiteral(i), null);
+					inferred.approve(vf.createURI("urn:test:inferred"), pred, vf.createLiteral(i), null);
+					explicit.prepare();
+					inferred.prepare();
+					inferred.flush();
+					// nothing is visible until the last prepared sink is flushed
+					assertEquals(i, size(store.getInferredSailSource()));
+					explicit.flush();
+				}
+				finally {
+					inferred.close();
+					explicit.close();
+				}
+				assertEquals(i + 1, size(store.getExplicitSailSource()));
+				assertEquals(i + 1, size(store.getInferredSailSource()));
+			}
+			running.set(false);
+			assertTrue(reader.get() > 0);
+		}
+		finally {
+			running.set(false);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCompositeIndexes()
+		throws Exception
+	{
+		URI subj = vf.createURI("urn:test:subj");
+		URI other = vf.createURI("urn:test:other");
+		addStatements(store, subj, other);
+		MemURI memSubj = ((MemValueFactory)vf).getMemURI(subj);
+		assertNull(memSubj.getSubjectStatementList().getStatementList('p', ((MemValueFactory)vf).getMemURI(pred)));
+
+		MemorySailStore indexed = new MemorySailStore(false, true);
+		try {
+			MemValueFactory indexedVf = (MemValueFactory)indexed.getValueFactory();
+			addStatements(indexed, subj, other);
+			memSubj = indexedVf.getMemURI(subj);
+			MemStatementList predList = memSubj.getSubjectStatementList().getStatementList('p',
+					indexedVf.getMemURI(pred));
+			assertEquals(MemStatementList.MIN_INDEXED_SIZE, predList.size());
+
+			SailDataset dataset = indexed.getExplicitSailSource().dataset(IsolationLevels.SNAPSHOT_READ);
+			try {
+				assertEquals(MemStatementList.MIN_INDEXED_SIZE, count(dataset.getStatements(subj, pred, null)));
+				assertEquals(1, count(dataset.getStatements(subj, other, null)));
+			}
+			finally {
+				dataset.close();
+			}
+		}
+		finally {
+			indexed.close();
+		}
+	}
+
+	@Test
+	public void testCleanSnapshots()
+		throws Exception
+	{
+		int count = MemorySailStore.CLEANUP_CHUNK_SIZE * 2;
+		SailSink sink = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+		try {
+			for (int i = 0; i < count; i++) {
+				sink.approve(vf.createURI("urn:test:subj" + i), pred, vf.createLiteral(i % 2 == 0), null);
+			}
+			sink.flush();
+		}
+		finally {
+			sink.close();
+		}
+
+		sink = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+		try {
+			sink.deprecate(null, pred, vf.createLiteral(true), null);
+			sink.flush();
+		}
+		finally {
+			sink.close();
+		}
+
+		store.cleanSnapshots();
+		assertEquals(count / 2, size(store.getExplicitSailSource()));
+		assertEquals(count / 2, ((MemValueFactory)vf).getMemURI(pred).getPredicateStatementCount());
+	}
+
+	@Test
+	public void testCleanLargeListInSteps()
+		throws Exception
+	{
+		int chunkSize = MemorySailStore.CLEANUP_CHUNK_SIZE;
+		int count = chunkSize * 4;
+		SailSink sink = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+		try {
+			for (int i = 0; i < count; i++) {
+				sink.approve(vf.createURI("urn:test:subj" + i), pred, vf.createLiteral(i % 2 == 0), null);
+			}
+			sink.flush();
+		}
+		finally {
+			sink.close();
+		}
+
+		sink = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+		try {
+			sink.deprecate(null, pred, vf.createLiteral(true), null);
+			sink.flush();
+		}
+		finally {
+			sink.close();
+		}
+
+		// the predicate list contains all statements, but a reader never has to
+		// wait for more than a chunk of them to be inspected
+		MemorySailStore.SnapshotCleanup cleanup = store.new SnapshotCleanup(store.currentSnapshot);
+		int steps = 0;
+		while (!cleanup.isDone()) {
+			assertTrue(cleanup.clean(chunkSize) <= chunkSize);
+			steps++;
+			assertEquals(count / 2, size(store.getExplicitSailSource()));
+		}
+
+		// the main list and the predicate list alone take 8 chunks
+		assertTrue(steps > 8);
+		assertEquals(count / 2, ((MemValueFactory)vf).getMemURI(pred).getPredicateStatementCount());
+		assertEquals(0, ((MemValueFactory)vf).getMemLiteral(vf.createLiteral(true)).getObjectStatementCount());
+	}
+
+	private void addStatements(MemorySailStore store, URI subj, URI other)
+		throws SailException
+	{
+		SailSink sink = store.getExplicitSailSource().sink(IsolationLevels.NONE);
+		try {
+			for (int i = 0; i < MemStatementList.MIN_INDEXED_SIZE; i++) {
+				sink.approve(subj, pred, vf.createLiteral(i), null);
+			}
+			sink.approve(subj, other, vf.createLiteral(0), null);
+			sink.flush();
+		}
+		finally {
+			sink.close();
+		}
+	}
+
+	private int count(CloseableIteration<? extends Statement, SailException> iter)
+		throws SailException
+	{
+		try {
+			int count = 0;
+			while (iter.hasNext()) {
+				iter.next();
+				count++;
+			}
+			return count;
+		}
+		finally {
+			iter.close();
+		}
+	}
+
+	private int size(SailSource source)
+		throws SailException
+	{
+		return size(source.dataset(IsolationLevels.SNAPSHOT_READ));
+	}
+
+	private int size(SailDataset dataset)
+		throws SailException
+	{
+		try {
+			CloseableIteration<? extends Statement, SailException> iter = dataset.getStatements(null, null, null);
+			try {
+				int size = 0;
+				while (iter.hasNext()) {
+					iter.next();
+					size++;
+				}
+				return size;
+			}
+			finally {
+				iter.close();
+			}
+		}
+		finally {
+			dataset.close();
+		}
+	}
+}
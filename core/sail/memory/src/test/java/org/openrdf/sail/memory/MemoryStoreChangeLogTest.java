@@ -0,0 +1,351 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.FileUtil;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.IsolationLevels;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+
+/**
+ * Tests the change log of a persistent {@link MemoryStore}.
+ */
+public class MemoryStoreChangeLogTest {
+
+	private File dataDir;
+
+	private File copyDir;
+
+	private MemoryStore sail;
+
+	private URI subj;
+
+	private URI pred;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("memorystore");
+		copyDir = FileUtil.createTempDir("memorystore");
+		sail = new MemoryStore(dataDir);
+		sail.initialize();
+
+		ValueFactory vf = sail.getValueFactory();
+		subj = vf.createURI("urn:test:subj");
+		pred = vf.createURI("urn:test:pred");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		try {
+			sail.shutDown();
+		}
+		finally {
+			FileUtil.deleteDir(dataDir);
+			FileUtil.deleteDir(copyDir);
+		}
+	}
+
+	@Test
+	public void testCommitsAreReplayed()
+		throws Exception
+	{
+		SailConnection con = sail.getConnection();
+		try {
+			con.begin();
+			con.setNamespace("ex", "urn:test:");
+			con.addStatement(subj, pred, obj("a"));
+			con.addStatement(subj, pred, obj("b"), subj);
+			con.commit();
+
+			con.begin();
+			con.removeStatements(subj, pred, obj("a"));
+			con.addStatement(subj, pred, obj("c"));
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+
+		File dataFile = new File(dataDir, MemoryStore.DATA_FILE_NAME);
+		long dataLength = dataFile.length();
+		assertTrue(new File(dataDir, MemoryStore.LOG_FILE_NAME).length() > 5);
+
+		MemoryStore copy = openCopy();
+		try {
+			assertEquals(2, size(copy));
+			assertTrue(contains(copy, "b"));
+			assertTrue(contains(copy, "c"));
+			assertFalse(contains(copy, "a"));
+			assertEquals("urn:test:", namespace(copy, "ex"));
+		}
+		finally {
+			copy.shutDown();
+		}
+
+		// the commits did not rewrite the data file
+		assertEquals(dataLength, dataFile.length());
+	}
+
+	@Test
+	public void testStatementAddedAndRemovedIsNotReplayed()
+		throws Exception
+	{
+		add("a");
+
+		SailConnection con = sail.getConnection();
+		try {
+			con.begin(IsolationLevels.NONE);
+			con.addStatement(subj, pred, obj("b"));
+			con.removeStatements(subj, pred, obj("b"));
+			con.removeStatements(subj, pred, obj("a"));
+			con.addStatement(subj, pred, obj("a"));
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+		assertEquals(1, size(sail));
+
+		MemoryStore copy = openCopy();
+		try {
+			assertEquals(1, size(copy));
+			assertTrue(contains(copy, "a"));
+			assertFalse(contains(copy, "b"));
+		}
+		finally {
+			copy.shutDown();
+		}
+	}
+
+	@Test
+	public void testIncompleteChangesetIsDiscarded()
+		throws Exception
+	{
+		add("a");
+
+		File logFile = new File(dataDir, MemoryStore.LOG_FILE_NAME);
+		long committed = logFile.length();
+
+		copyFiles();
+		File copyLog = new File(copyDir, MemoryStore.LOG_FILE_NAME);
+		FileOutputStream out = new FileOutputStream(copyLog, true);
+		try {
+			// the start of a statement record, as left behind by a crash
+			out.write(new byte[] { FileIO.EXPL_TRIPLE_MARKER, FileIO.URI_MARKER, 0, 0 });
+		}
+		finally {
+			out.close();
+		}
+
+		MemoryStore copy = new MemoryStore(copyDir);
+		copy.initialize();
+		try {
+			assertEquals(committed, copyLog.length());
+			assertEquals(1, size(copy));
+
+			add(copy, "b");
+		}
+		finally {
+			copy.shutDown();
+		}
+
+		copy = new MemoryStore(copyDir);
+		copy.initialize();
+		try {
+			assertEquals(2, size(copy));
+		}
+		finally {
+			copy.shutDown();
+		}
+	}
+
+	@Test
+	public void testCompaction()
+		throws Exception
+	{
+		add("a");
+		add("b");
+
+		sail.compact();
+
+		File logFile = new File(dataDir, MemoryStore.LOG_FILE_NAME);
+		assertEquals(5, logFile.length());
+		assertFalse(new File(dataDir, MemoryStore.LOG_FILE_NAME + ".1").exists());
+
+		add("c");
+		assertTrue(logFile.length() > 5);
+
+		MemoryStore copy = openCopy();
+		try {
+			assertEquals(3, size(copy));
+		}
+		finally {
+			copy.shutDown();
+		}
+	}
+
+	@Test
+	public void testRotatedLogIsReplayed()
+		throws Exception
+	{
+		add("a");
+		add("b");
+
+		// a compaction that did not complete
+		copyFiles();
+		File copyLog = new File(copyDir, MemoryStore.LOG_FILE_NAME);
+		assertTrue(copyLog.renameTo(new File(copyDir, MemoryStore.LOG_FILE_NAME + ".1")));
+
+		MemoryStore copy = new MemoryStore(copyDir);
+		copy.initialize();
+		try {
+			assertEquals(2, size(copy));
+			add(copy, "c");
+			copy.compact();
+			assertFalse(new File(copyDir, MemoryStore.LOG_FILE_NAME + ".1").exists());
+		}
+		finally {
+			copy.shutDown();
+		}
+
+		copy = new MemoryStore(copyDir);
+		copy.initialize();
+		try {
+			assertEquals(3, size(copy));
+		}
+		finally {
+			copy.shutDown();
+		}
+	}
+
+	@Test
+	public void testShutDownCompacts()
+		throws Exception
+	{
+		add("a");
+		sail.shutDown();
+
+		assertEquals(5, new File(dataDir, MemoryStore.LOG_FILE_NAME).length());
+
+		sail = new MemoryStore(dataDir);
+		sail.initialize();
+		assertEquals(1, size(sail));
+	}
+
+	private URI obj(String label) {
+		return sail.getValueFactory().createURI("urn:test:" + label);
+	}
+
+	private void add(String label)
+		throws SailException
+	{
+		add(sail, label);
+	}
+
+	private void add(MemoryStore store, String label)
+		throws SailException
+	{
+		SailConnection con = store.getConnection();
+		try {
+			con.begin();
+			con.addStatement(subj, pred, obj(label));
+			con.commit();
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	private boolean contains(MemoryStore store, String label)
+		throws SailException
+	{
+		SailConnection con = store.getConnection();
+		try {
+			return !Iterations.asList(con.getStatements(subj, pred, obj(label), false)).isEmpty();
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	private int size(MemoryStore store)
+		throws SailException
+	{
+		SailConnection con = store.getConnection();
+		try {
+			return Iterations.asList(con.getStatements(null, null, null, false)).size();
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	private String namespace(MemoryStore store, String prefix)
+		throws SailException
+	{
+		SailConnection con = store.getConnection();
+		try {
+			return con.getNamespace(prefix);
+		}
+		finally {
+			con.close();
+		}
+	}
+
+	/**
+	 * Copies the files of the running store, as they would be found after a
+	 * crash, and opens a store on the copy.
+	 */
+	private MemoryStore openCopy()
+		throws IOException, SailException
+	{
+		copyFiles();
+		MemoryStore copy = new MemoryStore(copyDir);
+		copy.initialize();
+		return copy;
+	}
+
+	private void copyFiles()
+		throws IOException
+	{
+		for (File file : dataDir.listFiles()) {
+			if (file.getName().startsWith("memorystore.")) {
+				FileUtil.copyFile(file, new File(copyDir, file.getName()));
+			}
+		}
+	}
+}
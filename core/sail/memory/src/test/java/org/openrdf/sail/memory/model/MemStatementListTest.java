@@ -0,0 +1,86 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the composite indexes of class {@link MemStatementList}.
+ */
+public class MemStatementListTest {
+
+	private final MemURI subj = new MemURI(this, "urn:test:", "subj");
+
+	private final MemURI pred1 = new MemURI(this, "urn:test:", "pred1");
+
+	private final MemURI pred2 = new MemURI(this, "urn:test:", "pred2");
+
+	@Test
+	public void testSmallListIsNotIndexed() {
+		MemStatementList list = new MemStatementList(4, 'p');
+		add(list, pred1, MemStatementList.MIN_INDEXED_SIZE - 1);
+
+		assertNull(list.getStatementList('p', pred1));
+	}
+
+	@Test
+	public void testCompositeIndex() {
+		MemStatementList list = new MemStatementList(4, 'p');
+		add(list, pred1, MemStatementList.MIN_INDEXED_SIZE);
+		add(list, pred2, 3);
+
+		assertEquals(MemStatementList.MIN_INDEXED_SIZE, list.getStatementList('p', pred1).size());
+		assertEquals(3, list.getStatementList('p', pred2).size());
+		assertSame(MemValue.EMPTY_LIST, list.getStatementList('p', subj));
+		assertNull(list.getStatementList('c', pred1));
+
+		list.remove(list.getStatementList('p', pred2).get(0));
+		assertEquals(2, list.getStatementList('p', pred2).size());
+	}
+
+	@Test
+	public void testCleanSnapshots() {
+		MemStatementList list = new MemStatementList(4, 'p');
+		add(list, pred1, MemStatementList.MIN_INDEXED_SIZE);
+		add(list, pred2, MemStatementList.MIN_INDEXED_SIZE);
+
+		MemStatementList pred2List = list.getStatementList('p', pred2);
+		for (int i = 0; i < pred2List.size(); i++) {
+			pred2List.get(i).setTillSnapshot(2);
+		}
+		list.cleanSnapshots(2);
+
+		assertEquals(MemStatementList.MIN_INDEXED_SIZE, list.size());
+		assertEquals(MemStatementList.MIN_INDEXED_SIZE, list.getStatementList('p', pred1).size());
+		assertSame(MemValue.EMPTY_LIST, list.getStatementList('p', pred2));
+
+		list.getStatementList('p', pred1).get(0).setTillSnapshot(3);
+		list.cleanSnapshots(3);
+		assertNull(list.getStatementList('p', pred1));
+	}
+
+	private void add(MemStatementList list, MemURI pred, int count) {
+		for (int i = 0; i < count; i++) {
+			MemURI obj = new MemURI(this, "urn:test:", pred.getLocalName() + i);
+			list.add(new MemStatement(subj, pred, obj, null, true, 1));
+		}
+	}
+}
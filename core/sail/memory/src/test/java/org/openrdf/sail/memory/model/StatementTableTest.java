@@ -0,0 +1,218 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+
+/**
+ * Unit tests for the classes {@link StatementTable} and
+ * {@link ValueDictionary}.
+ */
+public class StatementTableTest {
+
+	private static final int[] ANY_CONTEXT = new int[0];
+
+	private final URI subj = new URIImpl("urn:test:subj");
+
+	private final URI pred1 = new URIImpl("urn:test:pred1");
+
+	private final URI pred2 = new URIImpl("urn:test:pred2");
+
+	private final URI obj = new URIImpl("urn:test:obj");
+
+	private ValueDictionary dictionary;
+
+	private StatementTable table;
+
+	@Before
+	public void setUp() {
+		dictionary = new ValueDictionary();
+		table = new StatementTable();
+	}
+
+	@Test
+	public void testDictionary() {
+		int id = dictionary.getOrCreateID(subj);
+		assertEquals(id, dictionary.getOrCreateID(new URIImpl(subj.stringValue())));
+		assertEquals(id, dictionary.getID(subj));
+		assertEquals(subj, dictionary.getValue(id));
+		assertEquals(0, dictionary.getID(obj));
+	}
+
+	@Test
+	public void testIterator() {
+		int s = dictionary.getOrCreateID(subj);
+		int p1 = dictionary.getOrCreateID(pred1);
+		int p2 = dictionary.getOrCreateID(pred2);
+		int o = dictionary.getOrCreateID(obj);
+		int row1 = table.add(s, p1, o, 0, true, 1);
+		int row2 = table.add(s, p2, o, 0, false, 1);
+
+		assertEquals(2, table.getRowCount(StatementTable.SUBJECT, s));
+		assertEquals(1, table.getRowCount(StatementTable.PREDICATE, p1));
+		assertEquals(asList(row1, row2), rows(table.iterator(s, 0, o, ANY_CONTEXT, null, 1)));
+		assertEquals(asList(row2), rows(table.iterator(0, p2, 0, ANY_CONTEXT, null, 1)));
+		assertEquals(asList(row1), rows(table.iterator(s, 0, 0, ANY_CONTEXT, true, 1)));
+		assertEquals(asList(row1, row2), rows(table.iterator(0, 0, 0, new int[] { 0 }, null, 1)));
+		assertEquals(asList(), rows(table.iterator(0, 0, 0, ANY_CONTEXT, null, 0)));
+	}
+
+	@Test
+	public void testCompact() {
+		int s = dictionary.getOrCreateID(subj);
+		int p1 = dictionary.getOrCreateID(pred1);
+		int p2 = dictionary.getOrCreateID(pred2);
+		int o = dictionary.getOrCreateID(obj);
+		int row1 = table.add(s, p1, o, 0, true, 1);
+		int row2 = table.add(s, p2, o, 0, true, 1);
+		table.setTillSnapshot(row1, 2);
+
+		StatementTable.Compaction compaction = table.createCompaction(2, dictionary);
+		while (!compaction.isDone()) {
+			compaction.compact(1);
+		}
+		assertEquals(1, compaction.getRemovedCount());
+		assertEquals(1, table.size());
+		assertEquals(0, dictionary.getID(pred1));
+		assertEquals(asList(row2), rows(table.iterator(0, 0, 0, ANY_CONTEXT, null, 2)));
+		assertEquals(asList(row2), rows(table.iterator(s, 0, 0, ANY_CONTEXT, null, -1)));
+		assertEquals(subj, dictionary.getValue(table.getSubject(row2)));
+		assertEquals(pred2, dictionary.getValue(table.getPredicate(row2)));
+		assertEquals(obj, dictionary.getValue(table.getObject(row2)));
+		assertNull(dictionary.getValue(table.getContext(row2)));
+		assertEquals(1, table.getRowCount(StatementTable.SUBJECT, s));
+		assertEquals(1, table.getRowCount(StatementTable.PREDICATE, p2));
+		assertEquals(0, table.getRowCount(StatementTable.PREDICATE, p1));
+
+		// the removed row and value are reused
+		int p3 = dictionary.getOrCreateID(pred1);
+		assertEquals(p1, p3);
+		assertEquals(row1, table.add(s, p3, o, 0, true, 3));
+		assertEquals(2, table.size());
+		assertEquals(asList(row1), rows(table.iterator(0, p3, 0, ANY_CONTEXT, null, 3)));
+	}
+
+	@Test
+	public void testReuseFreedRow() {
+		int s = dictionary.getOrCreateID(subj);
+		int p = dictionary.getOrCreateID(pred1);
+		int o = dictionary.getOrCreateID(obj);
+		int row = table.add(s, p, o, 0, true, 1);
+		table.setTillSnapshot(row, 2);
+
+		StatementTable.Compaction compaction = table.createCompaction(2, dictionary);
+		while (!compaction.isDone()) {
+			compaction.compact(1);
+		}
+		assertEquals(0, table.size());
+
+		// a freed row is not visible to a full scan, not even when the scan
+		// sees the till-snapshot of the reusing add before its since-snapshot
+		table.setTillSnapshot(row, Integer.MAX_VALUE);
+		for (int snapshot = 0; snapshot <= 3; snapshot++) {
+			assertEquals(asList(), rows(table.iterator(0, 0, 0, ANY_CONTEXT, null, snapshot)));
+		}
+
+		// the reused row stays invisible until its since-snapshot is committed
+		s = dictionary.getOrCreateID(subj);
+		p = dictionary.getOrCreateID(pred1);
+		o = dictionary.getOrCreateID(obj);
+		assertEquals(row, table.add(s, p, o, 0, true, Integer.MAX_VALUE - 2));
+		assertEquals(asList(), rows(table.iterator(0, 0, 0, ANY_CONTEXT, null, 3)));
+
+		table.setSinceSnapshot(row, 3);
+		assertEquals(asList(row), rows(table.iterator(0, 0, 0, ANY_CONTEXT, null, 3)));
+		assertEquals(asList(), rows(table.iterator(0, 0, 0, ANY_CONTEXT, null, 2)));
+	}
+
+	@Test
+	public void testCompactInterleavedWithChanges() {
+		int s = dictionary.getOrCreateID(subj);
+		int p1 = dictionary.getOrCreateID(pred1);
+		int o = dictionary.getOrCreateID(obj);
+		List<Integer> live = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++) {
+			int row = table.add(s, p1, o, 0, true, 1);
+			if (i % 2 == 0) {
+				table.setTillSnapshot(row, 2);
+			}
+			else {
+				live.add(row);
+			}
+		}
+
+		StatementTable.Compaction compaction = table.createCompaction(2, dictionary);
+		while (!compaction.isDone()) {
+			compaction.compact(7);
+			// rows that are added between steps are kept
+			live.add(table.add(s, p1, o, 0, true, 2));
+			// readers never see removed or duplicate rows
+			assertEquals(live, rows(table.iterator(s, p1, 0, ANY_CONTEXT, null, 2)));
+		}
+		assertEquals(50, compaction.getRemovedCount());
+		assertEquals(live.size(), table.size());
+		assertEquals(live.size(), table.getRowCount(StatementTable.SUBJECT, s));
+	}
+
+	@Test
+	public void testDictionaryRemove() {
+		List<URI> uris = new ArrayList<URI>();
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			URI uri = new URIImpl("urn:test:" + i);
+			uris.add(uri);
+			ids.add(dictionary.getOrCreateID(uri));
+		}
+		for (int i = 0; i < 1000; i += 3) {
+			dictionary.remove(ids.get(i));
+		}
+		for (int i = 0; i < 1000; i++) {
+			if (i % 3 == 0) {
+				assertEquals(0, dictionary.getID(uris.get(i)));
+			}
+			else {
+				assertEquals(ids.get(i).intValue(), dictionary.getID(uris.get(i)));
+			}
+		}
+	}
+
+	private List<Integer> asList(int... rows) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (int row : rows) {
+			list.add(row);
+		}
+		return list;
+	}
+
+	private List<Integer> rows(StatementTable.RowIterator iter) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (int row = iter.next(); row != 0; row = iter.next()) {
+			list.add(row);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,119 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.memory.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import org.openrdf.model.impl.URIImpl;
+
+/**
+ * Unit tests for class {@link WeakObjectRegistry}.
+ */
+public class WeakObjectRegistryTest {
+
+	private final WeakObjectRegistry<MemURI> registry = new WeakObjectRegistry<MemURI>();
+
+	@Test
+	public void testGetEquivalentObject() {
+		MemURI uri = new MemURI(this, "urn:test:", "a");
+		assertTrue(registry.add(uri));
+		assertFalse(registry.add(new MemURI(this, "urn:test:", "a")));
+
+		assertSame(uri, registry.get(new URIImpl("urn:test:a")));
+		assertNull(registry.get(new URIImpl("urn:test:b")));
+		assertEquals(1, registry.size());
+
+		assertTrue(registry.remove(new URIImpl("urn:test:a")));
+		assertNull(registry.get(uri));
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void testGrowAndIterate() {
+		List<MemURI> uris = new ArrayList<MemURI>();
+		for (int i = 0; i < 10000; i++) {
+			MemURI uri = new MemURI(this, "urn:test:", "u" + i);
+			uris.add(uri);
+			assertSame(uri, registry.getOrAdd(uri));
+		}
+		assertEquals(uris.size(), registry.size());
+		for (MemURI uri : uris) {
+			assertSame(uri, registry.get(new URIImpl(uri.stringValue())));
+		}
+
+		Set<MemURI> iterated = new HashSet<MemURI>();
+		for (MemURI uri : registry) {
+			iterated.add(uri);
+		}
+		assertEquals(new HashSet<MemURI>(uris), iterated);
+
+		registry.clear();
+		assertEquals(0, registry.size());
+		assertFalse(registry.iterator().hasNext());
+	}
+
+	@Test
+	public void testConcurrentGetOrAdd()
+		throws Exception
+	{
+		final int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<List<MemURI>>> results = new ArrayList<Future<List<MemURI>>>();
+			for (int t = 0; t < threads; t++) {
+				results.add(executor.submit(new Callable<List<MemURI>>() {
+
+					public List<MemURI> call() {
+						List<MemURI> uris = new ArrayList<MemURI>();
+						for (int i = 0; i < 2000; i++) {
+							uris.add(registry.getOrAdd(new MemURI(this, "urn:test:", "u" + i)));
+						}
+						return uris;
+					}
+				}));
+			}
+
+			List<MemURI> first = results.get(0).get();
+			for (Future<List<MemURI>> result : results) {
+				List<MemURI> uris = result.get();
+				for (int i = 0; i < uris.size(); i++) {
+					// all threads must get the same object
+					assertSame(first.get(i), uris.get(i));
+				}
+			}
+			assertEquals(2000, registry.size());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+}
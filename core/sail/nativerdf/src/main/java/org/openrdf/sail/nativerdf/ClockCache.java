@@ -0,0 +1,185 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Base class for fixed-size, thread-safe caches that use a set-associative
+ * layout with CLOCK (second chance) eviction. Each key is mapped to a set of
+ * {@link #WAYS} slots and can only be stored in one of these slots, which keeps
+ * lookups cheap and bounds the number of cached entries. Lookups do not
+ * acquire any locks and do not reorder any data structures; a lookup only marks
+ * the matching entry as recently referenced.
+ * <p>
+ * Concurrent insertions of the same key can result in the key being stored
+ * twice in a set. This only wastes a slot until one of them is evicted.
+ */
+abstract class ClockCache<E extends ClockCache.Entry> {
+
+	/**
+	 * The number of slots in a set.
+	 */
+	protected static final int WAYS = 8;
+
+	/**
+	 * The slots of the cache, set <tt>i</tt> occupies the slots
+	 * <tt>[i * WAYS, (i + 1) * WAYS)</tt>.
+	 */
+	private final AtomicReferenceArray<E> slots;
+
+	/**
+	 * The position of the clock hand of each set. Updates to the hands are not
+	 * synchronized, a lost update only affects which entry is evicted.
+	 */
+	private final int[] clockHands;
+
+	private final int setMask;
+
+	private final int capacity;
+
+	/**
+	 * Creates a new cache that can hold (at least) the specified number of
+	 * entries. The actual capacity is rounded up to a power of two.
+	 * 
+	 * @param capacity
+	 *        The requested capacity, a value smaller than one disables caching.
+	 */
+	protected ClockCache(int capacity) {
+		int setCount;
+		if (capacity <= 0) {
+			setCount = 0;
+		}
+		else {
+			int minSetCount = (capacity + WAYS - 1) / WAYS;
+			setCount = Integer.highestOneBit(minSetCount);
+			if (setCount < minSetCount) {
+				setCount <<= 1;
+			}
+		}
+
+		this.slots = new AtomicReferenceArray<E>(setCount * WAYS);
+		this.clockHands = new int[setCount];
+		this.setMask = setCount - 1;
+		this.capacity = setCount * WAYS;
+	}
+
+	/**
+	 * Gets the maximum number of entries that this cache can hold.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++) {
+			slots.set(i, null);
+		}
+	}
+
+	/**
+	 * Gets the index of the first slot of the set that entries with the
+	 * specified hash code are stored in, or <tt>-1</tt> if caching is disabled.
+	 */
+	protected final int getSetOffset(int hash) {
+		if (capacity == 0) {
+			return -1;
+		}
+
+		// Spread the bits of the hash code to avoid collisions of sequential IDs
+		// and poorly distributed hash codes
+		hash *= 0x9E3779B9;
+		hash ^= hash >>> 16;
+
+		return (hash & setMask) * WAYS;
+	}
+
+	/**
+	 * Gets the entry stored in the specified slot, may be <tt>null</tt>.
+	 */
+	protected final E getSlot(int slotIdx) {
+		return slots.get(slotIdx);
+	}
+
+	/**
+	 * Checks whether two entries are stored under the same key.
+	 */
+	protected abstract boolean hasSameKey(E entry1, E entry2);
+
+	/**
+	 * Stores an entry in the set starting at the specified offset, replacing
+	 * any existing entry for the same key. If the set is full, the first entry
+	 * that has not been referenced since the clock hand last passed it is
+	 * evicted.
+	 */
+	protected final void insert(int setOffset, E newEntry) {
+		if (setOffset < 0) {
+			return;
+		}
+
+		for (int i = setOffset; i < setOffset + WAYS; i++) {
+			E entry = slots.get(i);
+
+			if (entry == null) {
+				if (slots.compareAndSet(i, null, newEntry)) {
+					return;
+				}
+			}
+			else if (hasSameKey(entry, newEntry)) {
+				slots.set(i, newEntry);
+				return;
+			}
+		}
+
+		int setIdx = setOffset / WAYS;
+		int hand = clockHands[setIdx];
+
+		// Every entry has its reference flag cleared in the first round, so a
+		// victim is always found within two rounds
+		for (int i = 0; i < 2 * WAYS; i++) {
+			int slotIdx = setOffset + hand;
+			hand = (hand + 1) % WAYS;
+
+			E entry = slots.get(slotIdx);
+
+			if (entry == null || !entry.referenced) {
+				slots.set(slotIdx, newEntry);
+				break;
+			}
+
+			entry.referenced = false;
+		}
+
+		clockHands[setIdx] = hand;
+	}
+
+	/*-------------------*
+	 * Inner class Entry *
+	 *-------------------*/
+
+	static class Entry {
+
+		/**
+		 * Flag indicating whether the entry has been referenced since the clock
+		 * hand last passed it.
+		 */
+		volatile boolean referenced = true;
+	}
+}
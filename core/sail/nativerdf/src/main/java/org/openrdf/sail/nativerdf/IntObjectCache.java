@@ -0,0 +1,77 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+/**
+ * A fixed-size, thread-safe cache that maps <tt>int</tt> keys to objects
+ * without boxing the keys.
+ * 
+ * @see ClockCache
+ */
+class IntObjectCache<V> extends ClockCache<IntObjectCache.IntEntry<V>> {
+
+	public IntObjectCache(int capacity) {
+		super(capacity);
+	}
+
+	/**
+	 * Gets the value that is cached for the specified key.
+	 * 
+	 * @return The cached value, or <tt>null</tt> if the key is not cached.
+	 */
+	public V get(int key) {
+		int setOffset = getSetOffset(key);
+
+		if (setOffset >= 0) {
+			for (int i = setOffset; i < setOffset + WAYS; i++) {
+				IntEntry<V> entry = getSlot(i);
+
+				if (entry != null && entry.key == key) {
+					entry.referenced = true;
+					return entry.value;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	public void put(int key, V value) {
+		insert(getSetOffset(key), new IntEntry<V>(key, value));
+	}
+
+	@Override
+	protected boolean hasSameKey(IntEntry<V> entry1, IntEntry<V> entry2) {
+		return entry1.key == entry2.key;
+	}
+
+	/*----------------------*
+	 * Inner class IntEntry *
+	 *----------------------*/
+
+	static final class IntEntry<V> extends ClockCache.Entry {
+
+		final int key;
+
+		final V value;
+
+		IntEntry(int key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+}
@@ -1,66 +0,0 @@
-/* 
- * Licensed to Aduna under one or more contributor license agreements.  
- * See the NOTICE.txt file distributed with this work for additional 
- * information regarding copyright ownership. 
- *
- * Aduna licenses this file to you under the terms of the Aduna BSD 
- * License (the "License"); you may not use this file except in compliance 
- * with the License. See the LICENSE.txt file distributed with this work 
- * for the full License.
- *
- * Unless required by applicable law or agreed to in writing, software 
- * distributed under the License is distributed on an "AS IS" BASIS, 
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
- * implied. See the License for the specific language governing permissions
- * and limitations under the License.
- */
-package org.openrdf.sail.nativerdf;
-
-import java.util.LinkedHashMap;
-import java.util.Map;
-
-/**
- * Utility subclass of {@link LinkedHashMap} the makes it a fixed-size LRU
- * cache.
- * 
- * @author Arjohn Kampman
- */
-class LRUCache<K, V> extends LinkedHashMap<K, V> {
-
-	private static final long serialVersionUID = -8180282377977820910L;
-
-	private final int capacity;
-
-	public LRUCache(int capacity) {
-		this(capacity, 0.75f);
-	}
-
-	public LRUCache(int capacity, float loadFactor) {
-		super((int)(capacity / loadFactor), loadFactor, true);
-		this.capacity = capacity;
-	}
-
-	public int getCapacity() {
-		return capacity;
-	}
-
-	@Override
-	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-		return size() > capacity;
-	}
-
-	@Override
-	public synchronized V get(Object key) {
-		return super.get(key);
-	}
-
-	@Override
-	public synchronized V put(K key, V value) {
-		return super.put(key, value);
-	}
-
-	@Override
-	public synchronized void clear() {
-		super.clear();
-	}
-}
@@ -51,6 +51,34 @@ class NativeEvaluationStatistics extends EvaluationStatistics {
 		return new NativeCardinalityCalculator();
 	}
 
+	@Override
+	public boolean isOrderSupported(StatementPattern sp, Var var) {
+		char orderField;
+		if (var == sp.getSubjectVar()) {
+			orderField = 's';
+		}
+		else if (var == sp.getPredicateVar()) {
+			orderField = 'p';
+		}
+		else if (var == sp.getObjectVar()) {
+			orderField = 'o';
+		}
+		else if (var == sp.getContextVar()) {
+			orderField = 'c';
+		}
+		else {
+			return false;
+		}
+
+		// Only the presence of values matters for the index selection
+		return tripleStore.isSortedOn(orderField, getFieldID(sp.getSubjectVar()),
+				getFieldID(sp.getPredicateVar()), getFieldID(sp.getObjectVar()), getFieldID(sp.getContextVar()));
+	}
+
+	private int getFieldID(Var var) {
+		return var != null && var.hasValue() ? 0 : NativeValue.UNKNOWN_ID;
+	}
+
 	protected class NativeCardinalityCalculator extends CardinalityCalculator {
 
 		@Override
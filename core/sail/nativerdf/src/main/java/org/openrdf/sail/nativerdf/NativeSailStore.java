@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
@@ -45,6 +46,7 @@ import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
+import org.openrdf.query.algebra.evaluation.StatementOrder;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.base.BackingSailSource;
@@ -52,6 +54,7 @@ import org.openrdf.sail.base.SailDataset;
 import org.openrdf.sail.base.SailSink;
 import org.openrdf.sail.base.SailSource;
 import org.openrdf.sail.base.SailStore;
+import org.openrdf.sail.nativerdf.btree.BTree;
 import org.openrdf.sail.nativerdf.btree.RecordIterator;
 import org.openrdf.sail.nativerdf.model.NativeValue;
 
@@ -70,6 +73,30 @@ class NativeSailStore implements SailStore {
 
 	final NamespaceStore namespaceStore;
 
+	/**
+	 * Flag indicating whether values of returned statements are only read from
+	 * the value store when they are first needed.
+	 */
+	final boolean lateMaterialization;
+
+	/**
+	 * Orders values on their internal IDs, which is the order in which the
+	 * triple indexes are sorted.
+	 */
+	final Comparator<Value> valueIDComparator = new Comparator<Value>() {
+
+		public int compare(Value v1, Value v2) {
+			try {
+				int id1 = valueStore.getID(v1);
+				int id2 = valueStore.getID(v2);
+				return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Unable to compare values", e);
+			}
+		}
+	};
+
 	/**
 	 * Lock manager used to prevent concurrent transactions.
 	 */
@@ -82,22 +109,25 @@ class NativeSailStore implements SailStore {
 		throws IOException, SailException
 	{
 		this(dataDir, tripleIndexes, false, ValueStore.VALUE_CACHE_SIZE,
-				ValueStore.VALUE_ID_CACHE_SIZE, ValueStore.NAMESPACE_CACHE_SIZE, ValueStore.NAMESPACE_ID_CACHE_SIZE);
+				ValueStore.VALUE_ID_CACHE_SIZE, ValueStore.NAMESPACE_CACHE_SIZE, ValueStore.NAMESPACE_ID_CACHE_SIZE,
+				BTree.NODE_CACHE_SIZE, false, false);
 	}
 
 	/**
 	 * Creates a new {@link NativeSailStore}.
 	 */
 	public NativeSailStore(File dataDir, String tripleIndexes, boolean forceSync, int valueCacheSize,
-			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize)
+			int valueIDCacheSize, int namespaceCacheSize, int namespaceIDCacheSize, int nodeCacheSize,
+			boolean memoryMapped, boolean lateMaterialization)
 		throws IOException, SailException
 	{
+		this.lateMaterialization = lateMaterialization;
 		boolean initialized = false;
 		try {
 			namespaceStore = new NamespaceStore(dataDir);
 			valueStore = new ValueStore(dataDir, forceSync, valueCacheSize, valueIDCacheSize,
-					namespaceCacheSize, namespaceIDCacheSize);
-			tripleStore = new TripleStore(dataDir, tripleIndexes, forceSync);
+					namespaceCacheSize, namespaceIDCacheSize, memoryMapped);
+			tripleStore = new TripleStore(dataDir, tripleIndexes, forceSync, nodeCacheSize, memoryMapped);
 			initialized = true;
 		}
 		finally {
@@ -188,6 +218,24 @@ class NativeSailStore implements SailStore {
 	CloseableIteration<? extends Statement, SailException> createStatementIterator(Resource subj, URI pred, Value obj,
 			boolean explicit, Resource... contexts)
 		throws IOException
+	{
+		return createStatementIterator(subj, pred, obj, explicit, (char)0, contexts);
+	}
+
+	/**
+	 * Creates a statement iterator based on the supplied pattern that returns
+	 * the statements sorted on the internal ID of the specified field.
+	 * 
+	 * @param orderField
+	 *        The field on which the statements should be sorted: one of 's',
+	 *        'p', 'o' or 'c', or <tt>0</tt> if the order does not matter.
+	 * @return A StatementIterator that can be used to iterate over the
+	 *         statements that match the specified pattern, or <tt>null</tt> if
+	 *         the statements can not be returned in the requested order.
+	 */
+	CloseableIteration<? extends Statement, SailException> createStatementIterator(Resource subj, URI pred, Value obj,
+			boolean explicit, char orderField, Resource... contexts)
+		throws IOException
 	{
 		int subjID = NativeValue.UNKNOWN_ID;
 		if (subj != null) {
@@ -232,13 +280,31 @@ class NativeSailStore implements SailStore {
 			}
 		}
 
+		if (orderField != 0) {
+			if (contextIDList.size() > 1) {
+				// the union of the contexts' statements is not sorted
+				return null;
+			}
+			else if (contextIDList.isEmpty()) {
+				return new EmptyIteration<Statement, SailException>();
+			}
+
+			int contextID = contextIDList.get(0);
+			RecordIterator btreeIter = tripleStore.getTriples(subjID, predID, objID, contextID, explicit, false,
+					orderField);
+			if (btreeIter == null) {
+				return null;
+			}
+			return new NativeStatementIterator(btreeIter, valueStore, lateMaterialization);
+		}
+
 		ArrayList<NativeStatementIterator> perContextIterList = new ArrayList<NativeStatementIterator>(
 				contextIDList.size());
 
 		for (int contextID : contextIDList) {
 			RecordIterator btreeIter = tripleStore.getTriples(subjID, predID, objID, contextID, explicit, false);
 
-			perContextIterList.add(new NativeStatementIterator(btreeIter, valueStore));
+			perContextIterList.add(new NativeStatementIterator(btreeIter, valueStore, lateMaterialization));
 		}
 
 		if (perContextIterList.size() == 1) {
@@ -444,15 +510,13 @@ class NativeSailStore implements SailStore {
 			}
 		}
 
-		private boolean addStatement(Resource subj, URI pred, Value obj, boolean explicit, Resource... contexts)
+		private void addStatement(Resource subj, URI pred, Value obj, boolean explicit, Resource... contexts)
 			throws SailException
 		{
 			acquireExclusiveTransactionLock();
 
 			OpenRDFUtil.verifyContextNotNull(contexts);
 
-			boolean result = false;
-
 			try {
 				int subjID = valueStore.storeValue(subj);
 				int predID = valueStore.storeValue(pred);
@@ -468,8 +532,7 @@ class NativeSailStore implements SailStore {
 						contextID = valueStore.storeValue(context);
 					}
 
-					boolean wasNew = tripleStore.storeTriple(subjID, predID, objID, contextID, explicit);
-					result |= wasNew;
+					tripleStore.storeTripleDeferred(subjID, predID, objID, contextID, explicit);
 				}
 			}
 			catch (IOException e) {
@@ -479,8 +542,6 @@ class NativeSailStore implements SailStore {
 				logger.error("Encountered an unexpected problem while trying to add a statement", e);
 				throw e;
 			}
-
-			return result;
 		}
 
 		private int removeStatements(Resource subj, URI pred, Value obj, boolean explicit, Resource... contexts)
@@ -660,5 +721,39 @@ class NativeSailStore implements SailStore {
 				throw new SailException("Unable to get statements", e);
 			}
 		}
+
+		@Override
+		public CloseableIteration<? extends Statement, SailException> getOrderedStatements(
+				StatementOrder order, Resource subj, URI pred, Value obj, Resource... contexts)
+			throws SailException
+		{
+			char orderField;
+			switch (order) {
+				case SUBJECT:
+					orderField = 's';
+					break;
+				case PREDICATE:
+					orderField = 'p';
+					break;
+				case OBJECT:
+					orderField = 'o';
+					break;
+				default:
+					orderField = 'c';
+					break;
+			}
+
+			try {
+				return createStatementIterator(subj, pred, obj, explicit, orderField, contexts);
+			}
+			catch (IOException e) {
+				throw new SailException("Unable to get statements", e);
+			}
+		}
+
+		@Override
+		public Comparator<Value> getComparator() {
+			return valueIDComparator;
+		}
 	}
 }
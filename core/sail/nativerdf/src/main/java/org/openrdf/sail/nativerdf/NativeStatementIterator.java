@@ -42,6 +42,12 @@ class NativeStatementIterator extends LookAheadIteration<Statement, SailExceptio
 
 	private final ValueStore valueStore;
 
+	/**
+	 * Flag indicating whether the values of the statements should only be read
+	 * from the value store when they are first needed.
+	 */
+	private final boolean lateMaterialization;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -51,9 +57,25 @@ class NativeStatementIterator extends LookAheadIteration<Statement, SailExceptio
 	 */
 	public NativeStatementIterator(RecordIterator btreeIter, ValueStore valueStore)
 		throws IOException
+	{
+		this(btreeIter, valueStore, false);
+	}
+
+	/**
+	 * Creates a new NativeStatementIterator.
+	 * 
+	 * @param lateMaterialization
+	 *        Flag indicating whether the values of the returned statements should
+	 *        only be read from the value store when they are first needed, see
+	 *        {@link ValueStore#getLazyValue(int)}.
+	 */
+	public NativeStatementIterator(RecordIterator btreeIter, ValueStore valueStore,
+			boolean lateMaterialization)
+		throws IOException
 	{
 		this.btreeIter = btreeIter;
 		this.valueStore = valueStore;
+		this.lateMaterialization = lateMaterialization;
 	}
 
 	/*---------*
@@ -71,18 +93,18 @@ class NativeStatementIterator extends LookAheadIteration<Statement, SailExceptio
 			}
 
 			int subjID = ByteArrayUtil.getInt(nextValue, TripleStore.SUBJ_IDX);
-			Resource subj = (Resource)valueStore.getValue(subjID);
+			Resource subj = (Resource)getValue(subjID);
 
 			int predID = ByteArrayUtil.getInt(nextValue, TripleStore.PRED_IDX);
-			URI pred = (URI)valueStore.getValue(predID);
+			URI pred = lateMaterialization ? valueStore.getLazyURI(predID) : (URI)valueStore.getValue(predID);
 
 			int objID = ByteArrayUtil.getInt(nextValue, TripleStore.OBJ_IDX);
-			Value obj = valueStore.getValue(objID);
+			Value obj = getValue(objID);
 
 			Resource context = null;
 			int contextID = ByteArrayUtil.getInt(nextValue, TripleStore.CONTEXT_IDX);
 			if (contextID != 0) {
-				context = (Resource)valueStore.getValue(contextID);
+				context = (Resource)getValue(contextID);
 			}
 
 			return valueStore.createStatement(subj, pred, obj, context);
@@ -92,6 +114,17 @@ class NativeStatementIterator extends LookAheadIteration<Statement, SailExceptio
 		}
 	}
 
+	private Value getValue(int id)
+		throws IOException
+	{
+		if (lateMaterialization) {
+			return valueStore.getLazyValue(id);
+		}
+		else {
+			return valueStore.getValue(id);
+		}
+	}
+
 	@Override
 	protected void handleClose()
 		throws SailException
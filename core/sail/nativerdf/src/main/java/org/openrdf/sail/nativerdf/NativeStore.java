@@ -18,6 +18,10 @@ package org.openrdf.sail.nativerdf;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.io.FileUtils;
@@ -41,6 +45,7 @@ import org.openrdf.sail.base.SailStore;
 import org.openrdf.sail.base.SnapshotSailStore;
 import org.openrdf.sail.helpers.DirectoryLockManager;
 import org.openrdf.sail.helpers.NotifyingSailBase;
+import org.openrdf.sail.nativerdf.btree.BTree;
 
 /**
  * A SAIL implementation using B-Tree indexing on disk for storing and querying
@@ -78,8 +83,35 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 
 	private volatile int namespaceIDCacheSize = ValueStore.NAMESPACE_ID_CACHE_SIZE;
 
+	private volatile int nodeCacheSize = BTree.NODE_CACHE_SIZE;
+
+	/**
+	 * Flag indicating whether the data and index files should be read through
+	 * memory-mapped views. By default, this feature is disabled.
+	 */
+	private volatile boolean memoryMapped = false;
+
+	/**
+	 * Flag indicating whether values are only read from the value store when
+	 * they are first needed during query evaluation. By default, this feature is
+	 * disabled.
+	 */
+	private volatile boolean lateMaterialization = false;
+
 	private SailStore store;
 
+	/**
+	 * The triple store of the initialized native store.
+	 */
+	private volatile TripleStore tripleStore;
+
+	/**
+	 * The thread that is building a new triple index, if any.
+	 * 
+	 * @see #addTripleIndex(String)
+	 */
+	private volatile Thread indexBuilder;
+
 	/**
 	 * Data directory lock.
 	 */
@@ -183,6 +215,54 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 		this.namespaceIDCacheSize = namespaceIDCacheSize;
 	}
 
+	/**
+	 * Sets the number of unused index nodes that each triple index keeps in
+	 * memory, must be called before initialization. Larger caches are split
+	 * into independently locked segments, which lets concurrent readers scan
+	 * the indexes without contending on a single lock.
+	 */
+	public void setNodeCacheSize(int nodeCacheSize) {
+		this.nodeCacheSize = nodeCacheSize;
+	}
+
+	public int getNodeCacheSize() {
+		return nodeCacheSize;
+	}
+
+	/**
+	 * Specifies whether the value and triple index files should be read through
+	 * memory-mapped views instead of file channel reads, must be called before
+	 * initialization. This removes a system call and a copy for every read of
+	 * data that resides in the operating system's page cache, at the cost of
+	 * using (virtual) address space for the mapped files. By default, this
+	 * feature is disabled.
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
+	/**
+	 * Specifies whether the values of statements that are returned by the
+	 * indexes should only be read from the value store when they are first
+	 * needed, must be called before initialization. Joins and term comparisons
+	 * between values of this store are done on their internal IDs, so values
+	 * that are only used for such operations are never read from disk. Values
+	 * are read once their lexical form, or their hash code, is requested, e.g.
+	 * when results are projected or serialized. By default, this feature is
+	 * disabled.
+	 */
+	public void setLateMaterialization(boolean lateMaterialization) {
+		this.lateMaterialization = lateMaterialization;
+	}
+
+	public boolean isLateMaterialization() {
+		return lateMaterialization;
+	}
+
 	/**
 	 * @return Returns the SERVICE resolver.
 	 */
@@ -251,7 +331,9 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 				FileUtils.writeStringToFile(versionFile, VERSION);
 			}
 			final NativeSailStore master = new NativeSailStore(dataDir, tripleIndexes, forceSync,
-					valueCacheSize, valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize);
+					valueCacheSize, valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize, nodeCacheSize,
+					memoryMapped, lateMaterialization);
+			this.tripleStore = master.tripleStore;
 			this.store = new SnapshotSailStore(master, new ModelFactory() {
 
 				@Override
@@ -310,6 +392,24 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 		logger.debug("Shutting down NativeStore...");
 
 		try {
+			Thread builder = indexBuilder;
+			if (builder != null) {
+				builder.interrupt();
+				try {
+					builder.join();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			if (logger.isDebugEnabled()) {
+				Map<String, Long> recommendations = tripleStore.getIndexRecommendations();
+				if (!recommendations.isEmpty()) {
+					logger.debug("Recommended triple indexes: {}", recommendations);
+				}
+			}
+
 			store.close();
 
 			logger.debug("NativeStore shut down");
@@ -323,6 +423,71 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 		}
 	}
 
+	/**
+	 * Recommends triple indexes for the triple patterns that have been looked
+	 * up since this store was initialized. An index is recommended for
+	 * patterns for which none of the existing indexes covers all bound fields.
+	 * 
+	 * @return The recommended indexes, e.g. <tt>ospc</tt>, mapped to the number
+	 *         of lookups that would have benefited from them, most beneficial
+	 *         first.
+	 * @see #addTripleIndex(String)
+	 */
+	public Map<String, Long> getTripleIndexRecommendations() {
+		if (!isInitialized()) {
+			throw new IllegalStateException("sail has not been initialized");
+		}
+
+		return tripleStore.getIndexRecommendations();
+	}
+
+	/**
+	 * Adds a triple index to this initialized store. The index is built in the
+	 * background while the store remains available for reading and writing,
+	 * and is used as soon as it is complete. The index is kept when the store
+	 * is initialized again, also when the configured triple indexes do not
+	 * contain it. It is only removed when the configured triple indexes are
+	 * changed from a specification that contains it to one that does not.
+	 * 
+	 * @param fieldSeq
+	 *        The field sequence of the new index, e.g. <tt>opsc</tt>.
+	 * @return A future that completes when the index is used by this store.
+	 * @throws IllegalStateException
+	 *         If this store has not been initialized or another index is being
+	 *         built.
+	 */
+	public Future<Void> addTripleIndex(final String fieldSeq) {
+		if (!isInitialized()) {
+			throw new IllegalStateException("sail has not been initialized");
+		}
+
+		FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+
+			public Void call()
+				throws IOException, SailException
+			{
+				try {
+					tripleStore.addIndex(fieldSeq);
+					return null;
+				}
+				finally {
+					indexBuilder = null;
+				}
+			}
+		});
+
+		synchronized (this) {
+			if (indexBuilder != null) {
+				throw new IllegalStateException("Another triple index is being built");
+			}
+			indexBuilder = new Thread(task, "NativeStore index builder " + fieldSeq);
+			indexBuilder.setDaemon(true);
+			indexBuilder.start();
+		}
+
+		return task;
+	}
+
 	public boolean isWritable() {
 		return getDataDir().canWrite();
 	}
@@ -398,6 +563,10 @@ public class NativeStore extends NotifyingSailBase implements FederatedServiceRe
 		return store;
 	}
 
+	TripleStore getTripleStore() {
+		return tripleStore;
+	}
+
 	private boolean upgradeStore(File dataDir, String version)
 		throws IOException, SailException
 	{
@@ -17,6 +17,7 @@
 package org.openrdf.sail.nativerdf;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 import info.aduna.concurrent.locks.Lock;
 
@@ -27,6 +28,7 @@ import org.openrdf.query.Dataset;
 import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.algebra.evaluation.parallel.ParallelEvaluationStrategy;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.SailReadOnlyException;
 import org.openrdf.sail.base.SailSourceConnection;
@@ -160,6 +162,11 @@ public class NativeStoreConnection extends SailSourceConnection {
 
 	@Override
 	protected EvaluationStrategy getEvaluationStrategy(Dataset dataset, TripleSource tripleSource) {
+		ExecutorService executor = nativeStore.getEvaluationExecutor();
+		if (executor != null) {
+			return new ParallelEvaluationStrategy(tripleSource, dataset, getFederatedServiceResolver(),
+					nativeStore.getIterationCacheSyncThreshold(), executor);
+		}
 		return new EvaluationStrategyImpl(tripleSource, dataset, getFederatedServiceResolver(),
 				nativeStore.getIterationCacheSyncThreshold());
 	}
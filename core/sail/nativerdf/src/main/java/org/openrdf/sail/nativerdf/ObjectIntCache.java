@@ -0,0 +1,89 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+/**
+ * A fixed-size, thread-safe cache that maps objects to <tt>int</tt> values
+ * without boxing the values. Keys are matched using their
+ * {@link Object#hashCode() hash code} and {@link Object#equals(Object)}.
+ * 
+ * @see ClockCache
+ */
+class ObjectIntCache<K> extends ClockCache<ObjectIntCache.ObjectEntry<K>> {
+
+	/**
+	 * The value that is returned by {@link #get(Object)} for keys that are not
+	 * cached.
+	 */
+	public static final int NOT_FOUND = -1;
+
+	public ObjectIntCache(int capacity) {
+		super(capacity);
+	}
+
+	/**
+	 * Gets the value that is cached for the specified key.
+	 * 
+	 * @return The cached value, or {@link #NOT_FOUND} if the key is not cached.
+	 */
+	public int get(Object key) {
+		int hash = key.hashCode();
+		int setOffset = getSetOffset(hash);
+
+		if (setOffset >= 0) {
+			for (int i = setOffset; i < setOffset + WAYS; i++) {
+				ObjectEntry<K> entry = getSlot(i);
+
+				if (entry != null && entry.hash == hash && entry.key.equals(key)) {
+					entry.referenced = true;
+					return entry.value;
+				}
+			}
+		}
+
+		return NOT_FOUND;
+	}
+
+	public void put(K key, int value) {
+		int hash = key.hashCode();
+		insert(getSetOffset(hash), new ObjectEntry<K>(key, hash, value));
+	}
+
+	@Override
+	protected boolean hasSameKey(ObjectEntry<K> entry1, ObjectEntry<K> entry2) {
+		return entry1.hash == entry2.hash && entry1.key.equals(entry2.key);
+	}
+
+	/*-------------------------*
+	 * Inner class ObjectEntry *
+	 *-------------------------*/
+
+	static final class ObjectEntry<K> extends ClockCache.Entry {
+
+		final K key;
+
+		final int hash;
+
+		final int value;
+
+		ObjectEntry(K key, int hash, int value) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,330 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import info.aduna.io.NioFile;
+
+import org.openrdf.sail.nativerdf.btree.RecordComparator;
+import org.openrdf.sail.nativerdf.btree.RecordIterator;
+
+/**
+ * Sorts fixed size byte array records, using a temporary file for sets of
+ * records that do not fit in memory. Records are collected in memory and
+ * written to the temporary file as sorted runs, which are merged when the
+ * sorted records are retrieved. The temporary file is deleted upon calling
+ * {@link #discard()}.
+ */
+final class RecordSorter {
+
+	/*-----------*
+	 * Constants *
+	 *-----------*/
+
+	/**
+	 * The default maximum number of records that is kept in memory.
+	 */
+	static final int DEFAULT_RUN_SIZE = 1 << 18;
+
+	/**
+	 * The number of records that is read from a run at a time while merging.
+	 */
+	private static final int READ_BUFFER_SIZE = 128;
+
+	/**
+	 * The number of records that is written to a run at a time.
+	 */
+	private static final int WRITE_BUFFER_SIZE = 1024;
+
+	/*------------*
+	 * Attributes *
+	 *------------*/
+
+	private final File cacheDir;
+
+	private final int recordSize;
+
+	private final Comparator<byte[]> comparator;
+
+	private final int runSize;
+
+	private final List<byte[]> records;
+
+	/**
+	 * The file containing the sorted runs, <tt>null</tt> until the first run
+	 * is written.
+	 */
+	private NioFile runFile;
+
+	/**
+	 * The number of records in each sorted run in {@link #runFile}.
+	 */
+	private final List<Integer> runLengths = new ArrayList<Integer>();
+
+	private long recordCount;
+
+	/*--------------*
+	 * Constructors *
+	 *--------------*/
+
+	public RecordSorter(File cacheDir, int recordSize, RecordComparator comparator) {
+		this(cacheDir, recordSize, comparator, DEFAULT_RUN_SIZE);
+	}
+
+	public RecordSorter(File cacheDir, int recordSize, final RecordComparator comparator, int runSize) {
+		this.cacheDir = cacheDir;
+		this.recordSize = recordSize;
+		this.runSize = runSize;
+		this.records = new ArrayList<byte[]>(Math.min(runSize, 1024));
+		this.comparator = new Comparator<byte[]>() {
+
+			public int compare(byte[] o1, byte[] o2) {
+				return comparator.compareBTreeValues(o1, o2, 0, o2.length);
+			}
+		};
+	}
+
+	/*---------*
+	 * Methods *
+	 *---------*/
+
+	/**
+	 * Adds a record to the records that are to be sorted.
+	 */
+	public void add(byte[] record)
+		throws IOException
+	{
+		records.add(record);
+		recordCount++;
+
+		if (records.size() >= runSize) {
+			writeRun();
+		}
+	}
+
+	/**
+	 * Gets the number of records that have been added.
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Gets all records that have been added, sorted on the comparator of this
+	 * sorter. Records that are equal according to the comparator are all
+	 * returned, in no particular order.
+	 */
+	public RecordIterator getSortedRecords()
+		throws IOException
+	{
+		if (runFile == null) {
+			Collections.sort(records, comparator);
+			return new SortedListIterator();
+		}
+
+		if (!records.isEmpty()) {
+			writeRun();
+		}
+
+		return new MergeIterator();
+	}
+
+	/**
+	 * Discards the added records, deleting the temporary file.
+	 */
+	public void discard()
+		throws IOException
+	{
+		records.clear();
+		runLengths.clear();
+		recordCount = 0;
+
+		if (runFile != null) {
+			runFile.delete();
+			runFile = null;
+		}
+	}
+
+	private void writeRun()
+		throws IOException
+	{
+		if (runFile == null) {
+			runFile = new NioFile(File.createTempFile("sortcache", ".dat", cacheDir));
+		}
+
+		Collections.sort(records, comparator);
+
+		ByteBuffer buf = ByteBuffer.allocate(WRITE_BUFFER_SIZE * recordSize);
+		long offset = runFile.size();
+		for (byte[] record : records) {
+			if (buf.remaining() < recordSize) {
+				offset += flushBuffer(buf, offset);
+			}
+			buf.put(record);
+		}
+		flushBuffer(buf, offset);
+
+		runLengths.add(records.size());
+		records.clear();
+	}
+
+	private int flushBuffer(ByteBuffer buf, long offset)
+		throws IOException
+	{
+		buf.flip();
+		int length = buf.remaining();
+		while (buf.hasRemaining()) {
+			offset += runFile.write(buf, offset);
+		}
+		buf.clear();
+		return length;
+	}
+
+	/*--------------------------------*
+	 * Inner class SortedListIterator *
+	 *--------------------------------*/
+
+	/**
+	 * Iterates over the sorted records that are kept in memory.
+	 */
+	private class SortedListIterator implements RecordIterator {
+
+		private int index;
+
+		public byte[] next() {
+			if (index < records.size()) {
+				return records.get(index++);
+			}
+			return null;
+		}
+
+		public void set(byte[] value) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+		}
+	}
+
+	/*---------------------------*
+	 * Inner class MergeIterator *
+	 *---------------------------*/
+
+	/**
+	 * Merges the sorted runs, reading the records of each run in blocks.
+	 */
+	private class MergeIterator implements RecordIterator {
+
+		private final PriorityQueue<RunReader> queue;
+
+		public MergeIterator()
+			throws IOException
+		{
+			queue = new PriorityQueue<RunReader>(Math.max(1, runLengths.size()), new Comparator<RunReader>() {
+
+				public int compare(RunReader r1, RunReader r2) {
+					return comparator.compare(r1.current, r2.current);
+				}
+			});
+
+			long offset = 0;
+			for (int runLength : runLengths) {
+				RunReader reader = new RunReader(offset, runLength);
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+				offset += (long)runLength * recordSize;
+			}
+		}
+
+		public byte[] next()
+			throws IOException
+		{
+			RunReader reader = queue.poll();
+			if (reader == null) {
+				return null;
+			}
+
+			byte[] result = reader.current;
+			if (reader.advance()) {
+				queue.add(reader);
+			}
+			return result;
+		}
+
+		public void set(byte[] value) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			queue.clear();
+		}
+	}
+
+	private class RunReader {
+
+		private final ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE * recordSize);
+
+		private long offset;
+
+		private int remaining;
+
+		private byte[] current;
+
+		public RunReader(long offset, int length) {
+			this.offset = offset;
+			this.remaining = length;
+			buf.limit(0);
+		}
+
+		public boolean advance()
+			throws IOException
+		{
+			if (!buf.hasRemaining()) {
+				if (remaining == 0) {
+					current = null;
+					return false;
+				}
+
+				int count = Math.min(remaining, READ_BUFFER_SIZE);
+				buf.clear();
+				buf.limit(count * recordSize);
+				while (buf.hasRemaining()) {
+					int bytesRead = runFile.read(buf, offset);
+					if (bytesRead < 0) {
+						throw new IOException("Unexpected end of file: " + runFile.getFile());
+					}
+					offset += bytesRead;
+				}
+				buf.flip();
+				remaining -= count;
+			}
+
+			current = new byte[recordSize];
+			buf.get(current);
+			return true;
+		}
+	}
+}
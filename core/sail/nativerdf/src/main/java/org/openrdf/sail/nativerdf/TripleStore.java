@@ -21,16 +21,23 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,6 +86,13 @@ class TripleStore {
 	 */
 	private static final String INDEXES_KEY = "triple-indexes";
 
+	/**
+	 * The key used to store the triple indexes specification that was last
+	 * requested when the triple store was opened. Indexes that exist but were
+	 * not requested have been added with {@link TripleStore#addIndex(String)}.
+	 */
+	private static final String REQUESTED_INDEXES_KEY = "requested-triple-indexes";
+
 	/**
 	 * The version number for the current triple store.
 	 * <ul>
@@ -90,9 +104,11 @@ class TripleStore {
 	 * store.
 	 * <li>version 10a: Introduces transaction flags, this is backwards
 	 * compatible with version 10.
+	 * <li>version 11: Compresses the leaf nodes of the triple indexes. Indexes
+	 * of version 10 are converted when the triple store is opened.
 	 * </ul>
 	 */
-	private static final int SCHEME_VERSION = 10;
+	private static final int SCHEME_VERSION = 11;
 
 	// 17 bytes are used to represent a triple:
 	// byte 0-3 : subject
@@ -154,15 +170,89 @@ class TripleStore {
 
 	/**
 	 * The list of triple indexes that are used to store and retrieve triples.
+	 * Indexes that are built online are added to this list while it is being
+	 * read.
 	 */
-	private final List<TripleIndex> indexes = new ArrayList<TripleIndex>();
+	private final List<TripleIndex> indexes = new CopyOnWriteArrayList<TripleIndex>();
 
 	private final boolean forceSync;
 
+	/**
+	 * The number of unused BTree nodes that each index keeps in memory.
+	 */
+	private final int nodeCacheSize;
+
+	/**
+	 * Flag indicating whether index nodes are read from memory-mapped files.
+	 */
+	private final boolean memoryMapped;
+
 	private final TxnStatusFile txnStatusFile;
 
+	/**
+	 * The number of transactions that have been committed since this store was
+	 * opened.
+	 */
+	private final AtomicLong commitCount = new AtomicLong();
+
 	private volatile RecordCache updatedTriplesCache;
 
+	/**
+	 * The triples that have been stored in the current transaction, but that
+	 * have not yet been written to the indexes, or <tt>null</tt> if there are
+	 * none.
+	 * 
+	 * @see #storeTripleDeferred(int, int, int, int, boolean)
+	 */
+	private RecordSorter deferredTriples;
+
+	/**
+	 * The number of stripes of {@link #patternCounts}, a power of two.
+	 */
+	private static final int PATTERN_COUNT_STRIPES = Integer.highestOneBit(Math.min(32,
+			Runtime.getRuntime().availableProcessors())) * 2;
+
+	/**
+	 * The length of a stripe of {@link #patternCounts}: 16 counts, padded so
+	 * that threads that update different stripes do not share cache lines.
+	 */
+	private static final int PATTERN_COUNT_STRIPE_LENGTH = 24;
+
+	/**
+	 * The number of triple lookups per combination of bound fields, indexed on
+	 * a bit mask of the bound subject (1), predicate (2), object (4) and
+	 * context (8). The counts are striped over the threads that do the lookups
+	 * to avoid contention on this hot path.
+	 * 
+	 * @see #getPatternCount(int)
+	 */
+	private final AtomicLongArray patternCounts = new AtomicLongArray(PATTERN_COUNT_STRIPES
+			* PATTERN_COUNT_STRIPE_LENGTH);
+
+	/**
+	 * The triples that have been updated by transactions while a new index is
+	 * being built, or <tt>null</tt> if no index is being built.
+	 * 
+	 * @see #addIndex(String)
+	 */
+	private volatile RecordSorter indexBuildChanges;
+
+	/**
+	 * Monitor guarding {@link #txnActive} and {@link #switchingIndexes}.
+	 */
+	private final Object txnMonitor = new Object();
+
+	/**
+	 * Flag indicating whether a transaction is active.
+	 */
+	private boolean txnActive;
+
+	/**
+	 * Flag indicating whether a new index is being switched in, during which no
+	 * transactions can be started.
+	 */
+	private boolean switchingIndexes;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -175,9 +265,24 @@ class TripleStore {
 
 	public TripleStore(File dir, String indexSpecStr, boolean forceSync)
 		throws IOException, SailException
+	{
+		this(dir, indexSpecStr, forceSync, BTree.NODE_CACHE_SIZE);
+	}
+
+	public TripleStore(File dir, String indexSpecStr, boolean forceSync, int nodeCacheSize)
+		throws IOException, SailException
+	{
+		this(dir, indexSpecStr, forceSync, nodeCacheSize, false);
+	}
+
+	public TripleStore(File dir, String indexSpecStr, boolean forceSync, int nodeCacheSize,
+			boolean memoryMapped)
+		throws IOException, SailException
 	{
 		this.dir = dir;
 		this.forceSync = forceSync;
+		this.nodeCacheSize = nodeCacheSize;
+		this.memoryMapped = memoryMapped;
 		this.txnStatusFile = new TxnStatusFile(dir);
 
 		File propFile = new File(dir, PROPERTIES_FILE);
@@ -214,25 +319,42 @@ class TripleStore {
 				processUncompletedTransaction(txnStatus);
 			}
 
+			compressIndexes();
+
 			// Compare the existing indexes with the requested indexes
 			Set<String> reqIndexSpecs = parseIndexSpecList(indexSpecStr);
 
 			if (reqIndexSpecs.isEmpty()) {
 				// No indexes specified, use the existing ones
-				indexSpecStr = properties.getProperty(INDEXES_KEY);
+				indexSpecStr = properties.getProperty(REQUESTED_INDEXES_KEY, getCurrentIndexSpecStr());
 			}
-			else if (!reqIndexSpecs.equals(indexSpecs)) {
-				// Set of indexes needs to be changed
-				reindex(indexSpecs, reqIndexSpecs);
+			else {
+				// Only apply the changes to the previously requested indexes, so
+				// that indexes that have been added with addIndex(String) are kept
+				Set<String> prevReqIndexSpecs = parseIndexSpecList(properties.getProperty(
+						REQUESTED_INDEXES_KEY, getCurrentIndexSpecStr()));
+				Set<String> newIndexSpecs = new HashSet<String>(indexSpecs);
+				newIndexSpecs.removeAll(prevReqIndexSpecs);
+				newIndexSpecs.addAll(reqIndexSpecs);
+
+				if (!newIndexSpecs.equals(indexSpecs)) {
+					// Set of indexes needs to be changed
+					reindex(indexSpecs, newIndexSpecs);
+					properties.setProperty(INDEXES_KEY, getIndexSpecStr());
+				}
 			}
 		}
 
 		if (!String.valueOf(SCHEME_VERSION).equals(properties.getProperty(VERSION_KEY))
-				|| !indexSpecStr.equals(properties.getProperty(INDEXES_KEY)))
+				|| !indexSpecStr.equals(properties.getProperty(REQUESTED_INDEXES_KEY))
+				|| properties.getProperty(INDEXES_KEY) == null)
 		{
 			// Store up-to-date properties
 			properties.setProperty(VERSION_KEY, String.valueOf(SCHEME_VERSION));
-			properties.setProperty(INDEXES_KEY, indexSpecStr);
+			if (properties.getProperty(INDEXES_KEY) == null) {
+				properties.setProperty(INDEXES_KEY, indexSpecStr);
+			}
+			properties.setProperty(REQUESTED_INDEXES_KEY, indexSpecStr);
 			storeProperties(propFile);
 		}
 	}
@@ -377,6 +499,69 @@ class TripleStore {
 		}
 	}
 
+	/**
+	 * Converts indexes that have been created by an older version of the triple
+	 * store to indexes with compressed leaf nodes.
+	 */
+	private void compressIndexes()
+		throws IOException
+	{
+		for (int i = 0; i < indexes.size(); i++) {
+			TripleIndex index = indexes.get(i);
+			if (index.getBTree().getKeyLength() > 0) {
+				continue;
+			}
+
+			String fieldSeq = new String(index.getFieldSeq());
+			logger.info("Converting {} index to compressed format...", fieldSeq);
+
+			// Build the compressed index in a temporary directory, the values of
+			// the existing index are already sorted
+			File tmpDir = new File(dir, "compress-" + fieldSeq);
+			if (!tmpDir.exists() && !tmpDir.mkdirs()) {
+				throw new IOException("Unable to create directory " + tmpDir);
+			}
+
+			TripleIndex compressedIndex = new TripleIndex(fieldSeq, tmpDir);
+			BTree compressedBTree = compressedIndex.getBTree();
+			try {
+				compressedBTree.clear();
+
+				RecordIterator iter = index.getBTree().iterateAll();
+				try {
+					compressedBTree.build(iter);
+				}
+				finally {
+					iter.close();
+				}
+			}
+			finally {
+				compressedBTree.close();
+			}
+
+			// Replace the existing index files with the compressed ones
+			index.getBTree().close();
+
+			String filenamePrefix = compressedIndex.getFilenamePrefix(fieldSeq);
+			for (String suffix : new String[] { ".alloc", ".dat" }) {
+				File source = new File(tmpDir, filenamePrefix + suffix);
+				File target = new File(dir, filenamePrefix + suffix);
+
+				if (!source.exists()) {
+					// the list of allocated nodes is recreated when it is missing
+					target.delete();
+				}
+				else if (!source.renameTo(target) && !(target.delete() && source.renameTo(target))) {
+					throw new IOException("Unable to move " + source + " to " + target);
+				}
+			}
+			tmpDir.delete();
+
+			indexes.set(i, new TripleIndex(fieldSeq));
+			logger.info("Converted {} index", fieldSeq);
+		}
+	}
+
 	private void reindex(Set<String> currentIndexSpecs, Set<String> newIndexSpecs)
 		throws IOException, SailException
 	{
@@ -398,17 +583,34 @@ class TripleStore {
 
 				TripleIndex addedIndex = new TripleIndex(fieldSeq);
 				BTree addedBTree = addedIndex.getBTree();
+				addedBTree.clear();
 
-				RecordIterator sourceIter = sourceIndex.getBTree().iterateAll();
+				// Sort the triples in the order of the new index and build it
+				// bottom-up
+				RecordSorter sorter = new RecordSorter(dir, RECORD_LENGTH, addedIndex.tripleComparator);
 				try {
-					byte[] value = null;
-					while ((value = sourceIter.next()) != null) {
-						addedBTree.insert(value);
+					RecordIterator sourceIter = sourceIndex.getBTree().iterateAll();
+					try {
+						byte[] value = null;
+						while ((value = sourceIter.next()) != null) {
+							sorter.add(value);
+						}
+					}
+					finally {
+						sourceIter.close();
+					}
+
+					RecordIterator sortedIter = sorter.getSortedRecords();
+					try {
+						addedBTree.build(sortedIter);
+					}
+					finally {
+						sortedIter.close();
 					}
 					addedBTree.sync();
 				}
 				finally {
-					sourceIter.close();
+					sorter.discard();
 				}
 
 				currentIndexes.put(fieldSeq, addedIndex);
@@ -442,13 +644,217 @@ class TripleStore {
 		}
 	}
 
-	private String getCurrentIndexSpecStr() {
+	/**
+	 * Builds a new triple index and adds it to the indexes of this triple
+	 * store. The index is built while this triple store remains available for
+	 * reading and writing, triples that are updated by transactions in the
+	 * meantime are applied to the new index before it is used. Only the
+	 * switch to the new index waits for active transactions to complete, and
+	 * holds back new transactions.
+	 * 
+	 * @param fieldSeq
+	 *        The field sequence of the new index, e.g. <tt>opsc</tt>.
+	 * @throws IllegalStateException
+	 *         If another index is being built.
+	 */
+	public void addIndex(String fieldSeq)
+		throws IOException, SailException
+	{
+		Set<String> indexSpecs = parseIndexSpecList(fieldSeq);
+		if (indexSpecs.size() != 1) {
+			throw new SailException("invalid index specification: " + fieldSeq);
+		}
+		fieldSeq = indexSpecs.iterator().next();
+
+		for (TripleIndex index : indexes) {
+			if (fieldSeq.equals(new String(index.getFieldSeq()))) {
+				logger.debug("Index '{}' already exists", fieldSeq);
+				return;
+			}
+		}
+
+		TripleIndex addedIndex = new TripleIndex(fieldSeq);
+		BTree addedBTree = addedIndex.getBTree();
+		RecordSorter changes = new RecordSorter(dir, RECORD_LENGTH, addedIndex.tripleComparator);
+		boolean added = false;
+
+		try {
+			addedBTree.clear();
+
+			// Start recording the triples that are updated by transactions from
+			// here on
+			synchronized (txnMonitor) {
+				if (indexBuildChanges != null) {
+					throw new IllegalStateException("Another index is being built");
+				}
+				waitForTransactions();
+				indexBuildChanges = changes;
+			}
+
+			logger.debug("Building index '{}'...", fieldSeq);
+			buildIndex(addedIndex);
+
+			synchronized (txnMonitor) {
+				waitForTransactions();
+				switchingIndexes = true;
+			}
+			try {
+				// Bring the new index up-to-date with the updated triples
+				BTree sourceBTree = indexes.get(0).getBTree();
+				RecordIterator iter = changes.getSortedRecords();
+				try {
+					byte[] data;
+					while ((data = iter.next()) != null) {
+						byte[] committedData = sourceBTree.get(data);
+						if (committedData != null) {
+							addedBTree.insert(committedData);
+						}
+						else {
+							addedBTree.remove(data);
+						}
+					}
+				}
+				finally {
+					iter.close();
+				}
+				addedBTree.sync();
+
+				indexes.add(addedIndex);
+				added = true;
+
+				properties.setProperty(INDEXES_KEY, getCurrentIndexSpecStr() + "," + fieldSeq);
+				storeProperties(new File(dir, PROPERTIES_FILE));
+			}
+			finally {
+				synchronized (txnMonitor) {
+					switchingIndexes = false;
+					txnMonitor.notifyAll();
+				}
+			}
+
+			logger.debug("Index '{}' added", fieldSeq);
+		}
+		finally {
+			synchronized (txnMonitor) {
+				if (indexBuildChanges == changes) {
+					indexBuildChanges = null;
+				}
+			}
+			changes.discard();
+
+			if (!added) {
+				addedBTree.delete();
+			}
+		}
+	}
+
+	/**
+	 * Fills a new index with the committed triples from the first index.
+	 */
+	private void buildIndex(TripleIndex addedIndex)
+		throws IOException
+	{
+		RecordSorter sorter = new RecordSorter(dir, RECORD_LENGTH, addedIndex.tripleComparator);
+		try {
+			RecordIterator sourceIter = indexes.get(0).getBTree().iterateAll();
+			try {
+				byte[] data;
+				while ((data = sourceIter.next()) != null) {
+					if (Thread.currentThread().isInterrupted()) {
+						throw new InterruptedIOException("Building index '"
+								+ new String(addedIndex.getFieldSeq()) + "' was interrupted");
+					}
+
+					// Triples that are updated by active transactions are recorded
+					// when the transactions end, so their flags do not matter here
+					if ((data[FLAG_IDX] & ADDED_FLAG) == 0) {
+						data[FLAG_IDX] &= EXPLICIT_FLAG;
+						sorter.add(data);
+					}
+				}
+			}
+			finally {
+				sourceIter.close();
+			}
+
+			RecordIterator sortedIter = sorter.getSortedRecords();
+			try {
+				addedIndex.getBTree().build(sortedIter);
+			}
+			finally {
+				sortedIter.close();
+			}
+			addedIndex.getBTree().sync();
+		}
+		finally {
+			sorter.discard();
+		}
+	}
+
+	/**
+	 * Waits until no transaction is active. Must be called while holding the
+	 * lock on {@link #txnMonitor}.
+	 */
+	private void waitForTransactions()
+		throws InterruptedIOException
+	{
+		while (txnActive) {
+			try {
+				txnMonitor.wait();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for transactions to complete");
+			}
+		}
+	}
+
+	/**
+	 * Marks the end of a transaction, allowing a new index to be switched in.
+	 */
+	private void endTransaction() {
+		synchronized (txnMonitor) {
+			txnActive = false;
+			txnMonitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Records a triple that has been updated by a transaction if a new index is
+	 * being built.
+	 */
+	private void recordIndexBuildChange(RecordSorter changes, byte[] data)
+		throws IOException
+	{
+		if (changes != null) {
+			changes.add(data.clone());
+		}
+	}
+
+	String getCurrentIndexSpecStr() {
 		return properties.getProperty(INDEXES_KEY);
 	}
 
+	/**
+	 * Gets the field sequences of the current indexes, in the order in which
+	 * they are used.
+	 */
+	private String getIndexSpecStr() {
+		StringBuilder sb = new StringBuilder();
+		for (TripleIndex index : indexes) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(index.getFieldSeq());
+		}
+		return sb.toString();
+	}
+
 	public void close()
 		throws IOException
 	{
+		discardDeferredTriples();
+
 		for (TripleIndex index : indexes) {
 			index.getBTree().close();
 		}
@@ -474,6 +880,7 @@ class TripleStore {
 	{
 		if (readTransaction) {
 			// Don't read removed statements
+			flushDeferredTriples();
 			return getTriples(subj, pred, obj, context, 0, TripleStore.REMOVED_FLAG);
 		}
 		else {
@@ -494,6 +901,7 @@ class TripleStore {
 	{
 		if (readTransaction) {
 			// Don't read removed statements
+			flushDeferredTriples();
 			return getAllTriplesSortedByContext(0, TripleStore.REMOVED_FLAG);
 		}
 		else {
@@ -505,11 +913,52 @@ class TripleStore {
 	public RecordIterator getTriples(int subj, int pred, int obj, int context, boolean explicit,
 			boolean readTransaction)
 		throws IOException
+	{
+		return getTriples(subj, pred, obj, context, explicit, readTransaction,
+				getBestIndex(subj, pred, obj, context));
+	}
+
+	/**
+	 * Gets the triples that match the specified pattern, sorted on the value ID
+	 * of the specified field. This requires an index in which all specified
+	 * (non-negative) fields precede the requested field.
+	 * 
+	 * @param orderField
+	 *        The field on which the triples should be sorted: one of 's', 'p',
+	 *        'o' or 'c'.
+	 * @return The matching triples, or <tt>null</tt> if no index is available
+	 *         that returns the triples in the requested order.
+	 */
+	public RecordIterator getTriples(int subj, int pred, int obj, int context, boolean explicit,
+			boolean readTransaction, char orderField)
+		throws IOException
+	{
+		TripleIndex index = getSortedIndex(orderField, subj, pred, obj, context);
+		if (index == null) {
+			return null;
+		}
+		return getTriples(subj, pred, obj, context, explicit, readTransaction, index);
+	}
+
+	/**
+	 * Checks whether triples matching the specified pattern can be retrieved
+	 * sorted on the value ID of the specified field.
+	 * 
+	 * @see #getTriples(int, int, int, int, boolean, boolean, char)
+	 */
+	public boolean isSortedOn(char orderField, int subj, int pred, int obj, int context) {
+		return getSortedIndex(orderField, subj, pred, obj, context) != null;
+	}
+
+	private RecordIterator getTriples(int subj, int pred, int obj, int context, boolean explicit,
+			boolean readTransaction, TripleIndex index)
+		throws IOException
 	{
 		int flags = 0;
 		int flagsMask = 0;
 
 		if (readTransaction) {
+			flushDeferredTriples();
 			flagsMask |= TripleStore.REMOVED_FLAG;
 			// 'explicit' is handled through an ExplicitStatementFilter
 		}
@@ -522,7 +971,9 @@ class TripleStore {
 			}
 		}
 
-		RecordIterator btreeIter = getTriples(subj, pred, obj, context, flags, flagsMask);
+		boolean doRangeSearch = index.getPatternScore(subj, pred, obj, context) > 0;
+		RecordIterator btreeIter = getTriplesUsingIndex(subj, pred, obj, context, flags, flagsMask, index,
+				doRangeSearch);
 
 		if (readTransaction && explicit) {
 			// Filter implicit statements from the result
@@ -643,6 +1094,10 @@ class TripleStore {
 	private RecordIterator getTriplesUsingIndex(int subj, int pred, int obj, int context, int flags,
 			int flagsMask, TripleIndex index, boolean rangeSearch)
 	{
+		int stripe = (int)Thread.currentThread().getId() & (PATTERN_COUNT_STRIPES - 1);
+		patternCounts.incrementAndGet(stripe * PATTERN_COUNT_STRIPE_LENGTH
+				+ getPatternMask(subj, pred, obj, context));
+
 		byte[] searchKey = getSearchKey(subj, pred, obj, context, flags);
 		byte[] searchMask = getSearchMask(subj, pred, obj, context, flagsMask);
 
@@ -679,6 +1134,178 @@ class TripleStore {
 		return rangeSize;
 	}
 
+	private static int getPatternMask(int subj, int pred, int obj, int context) {
+		int mask = 0;
+		if (subj >= 0) {
+			mask |= 1;
+		}
+		if (pred >= 0) {
+			mask |= 2;
+		}
+		if (obj >= 0) {
+			mask |= 4;
+		}
+		if (context >= 0) {
+			mask |= 8;
+		}
+		return mask;
+	}
+
+	/**
+	 * Gets the number of lookups per combination of bound fields.
+	 * 
+	 * @see #patternCounts
+	 */
+	private long[] getPatternCounts() {
+		long[] counts = new long[16];
+		for (int stripe = 0; stripe < PATTERN_COUNT_STRIPES; stripe++) {
+			for (int mask = 0; mask < 16; mask++) {
+				counts[mask] += patternCounts.get(stripe * PATTERN_COUNT_STRIPE_LENGTH + mask);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Recommends triple indexes based on the triple patterns that have been
+	 * looked up since this triple store was opened. Indexes are recommended
+	 * for patterns for which none of the existing indexes covers all bound
+	 * fields. Patterns whose sets of bound fields are nested, e.g. an object
+	 * and an object plus context lookup, share a single recommended index.
+	 * 
+	 * @return The field sequences of the recommended indexes, mapped to the
+	 *         number of lookups that would have benefited from them, in
+	 *         descending order of that number.
+	 */
+	public Map<String, Long> getIndexRecommendations() {
+		// Determine the patterns that are not covered by the existing indexes,
+		// most frequent first
+		final long[] counts = getPatternCounts();
+		List<Integer> patterns = new ArrayList<Integer>();
+		for (int mask = 1; mask < 16; mask++) {
+			if (counts[mask] > 0 && getCoveringIndex(mask) == null) {
+				patterns.add(mask);
+			}
+		}
+		Collections.sort(patterns, new Comparator<Integer>() {
+
+			public int compare(Integer mask1, Integer mask2) {
+				long count1 = counts[mask1];
+				long count2 = counts[mask2];
+				return count1 > count2 ? -1 : count1 < count2 ? 1 : 0;
+			}
+		});
+
+		// Group the patterns into chains of nested sets of bound fields, each
+		// chain can be covered by a single index
+		List<List<Integer>> chains = new ArrayList<List<Integer>>();
+		final List<Long> chainCounts = new ArrayList<Long>();
+		for (int mask : patterns) {
+			int chainIdx = 0;
+			while (chainIdx < chains.size() && !isNested(chains.get(chainIdx), mask)) {
+				chainIdx++;
+			}
+
+			if (chainIdx == chains.size()) {
+				chains.add(new ArrayList<Integer>());
+				chainCounts.add(0L);
+			}
+			chains.get(chainIdx).add(mask);
+			chainCounts.set(chainIdx, chainCounts.get(chainIdx) + counts[mask]);
+		}
+
+		List<Integer> chainOrder = new ArrayList<Integer>();
+		for (int i = 0; i < chains.size(); i++) {
+			chainOrder.add(i);
+		}
+		Collections.sort(chainOrder, new Comparator<Integer>() {
+
+			public int compare(Integer chainIdx1, Integer chainIdx2) {
+				return chainCounts.get(chainIdx2).compareTo(chainCounts.get(chainIdx1));
+			}
+		});
+
+		Map<String, Long> recommendations = new LinkedHashMap<String, Long>();
+		for (int chainIdx : chainOrder) {
+			List<Integer> chain = chains.get(chainIdx);
+
+			// The fields of the smallest set come first, followed by the
+			// additional fields of the next set, and so on
+			Collections.sort(chain, new Comparator<Integer>() {
+
+				public int compare(Integer mask1, Integer mask2) {
+					return Integer.bitCount(mask1) - Integer.bitCount(mask2);
+				}
+			});
+			chain.add(15);
+
+			StringBuilder fieldSeq = new StringBuilder(4);
+			int addedFields = 0;
+			for (int mask : chain) {
+				for (int i = 0; i < 4; i++) {
+					if ((mask & ~addedFields & (1 << i)) != 0) {
+						fieldSeq.append("spoc".charAt(i));
+					}
+				}
+				addedFields |= mask;
+			}
+
+			recommendations.put(fieldSeq.toString(), chainCounts.get(chainIdx));
+		}
+
+		return recommendations;
+	}
+
+	/**
+	 * Checks whether the specified set of bound fields is a subset or a
+	 * superset of each of the sets in a chain.
+	 */
+	private static boolean isNested(List<Integer> chain, int patternMask) {
+		for (int mask : chain) {
+			int common = mask & patternMask;
+			if (common != mask && common != patternMask) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets an index for which the bound fields of the specified pattern form a
+	 * prefix of its field sequence.
+	 */
+	private TripleIndex getCoveringIndex(int patternMask) {
+		for (TripleIndex index : indexes) {
+			if (coversPattern(index.getFieldSeq(), patternMask)) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether the bound fields of a pattern form a prefix of the
+	 * specified field sequence.
+	 */
+	private static boolean coversPattern(char[] fieldSeq, int patternMask) {
+		int boundCount = Integer.bitCount(patternMask);
+		for (int i = 0; i < boundCount; i++) {
+			if ((patternMask & (1 << "spoc".indexOf(fieldSeq[i]))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private TripleIndex getSortedIndex(char orderField, int subj, int pred, int obj, int context) {
+		for (TripleIndex index : indexes) {
+			if (index.isSortedOn(orderField, subj, pred, obj, context)) {
+				return index;
+			}
+		}
+		return null;
+	}
+
 	protected TripleIndex getBestIndex(int subj, int pred, int obj, int context) {
 		int bestScore = -1;
 		TripleIndex bestIndex = null;
@@ -697,6 +1324,8 @@ class TripleStore {
 	public void clear()
 		throws IOException
 	{
+		discardDeferredTriples();
+
 		for (TripleIndex index : indexes) {
 			index.getBTree().clear();
 		}
@@ -711,23 +1340,63 @@ class TripleStore {
 	public boolean storeTriple(int subj, int pred, int obj, int context, boolean explicit)
 		throws IOException
 	{
-		boolean stAdded = false;
+		flushDeferredTriples();
 
 		byte[] data = getData(subj, pred, obj, context, 0);
 		byte[] storedData = indexes.get(0).getBTree().get(data);
 
+		setStoreFlags(data, storedData, explicit);
+
+		if (storedData == null || !Arrays.equals(data, storedData)) {
+			for (TripleIndex index : indexes) {
+				index.getBTree().insert(data);
+			}
+
+			updatedTriplesCache.storeRecord(data);
+		}
+
+		// Statement is new if it didn't exist or was removed before
+		return storedData == null || (storedData[FLAG_IDX] & REMOVED_FLAG) != 0;
+	}
+
+	/**
+	 * Stores a triple like {@link #storeTriple(int, int, int, int, boolean)},
+	 * but defers updating the indexes until the triples that are stored this
+	 * way are needed by another operation on this triple store, e.g. when the
+	 * transaction is committed. Deferred triples are sorted and written to each
+	 * index in the order of that index, which is considerably faster than
+	 * inserting them one by one when many triples are added. Indexes of an
+	 * empty triple store are built bottom-up from the sorted triples.
+	 */
+	public void storeTripleDeferred(int subj, int pred, int obj, int context, boolean explicit)
+		throws IOException
+	{
+		if (deferredTriples == null) {
+			deferredTriples = new RecordSorter(dir, RECORD_LENGTH, indexes.get(0).tripleComparator);
+		}
+		deferredTriples.add(getData(subj, pred, obj, context, explicit ? EXPLICIT_FLAG : 0));
+	}
+
+	/**
+	 * Sets the flags of a triple that is being stored, based on the flags of
+	 * the existing triple. See txn-flags.txt for a description of the flag
+	 * transformations.
+	 * 
+	 * @param data
+	 *        The triple that is being stored, without any flags.
+	 * @param storedData
+	 *        The existing triple, or <tt>null</tt> if it does not yet exist.
+	 */
+	private void setStoreFlags(byte[] data, byte[] storedData, boolean explicit) {
 		if (storedData == null) {
 			// Statement does not yet exist
 			data[FLAG_IDX] |= ADDED_FLAG;
 			if (explicit) {
 				data[FLAG_IDX] |= EXPLICIT_FLAG;
 			}
-
-			stAdded = true;
 		}
 		else {
-			// Statement already exists, only modify its flags, see txn-flags.txt
-			// for a description of the flag transformations
+			// Statement already exists, only modify its flags
 			byte flags = storedData[FLAG_IDX];
 			boolean wasExplicit = (flags & EXPLICIT_FLAG) != 0;
 			boolean wasAdded = (flags & ADDED_FLAG) != 0;
@@ -766,25 +1435,140 @@ class TripleStore {
 					}
 				}
 			}
+		}
+	}
 
-			// Statement is new if it was removed before
-			stAdded = wasRemoved;
+	/**
+	 * Writes the deferred triples to the indexes.
+	 * 
+	 * @see #storeTripleDeferred(int, int, int, int, boolean)
+	 */
+	private void flushDeferredTriples()
+		throws IOException
+	{
+		RecordSorter sorter = deferredTriples;
+		if (sorter == null) {
+			return;
 		}
+		deferredTriples = null;
 
-		if (storedData == null || !Arrays.equals(data, storedData)) {
-			for (TripleIndex index : indexes) {
-				index.getBTree().insert(data);
+		try {
+			logger.debug("Storing {} deferred triples", sorter.getRecordCount());
+
+			final BTree primaryBTree = indexes.get(0).getBTree();
+			final RecordComparator primaryComparator = indexes.get(0).tripleComparator;
+			final boolean build = primaryBTree.isEmpty();
+
+			// The updated triples, sorted in the order of each of the other
+			// indexes
+			final List<RecordSorter> indexSorters = new ArrayList<RecordSorter>(indexes.size() - 1);
+			try {
+				for (TripleIndex index : indexes.subList(1, indexes.size())) {
+					indexSorters.add(new RecordSorter(dir, RECORD_LENGTH, index.tripleComparator));
+				}
+
+				final RecordIterator sortedIter = sorter.getSortedRecords();
+				try {
+					// Combines duplicate triples and determines their flags, only
+					// returning the triples that need to be updated
+					RecordIterator updatedIter = new RecordIterator() {
+
+						private byte[] next;
+
+						public byte[] next()
+							throws IOException
+						{
+							byte[] data = next != null ? next : sortedIter.next();
+							while (data != null) {
+								boolean explicit = (data[FLAG_IDX] & EXPLICIT_FLAG) != 0;
+								while ((next = sortedIter.next()) != null
+										&& primaryComparator.compareBTreeValues(data, next, 0, RECORD_LENGTH) == 0)
+								{
+									explicit |= (next[FLAG_IDX] & EXPLICIT_FLAG) != 0;
+								}
+
+								data[FLAG_IDX] = 0;
+								byte[] storedData = build ? null : primaryBTree.get(data);
+								setStoreFlags(data, storedData, explicit);
+
+								if (storedData == null || !Arrays.equals(data, storedData)) {
+									updatedTriplesCache.storeRecord(data);
+									for (RecordSorter indexSorter : indexSorters) {
+										indexSorter.add(data);
+									}
+									return data;
+								}
+
+								data = next;
+							}
+							return null;
+						}
+
+						public void set(byte[] value) {
+							throw new UnsupportedOperationException();
+						}
+
+						public void close()
+							throws IOException
+						{
+							sortedIter.close();
+						}
+					};
+
+					storeSortedTriples(primaryBTree, updatedIter, build);
+				}
+				finally {
+					sortedIter.close();
+				}
+
+				for (int i = 0; i < indexSorters.size(); i++) {
+					RecordIterator indexIter = indexSorters.get(i).getSortedRecords();
+					try {
+						storeSortedTriples(indexes.get(i + 1).getBTree(), indexIter, build);
+					}
+					finally {
+						indexIter.close();
+					}
+				}
+			}
+			finally {
+				for (RecordSorter indexSorter : indexSorters) {
+					indexSorter.discard();
+				}
 			}
+		}
+		finally {
+			sorter.discard();
+		}
+	}
 
-			updatedTriplesCache.storeRecord(data);
+	private void storeSortedTriples(BTree btree, RecordIterator iter, boolean build)
+		throws IOException
+	{
+		if (build) {
+			btree.build(iter);
+		}
+		else {
+			byte[] data;
+			while ((data = iter.next()) != null) {
+				btree.insert(data);
+			}
 		}
+	}
 
-		return stAdded;
+	private void discardDeferredTriples()
+		throws IOException
+	{
+		if (deferredTriples != null) {
+			deferredTriples.discard();
+			deferredTriples = null;
+		}
 	}
 
 	public int removeTriples(int subj, int pred, int obj, int context)
 		throws IOException
 	{
+		flushDeferredTriples();
 		RecordIterator iter = getTriples(subj, pred, obj, context, 0, 0);
 		return removeTriples(iter);
 	}
@@ -809,6 +1593,7 @@ class TripleStore {
 	public int removeTriples(int subj, int pred, int obj, int context, boolean explicit)
 		throws IOException
 	{
+		flushDeferredTriples();
 		byte flags = explicit ? EXPLICIT_FLAG : 0;
 		RecordIterator iter = getTriples(subj, pred, obj, context, flags, EXPLICIT_FLAG);
 		return removeTriples(iter);
@@ -867,6 +1652,19 @@ class TripleStore {
 	public void startTransaction()
 		throws IOException
 	{
+		synchronized (txnMonitor) {
+			while (switchingIndexes) {
+				try {
+					txnMonitor.wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for an index to be added");
+				}
+			}
+			txnActive = true;
+		}
+
 		txnStatusFile.setTxnStatus(TxnStatus.ACTIVE);
 
 		// Create a record cache for storing updated triples with a maximum of
@@ -882,14 +1680,26 @@ class TripleStore {
 		}
 	}
 
+	/**
+	 * Gets the number of transactions that have been committed, and thus
+	 * synced to disk, since this store was opened.
+	 */
+	public long getCommitCount() {
+		return commitCount.get();
+	}
+
 	public void commit()
 		throws IOException
 	{
+		flushDeferredTriples();
+
 		txnStatusFile.setTxnStatus(TxnStatus.COMMITTING);
 
 		// updatedTriplesCache will be null when recovering from a crashed commit
 		boolean validCache = updatedTriplesCache != null && updatedTriplesCache.isValid();
 
+		RecordSorter changes = indexBuildChanges;
+
 		for (TripleIndex index : indexes) {
 			BTree btree = index.getBTree();
 
@@ -911,6 +1721,10 @@ class TripleStore {
 					boolean wasRemoved = (flags & REMOVED_FLAG) != 0;
 					boolean wasToggled = (flags & TOGGLE_EXPLICIT_FLAG) != 0;
 
+					if (index == indexes.get(0) && (wasAdded || wasRemoved || wasToggled)) {
+						recordIndexBuildChange(changes, data);
+					}
+
 					if (wasRemoved) {
 						btree.remove(data);
 					}
@@ -945,6 +1759,8 @@ class TripleStore {
 		sync();
 
 		txnStatusFile.setTxnStatus(TxnStatus.NONE);
+		commitCount.incrementAndGet();
+		endTransaction();
 		// checkAllCommitted();
 	}
 
@@ -975,6 +1791,8 @@ class TripleStore {
 	public void rollback()
 		throws IOException
 	{
+		discardDeferredTriples();
+
 		txnStatusFile.setTxnStatus(TxnStatus.ROLLING_BACK);
 
 		// updatedTriplesCache will be null when recovering from a crash
@@ -982,6 +1800,8 @@ class TripleStore {
 
 		byte txnFlagsMask = ~(ADDED_FLAG | REMOVED_FLAG | TOGGLE_EXPLICIT_FLAG);
 
+		RecordSorter changes = indexBuildChanges;
+
 		for (TripleIndex index : indexes) {
 			BTree btree = index.getBTree();
 
@@ -1003,6 +1823,10 @@ class TripleStore {
 					boolean wasRemoved = (flags & REMOVED_FLAG) != 0;
 					boolean wasToggled = (flags & TOGGLE_EXPLICIT_FLAG) != 0;
 
+					if (index == indexes.get(0) && (wasAdded || wasRemoved || wasToggled)) {
+						recordIndexBuildChange(changes, data);
+					}
+
 					if (wasAdded) {
 						btree.remove(data);
 					}
@@ -1034,6 +1858,7 @@ class TripleStore {
 		sync();
 
 		txnStatusFile.setTxnStatus(TxnStatus.NONE);
+		endTransaction();
 	}
 
 	protected void sync()
@@ -1142,9 +1967,19 @@ class TripleStore {
 
 		public TripleIndex(String fieldSeq)
 			throws IOException
+		{
+			this(fieldSeq, dir);
+		}
+
+		public TripleIndex(String fieldSeq, File indexDir)
+			throws IOException
 		{
 			tripleComparator = new TripleComparator(fieldSeq);
-			btree = new BTree(dir, getFilenamePrefix(fieldSeq), 2048, RECORD_LENGTH, tripleComparator, forceSync);
+
+			// Leaf nodes are compressed on the subject, predicate, object and
+			// context IDs, the flags are stored as is
+			btree = new BTree(indexDir, getFilenamePrefix(fieldSeq), 2048, RECORD_LENGTH, tripleComparator,
+					forceSync, nodeCacheSize, memoryMapped, FLAG_IDX);
 		}
 
 		private String getFilenamePrefix(String fieldSeq) {
@@ -1211,6 +2046,48 @@ class TripleStore {
 			return score;
 		}
 
+		/**
+		 * Checks whether this index returns the triples that match the supplied
+		 * pattern sorted on the specified field, i.e. whether all bound fields
+		 * of the pattern form a prefix of this index's field sequence that is
+		 * directly followed by the specified field.
+		 */
+		public boolean isSortedOn(char orderField, int subj, int pred, int obj, int context) {
+			int boundFieldCount = 0;
+			boolean orderFieldBound = false;
+
+			for (char field : tripleComparator.getFieldSeq()) {
+				int id;
+				switch (field) {
+					case 's':
+						id = subj;
+						break;
+					case 'p':
+						id = pred;
+						break;
+					case 'o':
+						id = obj;
+						break;
+					default:
+						id = context;
+						break;
+				}
+				if (id >= 0) {
+					boundFieldCount++;
+					orderFieldBound |= field == orderField;
+				}
+			}
+
+			int score = getPatternScore(subj, pred, obj, context);
+			if (score != boundFieldCount) {
+				// not all bound fields can be used for the range search
+				return false;
+			}
+
+			char[] fieldSeq = getFieldSeq();
+			return orderFieldBound || score < fieldSeq.length && fieldSeq[score] == orderField;
+		}
+
 		@Override
 		public String toString() {
 			return new String(getFieldSeq());
@@ -39,6 +39,9 @@ import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.model.vocabulary.XMLSchema;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.nativerdf.datastore.DataStore;
+import org.openrdf.sail.nativerdf.model.LazyNativeBNode;
+import org.openrdf.sail.nativerdf.model.LazyNativeLiteral;
+import org.openrdf.sail.nativerdf.model.LazyNativeURI;
 import org.openrdf.sail.nativerdf.model.NativeBNode;
 import org.openrdf.sail.nativerdf.model.NativeLiteral;
 import org.openrdf.sail.nativerdf.model.NativeResource;
@@ -113,25 +116,25 @@ public class ValueStore extends ValueFactoryBase {
 	 * A simple cache containing the [VALUE_CACHE_SIZE] most-recently used values
 	 * stored by their ID.
 	 */
-	private final LRUCache<Integer, NativeValue> valueCache;
+	private final IntObjectCache<NativeValue> valueCache;
 
 	/**
 	 * A simple cache containing the [ID_CACHE_SIZE] most-recently used value-IDs
 	 * stored by their value.
 	 */
-	private final LRUCache<NativeValue, Integer> valueIDCache;
+	private final ObjectIntCache<NativeValue> valueIDCache;
 
 	/**
 	 * A simple cache containing the [NAMESPACE_CACHE_SIZE] most-recently used
 	 * namespaces stored by their ID.
 	 */
-	private final LRUCache<Integer, String> namespaceCache;
+	private final IntObjectCache<String> namespaceCache;
 
 	/**
 	 * A simple cache containing the [NAMESPACE_ID_CACHE_SIZE] most-recently used
 	 * namespace-IDs stored by their namespace.
 	 */
-	private final LRUCache<String, Integer> namespaceIDCache;
+	private final ObjectIntCache<String> namespaceIDCache;
 
 	/*--------------*
 	 * Constructors *
@@ -153,14 +156,22 @@ public class ValueStore extends ValueFactoryBase {
 	public ValueStore(File dataDir, boolean forceSync, int valueCacheSize, int valueIDCacheSize,
 			int namespaceCacheSize, int namespaceIDCacheSize)
 		throws IOException
+	{
+		this(dataDir, forceSync, valueCacheSize, valueIDCacheSize, namespaceCacheSize, namespaceIDCacheSize,
+				false);
+	}
+
+	public ValueStore(File dataDir, boolean forceSync, int valueCacheSize, int valueIDCacheSize,
+			int namespaceCacheSize, int namespaceIDCacheSize, boolean memoryMapped)
+		throws IOException
 	{
 		super();
-		dataStore = new DataStore(dataDir, FILENAME_PREFIX, forceSync);
+		dataStore = new DataStore(dataDir, FILENAME_PREFIX, forceSync, memoryMapped);
 
-		valueCache = new LRUCache<Integer, NativeValue>(valueCacheSize);
-		valueIDCache = new LRUCache<NativeValue, Integer>(valueIDCacheSize);
-		namespaceCache = new LRUCache<Integer, String>(namespaceCacheSize);
-		namespaceIDCache = new LRUCache<String, Integer>(namespaceIDCacheSize);
+		valueCache = new IntObjectCache<NativeValue>(valueCacheSize);
+		valueIDCache = new ObjectIntCache<NativeValue>(valueIDCacheSize);
+		namespaceCache = new IntObjectCache<String>(namespaceCacheSize);
+		namespaceIDCache = new ObjectIntCache<String>(namespaceIDCacheSize);
 
 		setNewRevision();
 	}
@@ -205,8 +216,7 @@ public class ValueStore extends ValueFactoryBase {
 		throws IOException
 	{
 		// Check value cache
-		Integer cacheID = new Integer(id);
-		NativeValue resultValue = valueCache.get(cacheID);
+		NativeValue resultValue = valueCache.get(id);
 
 		if (resultValue == null) {
 			// Value not in cache, fetch it from file
@@ -216,13 +226,70 @@ public class ValueStore extends ValueFactoryBase {
 				resultValue = data2value(id, data);
 
 				// Store value in cache
-				valueCache.put(cacheID, resultValue);
+				valueCache.put(id, resultValue);
 			}
 		}
 
 		return resultValue;
 	}
 
+	/**
+	 * Gets a value for the specified ID that only reads its data from disk when
+	 * it is first needed. Comparisons between values of this value store are
+	 * done on their IDs, so values that are only used to join or compare
+	 * statements are never fully read. Values that are already cached are
+	 * returned as is.
+	 * 
+	 * @param id
+	 *        A value ID.
+	 * @return The value for the ID.
+	 * @exception IOException
+	 *            If an I/O error occurred.
+	 */
+	public NativeValue getLazyValue(int id)
+		throws IOException
+	{
+		NativeValue cachedValue = valueCache.get(id);
+
+		if (cachedValue != null) {
+			return cachedValue;
+		}
+
+		// Only the first byte is needed to determine the type of value
+		byte type = dataStore.getFirstByte(id);
+
+		switch (type) {
+			case URI_VALUE:
+				return new LazyNativeURI(revision, id);
+			case BNODE_VALUE:
+				return new LazyNativeBNode(revision, id);
+			case LITERAL_VALUE:
+				return new LazyNativeLiteral(revision, id);
+			default:
+				throw new IllegalArgumentException("Namespaces cannot be converted into values: " + id);
+		}
+	}
+
+	/**
+	 * Gets a URI for the specified ID that only reads its data from disk when
+	 * it is first needed. The caller is responsible for making sure that the ID
+	 * refers to a URI.
+	 * 
+	 * @param id
+	 *        The ID of a URI.
+	 * @return The URI for the ID.
+	 * @see #getLazyValue(int)
+	 */
+	public NativeURI getLazyURI(int id) {
+		NativeValue cachedValue = valueCache.get(id);
+
+		if (cachedValue != null) {
+			return (NativeURI)cachedValue;
+		}
+
+		return new LazyNativeURI(revision, id);
+	}
+
 	/**
 	 * Gets the ID for the specified value.
 	 * 
@@ -252,17 +319,15 @@ public class ValueStore extends ValueFactoryBase {
 		}
 
 		// Check cache
-		Integer cachedID = valueIDCache.get(value);
-
-		if (cachedID != null) {
-			int id = cachedID.intValue();
+		int cachedID = valueIDCache.get(value);
 
+		if (cachedID != ObjectIntCache.NOT_FOUND) {
 			if (isOwnValue) {
 				// Store id in value for fast access in any consecutive calls
-				((NativeValue)value).setInternalID(id, revision);
+				((NativeValue)value).setInternalID(cachedID, revision);
 			}
 
-			return id;
+			return cachedID;
 		}
 
 		// ID not cached, search in file
@@ -288,7 +353,7 @@ public class ValueStore extends ValueFactoryBase {
 					// Store id in cache
 					NativeValue nv = getNativeValue(value);
 					nv.setInternalID(id, revision);
-					valueIDCache.put(nv, new Integer(id));
+					valueIDCache.put(nv, id);
 				}
 			}
 
@@ -329,17 +394,15 @@ public class ValueStore extends ValueFactoryBase {
 		}
 
 		// ID not stored in value itself, try the ID cache
-		Integer cachedID = valueIDCache.get(value);
-
-		if (cachedID != null) {
-			int id = cachedID.intValue();
+		int cachedID = valueIDCache.get(value);
 
+		if (cachedID != ObjectIntCache.NOT_FOUND) {
 			if (isOwnValue) {
 				// Store id in value for fast access in any consecutive calls
-				((NativeValue)value).setInternalID(id, revision);
+				((NativeValue)value).setInternalID(cachedID, revision);
 			}
 
-			return id;
+			return cachedID;
 		}
 
 		// Unable to get internal ID in a cheap way, just store it in the data
@@ -354,7 +417,7 @@ public class ValueStore extends ValueFactoryBase {
 		nv.setInternalID(id, revision);
 
 		// Update cache
-		valueIDCache.put(nv, new Integer(id));
+		valueIDCache.put(nv, id);
 
 		return id;
 	}
@@ -671,9 +734,9 @@ public class ValueStore extends ValueFactoryBase {
 	private int getNamespaceID(String namespace, boolean create)
 		throws IOException
 	{
-		Integer cacheID = namespaceIDCache.get(namespace);
-		if (cacheID != null) {
-			return cacheID.intValue();
+		int cacheID = namespaceIDCache.get(namespace);
+		if (cacheID != ObjectIntCache.NOT_FOUND) {
+			return cacheID;
 		}
 
 		byte[] namespaceData = namespace.getBytes("UTF-8");
@@ -687,7 +750,7 @@ public class ValueStore extends ValueFactoryBase {
 		}
 
 		if (id != -1) {
-			namespaceIDCache.put(namespace, new Integer(id));
+			namespaceIDCache.put(namespace, id);
 		}
 
 		return id;
@@ -696,14 +759,13 @@ public class ValueStore extends ValueFactoryBase {
 	private String getNamespace(int id)
 		throws IOException
 	{
-		Integer cacheID = new Integer(id);
-		String namespace = namespaceCache.get(cacheID);
+		String namespace = namespaceCache.get(id);
 
 		if (namespace == null) {
 			byte[] namespaceData = dataStore.getData(id);
 			namespace = data2namespace(namespaceData);
 
-			namespaceCache.put(cacheID, namespace);
+			namespaceCache.put(id, namespace);
 		}
 
 		return namespace;
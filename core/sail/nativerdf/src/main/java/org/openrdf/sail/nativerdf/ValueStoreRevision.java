@@ -16,6 +16,7 @@
  */
 package org.openrdf.sail.nativerdf;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 import org.openrdf.sail.nativerdf.model.NativeValue;
@@ -58,4 +59,30 @@ public class ValueStoreRevision implements Serializable {
 	public ValueStore getValueStore() {
 		return valueStore;
 	}
+
+	/**
+	 * Resolves the value with the specified ID in this revision of the value
+	 * store. This is used by lazily materialized values to read their data.
+	 * 
+	 * @throws IllegalStateException
+	 *         If this revision is no longer current or the value could not be
+	 *         read from the value store.
+	 */
+	public NativeValue resolveValue(int id) {
+		if (valueStore == null || !this.equals(valueStore.getRevision())) {
+			throw new IllegalStateException("Value store revision is no longer current, unable to resolve value "
+					+ id);
+		}
+
+		try {
+			NativeValue value = valueStore.getValue(id);
+			if (value == null) {
+				throw new IllegalStateException("Unknown value ID: " + id);
+			}
+			return value;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to read value " + id + " from value store", e);
+		}
+	}
 }
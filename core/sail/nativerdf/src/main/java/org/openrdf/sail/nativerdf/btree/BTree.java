@@ -18,17 +18,20 @@ package org.openrdf.sail.nativerdf.btree;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -75,23 +78,57 @@ public class BTree {
 	 */
 	private static final byte FILE_FORMAT_VERSION = 1;
 
+	/**
+	 * The file format version number of BTree files with compressed leaf nodes.
+	 * The header of these files contains the key length of the values after the
+	 * fields of the original header.
+	 */
+	private static final byte COMPRESSED_FILE_FORMAT_VERSION = 2;
+
 	/**
 	 * The length of the header field.
 	 */
 	private static final int HEADER_LENGTH = 16;
 
 	/**
-	 * The size of the node cache. Note that this is not a hard limit. All nodes
-	 * that are actively used are always cached. Also, a minimum of
-	 * {@link NODE_CACHE_SIZE} nodes of unused nodes is kept in the cache.
+	 * The length of the header field of BTree files with compressed leaf nodes.
+	 */
+	private static final int COMPRESSED_HEADER_LENGTH = 20;
+
+	/**
+	 * The maximum key length of values in compressed leaf nodes. Up to this
+	 * length, the compressed size of a value never exceeds the size of its slot
+	 * in an uncompressed node.
+	 */
+	private static final int MAX_COMPRESSED_KEY_LENGTH = 32;
+
+	/**
+	 * Bit that is set in the value count of nodes that are stored in compressed
+	 * form.
+	 */
+	private static final int COMPRESSED_LEAF_FLAG = 0x80000000;
+
+	/**
+	 * The default size of the node cache. Note that this is not a hard limit.
+	 * All nodes that are actively used are always cached. Also, a minimum of
+	 * {@link #MIN_MRU_CACHE_SIZE} nodes of unused nodes is kept in each segment
+	 * of the cache.
 	 */
-	private static final int NODE_CACHE_SIZE = 10;
+	public static final int NODE_CACHE_SIZE = 10;
 
 	/**
-	 * The minimum number of most recently released nodes to keep in the cache.
+	 * The minimum number of most recently released nodes to keep in a segment
+	 * of the cache.
 	 */
 	private static final int MIN_MRU_CACHE_SIZE = 4;
 
+	/**
+	 * The maximum number of independently locked segments that the node cache
+	 * is split into. The actual number of segments depends on the configured
+	 * cache size and the number of available processors.
+	 */
+	private static final int MAX_NODE_CACHE_SEGMENTS = 64;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -126,18 +163,12 @@ public class BTree {
 	 */
 
 	/**
-	 * Map containing cached nodes, indexed by their ID.
-	 */
-	private final Map<Integer, Node> nodeCache = new HashMap<Integer, Node>(NODE_CACHE_SIZE);
-
-	/**
-	 * Map of cached nodes that are no longer "in use", sorted from least
-	 * recently used to most recently used. This collection is used to remove
-	 * nodes from the cache when it is full. Note: needs to be synchronized
-	 * through nodeCache (data strucures should prob be merged in a NodeCache
-	 * class)
+	 * The segments of the node cache. Nodes are assigned to a segment based on
+	 * their ID, each segment is guarded by its own monitor so that concurrent
+	 * readers only contend when they access nodes from the same segment. The
+	 * number of segments is always a power of two.
 	 */
-	private final Map<Integer, Node> mruNodes = new LinkedHashMap<Integer, Node>(NODE_CACHE_SIZE);
+	private final NodeCacheSegment[] nodeCache;
 
 	/* 
 	 * Info about allocated and unused nodes in the file 
@@ -187,6 +218,25 @@ public class BTree {
 	 */
 	private final int nodeSize;
 
+	/**
+	 * The number of leading bytes of the values that leaf nodes are compressed
+	 * on, <tt>0</tt> if leaf nodes are not compressed.
+	 */
+	private final int keyLength;
+
+	/**
+	 * The size of the bit mask that indicates which key bytes of a compressed
+	 * value differ from those of its predecessor. Value derived from keyLength.
+	 */
+	private final int keyMaskSize;
+
+	/**
+	 * The maximum number of values in a leaf node. Value derived from
+	 * branchFactor and, for compressed leaf nodes, the minimum compressed size
+	 * of a value.
+	 */
+	private final int maxLeafValueCount;
+
 	/*-----------*
 	 * Variables *
 	 *-----------*/
@@ -318,6 +368,124 @@ public class BTree {
 	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize,
 			RecordComparator comparator, boolean forceSync)
 		throws IOException
+	{
+		this(dataDir, filenamePrefix, blockSize, valueSize, comparator, forceSync, NODE_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a new BTree that uses the supplied <tt>RecordComparator</tt> to
+	 * compare the values that are or will be stored in the B-Tree.
+	 * 
+	 * @param dataDir
+	 *        The directory for the BTree data.
+	 * @param filenamePrefix
+	 *        The prefix for all files used by this BTree.
+	 * @param blockSize
+	 *        The size (in bytes) of a file block for a single node. Ideally, the
+	 *        size specified is the size of a block in the used file system.
+	 * @param valueSize
+	 *        The size (in bytes) of the fixed-length values that are or will be
+	 *        stored in the B-Tree.
+	 * @param comparator
+	 *        The <tt>RecordComparator</tt> to use for determining whether one
+	 *        value is smaller, larger or equal to another.
+	 * @param forceSync
+	 *        Flag indicating whether updates should be synced to disk forcefully
+	 *        by calling {@link FileChannel#force(boolean)}. This may have a
+	 *        severe impact on write performance.
+	 * @param nodeCacheSize
+	 *        The number of unused nodes to keep in memory. Larger caches are
+	 *        split into independently locked segments, allowing concurrent
+	 *        readers to access the B-Tree without contending on a single lock.
+	 * @throws IOException
+	 *         In case the initialization of the B-Tree file failed.
+	 */
+	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize,
+			RecordComparator comparator, boolean forceSync, int nodeCacheSize)
+		throws IOException
+	{
+		this(dataDir, filenamePrefix, blockSize, valueSize, comparator, forceSync, nodeCacheSize, false);
+	}
+
+	/**
+	 * Creates a new BTree that uses the supplied <tt>RecordComparator</tt> to
+	 * compare the values that are or will be stored in the B-Tree.
+	 * 
+	 * @param dataDir
+	 *        The directory for the BTree data.
+	 * @param filenamePrefix
+	 *        The prefix for all files used by this BTree.
+	 * @param blockSize
+	 *        The size (in bytes) of a file block for a single node. Ideally, the
+	 *        size specified is the size of a block in the used file system.
+	 * @param valueSize
+	 *        The size (in bytes) of the fixed-length values that are or will be
+	 *        stored in the B-Tree.
+	 * @param comparator
+	 *        The <tt>RecordComparator</tt> to use for determining whether one
+	 *        value is smaller, larger or equal to another.
+	 * @param forceSync
+	 *        Flag indicating whether updates should be synced to disk forcefully
+	 *        by calling {@link FileChannel#force(boolean)}. This may have a
+	 *        severe impact on write performance.
+	 * @param nodeCacheSize
+	 *        The number of unused nodes to keep in memory.
+	 * @param memoryMapped
+	 *        Flag indicating whether nodes should be read from a memory-mapped
+	 *        view of the BTree file instead of through file channel reads.
+	 * @throws IOException
+	 *         In case the initialization of the B-Tree file failed.
+	 */
+	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize,
+			RecordComparator comparator, boolean forceSync, int nodeCacheSize, boolean memoryMapped)
+		throws IOException
+	{
+		this(dataDir, filenamePrefix, blockSize, valueSize, comparator, forceSync, nodeCacheSize, memoryMapped,
+				0);
+	}
+
+	/**
+	 * Creates a new BTree that uses the supplied <tt>RecordComparator</tt> to
+	 * compare the values that are or will be stored in the B-Tree.
+	 * 
+	 * @param dataDir
+	 *        The directory for the BTree data.
+	 * @param filenamePrefix
+	 *        The prefix for all files used by this BTree.
+	 * @param blockSize
+	 *        The size (in bytes) of a file block for a single node. Ideally, the
+	 *        size specified is the size of a block in the used file system.
+	 * @param valueSize
+	 *        The size (in bytes) of the fixed-length values that are or will be
+	 *        stored in the B-Tree.
+	 * @param comparator
+	 *        The <tt>RecordComparator</tt> to use for determining whether one
+	 *        value is smaller, larger or equal to another.
+	 * @param forceSync
+	 *        Flag indicating whether updates should be synced to disk forcefully
+	 *        by calling {@link FileChannel#force(boolean)}. This may have a
+	 *        severe impact on write performance.
+	 * @param nodeCacheSize
+	 *        The number of unused nodes to keep in memory.
+	 * @param memoryMapped
+	 *        Flag indicating whether nodes should be read from a memory-mapped
+	 *        view of the BTree file instead of through file channel reads.
+	 * @param keyLength
+	 *        The number of leading bytes of the values that leaf nodes are
+	 *        compressed on, or <tt>0</tt> to store leaf nodes uncompressed.
+	 *        Each value in a compressed leaf node only stores the key bytes that
+	 *        differ from the value before it, the remaining bytes of the value
+	 *        are stored as is. Values that the comparator considers equal must
+	 *        have identical key bytes. This parameter only applies to new
+	 *        B-Tree files, existing files keep the format that they were created
+	 *        with, see {@link #getKeyLength()}.
+	 * @throws IOException
+	 *         In case the initialization of the B-Tree file failed.
+	 */
+	public BTree(File dataDir, String filenamePrefix, int blockSize, int valueSize,
+			RecordComparator comparator, boolean forceSync, int nodeCacheSize, boolean memoryMapped,
+			int keyLength)
+		throws IOException
 	{
 		if (dataDir == null) {
 			throw new IllegalArgumentException("dataDir must not be null");
@@ -338,9 +506,21 @@ public class BTree {
 		if (comparator == null) {
 			throw new IllegalArgumentException("comparator muts not be null");
 		}
+		if (nodeCacheSize < 0) {
+			throw new IllegalArgumentException("node cache size must not be negative");
+		}
+		if (keyLength < 0 || keyLength > valueSize) {
+			throw new IllegalArgumentException("key length must be between 0 and the value size");
+		}
+		if (keyLength > MAX_COMPRESSED_KEY_LENGTH) {
+			throw new IllegalArgumentException("key length must not exceed " + MAX_COMPRESSED_KEY_LENGTH
+					+ " bytes");
+		}
+
+		this.nodeCache = createNodeCache(nodeCacheSize);
 
 		File file = new File(dataDir, filenamePrefix + ".dat");
-		this.nioFile = new NioFile(file);
+		this.nioFile = new NioFile(file, "rw", memoryMapped);
 		this.comparator = comparator;
 		this.forceSync = forceSync;
 
@@ -351,6 +531,7 @@ public class BTree {
 			// Empty file, initialize it with the specified parameters
 			this.blockSize = blockSize;
 			this.valueSize = valueSize;
+			this.keyLength = keyLength;
 			this.rootNodeID = 0;
 			this.height = 0;
 
@@ -360,7 +541,7 @@ public class BTree {
 		}
 		else {
 			// Read parameters from file
-			ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH);
+			ByteBuffer buf = ByteBuffer.allocate(COMPRESSED_HEADER_LENGTH);
 			nioFile.read(buf, 0L);
 
 			buf.rewind();
@@ -373,10 +554,16 @@ public class BTree {
 			this.rootNodeID = buf.getInt();
 
 			if (Arrays.equals(MAGIC_NUMBER, magicNumber)) {
-				if (version > FILE_FORMAT_VERSION) {
+				if (version > COMPRESSED_FILE_FORMAT_VERSION) {
 					throw new IOException("Unable to read BTree file " + file + "; it uses a newer file format");
 				}
-				else if (version != FILE_FORMAT_VERSION) {
+				else if (version == COMPRESSED_FILE_FORMAT_VERSION) {
+					this.keyLength = buf.getInt();
+				}
+				else if (version == FILE_FORMAT_VERSION) {
+					this.keyLength = 0;
+				}
+				else {
 					throw new IOException("Unable to read BTree file " + file + "; invalid file format version: "
 							+ version);
 				}
@@ -386,6 +573,8 @@ public class BTree {
 					throw new IOException("Unable to read BTree file " + file + "; invalid file format version: "
 							+ version);
 				}
+				this.keyLength = 0;
+
 				// Write new magic number to file
 				logger.info("Updating file header for btree file '{}'", file.getAbsolutePath());
 				writeFileHeader();
@@ -408,6 +597,19 @@ public class BTree {
 		minValueCount = (branchFactor - 1) / 2;
 		nodeSize = 8 + (branchFactor - 1) * slotSize;
 
+		if (this.keyLength > 0) {
+			keyMaskSize = (this.keyLength + 7) / 8;
+
+			// The smallest compressed value differs from its predecessor in a
+			// single key byte
+			int minCompressedValueSize = keyMaskSize + 1 + this.valueSize - this.keyLength;
+			maxLeafValueCount = Math.max(branchFactor - 1, (nodeSize - 4) / minCompressedValueSize);
+		}
+		else {
+			keyMaskSize = 0;
+			maxLeafValueCount = branchFactor - 1;
+		}
+
 		// System.out.println("blockSize=" + this.blockSize);
 		// System.out.println("valueSize=" + this.valueSize);
 		// System.out.println("slotSize=" + this.slotSize);
@@ -420,6 +622,36 @@ public class BTree {
 	 * Methods *
 	 *---------*/
 
+	private static NodeCacheSegment[] createNodeCache(int nodeCacheSize) {
+		// Only split the cache when each segment can still hold a reasonable
+		// number of unused nodes, the default cache size results in a single
+		// segment
+		int maxSegments = Math.max(1, nodeCacheSize / NODE_CACHE_SIZE);
+		maxSegments = Math.min(maxSegments, 2 * Runtime.getRuntime().availableProcessors());
+		maxSegments = Math.min(maxSegments, MAX_NODE_CACHE_SEGMENTS);
+
+		int segmentCount = Integer.highestOneBit(maxSegments);
+		int segmentSize = Math.max(MIN_MRU_CACHE_SIZE, nodeCacheSize / segmentCount);
+
+		NodeCacheSegment[] segments = new NodeCacheSegment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new NodeCacheSegment(segmentSize);
+		}
+		return segments;
+	}
+
+	private NodeCacheSegment getCacheSegment(int nodeID) {
+		return nodeCache[nodeID & (nodeCache.length - 1)];
+	}
+
+	private void clearNodeCache() {
+		for (NodeCacheSegment segment : nodeCache) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
 	/**
 	 * Gets the file that this BTree operates on.
 	 */
@@ -427,6 +659,17 @@ public class BTree {
 		return nioFile.getFile();
 	}
 
+	/**
+	 * Gets the number of leading bytes of the values that the leaf nodes of
+	 * this BTree are compressed on.
+	 * 
+	 * @return The key length, or <tt>0</tt> if the leaf nodes are stored
+	 *         uncompressed.
+	 */
+	public int getKeyLength() {
+		return keyLength;
+	}
+
 	/**
 	 * Closes the BTree and then deletes its data files.
 	 * 
@@ -477,10 +720,7 @@ public class BTree {
 
 			closed = true;
 
-			synchronized (nodeCache) {
-				nodeCache.clear();
-				mruNodes.clear();
-			}
+			clearNodeCache();
 
 			try {
 				nioFile.close();
@@ -505,10 +745,12 @@ public class BTree {
 		btreeLock.readLock().lock();
 		try {
 			// Write any changed nodes that still reside in the cache to disk
-			synchronized (nodeCache) {
-				for (Node node : nodeCache.values()) {
-					if (node.dataChanged()) {
-						node.write();
+			for (NodeCacheSegment segment : nodeCache) {
+				synchronized (segment) {
+					for (Node node : segment.nodes.values()) {
+						if (node.dataChanged()) {
+							node.write();
+						}
 					}
 				}
 			}
@@ -608,6 +850,13 @@ public class BTree {
 		return new RangeIterator(searchKey, searchMask, minValue, maxValue);
 	}
 
+	/**
+	 * Checks whether this BTree contains any values.
+	 */
+	public boolean isEmpty() {
+		return rootNodeID == 0;
+	}
+
 	/**
 	 * Returns an estimate for the number of values stored in this BTree.
 	 */
@@ -877,6 +1126,139 @@ public class BTree {
 		}
 	}
 
+	/**
+	 * Fills an empty B-Tree with the supplied values, building it bottom-up
+	 * instead of inserting the values one by one. All nodes are filled to their
+	 * maximum capacity, except for the right-most node at each level, and are
+	 * written to the file in sequential order.
+	 * 
+	 * @param values
+	 *        The values to store in the B-Tree, sorted in the order of this
+	 *        B-Tree's RecordComparator and without duplicates.
+	 * @return The number of values that were stored.
+	 * @throws IllegalStateException
+	 *         If the B-Tree is not empty.
+	 * @throws IllegalArgumentException
+	 *         If the supplied values are not sorted or contain duplicates.
+	 * @throws IOException
+	 *         If an I/O error occurred.
+	 */
+	public long build(RecordIterator values)
+		throws IOException
+	{
+		btreeLock.writeLock().lock();
+		try {
+			if (rootNodeID != 0) {
+				throw new IllegalStateException("BTree is not empty: " + getFile());
+			}
+
+			// The right-most node at each level of the tree, leaf nodes first
+			List<Node> rightNodes = new ArrayList<Node>();
+			long valueCount = 0;
+			boolean built = false;
+
+			try {
+				byte[] previous = null;
+				byte[] value;
+				while ((value = values.next()) != null) {
+					if (previous != null && comparator.compareBTreeValues(previous, value, 0, valueSize) >= 0) {
+						throw new IllegalArgumentException("Values are not sorted or contain duplicates");
+					}
+					previous = value;
+
+					if (rightNodes.isEmpty()) {
+						rightNodes.add(createNewNode());
+					}
+
+					Node leafNode = rightNodes.get(0);
+					if (leafNode.isFull()) {
+						// Start a new leaf node, the value becomes its separator from
+						// the full one
+						Node newNode = createNewNode();
+						appendToParent(rightNodes, 1, leafNode.getID(), value, newNode.getID());
+						leafNode.release();
+						rightNodes.set(0, newNode);
+					}
+					else {
+						leafNode.insertValueNodeIDPair(leafNode.getValueCount(), value, 0);
+					}
+
+					valueCount++;
+				}
+
+				// The right-most nodes may contain too few values, borrow these
+				// from their (full) left siblings
+				for (int level = rightNodes.size() - 1; level > 0; level--) {
+					Node parentNode = rightNodes.get(level);
+					int childIdx = parentNode.getValueCount();
+					Node childNode = rightNodes.get(level - 1);
+					Node leftSibling = parentNode.getChildNode(childIdx - 1);
+					try {
+						while (childNode.getValueCount() < minValueCount
+								&& leftSibling.getValueCount() > minValueCount)
+						{
+							parentNode.rotateRight(childIdx, leftSibling, childNode);
+						}
+					}
+					finally {
+						leftSibling.release();
+					}
+				}
+
+				if (!rightNodes.isEmpty()) {
+					rootNodeID = rightNodes.get(rightNodes.size() - 1).getID();
+					height = rightNodes.size();
+					writeFileHeader();
+				}
+				built = true;
+			}
+			finally {
+				for (Node node : rightNodes) {
+					node.release();
+				}
+				if (!built) {
+					// discard the partially built tree
+					clear();
+				}
+			}
+
+			return valueCount;
+		}
+		finally {
+			btreeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends a value and the ID of the node to its right to the right-most
+	 * node at the specified level of a B-Tree that is being built, starting a
+	 * new node when that node is full.
+	 * 
+	 * @see #build(RecordIterator)
+	 */
+	private void appendToParent(List<Node> rightNodes, int level, int leftNodeID, byte[] value,
+			int rightNodeID)
+		throws IOException
+	{
+		if (rightNodes.size() == level) {
+			Node newNode = createNewNode();
+			newNode.setChildNodeID(0, leftNodeID);
+			rightNodes.add(newNode);
+		}
+
+		Node node = rightNodes.get(level);
+		if (node.isFull()) {
+			Node newNode = createNewNode();
+			newNode.setChildNodeID(0, rightNodeID);
+			appendToParent(rightNodes, level + 1, node.getID(), value, newNode.getID());
+			node.release();
+			rightNodes.set(level, newNode);
+		}
+		else {
+			node.insertValueNodeIDPair(node.getValueCount(), value, rightNodeID);
+		}
+	}
+
 	private InsertResult insertInTree(byte[] value, int nodeID, Node node)
 		throws IOException
 	{
@@ -1164,11 +1546,8 @@ public class BTree {
 	{
 		btreeLock.writeLock().lock();
 		try {
-			synchronized (nodeCache) {
-				nodeCache.clear();
-				mruNodes.clear();
-			}
-			nioFile.truncate(HEADER_LENGTH);
+			clearNodeCache();
+			nioFile.truncate(keyLength > 0 ? COMPRESSED_HEADER_LENGTH : HEADER_LENGTH);
 
 			if (rootNodeID != 0) {
 				rootNodeID = 0;
@@ -1189,15 +1568,16 @@ public class BTree {
 
 		Node node = new Node(newNodeID);
 
-		synchronized (nodeCache) {
-			if (nodeCache.size() >= NODE_CACHE_SIZE && mruNodes.size() > MIN_MRU_CACHE_SIZE) {
+		NodeCacheSegment segment = getCacheSegment(newNodeID);
+		synchronized (segment) {
+			if (segment.isFull()) {
 				// Make some room for the new node
-				expelNodeFromCache();
+				segment.expelNode();
 			}
 
 			node.use();
 
-			nodeCache.put(node.getID(), node);
+			segment.nodes.put(node.getID(), node);
 		}
 
 		return node;
@@ -1219,51 +1599,78 @@ public class BTree {
 			throw new IllegalArgumentException("id must be larger than 0, is: " + id + " in " + getFile());
 		}
 
+		NodeCacheSegment segment = getCacheSegment(id);
+
 		// Check node cache
-		synchronized (nodeCache) {
-			Node node = nodeCache.get(id);
+		synchronized (segment) {
+			while (true) {
+				Node node = segment.use(id);
+				if (node != null) {
+					return node;
+				}
+				if (segment.loadingNodes.add(id)) {
+					// this thread reads the node
+					break;
+				}
 
-			if (node != null) {
-				// Found node in cache
-				int usageCount = node.use();
-				if (usageCount == 1) {
-					mruNodes.remove(id);
+				// Another thread is reading the node, wait until it is cached
+				try {
+					segment.wait();
 				}
-			}
-			else {
-				if (nodeCache.size() >= NODE_CACHE_SIZE && mruNodes.size() > MIN_MRU_CACHE_SIZE) {
-					// Make some room for the new node
-					expelNodeFromCache();
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for node " + id + " to be read");
 				}
+			}
+		}
 
-				// Read node from disk and add to cache
-				node = new Node(id);
+		// Read node from disk without holding the segment's lock. The node ID
+		// is registered as loading, so other threads wait for this read instead
+		// of reading a copy of their own. Nobody can change or expel the node
+		// while it is not cached, and a changed node is written to disk before
+		// it is expelled, so the data on disk is up-to-date.
+		Node newNode = new Node(id);
+		boolean read = false;
+		try {
+			newNode.read();
+			read = true;
+		}
+		finally {
+			synchronized (segment) {
+				segment.loadingNodes.remove(id);
 
-				// FIXME: this blocks the (synchronized) access to the cache for
-				// quite some time
-				node.read();
+				// wake up the threads that wait for this node
+				segment.notifyAll();
 
-				nodeCache.put(id, node);
+				if (read) {
+					if (segment.isFull()) {
+						// Make some room for the new node
+						segment.expelNode();
+					}
 
-				node.use();
-			}
+					segment.nodes.put(id, newNode);
 
-			return node;
+					newNode.use();
+				}
+			}
 		}
+
+		return newNode;
 	}
 
 	private void releaseNode(Node node)
 		throws IOException
 	{
 		// Note: this method is called by Node.release(), which already
-		// synchronizes on nodeCache. This method should not be called directly to
-		// prevent concurrency issues!!!
+		// synchronizes on the node's cache segment. This method should not be
+		// called directly to prevent concurrency issues!!!
+
+		NodeCacheSegment segment = getCacheSegment(node.getID());
 
-		// synchronized (nodeCache) {
 		if (node.isEmpty() && node.isLeaf()) {
 			// Discard node
 			node.write();
-			nodeCache.remove(node.getID());
+			segment.nodes.remove(node.getID());
 
 			// allow the node ID to be reused
 			synchronized (allocatedNodesList) {
@@ -1277,42 +1684,26 @@ public class BTree {
 			}
 		}
 		else {
-			mruNodes.put(node.getID(), node);
-
-			if (nodeCache.size() > NODE_CACHE_SIZE && mruNodes.size() > MIN_MRU_CACHE_SIZE) {
-				expelNodeFromCache();
-			}
-		}
-		// }
-	}
+			segment.mruNodes.put(node.getID(), node);
 
-	/**
-	 * Tries to expel the least recently used node from the cache.
-	 */
-	private void expelNodeFromCache()
-		throws IOException
-	{
-		if (!mruNodes.isEmpty()) {
-			Iterator<Node> iter = mruNodes.values().iterator();
-			Node lruNode = iter.next();
-
-			if (lruNode.dataChanged()) {
-				lruNode.write();
+			if (segment.isOverflowing()) {
+				segment.expelNode();
 			}
-			iter.remove();
-			nodeCache.remove(lruNode.getID());
 		}
 	}
 
 	private void writeFileHeader()
 		throws IOException
 	{
-		ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH);
+		ByteBuffer buf = ByteBuffer.allocate(keyLength > 0 ? COMPRESSED_HEADER_LENGTH : HEADER_LENGTH);
 		buf.put(MAGIC_NUMBER);
-		buf.put(FILE_FORMAT_VERSION);
+		buf.put(keyLength > 0 ? COMPRESSED_FILE_FORMAT_VERSION : FILE_FORMAT_VERSION);
 		buf.putInt(blockSize);
 		buf.putInt(valueSize);
 		buf.putInt(rootNodeID);
+		if (keyLength > 0) {
+			buf.putInt(keyLength);
+		}
 
 		buf.rewind();
 
@@ -1336,8 +1727,12 @@ public class BTree {
 		/** This node's ID. */
 		private final int id;
 
-		/** This node's data. */
-		private final byte[] data;
+		/**
+		 * This node's data. Only compressed leaf nodes can contain more than
+		 * <tt>branchFactor - 1</tt> values, the array is enlarged when one
+		 * does.
+		 */
+		private byte[] data;
 
 		/** The number of values containined in this node. */
 		private int valueCount;
@@ -1348,6 +1743,12 @@ public class BTree {
 		/** Flag indicating whether the contents of data has changed. */
 		private boolean dataChanged;
 
+		/**
+		 * The size of this node in compressed form, <tt>-1</tt> if it needs to
+		 * be recalculated.
+		 */
+		private int compressedSize = -1;
+
 		/** Registered listeners that want to be notified of changes to the node. */
 		private final LinkedList<NodeListener> listeners = new LinkedList<NodeListener>();
 
@@ -1370,7 +1771,19 @@ public class BTree {
 
 			// Allocate enough room to store one more value and node ID;
 			// this greatly simplifies the algorithm for splitting a node.
-			this.data = new byte[nodeSize + slotSize];
+			this.data = new byte[8 + branchFactor * slotSize];
+		}
+
+		/**
+		 * Makes sure that data can hold the specified number of values, plus
+		 * the spare slot.
+		 */
+		private void ensureCapacity(int valueCount) {
+			int length = 8 + (valueCount + 1) * slotSize;
+			if (length > data.length) {
+				// Grow to the maximum size of a compressed leaf node at once
+				data = Arrays.copyOf(data, 8 + (maxLeafValueCount + 1) * slotSize);
+			}
 		}
 
 		public int getID() {
@@ -1386,9 +1799,9 @@ public class BTree {
 		}
 
 		public int use() {
-			// synchronize on nodeCache because release() can call
+			// synchronize on the cache segment because release() can call
 			// releaseNode(Node) and readNode(int) calls this method
-			synchronized (nodeCache) {
+			synchronized (getCacheSegment(id)) {
 				return ++usageCount;
 			}
 		}
@@ -1396,9 +1809,9 @@ public class BTree {
 		public void release()
 			throws IOException
 		{
-			// synchronize on nodeCache because this method can call
+			// synchronize on the cache segment because this method can call
 			// releaseNode(Node) and readNode(int) can call use()
-			synchronized (nodeCache) {
+			synchronized (getCacheSegment(id)) {
 				assert usageCount > 0 : "Releasing node while usage count is " + usageCount;
 
 				usageCount--;
@@ -1441,9 +1854,23 @@ public class BTree {
 		}
 
 		public boolean isFull() {
+			if (isCompressed()) {
+				// Leave room for inserting a value, which can also change the
+				// compressed size of the value after it
+				return valueCount == maxLeafValueCount
+						|| getCompressedSize() + 2 * (keyMaskSize + valueSize) > nodeSize;
+			}
 			return valueCount == branchFactor - 1;
 		}
 
+		/**
+		 * Checks whether this node is stored in compressed form, which is the
+		 * case for leaf nodes of B-Trees with a key length.
+		 */
+		private boolean isCompressed() {
+			return keyLength > 0 && isLeaf();
+		}
+
 		public byte[] getValue(int valueIdx) {
 			assert valueIdx >= 0 : "valueIdx must be positive, is: " + valueIdx;
 			assert valueIdx < valueCount : "valueIdx out of range (" + valueIdx + " >= " + valueCount + ")";
@@ -1457,6 +1884,7 @@ public class BTree {
 			assert valueIdx < valueCount : "valueIdx out of range (" + valueIdx + " >= " + valueCount + ")";
 
 			ByteArrayUtil.put(value, data, valueIdx2offset(valueIdx));
+			compressedSize = -1;
 			dataChanged = true;
 		}
 
@@ -1539,6 +1967,7 @@ public class BTree {
 			assert nodeID >= 0 : "nodeID must not be negative, is: " + nodeID;
 
 			ByteArrayUtil.putInt(nodeID, data, nodeIdx2offset(nodeIdx));
+			compressedSize = -1;
 			dataChanged = true;
 		}
 
@@ -1590,7 +2019,10 @@ public class BTree {
 			assert value != null : "value must not be null";
 			assert nodeID >= 0 : "nodeID must not be negative, is: " + nodeID;
 
+			ensureCapacity(valueCount + 1);
+
 			int offset = valueIdx2offset(valueIdx);
+			int oldCompressedSize = compressedSize;
 
 			if (valueIdx < valueCount) {
 				// Shift values right of <offset> to the right
@@ -1604,6 +2036,17 @@ public class BTree {
 			// Raise the value count
 			setValueCount(++valueCount);
 
+			if (oldCompressedSize >= 0 && isCompressed()) {
+				// Update the compressed size for the inserted value and the value
+				// after it, which is now compressed relative to the inserted value
+				int newCompressedSize = oldCompressedSize + getCompressedValueSize(valueIdx, valueIdx - 1);
+				if (valueIdx < valueCount - 1) {
+					newCompressedSize += getCompressedValueSize(valueIdx + 1, valueIdx)
+							- getCompressedValueSize(valueIdx + 1, valueIdx - 1);
+				}
+				compressedSize = newCompressedSize;
+			}
+
 			notifyValueAdded(valueIdx);
 
 			dataChanged = true;
@@ -1615,6 +2058,8 @@ public class BTree {
 			assert nodeID >= 0 : "nodeID must not be negative, is: " + nodeID;
 			assert value != null : "value must not be null";
 
+			ensureCapacity(valueCount + 1);
+
 			int offset = nodeIdx2offset(nodeIdx);
 
 			// Shift values right of <offset> to the right
@@ -1647,20 +2092,23 @@ public class BTree {
 			// can be done because data got one spare slot when it was allocated.
 			insertValueNodeIDPair(newValueIdx, newValue, newNodeID);
 
-			assert valueCount == branchFactor : "Node contains " + valueCount + " values, expected "
-					+ branchFactor;
+			assert valueCount == branchFactor || isCompressed() : "Node contains " + valueCount
+					+ " values, expected " + branchFactor;
 
-			// Node now contains exactly [branchFactor] values. The median
-			// value at index [branchFactor/2] is moved to the parent
-			// node, the values left of the median stay in this node, the
-			// values right of the median are moved to the new node.
-			int medianIdx = branchFactor / 2;
+			// Node now contains exactly [branchFactor] values, or fewer for
+			// compressed leaf nodes. The median value at index [valueCount/2] is
+			// moved to the parent node, the values left of the median stay in
+			// this node, the values right of the median are moved to the new
+			// node.
+			int newValueCount = valueCount;
+			int medianIdx = newValueCount / 2;
 			int medianOffset = valueIdx2offset(medianIdx);
 			int splitOffset = medianOffset + valueSize;
 
-			// Move all data (including the spare slot) to the right of
-			// <splitOffset> to the new node
-			System.arraycopy(data, splitOffset, newNode.data, 4, data.length - splitOffset);
+			// Move all values and node IDs to the right of <splitOffset> to the
+			// new node
+			newNode.ensureCapacity(newValueCount - medianIdx - 1);
+			System.arraycopy(data, splitOffset, newNode.data, 4, valueIdx2offset(newValueCount) - splitOffset);
 
 			// Get the median value
 			byte[] medianValue = getValue(medianIdx);
@@ -1670,7 +2118,7 @@ public class BTree {
 
 			// Update the value counts
 			setValueCount(medianIdx);
-			newNode.setValueCount(branchFactor - medianIdx - 1);
+			newNode.setValueCount(newValueCount - medianIdx - 1);
 			newNode.dataChanged = true;
 
 			notifyNodeSplit(newNode, medianIdx);
@@ -1689,6 +2137,7 @@ public class BTree {
 			insertValueNodeIDPair(valueCount, medianValue, 0);
 
 			int rightIdx = valueCount;
+			ensureCapacity(valueCount + rightSibling.valueCount);
 
 			// Append all values and node references from right sibling
 			System.arraycopy(rightSibling.data, 4, data, nodeIdx2offset(rightIdx),
@@ -1836,15 +2285,26 @@ public class BTree {
 					+ nodeSize + " bytes)";
 
 			valueCount = ByteArrayUtil.getInt(data, 0);
+
+			if ((valueCount & COMPRESSED_LEAF_FLAG) != 0) {
+				decompress(Arrays.copyOf(data, nodeSize), valueCount & ~COMPRESSED_LEAF_FLAG);
+			}
 		}
 
 		public void write()
 			throws IOException
 		{
-			ByteBuffer buf = ByteBuffer.wrap(data);
+			ByteBuffer buf;
 
-			// Don't write the spare slot in data to the file:
-			buf.limit(nodeSize);
+			if (isCompressed()) {
+				buf = ByteBuffer.wrap(compress());
+			}
+			else {
+				buf = ByteBuffer.wrap(data);
+
+				// Don't write the spare slot in data to the file:
+				buf.limit(nodeSize);
+			}
 
 			int bytesWritten = nioFile.write(buf, nodeID2offset(id));
 			assert bytesWritten == nodeSize : "Write operation didn't write the entire node (" + bytesWritten
@@ -1874,6 +2334,115 @@ public class BTree {
 		private void setValueCount(int valueCount) {
 			this.valueCount = valueCount;
 			ByteArrayUtil.putInt(valueCount, data, 0);
+			compressedSize = -1;
+		}
+
+		/**
+		 * Gets the size of this node in compressed form.
+		 */
+		private int getCompressedSize() {
+			if (compressedSize < 0) {
+				int size = 4;
+				for (int i = 0; i < valueCount; i++) {
+					size += getCompressedValueSize(i, i - 1);
+				}
+				compressedSize = size;
+			}
+			return compressedSize;
+		}
+
+		/**
+		 * Gets the compressed size of the value at index <tt>valueIdx</tt> when
+		 * it follows the value at index <tt>previousIdx</tt>, or a value
+		 * consisting of zeros for a negative index.
+		 */
+		private int getCompressedValueSize(int valueIdx, int previousIdx) {
+			int offset = valueIdx2offset(valueIdx);
+			int previousOffset = valueIdx2offset(previousIdx);
+
+			int size = keyMaskSize + valueSize - keyLength;
+			for (int i = 0; i < keyLength; i++) {
+				byte previous = previousIdx < 0 ? 0 : data[previousOffset + i];
+				if (data[offset + i] != previous) {
+					size++;
+				}
+			}
+			return size;
+		}
+
+		/**
+		 * Compresses the values in this (leaf) node. Each value is stored as a
+		 * bit mask indicating which of its key bytes differ from the value
+		 * before it, followed by these key bytes and the remaining bytes of the
+		 * value.
+		 * 
+		 * @return The compressed node, <tt>nodeSize</tt> bytes long.
+		 */
+		private byte[] compress()
+			throws IOException
+		{
+			if (getCompressedSize() > nodeSize) {
+				throw new IOException("Compressed values exceed the size of node " + id + " in " + getFile());
+			}
+
+			byte[] page = new byte[nodeSize];
+			ByteArrayUtil.putInt(valueCount | COMPRESSED_LEAF_FLAG, page, 0);
+
+			int payloadSize = valueSize - keyLength;
+			int pos = 4;
+
+			for (int valueIdx = 0; valueIdx < valueCount; valueIdx++) {
+				int offset = valueIdx2offset(valueIdx);
+				int maskPos = pos;
+				pos += keyMaskSize;
+
+				for (int i = 0; i < keyLength; i++) {
+					byte previous = valueIdx == 0 ? 0 : data[offset - slotSize + i];
+					if (data[offset + i] != previous) {
+						page[maskPos + (i >>> 3)] |= 1 << (i & 7);
+						page[pos++] = data[offset + i];
+					}
+				}
+
+				System.arraycopy(data, offset + keyLength, page, pos, payloadSize);
+				pos += payloadSize;
+			}
+
+			return page;
+		}
+
+		/**
+		 * Restores the values of a compressed (leaf) node.
+		 * 
+		 * @see #compress()
+		 */
+		private void decompress(byte[] page, int valueCount) {
+			ensureCapacity(valueCount);
+			clearData(0, data.length);
+
+			int payloadSize = valueSize - keyLength;
+			int pos = 4;
+
+			for (int valueIdx = 0; valueIdx < valueCount; valueIdx++) {
+				int offset = valueIdx2offset(valueIdx);
+				int maskPos = pos;
+				pos += keyMaskSize;
+
+				for (int i = 0; i < keyLength; i++) {
+					if ((page[maskPos + (i >>> 3)] & (1 << (i & 7))) != 0) {
+						data[offset + i] = page[pos++];
+					}
+					else if (valueIdx > 0) {
+						data[offset + i] = data[offset - slotSize + i];
+					}
+				}
+
+				System.arraycopy(page, pos, data, offset + keyLength, payloadSize);
+				pos += payloadSize;
+			}
+
+			setValueCount(valueCount);
+			compressedSize = pos;
 		}
 
 		private int valueIdx2offset(int id) {
@@ -1885,6 +2454,99 @@ public class BTree {
 		}
 	}
 
+	/*------------------------------*
+	 * Inner class NodeCacheSegment *
+	 *------------------------------*/
+
+	/**
+	 * A segment of the node cache. All access to a segment, and to the usage
+	 * counts of the nodes that it contains, must be synchronized on the segment
+	 * itself.
+	 */
+	private static class NodeCacheSegment {
+
+		/**
+		 * The size of this segment. Note that this is not a hard limit, nodes
+		 * that are actively used are always cached.
+		 */
+		private final int cacheSize;
+
+		/**
+		 * Map containing cached nodes, indexed by their ID.
+		 */
+		private final Map<Integer, Node> nodes;
+
+		/**
+		 * Map of cached nodes that are no longer "in use", sorted from least
+		 * recently used to most recently used. This collection is used to remove
+		 * nodes from the cache when it is full.
+		 */
+		private final Map<Integer, Node> mruNodes;
+
+		/**
+		 * The IDs of the nodes that are being read from disk. Other threads that
+		 * need these nodes wait on this segment until they have been cached.
+		 */
+		private final Set<Integer> loadingNodes = new HashSet<Integer>();
+
+		public NodeCacheSegment(int cacheSize) {
+			this.cacheSize = cacheSize;
+			this.nodes = new HashMap<Integer, Node>(cacheSize);
+			this.mruNodes = new LinkedHashMap<Integer, Node>(cacheSize);
+		}
+
+		/**
+		 * Gets the node with the specified ID from this segment and increments
+		 * its usage count.
+		 * 
+		 * @return The cached node, or <tt>null</tt> if it is not cached.
+		 */
+		public Node use(int id) {
+			Node node = nodes.get(id);
+
+			if (node != null) {
+				// Found node in cache
+				int usageCount = node.use();
+				if (usageCount == 1) {
+					mruNodes.remove(id);
+				}
+			}
+
+			return node;
+		}
+
+		public boolean isFull() {
+			return nodes.size() >= cacheSize && mruNodes.size() > MIN_MRU_CACHE_SIZE;
+		}
+
+		public boolean isOverflowing() {
+			return nodes.size() > cacheSize && mruNodes.size() > MIN_MRU_CACHE_SIZE;
+		}
+
+		/**
+		 * Tries to expel the least recently used node from this segment.
+		 */
+		public void expelNode()
+			throws IOException
+		{
+			if (!mruNodes.isEmpty()) {
+				Iterator<Node> iter = mruNodes.values().iterator();
+				Node lruNode = iter.next();
+
+				if (lruNode.dataChanged()) {
+					lruNode.write();
+				}
+				iter.remove();
+				nodes.remove(lruNode.getID());
+			}
+		}
+
+		public void clear() {
+			nodes.clear();
+			mruNodes.clear();
+		}
+	}
+
 	/*--------------------------*
 	 * Inner class NodeListener *
 	 *--------------------------*/
@@ -2561,6 +3223,7 @@ public class BTree {
 		out.println("Stored parameters:");
 		out.println("block size   = " + blockSize);
 		out.println("value size   = " + valueSize);
+		out.println("key length   = " + keyLength);
 		out.println("root node ID = " + rootNodeID);
 		out.println();
 		out.println("Derived parameters:");
@@ -2581,8 +3244,17 @@ public class BTree {
 			int nodeID = offset2nodeID(offset);
 			int count = buf.getInt();
 			nodeCount++;
-			valueCount += count;
 			out.print("node " + nodeID + ": ");
+
+			if ((count & COMPRESSED_LEAF_FLAG) != 0) {
+				count &= ~COMPRESSED_LEAF_FLAG;
+				valueCount += count;
+				out.println("count=" + count + " (compressed leaf)");
+				buf.clear();
+				continue;
+			}
+
+			valueCount += count;
 			out.print("count=" + count + " ");
 
 			byte[] value = new byte[valueSize];
@@ -17,8 +17,11 @@
 package org.openrdf.sail.nativerdf.config;
 
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.FORCE_SYNC;
+import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.LATE_MATERIALIZATION;
+import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.MEMORY_MAPPED;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.NAMESPACE_CACHE_SIZE;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.NAMESPACE_ID_CACHE_SIZE;
+import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.NODE_CACHE_SIZE;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.TRIPLE_INDEXES;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.VALUE_CACHE_SIZE;
 import static org.openrdf.sail.nativerdf.config.NativeStoreSchema.VALUE_ID_CACHE_SIZE;
@@ -53,6 +56,12 @@ public class NativeStoreConfig extends SailImplConfigBase {
 
 	private int namespaceIDCacheSize = -1;
 
+	private int nodeCacheSize = -1;
+
+	private boolean memoryMapped = false;
+
+	private boolean lateMaterialization = false;
+
 	/*--------------*
 	 * Constructors *
 	 *--------------*/
@@ -123,6 +132,30 @@ public class NativeStoreConfig extends SailImplConfigBase {
 		this.namespaceIDCacheSize = namespaceIDCacheSize;
 	}
 
+	public int getNodeCacheSize() {
+		return nodeCacheSize;
+	}
+
+	public void setNodeCacheSize(int nodeCacheSize) {
+		this.nodeCacheSize = nodeCacheSize;
+	}
+
+	public boolean getMemoryMapped() {
+		return memoryMapped;
+	}
+
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	public boolean getLateMaterialization() {
+		return lateMaterialization;
+	}
+
+	public void setLateMaterialization(boolean lateMaterialization) {
+		this.lateMaterialization = lateMaterialization;
+	}
+
 	@Override
 	public Resource export(Graph graph) {
 		Resource implNode = super.export(graph);
@@ -146,6 +179,15 @@ public class NativeStoreConfig extends SailImplConfigBase {
 		if (namespaceIDCacheSize >= 0) {
 			graph.add(implNode, NAMESPACE_ID_CACHE_SIZE, vf.createLiteral(namespaceIDCacheSize));
 		}
+		if (nodeCacheSize >= 0) {
+			graph.add(implNode, NODE_CACHE_SIZE, vf.createLiteral(nodeCacheSize));
+		}
+		if (memoryMapped) {
+			graph.add(implNode, MEMORY_MAPPED, vf.createLiteral(memoryMapped));
+		}
+		if (lateMaterialization) {
+			graph.add(implNode, LATE_MATERIALIZATION, vf.createLiteral(lateMaterialization));
+		}
 
 		return implNode;
 	}
@@ -219,6 +261,40 @@ public class NativeStoreConfig extends SailImplConfigBase {
 							+ " property, found " + namespaceIDCacheSizeLit);
 				}
 			}
+
+			Literal nodeCacheSizeLit = GraphUtil.getOptionalObjectLiteral(graph, implNode, NODE_CACHE_SIZE);
+			if (nodeCacheSizeLit != null) {
+				try {
+					setNodeCacheSize(nodeCacheSizeLit.intValue());
+				}
+				catch (NumberFormatException e) {
+					throw new SailConfigException("Integer value required for " + NODE_CACHE_SIZE
+							+ " property, found " + nodeCacheSizeLit);
+				}
+			}
+
+			Literal memoryMappedLit = GraphUtil.getOptionalObjectLiteral(graph, implNode, MEMORY_MAPPED);
+			if (memoryMappedLit != null) {
+				try {
+					setMemoryMapped(memoryMappedLit.booleanValue());
+				}
+				catch (IllegalArgumentException e) {
+					throw new SailConfigException("Boolean value required for " + MEMORY_MAPPED
+							+ " property, found " + memoryMappedLit);
+				}
+			}
+
+			Literal lateMaterializationLit = GraphUtil.getOptionalObjectLiteral(graph, implNode,
+					LATE_MATERIALIZATION);
+			if (lateMaterializationLit != null) {
+				try {
+					setLateMaterialization(lateMaterializationLit.booleanValue());
+				}
+				catch (IllegalArgumentException e) {
+					throw new SailConfigException("Boolean value required for " + LATE_MATERIALIZATION
+							+ " property, found " + lateMaterializationLit);
+				}
+			}
 		}
 		catch (GraphUtilException e) {
 			throw new SailConfigException(e.getMessage(), e);
@@ -62,6 +62,8 @@ public class NativeStoreFactory implements SailFactory {
 
 			nativeStore.setTripleIndexes(nativeConfig.getTripleIndexes());
 			nativeStore.setForceSync(nativeConfig.getForceSync());
+			nativeStore.setMemoryMapped(nativeConfig.getMemoryMapped());
+			nativeStore.setLateMaterialization(nativeConfig.getLateMaterialization());
 
 			if (nativeConfig.getValueCacheSize() >= 0) {
 				nativeStore.setValueCacheSize(nativeConfig.getValueCacheSize());
@@ -75,9 +77,15 @@ public class NativeStoreFactory implements SailFactory {
 			if (nativeConfig.getNamespaceIDCacheSize() >= 0) {
 				nativeStore.setNamespaceIDCacheSize(nativeConfig.getNamespaceIDCacheSize());
 			}
+			if (nativeConfig.getNodeCacheSize() >= 0) {
+				nativeStore.setNodeCacheSize(nativeConfig.getNodeCacheSize());
+			}
 			if (nativeConfig.getIterationCacheSyncThreshold() > 0) {
 				nativeStore.setIterationCacheSyncThreshold(nativeConfig.getIterationCacheSyncThreshold());
 			}
+			if (nativeConfig.getEvaluationThreads() > 0) {
+				nativeStore.setEvaluationThreads(nativeConfig.getEvaluationThreads());
+			}
 		}
 
 		return nativeStore;
@@ -50,6 +50,15 @@ public class NativeStoreSchema {
 	/** <tt>http://www.openrdf.org/config/sail/native#namespaceIDCacheSize</tt> */
 	public final static URI NAMESPACE_ID_CACHE_SIZE;
 
+	/** <tt>http://www.openrdf.org/config/sail/native#nodeCacheSize</tt> */
+	public final static URI NODE_CACHE_SIZE;
+
+	/** <tt>http://www.openrdf.org/config/sail/native#memoryMapped</tt> */
+	public final static URI MEMORY_MAPPED;
+
+	/** <tt>http://www.openrdf.org/config/sail/native#lateMaterialization</tt> */
+	public final static URI LATE_MATERIALIZATION;
+
 	static {
 		ValueFactory factory = ValueFactoryImpl.getInstance();
 		TRIPLE_INDEXES = factory.createURI(NAMESPACE, "tripleIndexes");
@@ -58,5 +67,8 @@ public class NativeStoreSchema {
 		VALUE_ID_CACHE_SIZE = factory.createURI(NAMESPACE, "valueIDCacheSize");
 		NAMESPACE_CACHE_SIZE = factory.createURI(NAMESPACE, "namespaceCacheSize");
 		NAMESPACE_ID_CACHE_SIZE = factory.createURI(NAMESPACE, "namespaceIDCacheSize");
+		NODE_CACHE_SIZE = factory.createURI(NAMESPACE, "nodeCacheSize");
+		MEMORY_MAPPED = factory.createURI(NAMESPACE, "memoryMapped");
+		LATE_MATERIALIZATION = factory.createURI(NAMESPACE, "lateMaterialization");
 	}
 }
@@ -72,7 +72,13 @@ public class DataFile {
 	public DataFile(File file, boolean forceSync)
 		throws IOException
 	{
-		this.nioFile = new NioFile(file);
+		this(file, forceSync, false);
+	}
+
+	public DataFile(File file, boolean forceSync, boolean memoryMapped)
+		throws IOException
+	{
+		this.nioFile = new NioFile(file, "rw", memoryMapped);
 		this.forceSync = forceSync;
 
 		try {
@@ -167,6 +173,25 @@ public class DataFile {
 		return data;
 	}
 
+	/**
+	 * Gets the first byte of the data that is stored at the specified offset,
+	 * without reading the rest of the data.
+	 * 
+	 * @param offset
+	 *        An offset in the data file, must be larger than 0.
+	 * @return The first byte of the data that was found on the specified
+	 *         offset.
+	 * @exception IOException
+	 *            If an I/O error occurred.
+	 */
+	public byte getFirstByte(long offset)
+		throws IOException
+	{
+		assert offset > 0 : "offset must be larger than 0, is: " + offset;
+
+		return nioFile.readByte(offset + 4L);
+	}
+
 	/**
 	 * Discards all stored data.
 	 * 
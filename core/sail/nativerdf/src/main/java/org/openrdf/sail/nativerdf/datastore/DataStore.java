@@ -58,9 +58,15 @@ public class DataStore {
 	public DataStore(File dataDir, String filePrefix, boolean forceSync)
 		throws IOException
 	{
-		dataFile = new DataFile(new File(dataDir, filePrefix + ".dat"), forceSync);
-		idFile = new IDFile(new File(dataDir, filePrefix + ".id"), forceSync);
-		hashFile = new HashFile(new File(dataDir, filePrefix + ".hash"), forceSync);
+		this(dataDir, filePrefix, forceSync, false);
+	}
+
+	public DataStore(File dataDir, String filePrefix, boolean forceSync, boolean memoryMapped)
+		throws IOException
+	{
+		dataFile = new DataFile(new File(dataDir, filePrefix + ".dat"), forceSync, memoryMapped);
+		idFile = new IDFile(new File(dataDir, filePrefix + ".id"), forceSync, memoryMapped);
+		hashFile = new HashFile(new File(dataDir, filePrefix + ".hash"), forceSync, memoryMapped);
 	}
 
 	/*---------*
@@ -92,6 +98,30 @@ public class DataStore {
 		return null;
 	}
 
+	/**
+	 * Gets the first byte of the value for the specified ID.
+	 * 
+	 * @param id
+	 *        A value ID, should be larger than 0.
+	 * @return The first byte of the value for the ID.
+	 * @exception IOException
+	 *            If an I/O error occurred or no value with the specified ID
+	 *            exists.
+	 */
+	public byte getFirstByte(int id)
+		throws IOException
+	{
+		assert id > 0 : "id must be larger than 0, is: " + id;
+
+		long offset = idFile.getOffset(id);
+
+		if (offset == 0L) {
+			throw new IOException("Unknown ID: " + id);
+		}
+
+		return dataFile.getFirstByte(offset);
+	}
+
 	/**
 	 * Gets the ID for the specified value.
 	 * 
@@ -106,7 +106,13 @@ public class HashFile {
 	public HashFile(File file, boolean forceSync)
 		throws IOException
 	{
-		this.nioFile = new NioFile(file);
+		this(file, forceSync, false);
+	}
+
+	public HashFile(File file, boolean forceSync, boolean memoryMapped)
+		throws IOException
+	{
+		this.nioFile = new NioFile(file, "rw", memoryMapped);
 		this.forceSync = forceSync;
 
 		try {
@@ -78,7 +78,13 @@ public class IDFile {
 	public IDFile(File file, boolean forceSync)
 		throws IOException
 	{
-		this.nioFile = new NioFile(file);
+		this(file, forceSync, false);
+	}
+
+	public IDFile(File file, boolean forceSync, boolean memoryMapped)
+		throws IOException
+	{
+		this.nioFile = new NioFile(file, "rw", memoryMapped);
 		this.forceSync = forceSync;
 
 		try {
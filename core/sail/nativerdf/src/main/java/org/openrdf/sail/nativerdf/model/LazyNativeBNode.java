@@ -0,0 +1,90 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf.model;
+
+import java.io.ObjectStreamException;
+
+import org.openrdf.model.BNode;
+import org.openrdf.sail.nativerdf.ValueStoreRevision;
+
+/**
+ * A {@link NativeBNode} that only reads its node ID from the value store when
+ * it is first needed. Comparisons with other values from the same revision of
+ * the value store are done on their IDs and don't require the node ID.
+ */
+public class LazyNativeBNode extends NativeBNode {
+
+	private static final long serialVersionUID = -2867373540719473433L;
+
+	private final transient ValueStoreRevision lazyRevision;
+
+	private final int lazyID;
+
+	private volatile boolean initialized = false;
+
+	public LazyNativeBNode(ValueStoreRevision revision, int internalID) {
+		super(revision, internalID);
+		this.lazyRevision = revision;
+		this.lazyID = internalID;
+	}
+
+	private void initialize() {
+		if (!initialized) {
+			synchronized (this) {
+				if (!initialized) {
+					setID(((BNode)lazyRevision.resolveValue(lazyID)).getID());
+					initialized = true;
+				}
+			}
+		}
+	}
+
+	@Override
+	public String getID() {
+		initialize();
+		return super.getID();
+	}
+
+	@Override
+	public String stringValue() {
+		initialize();
+		return super.stringValue();
+	}
+
+	/**
+	 * Replaces this value with a fully materialized value when it is
+	 * serialized, the value store is not serialized along with it.
+	 */
+	protected Object writeReplace()
+		throws ObjectStreamException
+	{
+		initialize();
+		return new NativeBNode(getValueStoreRevision(), super.getID(), getInternalID());
+	}
+
+	@Override
+	public int hashCode() {
+		initialize();
+		return super.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		initialize();
+		return super.toString();
+	}
+}
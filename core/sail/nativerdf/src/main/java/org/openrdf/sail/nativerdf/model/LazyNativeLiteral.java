@@ -0,0 +1,199 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf.model;
+
+import java.io.ObjectStreamException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.sail.nativerdf.ValueStoreRevision;
+
+/**
+ * A {@link NativeLiteral} that only reads its label, language and datatype
+ * from the value store when they are first needed. Comparisons with other
+ * literals from the same revision of the value store are done on their IDs and
+ * don't require the literal's data.
+ */
+public class LazyNativeLiteral extends NativeLiteral {
+
+	private static final long serialVersionUID = -1962617519446785530L;
+
+	private final transient ValueStoreRevision lazyRevision;
+
+	private final int lazyID;
+
+	private volatile boolean initialized = false;
+
+	public LazyNativeLiteral(ValueStoreRevision revision, int internalID) {
+		super(revision, internalID);
+		this.lazyRevision = revision;
+		this.lazyID = internalID;
+	}
+
+	private void initialize() {
+		if (!initialized) {
+			synchronized (this) {
+				if (!initialized) {
+					Literal literal = (Literal)lazyRevision.resolveValue(lazyID);
+					setLabel(literal.getLabel());
+					if (literal.getLanguage() != null) {
+						setLanguage(literal.getLanguage());
+					}
+					else {
+						setDatatype(literal.getDatatype());
+					}
+					initialized = true;
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof NativeLiteral) {
+			NativeLiteral other = (NativeLiteral)o;
+
+			if (other.getInternalID() != NativeValue.UNKNOWN_ID
+					&& lazyRevision.equals(other.getValueStoreRevision()))
+			{
+				// Literals from the same revision of the same native store
+				return lazyID == other.getInternalID();
+			}
+		}
+
+		initialize();
+		return super.equals(o);
+	}
+
+	/**
+	 * Replaces this value with a fully materialized value when it is
+	 * serialized, the value store is not serialized along with it.
+	 */
+	protected Object writeReplace()
+		throws ObjectStreamException
+	{
+		initialize();
+		if (super.getLanguage() != null) {
+			return new NativeLiteral(getValueStoreRevision(), super.getLabel(), super.getLanguage(),
+					getInternalID());
+		}
+		else {
+			return new NativeLiteral(getValueStoreRevision(), super.getLabel(), super.getDatatype(),
+					getInternalID());
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		initialize();
+		return super.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		initialize();
+		return super.toString();
+	}
+
+	@Override
+	public String stringValue() {
+		initialize();
+		return super.stringValue();
+	}
+
+	@Override
+	public String getLabel() {
+		initialize();
+		return super.getLabel();
+	}
+
+	@Override
+	public String getLanguage() {
+		initialize();
+		return super.getLanguage();
+	}
+
+	@Override
+	public URI getDatatype() {
+		initialize();
+		return super.getDatatype();
+	}
+
+	@Override
+	public boolean booleanValue() {
+		initialize();
+		return super.booleanValue();
+	}
+
+	@Override
+	public byte byteValue() {
+		initialize();
+		return super.byteValue();
+	}
+
+	@Override
+	public short shortValue() {
+		initialize();
+		return super.shortValue();
+	}
+
+	@Override
+	public int intValue() {
+		initialize();
+		return super.intValue();
+	}
+
+	@Override
+	public long longValue() {
+		initialize();
+		return super.longValue();
+	}
+
+	@Override
+	public float floatValue() {
+		initialize();
+		return super.floatValue();
+	}
+
+	@Override
+	public double doubleValue() {
+		initialize();
+		return super.doubleValue();
+	}
+
+	@Override
+	public BigInteger integerValue() {
+		initialize();
+		return super.integerValue();
+	}
+
+	@Override
+	public BigDecimal decimalValue() {
+		initialize();
+		return super.decimalValue();
+	}
+
+	@Override
+	public XMLGregorianCalendar calendarValue() {
+		initialize();
+		return super.calendarValue();
+	}
+}
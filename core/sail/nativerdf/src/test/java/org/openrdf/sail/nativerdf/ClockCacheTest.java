@@ -0,0 +1,83 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ClockCacheTest {
+
+	@Test
+	public void testIntObjectCache() {
+		IntObjectCache<String> cache = new IntObjectCache<String>(16);
+
+		cache.put(1, "one");
+		cache.put(2, "two");
+		assertEquals("one", cache.get(1));
+		assertEquals("two", cache.get(2));
+		assertNull(cache.get(3));
+
+		cache.put(1, "uno");
+		assertEquals("uno", cache.get(1));
+
+		cache.clear();
+		assertNull(cache.get(1));
+	}
+
+	@Test
+	public void testObjectIntCache() {
+		ObjectIntCache<String> cache = new ObjectIntCache<String>(16);
+
+		cache.put("one", 1);
+		assertEquals(1, cache.get("one"));
+		assertEquals(ObjectIntCache.NOT_FOUND, cache.get("two"));
+
+		cache.put("one", 11);
+		assertEquals(11, cache.get("one"));
+	}
+
+	@Test
+	public void testBoundedSize() {
+		IntObjectCache<Integer> cache = new IntObjectCache<Integer>(100);
+		assertTrue(cache.getCapacity() >= 100);
+
+		for (int i = 0; i < 10000; i++) {
+			cache.put(i, i);
+		}
+
+		int cached = 0;
+		for (int i = 0; i < 10000; i++) {
+			Integer value = cache.get(i);
+			if (value != null) {
+				assertEquals(i, value.intValue());
+				cached++;
+			}
+		}
+		assertTrue(cached <= cache.getCapacity());
+	}
+
+	@Test
+	public void testDisabledCache() {
+		IntObjectCache<String> cache = new IntObjectCache<String>(0);
+		cache.put(1, "one");
+		assertNull(cache.get(1));
+		assertEquals(0, cache.getCapacity());
+	}
+}
@@ -0,0 +1,231 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.ByteArrayUtil;
+import info.aduna.io.FileUtil;
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.Iterations;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.QueryRoot;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.impl.QueryJoinOptimizer;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.nativerdf.btree.RecordIterator;
+
+/**
+ * Tests the evaluation of joins as merge joins over sorted triple indexes.
+ */
+public class MergeJoinTest {
+
+	private static final String NS = "urn:test:";
+
+	private File dataDir;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("nativestore");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		FileUtil.deleteDir(dataDir);
+		dataDir = null;
+	}
+
+	@Test
+	public void testSortedIndexSelection()
+		throws Exception
+	{
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			// subject is the leading field of spoc
+			assertTrue(tripleStore.isSortedOn('s', -1, -1, -1, -1));
+			// object follows the predicate in posc
+			assertTrue(tripleStore.isSortedOn('o', -1, 1, -1, -1));
+			// no index has the predicate followed by the subject
+			assertFalse(tripleStore.isSortedOn('s', -1, 1, -1, -1));
+			assertNull(tripleStore.getTriples(-1, 1, -1, -1, true, false, 's'));
+
+			for (int i = 10; i > 0; i--) {
+				tripleStore.startTransaction();
+				tripleStore.storeTriple(i, 1, 20 - i, 0);
+				tripleStore.storeTriple(i, 2, i, 0);
+				tripleStore.commit();
+			}
+
+			RecordIterator iter = tripleStore.getTriples(-1, 1, -1, -1, true, false, 'o');
+			assertNotNull(iter);
+			try {
+				int previous = -1;
+				int count = 0;
+				byte[] data;
+				while ((data = iter.next()) != null) {
+					int obj = ByteArrayUtil.getInt(data, TripleStore.OBJ_IDX);
+					assertTrue(obj > previous);
+					previous = obj;
+					count++;
+				}
+				assertEquals(10, count);
+			}
+			finally {
+				iter.close();
+			}
+		}
+		finally {
+			tripleStore.close();
+		}
+	}
+
+	@Test
+	public void testOptimizerMarksMergeJoin()
+		throws Exception
+	{
+		ValueStore valueStore = new ValueStore(dataDir);
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc,posc,psoc");
+		try {
+			NativeEvaluationStatistics statistics = new NativeEvaluationStatistics(valueStore, tripleStore);
+
+			TupleExpr expr = new QueryRoot(new Join(pattern("s", "p1", "a"), pattern("s", "p2", "b")));
+			new QueryJoinOptimizer(statistics).optimize(expr, null, EmptyBindingSet.getInstance());
+
+			Join join = (Join)((QueryRoot)expr).getArg();
+			assertEquals("s", join.getMergeJoinVar());
+		}
+		finally {
+			tripleStore.close();
+			valueStore.close();
+		}
+	}
+
+	@Test
+	public void testOptimizerWithoutSuitableIndex()
+		throws Exception
+	{
+		ValueStore valueStore = new ValueStore(dataDir);
+		TripleStore tripleStore = new TripleStore(dataDir, "spoc,posc");
+		try {
+			NativeEvaluationStatistics statistics = new NativeEvaluationStatistics(valueStore, tripleStore);
+
+			TupleExpr expr = new QueryRoot(new Join(pattern("s", "p1", "a"), pattern("s", "p2", "b")));
+			new QueryJoinOptimizer(statistics).optimize(expr, null, EmptyBindingSet.getInstance());
+
+			Join join = (Join)((QueryRoot)expr).getArg();
+			assertNull(join.getMergeJoinVar());
+		}
+		finally {
+			tripleStore.close();
+			valueStore.close();
+		}
+	}
+
+	@Test
+	public void testMergeJoinResults()
+		throws Exception
+	{
+		NativeStore store = new NativeStore(dataDir, "spoc,posc,psoc");
+		store.initialize();
+		try {
+			ValueFactory vf = store.getValueFactory();
+			URI p1 = vf.createURI(NS, "p1");
+			URI p2 = vf.createURI(NS, "p2");
+			URI p3 = vf.createURI(NS, "p3");
+
+			SailConnection con = store.getConnection();
+			try {
+				con.begin();
+				for (int i = 0; i < 100; i++) {
+					URI subj = vf.createURI(NS, "s" + i);
+					con.addStatement(subj, p1, vf.createLiteral(i));
+					if (i % 2 == 0) {
+						con.addStatement(subj, p2, vf.createLiteral("a" + i));
+						con.addStatement(subj, p2, vf.createLiteral("b" + i));
+					}
+					if (i % 3 == 0) {
+						con.addStatement(subj, p3, vf.createLiteral(i));
+					}
+				}
+				con.commit();
+
+				TupleExpr star = new Join(pattern("s", p1, "a"), new Join(pattern("s", p2, "b"), pattern("s",
+						p3, "c")));
+
+				// subjects that are a multiple of 6, each with two p2 values
+				assertEquals(34, count(con, star));
+
+				// uncommitted changes are included as well
+				con.begin();
+				URI subj = vf.createURI(NS, "s1");
+				con.addStatement(subj, p2, vf.createLiteral("a1"));
+				con.addStatement(subj, p3, vf.createLiteral(1));
+				assertEquals(35, count(con, star));
+				con.rollback();
+
+				assertEquals(34, count(con, star));
+			}
+			finally {
+				con.close();
+			}
+		}
+		finally {
+			store.shutDown();
+		}
+	}
+
+	private int count(SailConnection con, TupleExpr expr)
+		throws Exception
+	{
+		CloseableIteration<? extends BindingSet, QueryEvaluationException> iter;
+		iter = con.evaluate(expr.clone(), null, EmptyBindingSet.getInstance(), true);
+		return Iterations.asList(iter).size();
+	}
+
+	private StatementPattern pattern(String subj, String pred, String obj) {
+		return pattern(subj, ValueFactoryImpl.getInstance().createURI(NS, pred), obj);
+	}
+
+	private StatementPattern pattern(String subj, URI pred, String obj) {
+		Var predVar = new Var("-const-" + pred.stringValue(), pred);
+		predVar.setAnonymous(true);
+		return new StatementPattern(new Var(subj), predVar, new Var(obj));
+	}
+}
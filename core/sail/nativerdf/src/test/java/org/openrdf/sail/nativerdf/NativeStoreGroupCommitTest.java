@@ -0,0 +1,150 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.FileUtil;
+import info.aduna.iteration.CloseableIteration;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+
+/**
+ * Tests that the transactions of concurrent {@link NativeStore} connections
+ * share the sync of the store.
+ */
+public class NativeStoreGroupCommitTest {
+
+	private File dataDir;
+
+	private NativeStore sail;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("nativestore");
+		sail = new NativeStore(dataDir, "spoc,posc");
+		sail.setForceSync(true);
+		sail.initialize();
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		sail.shutDown();
+		FileUtil.deleteDir(dataDir);
+		dataDir = null;
+	}
+
+	@Test
+	public void testConcurrentCommits()
+		throws Exception
+	{
+		final int threads = 8;
+		final int txns = 50;
+		final ValueFactory vf = sail.getValueFactory();
+		final URI pred = vf.createURI("urn:test:pred");
+		final CountDownLatch start = new CountDownLatch(1);
+		long commitsBefore = sail.getTripleStore().getCommitCount();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int t = 0; t < threads; t++) {
+				final URI subj = vf.createURI("urn:test:" + t);
+				results.add(executor.submit(new Callable<Void>() {
+
+					public Void call()
+						throws Exception
+					{
+						start.await();
+						for (int i = 0; i < txns; i++) {
+							SailConnection con = sail.getConnection();
+							try {
+								con.begin();
+								con.addStatement(subj, pred, vf.createLiteral(i));
+								con.commit();
+							}
+							finally {
+								con.close();
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		long commits = sail.getTripleStore().getCommitCount() - commitsBefore;
+		assertTrue("expected fewer syncs than transactions, was " + commits, commits < threads * txns);
+		assertTrue(commits > 0);
+
+		// no transaction has been lost
+		assertEquals(threads * txns, size());
+	}
+
+	private int size()
+		throws SailException
+	{
+		SailConnection con = sail.getConnection();
+		try {
+			CloseableIteration<? extends Statement, SailException> iter = con.getStatements(null, null, null,
+					false);
+			try {
+				int size = 0;
+				while (iter.hasNext()) {
+					iter.next();
+					size++;
+				}
+				return size;
+			}
+			finally {
+				iter.close();
+			}
+		}
+		finally {
+			con.close();
+		}
+	}
+}
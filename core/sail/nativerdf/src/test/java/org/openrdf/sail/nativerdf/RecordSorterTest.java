@@ -0,0 +1,115 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.ByteArrayUtil;
+import info.aduna.io.FileUtil;
+
+import org.openrdf.sail.nativerdf.btree.DefaultRecordComparator;
+import org.openrdf.sail.nativerdf.btree.RecordIterator;
+
+public class RecordSorterTest {
+
+	private File dataDir;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("recordsorter");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		FileUtil.deleteDir(dataDir);
+		dataDir = null;
+	}
+
+	@Test
+	public void testSortInMemory()
+		throws Exception
+	{
+		testSort(1000, RecordSorter.DEFAULT_RUN_SIZE);
+	}
+
+	@Test
+	public void testSortRuns()
+		throws Exception
+	{
+		testSort(1000, 7);
+	}
+
+	@Test
+	public void testSortEmpty()
+		throws Exception
+	{
+		testSort(0, 7);
+	}
+
+	private void testSort(int recordCount, int runSize)
+		throws Exception
+	{
+		List<Integer> expected = new ArrayList<Integer>(recordCount);
+		Random random = new Random(43);
+		RecordSorter sorter = new RecordSorter(dataDir, 4, new DefaultRecordComparator(), runSize);
+		try {
+			for (int i = 0; i < recordCount; i++) {
+				int value = random.nextInt(500);
+				expected.add(value);
+				sorter.add(toRecord(value));
+			}
+			Collections.sort(expected);
+			assertEquals(recordCount, sorter.getRecordCount());
+
+			RecordIterator iter = sorter.getSortedRecords();
+			try {
+				for (int value : expected) {
+					assertArrayEquals(toRecord(value), iter.next());
+				}
+				assertNull(iter.next());
+			}
+			finally {
+				iter.close();
+			}
+		}
+		finally {
+			sorter.discard();
+		}
+	}
+
+	private byte[] toRecord(int value) {
+		byte[] record = new byte[4];
+		ByteArrayUtil.putInt(value, record, 0);
+		return record;
+	}
+}
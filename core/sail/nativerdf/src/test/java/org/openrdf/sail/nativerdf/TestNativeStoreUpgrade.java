@@ -16,17 +16,20 @@
  */
 package org.openrdf.sail.nativerdf;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Properties;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -104,6 +107,20 @@ public class TestNativeStoreUpgrade {
 		assertFalse(new File(dataDir, "nativerdf.ver").exists());
 		assertValue(dataDir);
 		assertTrue(new File(dataDir, "nativerdf.ver").exists());
+
+		// the triple indexes have been converted to the current scheme version
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(new File(dataDir, "triples.prop"));
+		try {
+			properties.load(in);
+		}
+		finally {
+			in.close();
+		}
+		assertEquals("11", properties.getProperty("version"));
+
+		// and can be opened again
+		assertValue(dataDir);
 	}
 
 	@Test
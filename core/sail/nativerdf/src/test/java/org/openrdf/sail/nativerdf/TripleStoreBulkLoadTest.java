@@ -0,0 +1,145 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.FileUtil;
+
+import org.openrdf.sail.nativerdf.btree.RecordIterator;
+
+/**
+ * Tests storing triples in the {@link TripleStore} using
+ * {@link TripleStore#storeTripleDeferred(int, int, int, int, boolean)}.
+ */
+public class TripleStoreBulkLoadTest {
+
+	private File dataDir;
+
+	private TripleStore tripleStore;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("nativestore");
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		tripleStore.close();
+		FileUtil.deleteDir(dataDir);
+		dataDir = null;
+	}
+
+	@Test
+	public void testBuildIndexes()
+		throws Exception
+	{
+		tripleStore.startTransaction();
+		storeTriples(0, 5000, true);
+		// duplicates that should not affect the explicit flag
+		storeTriples(0, 1000, false);
+		tripleStore.commit();
+
+		assertEquals(5000, count(-1, -1, -1, -1, false));
+		assertEquals(5000, count(-1, -1, -1, -1, true));
+		assertEquals(714, count(-1, 3, -1, -1, true));
+		assertEquals(50, count(42, -1, -1, -1, true));
+	}
+
+	@Test
+	public void testUpdateIndexes()
+		throws Exception
+	{
+		tripleStore.startTransaction();
+		storeTriples(0, 5000, true);
+		tripleStore.commit();
+
+		tripleStore.startTransaction();
+		storeTriples(4000, 6000, false);
+		tripleStore.commit();
+
+		assertEquals(6000, count(-1, -1, -1, -1, false));
+		assertEquals(5000, count(-1, -1, -1, -1, true));
+		assertEquals(857, count(-1, 3, -1, -1, false));
+
+		tripleStore.startTransaction();
+		storeTriples(6000, 7000, true);
+		// removes deferred as well as committed triples
+		assertEquals(1, tripleStore.removeTriples(-1, -1, 6500, -1));
+		assertEquals(1, tripleStore.removeTriples(-1, -1, 1, -1));
+		storeTriples(7000, 7001, true);
+		tripleStore.commit();
+
+		assertEquals(6999, count(-1, -1, -1, -1, false));
+	}
+
+	@Test
+	public void testRollback()
+		throws Exception
+	{
+		tripleStore.startTransaction();
+		storeTriples(0, 100, true);
+		tripleStore.commit();
+
+		tripleStore.startTransaction();
+		storeTriples(100, 200, true);
+		tripleStore.rollback();
+
+		assertEquals(100, count(-1, -1, -1, -1, false));
+	}
+
+	private void storeTriples(int from, int to, boolean explicit)
+		throws Exception
+	{
+		for (int i = to - 1; i >= from; i--) {
+			tripleStore.storeTripleDeferred(i % 100, i % 7, i, 0, explicit);
+		}
+	}
+
+	private int count(int subj, int pred, int obj, int context, boolean explicit)
+		throws Exception
+	{
+		RecordIterator iter;
+		if (explicit) {
+			iter = tripleStore.getTriples(subj, pred, obj, context, true, false);
+		}
+		else {
+			iter = tripleStore.getTriples(subj, pred, obj, context);
+		}
+		try {
+			int count = 0;
+			while (iter.next() != null) {
+				count++;
+			}
+			return count;
+		}
+		finally {
+			iter.close();
+		}
+	}
+}
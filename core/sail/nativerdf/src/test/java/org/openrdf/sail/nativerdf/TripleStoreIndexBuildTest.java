@@ -0,0 +1,247 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.openrdf.sail.nativerdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import info.aduna.io.ByteArrayUtil;
+import info.aduna.io.FileUtil;
+
+import org.openrdf.sail.nativerdf.btree.RecordIterator;
+
+/**
+ * Tests recommending and adding indexes to a {@link TripleStore} that is in
+ * use.
+ */
+public class TripleStoreIndexBuildTest {
+
+	private File dataDir;
+
+	private TripleStore tripleStore;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dataDir = FileUtil.createTempDir("nativestore");
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		tripleStore.close();
+		FileUtil.deleteDir(dataDir);
+		dataDir = null;
+	}
+
+	@Test
+	public void testIndexRecommendations()
+		throws Exception
+	{
+		storeTriples(0, 1000);
+		assertTrue(tripleStore.getIndexRecommendations().isEmpty());
+
+		// covered by the existing indexes
+		count(1, -1, -1, -1);
+		count(-1, 2, 3, -1);
+		assertTrue(tripleStore.getIndexRecommendations().isEmpty());
+
+		for (int i = 0; i < 3; i++) {
+			count(-1, -1, i, -1);
+		}
+		count(-1, -1, 1, 0);
+		count(2, -1, -1, 0);
+
+		Map<String, Long> recommendations = tripleStore.getIndexRecommendations();
+		assertEquals(2, recommendations.size());
+
+		// the object and object-context lookups are covered by a single index
+		Map.Entry<String, Long> first = recommendations.entrySet().iterator().next();
+		assertEquals("ocsp", first.getKey());
+		assertEquals(4L, first.getValue().longValue());
+		assertEquals(Long.valueOf(1L), recommendations.get("scpo"));
+	}
+
+	@Test
+	public void testAddIndex()
+		throws Exception
+	{
+		storeTriples(0, 1000);
+		count(-1, -1, 5, -1);
+
+		tripleStore.addIndex("ospc");
+		assertEquals("spoc,posc,ospc", tripleStore.getCurrentIndexSpecStr());
+		assertTrue(tripleStore.getIndexRecommendations().isEmpty());
+		assertIndexesEqual(1000);
+
+		// the new index is kept up-to-date and remains in use
+		storeTriples(1000, 1100);
+		tripleStore.close();
+		tripleStore = new TripleStore(dataDir, null);
+		assertEquals("spoc,posc,ospc", tripleStore.getCurrentIndexSpecStr());
+		assertIndexesEqual(1100);
+	}
+
+	@Test
+	public void testAddedIndexIsKeptWhenReopened()
+		throws Exception
+	{
+		storeTriples(0, 1000);
+		tripleStore.addIndex("ospc");
+
+		// reopening with the same configured indexes keeps the added index
+		tripleStore.close();
+		tripleStore = new TripleStore(dataDir, "spoc,posc");
+		assertEquals("spoc,posc,ospc", tripleStore.getCurrentIndexSpecStr());
+		assertIndexesEqual(1000);
+
+		// changing the configured indexes only changes the configured ones
+		tripleStore.close();
+		tripleStore = new TripleStore(dataDir, "spoc,cspo");
+		assertEquals(set("spoc", "cspo", "ospc"), set(tripleStore.getCurrentIndexSpecStr().split(",")));
+		assertIndexesEqual(1000);
+
+		// an added index that is configured and then removed is dropped
+		tripleStore.close();
+		tripleStore = new TripleStore(dataDir, "spoc,cspo,ospc");
+		tripleStore.close();
+		tripleStore = new TripleStore(dataDir, "spoc,cspo");
+		assertEquals(set("spoc", "cspo"), set(tripleStore.getCurrentIndexSpecStr().split(",")));
+	}
+
+	@Test
+	public void testAddIndexWithConcurrentUpdates()
+		throws Exception
+	{
+		storeTriples(0, 20000);
+
+		final AtomicBoolean indexAdded = new AtomicBoolean();
+		final Exception[] writerException = new Exception[1];
+		Thread writer = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					// keep updating until some transactions after the index has
+					// been added
+					for (int i = 0, after = 0; after < 10; i++) {
+						tripleStore.startTransaction();
+						tripleStore.storeTripleDeferred(i % 100, 3, 1000 + i % 500, 1, true);
+						tripleStore.removeTriples(-1, -1, (i * 7) % 1000, -1);
+						if (i % 5 == 0) {
+							tripleStore.commit();
+						}
+						else {
+							tripleStore.rollback();
+						}
+						if (indexAdded.get()) {
+							after++;
+						}
+					}
+				}
+				catch (Exception e) {
+					writerException[0] = e;
+				}
+			}
+		};
+
+		writer.start();
+		try {
+			tripleStore.addIndex("ospc");
+		}
+		finally {
+			indexAdded.set(true);
+			writer.join();
+		}
+		if (writerException[0] != null) {
+			throw writerException[0];
+		}
+
+		assertIndexesEqual(count(-1, -1, -1, -1));
+	}
+
+	/**
+	 * Verifies that the object lookups that use the new ospc index return the
+	 * same triples as a scan of the spoc index.
+	 */
+	private void assertIndexesEqual(int expectedCount)
+		throws Exception
+	{
+		int[] objectCounts = new int[2000];
+		RecordIterator iter = tripleStore.getTriples(-1, -1, -1, -1);
+		try {
+			byte[] data;
+			while ((data = iter.next()) != null) {
+				objectCounts[ByteArrayUtil.getInt(data, TripleStore.OBJ_IDX)]++;
+			}
+		}
+		finally {
+			iter.close();
+		}
+
+		int totalCount = 0;
+		for (int obj = 0; obj < objectCounts.length; obj++) {
+			assertEquals(objectCounts[obj], count(-1, -1, obj, -1));
+			totalCount += objectCounts[obj];
+		}
+		assertEquals(expectedCount, totalCount);
+	}
+
+	private Set<String> set(String... values) {
+		return new HashSet<String>(Arrays.asList(values));
+	}
+
+	private void storeTriples(int from, int to)
+		throws Exception
+	{
+		tripleStore.startTransaction();
+		for (int i = from; i < to; i++) {
+			tripleStore.storeTripleDeferred(i % 100, i % 7, i % 2000, 0, true);
+		}
+		tripleStore.commit();
+	}
+
+	private int count(int subj, int pred, int obj, int context)
+		throws Exception
+	{
+		RecordIterator iter = tripleStore.getTriples(subj, pred, obj, context);
+		try {
+			int count = 0;
+			while (iter.next() != null) {
+				count++;
+			}
+			return count;
+		}
+		finally {
+			iter.close();
+		}
+	}
+}
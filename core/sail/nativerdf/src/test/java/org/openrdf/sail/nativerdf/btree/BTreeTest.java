@@ -20,11 +20,20 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import info.aduna.io.ByteArrayUtil;
 import info.aduna.io.FileUtil;
 
 /**
@@ -164,6 +173,161 @@ public class BTreeTest {
 		iter1.close();
 	}
 
+	@Test
+	public void testConcurrentReadersWithSegmentedCache()
+		throws Exception
+	{
+		BTree segmentedTree = new BTree(dir, "segmented", 85, 1, new DefaultRecordComparator(), false, 1000);
+		try {
+			for (byte[] value : RANDOMIZED_TEST_VALUES) {
+				segmentedTree.insert(value);
+			}
+
+			final BTree tree = segmentedTree;
+			List<Callable<Integer>> readers = new ArrayList<Callable<Integer>>();
+			for (int i = 0; i < 8; i++) {
+				readers.add(new Callable<Integer>() {
+
+					public Integer call()
+						throws Exception
+					{
+						int count = 0;
+						for (int run = 0; run < 20; run++) {
+							RecordIterator iter = tree.iterateAll();
+							try {
+								while (iter.next() != null) {
+									count++;
+								}
+							}
+							finally {
+								iter.close();
+							}
+						}
+						return count;
+					}
+				});
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(readers.size());
+			try {
+				for (Future<Integer> result : executor.invokeAll(readers)) {
+					assertEquals(20 * TEST_VALUES.size(), result.get().intValue());
+				}
+			}
+			finally {
+				executor.shutdown();
+			}
+		}
+		finally {
+			segmentedTree.delete();
+		}
+	}
+
+	@Test
+	public void testBuild()
+		throws Exception
+	{
+		for (int size = 0; size <= TEST_VALUES.size(); size += 17) {
+			btree.clear();
+			List<byte[]> values = TEST_VALUES.subList(0, size);
+			btree.build(new ListIterator(values));
+
+			assertValues(values);
+
+			// the tree should remain balanced when modified
+			for (byte[] value : RANDOMIZED_TEST_VALUES) {
+				btree.insert(value);
+			}
+			assertValues(TEST_VALUES);
+			for (byte[] value : RANDOMIZED_TEST_VALUES) {
+				btree.remove(value);
+			}
+			assertValues(Collections.<byte[]> emptyList());
+		}
+	}
+
+	@Test
+	public void testCompressedLeafNodes()
+		throws Exception
+	{
+		// values consist of a 4-byte key and a 1-byte payload
+		List<byte[]> values = new ArrayList<byte[]>();
+		for (int i = 0; i < 2000; i++) {
+			byte[] value = new byte[5];
+			ByteArrayUtil.putInt(i * 3, value, 0);
+			value[4] = (byte)i;
+			values.add(value);
+		}
+		List<byte[]> randomizedValues = new ArrayList<byte[]>(values);
+		Collections.shuffle(randomizedValues);
+
+		BTree compressedTree = new BTree(dir, "compressed", 128, 5, new KeyComparator(), false,
+				BTree.NODE_CACHE_SIZE, false, 4);
+		try {
+			assertEquals(4, compressedTree.getKeyLength());
+			for (byte[] value : randomizedValues) {
+				compressedTree.insert(value);
+			}
+			compressedTree.close();
+
+			compressedTree = new BTree(dir, "compressed", 128, 5, new KeyComparator(), false,
+					BTree.NODE_CACHE_SIZE, false, 4);
+			assertValues(compressedTree, values);
+
+			// update the payload of some values
+			for (int i = 0; i < values.size(); i += 7) {
+				values.get(i)[4] ^= 0xFF;
+				compressedTree.insert(values.get(i));
+			}
+
+			List<byte[]> removedValues = randomizedValues.subList(0, values.size() / 2);
+			for (byte[] value : removedValues) {
+				compressedTree.remove(value);
+			}
+			List<byte[]> remainingValues = new ArrayList<byte[]>(values);
+			remainingValues.removeAll(removedValues);
+			compressedTree.close();
+
+			compressedTree = new BTree(dir, "compressed", 128, 5, new KeyComparator(), false,
+					BTree.NODE_CACHE_SIZE, false, 4);
+			assertValues(compressedTree, remainingValues);
+
+			compressedTree.clear();
+			compressedTree.build(new ListIterator(values));
+			compressedTree.close();
+
+			// existing files keep their format
+			compressedTree = new BTree(dir, "compressed", 128, 5, new KeyComparator());
+			assertEquals(4, compressedTree.getKeyLength());
+			assertValues(compressedTree, values);
+		}
+		finally {
+			compressedTree.delete();
+		}
+	}
+
+	private void assertValues(List<byte[]> expected)
+		throws Exception
+	{
+		assertValues(btree, expected);
+	}
+
+	private void assertValues(BTree btree, List<byte[]> expected)
+		throws Exception
+	{
+		RecordIterator iter = btree.iterateAll();
+		try {
+			for (byte[] value : expected) {
+				assertArrayEquals(value, iter.next());
+				assertArrayEquals(value, btree.get(value));
+			}
+			assertNull(iter.next());
+		}
+		finally {
+			iter.close();
+		}
+	}
+
 	@Test
 	public void testNewAndClear()
 		throws Exception
@@ -171,6 +335,38 @@ public class BTreeTest {
 		btree.clear();
 	}
 
+	/**
+	 * Compares values on their first four bytes.
+	 */
+	private static class KeyComparator extends DefaultRecordComparator {
+
+		@Override
+		public int compareBTreeValues(byte[] key, byte[] data, int offset, int length) {
+			return super.compareBTreeValues(key, data, offset, 4);
+		}
+	}
+
+	private static class ListIterator implements RecordIterator {
+
+		private final List<byte[]> values;
+
+		private int index;
+
+		public ListIterator(List<byte[]> values) {
+			this.values = values;
+		}
+
+		public byte[] next() {
+			return index < values.size() ? values.get(index++) : null;
+		}
+
+		public void set(byte[] value) {
+		}
+
+		public void close() {
+		}
+	}
+
 	/* Test for SES-527
 		public void testRootNodeSplit()
 			throws Exception
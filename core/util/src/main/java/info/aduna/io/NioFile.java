@@ -20,10 +20,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * File wrapper that protects against concurrent file closing events due to e.g.
@@ -32,15 +36,70 @@ import java.nio.channels.WritableByteChannel;
  * the channel. The thread that causes the {@link ClosedByInterruptException} is
  * not protected, assuming the interrupt is intended to end the thread's
  * operation.
+ * <p>
+ * Optionally, reads can be served from memory-mapped regions of the file
+ * instead of through {@link FileChannel#read(ByteBuffer, long)} calls. This
+ * avoids a system call for every read of data that already resides in the
+ * operating system's page cache. Writes always go through the file channel.
+ * Note that callers are responsible for not reading from parts of the file
+ * while they are being {@link #truncate(long) truncated}.
  * 
  * @author Arjohn Kampman
  */
 public final class NioFile {
 
+	/**
+	 * The maximum size of a single memory-mapped region of the file. Reads that
+	 * cross a region boundary are served by the file channel.
+	 */
+	private static final long MAX_MAPPED_REGION_SIZE = 1L << 30;
+
+	/**
+	 * The number of bytes that a memory-mapped region must be able to grow
+	 * before it is remapped. Reads of recently appended data that is not yet
+	 * mapped are served by the file channel until then.
+	 */
+	private static final long MIN_REMAP_GROWTH = 1L << 20;
+
+	/**
+	 * The maximum number of regions that are mapped at the same time. When
+	 * another region needs to be mapped, the region that was mapped first is
+	 * released. Its mapping is removed once the buffer has been garbage
+	 * collected; it is not unmapped explicitly as concurrent readers may still
+	 * be using it.
+	 */
+	private static final int MAX_MAPPED_REGIONS = 16;
+
+	private static final MappedByteBuffer[] NO_MAPPED_REGIONS = new MappedByteBuffer[0];
+
 	private final File file;
 
 	private final String mode;
 
+	private final boolean memoryMapped;
+
+	/**
+	 * The memory-mapped regions of the file, only used when
+	 * {@link #memoryMapped} is <tt>true</tt>. Region <tt>i</tt> starts at offset
+	 * <tt>i * MAX_MAPPED_REGION_SIZE</tt>, entries can be <tt>null</tt> for
+	 * regions that have not been mapped yet.
+	 */
+	private volatile MappedByteBuffer[] mappedRegions = NO_MAPPED_REGIONS;
+
+	/**
+	 * The indexes of the currently mapped regions, in the order in which they
+	 * have been mapped. Guarded by this object's monitor.
+	 */
+	private final Deque<Integer> mappedRegionOrder = new ArrayDeque<Integer>();
+
+	/**
+	 * The size of the file as far as it is known to this object, only
+	 * maintained when {@link #memoryMapped} is <tt>true</tt>. This is updated
+	 * by writes and truncations through this object, so that reads do not need
+	 * to ask the file channel for the size of the file.
+	 */
+	private final AtomicLong knownSize = new AtomicLong();
+
 	private volatile RandomAccessFile raf;
 
 	private volatile FileChannel fc;
@@ -55,9 +114,27 @@ public final class NioFile {
 
 	public NioFile(File file, String mode)
 		throws IOException
+	{
+		this(file, mode, false);
+	}
+
+	/**
+	 * Creates a new NioFile.
+	 * 
+	 * @param file
+	 *        The file to access, is created if it does not exist yet.
+	 * @param mode
+	 *        The access mode, see {@link RandomAccessFile}.
+	 * @param memoryMapped
+	 *        Flag indicating whether reads should be served from memory-mapped
+	 *        regions of the file.
+	 */
+	public NioFile(File file, String mode, boolean memoryMapped)
+		throws IOException
 	{
 		this.file = file;
 		this.mode = mode;
+		this.memoryMapped = memoryMapped;
 
 		if (!file.exists()) {
 			boolean created = file.createNewFile();
@@ -68,6 +145,10 @@ public final class NioFile {
 
 		explictlyClosed = false;
 		open();
+
+		if (memoryMapped) {
+			knownSize.set(fc.size());
+		}
 	}
 
 	private void open()
@@ -94,9 +175,18 @@ public final class NioFile {
 		throws IOException
 	{
 		explictlyClosed = true;
+		mappedRegions = NO_MAPPED_REGIONS;
+		mappedRegionOrder.clear();
 		raf.close();
 	}
 
+	/**
+	 * Checks whether reads are served from memory-mapped regions of the file.
+	 */
+	public boolean isMemoryMapped() {
+		return memoryMapped;
+	}
+
 	public boolean isClosed() {
 		return explictlyClosed;
 	}
@@ -146,9 +236,17 @@ public final class NioFile {
 	public void truncate(long size)
 		throws IOException
 	{
+		if (memoryMapped) {
+			// Mapped regions beyond the new end of the file can no longer be read
+			discardMappedRegions();
+		}
+
 		while (true) {
 			try {
 				fc.truncate(size);
+				if (memoryMapped) {
+					knownSize.set(fc.size());
+				}
 				return;
 			}
 			catch (ClosedByInterruptException e) {
@@ -207,7 +305,11 @@ public final class NioFile {
 	{
 		while (true) {
 			try {
-				return fc.write(buf, offset);
+				int written = fc.write(buf, offset);
+				if (memoryMapped) {
+					growKnownSize(offset + written);
+				}
+				return written;
 			}
 			catch (ClosedByInterruptException e) {
 				throw e;
@@ -224,6 +326,20 @@ public final class NioFile {
 	public int read(ByteBuffer buf, long offset)
 		throws IOException
 	{
+		if (memoryMapped) {
+			int length = buf.remaining();
+			MappedByteBuffer region = getMappedRegion(offset, length);
+
+			if (region != null) {
+				int regionOffset = (int)(offset % MAX_MAPPED_REGION_SIZE);
+				ByteBuffer src = region.duplicate();
+				src.limit(regionOffset + length);
+				src.position(regionOffset);
+				buf.put(src);
+				return length;
+			}
+		}
+
 		while (true) {
 			try {
 				return fc.read(buf, offset);
@@ -274,6 +390,13 @@ public final class NioFile {
 	public long readLong(long offset)
 		throws IOException
 	{
+		if (memoryMapped) {
+			MappedByteBuffer region = getMappedRegion(offset, 8);
+			if (region != null) {
+				return region.getLong((int)(offset % MAX_MAPPED_REGION_SIZE));
+			}
+		}
+
 		ByteBuffer buf = ByteBuffer.allocate(8);
 		read(buf, offset);
 		return buf.getLong(0);
@@ -290,8 +413,122 @@ public final class NioFile {
 	public int readInt(long offset)
 		throws IOException
 	{
+		if (memoryMapped) {
+			MappedByteBuffer region = getMappedRegion(offset, 4);
+			if (region != null) {
+				return region.getInt((int)(offset % MAX_MAPPED_REGION_SIZE));
+			}
+		}
+
 		ByteBuffer buf = ByteBuffer.allocate(4);
 		read(buf, offset);
 		return buf.getInt(0);
 	}
+
+	/**
+	 * Gets the memory-mapped region that contains the specified range of bytes,
+	 * mapping or remapping the region if necessary.
+	 * 
+	 * @return The region containing the specified bytes, or <tt>null</tt> if
+	 *         the bytes should be read through the file channel.
+	 */
+	private MappedByteBuffer getMappedRegion(long offset, int length)
+		throws IOException
+	{
+		int regionIdx = (int)(offset / MAX_MAPPED_REGION_SIZE);
+		int requiredSize = (int)(offset % MAX_MAPPED_REGION_SIZE) + length;
+
+		if (requiredSize > MAX_MAPPED_REGION_SIZE) {
+			// Range crosses a region boundary
+			return null;
+		}
+
+		MappedByteBuffer[] regions = mappedRegions;
+		MappedByteBuffer region = regionIdx < regions.length ? regions[regionIdx] : null;
+		if (region != null && region.capacity() >= requiredSize) {
+			return region;
+		}
+
+		long regionStart = regionIdx * MAX_MAPPED_REGION_SIZE;
+		long regionSize = Math.min(MAX_MAPPED_REGION_SIZE, knownSize.get() - regionStart);
+		if (regionSize < requiredSize) {
+			// Range extends beyond the end of the file
+			return null;
+		}
+		if (region != null && regionSize < MAX_MAPPED_REGION_SIZE
+				&& regionSize - region.capacity() < MIN_REMAP_GROWTH)
+		{
+			// Not worth remapping yet, recently appended data is read through the
+			// file channel
+			return null;
+		}
+
+		return mapRegion(regionIdx, requiredSize);
+	}
+
+	private synchronized MappedByteBuffer mapRegion(int regionIdx, int requiredSize)
+		throws IOException
+	{
+		MappedByteBuffer[] regions = mappedRegions;
+		MappedByteBuffer region = regionIdx < regions.length ? regions[regionIdx] : null;
+
+		if (region != null && region.capacity() >= requiredSize) {
+			// region has been remapped by another thread
+			return region;
+		}
+
+		long regionStart = regionIdx * MAX_MAPPED_REGION_SIZE;
+		long regionSize = Math.min(MAX_MAPPED_REGION_SIZE, knownSize.get() - regionStart);
+
+		if (regionSize < requiredSize) {
+			// Range extends beyond the end of the file
+			return null;
+		}
+		if (region != null && regionSize < MAX_MAPPED_REGION_SIZE
+				&& regionSize - region.capacity() < MIN_REMAP_GROWTH)
+		{
+			// Not worth remapping yet
+			return null;
+		}
+
+		while (true) {
+			try {
+				region = fc.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+				break;
+			}
+			catch (ClosedByInterruptException e) {
+				throw e;
+			}
+			catch (ClosedChannelException e) {
+				reopen(e);
+			}
+		}
+
+		MappedByteBuffer[] newRegions = new MappedByteBuffer[Math.max(regions.length, regionIdx + 1)];
+		System.arraycopy(regions, 0, newRegions, 0, regions.length);
+		if (newRegions[regionIdx] == null) {
+			if (mappedRegionOrder.size() >= MAX_MAPPED_REGIONS) {
+				newRegions[mappedRegionOrder.removeFirst()] = null;
+			}
+			mappedRegionOrder.addLast(regionIdx);
+		}
+		newRegions[regionIdx] = region;
+		mappedRegions = newRegions;
+
+		return region;
+	}
+
+	private synchronized void discardMappedRegions() {
+		mappedRegions = NO_MAPPED_REGIONS;
+		mappedRegionOrder.clear();
+	}
+
+	private void growKnownSize(long size) {
+		long current;
+		while ((current = knownSize.get()) < size) {
+			if (knownSize.compareAndSet(current, size)) {
+				return;
+			}
+		}
+	}
 }
@@ -63,9 +63,9 @@ public abstract class TimeLimitIteration<E, X extends Exception> extends Iterati
 			checkInterrupted();
 			return result;
 		}
-		catch (NoSuchElementException e) {
+		catch (Exception e) {
 			checkInterrupted();
-			throw e;
+			throw rethrow(e);
 		}
 	}
 
@@ -77,9 +77,9 @@ public abstract class TimeLimitIteration<E, X extends Exception> extends Iterati
 		try {
 			return super.next();
 		}
-		catch (NoSuchElementException e) {
+		catch (Exception e) {
 			checkInterrupted();
-			throw e;
+			throw rethrow(e);
 		}
 	}
 
@@ -107,6 +107,21 @@ public abstract class TimeLimitIteration<E, X extends Exception> extends Iterati
 		}
 	}
 
+	/**
+	 * Rethrows an exception of the wrapped iteration. The wrapped iteration may
+	 * fail in any way when it is closed by the interrupt task, for example with
+	 * a {@link NoSuchElementException} wrapped in an exception of type X, which
+	 * is why callers check for an interrupt first.
+	 */
+	@SuppressWarnings("unchecked")
+	private X rethrow(Exception e) {
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException)e;
+		}
+		// the wrapped iteration only throws runtime exceptions and X
+		return (X)e;
+	}
+
 	protected abstract void throwInterruptedException()
 		throws X;
 
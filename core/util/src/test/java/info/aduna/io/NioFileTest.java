@@ -0,0 +1,100 @@
+/* 
+ * Licensed to Aduna under one or more contributor license agreements.  
+ * See the NOTICE.txt file distributed with this work for additional 
+ * information regarding copyright ownership. 
+ *
+ * Aduna licenses this file to you under the terms of the Aduna BSD 
+ * License (the "License"); you may not use this file except in compliance 
+ * with the License. See the LICENSE.txt file distributed with this work 
+ * for the full License.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or 
+ * implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package info.aduna.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioFileTest {
+
+	private File dir;
+
+	private NioFile nioFile;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		dir = FileUtil.createTempDir("niofile");
+		nioFile = new NioFile(new File(dir, "test.dat"), "rw", true);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		nioFile.delete();
+		FileUtil.deleteDir(dir);
+	}
+
+	@Test
+	public void testMappedReads()
+		throws Exception
+	{
+		nioFile.writeInt(42, 0L);
+		nioFile.writeLong(43L, 4L);
+		nioFile.writeBytes(new byte[] { 1, 2, 3 }, 12L);
+
+		assertEquals(42, nioFile.readInt(0L));
+		assertEquals(43L, nioFile.readLong(4L));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, nioFile.readBytes(12L, 3));
+	}
+
+	@Test
+	public void testReadsAfterGrowth()
+		throws Exception
+	{
+		nioFile.writeInt(1, 0L);
+		assertEquals(1, nioFile.readInt(0L));
+
+		// Appended data is not mapped yet but must still be readable
+		nioFile.writeInt(2, 4L);
+		assertEquals(2, nioFile.readInt(4L));
+
+		// Updates to mapped data must be visible
+		nioFile.writeInt(3, 0L);
+		assertEquals(3, nioFile.readInt(0L));
+
+		// Grow the file enough to trigger a remap
+		byte[] data = new byte[2 << 20];
+		data[data.length - 1] = 7;
+		nioFile.writeBytes(data, 8L);
+		assertEquals(7, nioFile.readByte(8L + data.length - 1));
+	}
+
+	@Test
+	public void testReadsAfterTruncate()
+		throws Exception
+	{
+		nioFile.writeLong(1L, 0L);
+		nioFile.writeLong(2L, 8L);
+		assertEquals(2L, nioFile.readLong(8L));
+
+		nioFile.truncate(8L);
+		assertEquals(1L, nioFile.readLong(0L));
+
+		ByteBuffer buf = ByteBuffer.allocate(8);
+		assertEquals(-1, nioFile.read(buf, 8L));
+	}
+}
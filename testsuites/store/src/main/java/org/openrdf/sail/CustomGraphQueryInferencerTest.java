@@ -17,6 +17,8 @@ import org.junit.runners.Parameterized.Parameters;
 import info.aduna.io.ResourceUtil;
 import info.aduna.iteration.Iterations;
 
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
@@ -30,6 +32,7 @@ import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.Rio;
 import org.openrdf.sail.inferencer.fc.CustomGraphQueryInferencer;
 
 @RunWith(Parameterized.class)
@@ -127,6 +130,48 @@ public abstract class CustomGraphQueryInferencerTest {
 		sail.shutDown();
 	}
 
+	/**
+	 * Adds and removes the statements one transaction at a time, so that the
+	 * inferred statements are updated for the changed statements only.
+	 */
+	protected void runIncrementalTest(final CustomGraphQueryInferencer inferencer)
+		throws RepositoryException, RDFParseException, IOException, MalformedQueryException,
+		UpdateExecutionException
+	{
+		Repository sail = new SailRepository(inferencer);
+		sail.initialize();
+		RepositoryConnection connection = sail.getConnection();
+		try {
+			connection.clear();
+			Model statements = Rio.parse(new StringReader(initial), BASE, RDFFormat.TURTLE);
+			for (Statement st : statements) {
+				connection.add(st);
+			}
+			assertThat(Iterations.asSet(connection.getStatements(null, null, null, true)).size(),
+					is(equalTo(testData.initialCount)));
+
+			connection.prepareUpdate(QueryLanguage.SPARQL, delete).execute();
+			assertThat(Iterations.asSet(connection.getStatements(null, null, null, true)).size(),
+					is(equalTo(testData.countAfterRemove)));
+
+			for (Statement st : statements) {
+				connection.add(st);
+			}
+			assertThat(Iterations.asSet(connection.getStatements(null, null, null, true)).size(),
+					is(equalTo(testData.initialCount)));
+
+			for (Statement st : statements) {
+				connection.remove(st);
+			}
+			assertThat(Iterations.asSet(connection.getStatements(null, null, null, true)).size(),
+					is(equalTo(0)));
+		}
+		finally {
+			connection.close();
+		}
+		sail.shutDown();
+	}
+
 	public CustomGraphQueryInferencerTest(String resourceFolder, Expectation testData, QueryLanguage language)
 	{
 		this.resourceFolder = resourceFolder;
@@ -173,4 +218,58 @@ public abstract class CustomGraphQueryInferencerTest {
 		runTest(createRepository(false));
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testIncrementalInference()
+		throws RepositoryException, RDFParseException, MalformedQueryException, UpdateExecutionException,
+		IOException, UnsupportedQueryLanguageException, SailException
+	{
+		runIncrementalTest(createRepository(true));
+	}
+
+	@Test
+	public void testIncrementalInferenceWithUnion()
+		throws RepositoryException, SailException, MalformedQueryException, UnsupportedQueryLanguageException
+	{
+		runPartiallyBoundTest("PREFIX : <" + BASE + "> "
+				+ "CONSTRUCT { ?a :p ?c } WHERE { { ?a :q ?c } UNION { ?a :s :x } }");
+	}
+
+	@Test
+	public void testIncrementalInferenceWithOptional()
+		throws RepositoryException, SailException, MalformedQueryException, UnsupportedQueryLanguageException
+	{
+		runPartiallyBoundTest("PREFIX : <" + BASE + "> "
+				+ "CONSTRUCT { ?a :p ?c } WHERE { ?a :s :x OPTIONAL { ?a :q ?c } }");
+	}
+
+	/**
+	 * Checks that an inferred statement is removed together with the statement
+	 * it was inferred from, when another statement still matches a part of the
+	 * rule that does not bind all of the constructed variables.
+	 */
+	private void runPartiallyBoundTest(String rule)
+		throws RepositoryException, SailException, MalformedQueryException, UnsupportedQueryLanguageException
+	{
+		Repository sail = new SailRepository(new CustomGraphQueryInferencer(newSail(), QueryLanguage.SPARQL,
+				rule, ""));
+		sail.initialize();
+		RepositoryConnection connection = sail.getConnection();
+		try {
+			ValueFactory vf = connection.getValueFactory();
+			URI b = vf.createURI(BASE, "b");
+			URI c = vf.createURI(BASE, "c");
+			URI p = vf.createURI(BASE, "p");
+			URI q = vf.createURI(BASE, "q");
+			connection.add(b, vf.createURI(BASE, "s"), vf.createURI(BASE, "x"));
+			connection.add(b, q, c);
+			assertThat(connection.hasStatement(b, p, c, true), is(equalTo(true)));
+
+			connection.remove(b, q, c);
+			assertThat(connection.hasStatement(b, p, c, true), is(equalTo(false)));
+		}
+		finally {
+			connection.close();
+		}
+		sail.shutDown();
+	}
+}
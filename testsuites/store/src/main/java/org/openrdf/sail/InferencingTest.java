@@ -16,6 +16,7 @@
  */
 package org.openrdf.sail;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -24,13 +25,19 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Test;
 
 import info.aduna.iteration.Iterations;
 
+import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.model.util.Models;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.sail.SailRepository;
@@ -38,6 +45,7 @@ import org.openrdf.repository.util.RepositoryUtil;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.Rio;
+import org.openrdf.sail.inferencer.fc.ForwardChainingRDFSInferencer;
 import org.openrdf.sail.memory.MemoryStore;
 
 public abstract class InferencingTest {
@@ -295,6 +303,148 @@ public abstract class InferencingTest {
 		runTest(createSail(), "type", "error002", false);
 	}
 
+	/**
+	 * Verifies that the inferred statements after removing statements are the
+	 * same as those inferred from the remaining statements alone.
+	 */
+	@Test
+	public void testRemoveStatements()
+		throws Exception
+	{
+		Repository repository = new SailRepository(createSail());
+		repository.initialize();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			ValueFactory vf = con.getValueFactory();
+			URI a = vf.createURI("urn:test:A");
+			URI b = vf.createURI("urn:test:B");
+			URI c = vf.createURI("urn:test:C");
+			URI p = vf.createURI("urn:test:p");
+			URI q = vf.createURI("urn:test:q");
+			URI x = vf.createURI("urn:test:x");
+			URI y = vf.createURI("urn:test:y");
+			URI z = vf.createURI("urn:test:z");
+
+			con.begin();
+			con.add(a, RDFS.SUBCLASSOF, b);
+			con.add(b, RDFS.SUBCLASSOF, c);
+			con.add(p, RDFS.SUBPROPERTYOF, q);
+			con.add(q, RDFS.DOMAIN, a);
+			con.add(q, RDFS.RANGE, c);
+			con.add(x, p, y);
+			con.add(x, q, z);
+			con.add(y, RDF.TYPE, b);
+			con.add(z, RDF.TYPE, a);
+			con.commit();
+			assertClosure(con);
+
+			con.begin();
+			con.remove(b, RDFS.SUBCLASSOF, c);
+			con.commit();
+			assertClosure(con);
+
+			con.begin();
+			con.remove(x, p, y);
+			con.commit();
+			assertClosure(con);
+
+			con.begin();
+			con.remove(q, RDFS.DOMAIN, a);
+			con.add(q, RDFS.DOMAIN, b);
+			con.commit();
+			assertClosure(con);
+
+			con.begin();
+			con.remove(z, null, null);
+			con.remove((Resource)null, null, z);
+			con.commit();
+			assertClosure(con);
+		}
+		finally {
+			con.close();
+			repository.shutDown();
+		}
+	}
+
+	/**
+	 * Verifies that applying rules concurrently infers the same statements as
+	 * applying them one after the other.
+	 */
+	@Test
+	public void testConcurrentRuleApplication()
+		throws Exception
+	{
+		Sail sail = createSail();
+		if (sail instanceof ForwardChainingRDFSInferencer) {
+			((ForwardChainingRDFSInferencer)sail).setParallelism(4);
+		}
+		Repository repository = new SailRepository(sail);
+		repository.initialize();
+		RepositoryConnection con = repository.getConnection();
+		try {
+			ValueFactory vf = con.getValueFactory();
+			URI[] classes = new URI[20];
+			URI[] properties = new URI[10];
+			con.begin();
+			for (int i = 0; i < classes.length; i++) {
+				classes[i] = vf.createURI("urn:test:C" + i);
+				if (i > 0) {
+					con.add(classes[i], RDFS.SUBCLASSOF, classes[(i - 1) / 2]);
+				}
+			}
+			for (int i = 0; i < properties.length; i++) {
+				properties[i] = vf.createURI("urn:test:p" + i);
+				if (i > 0) {
+					con.add(properties[i], RDFS.SUBPROPERTYOF, properties[(i - 1) / 2]);
+				}
+				con.add(properties[i], RDFS.DOMAIN, classes[i]);
+				con.add(properties[i], RDFS.RANGE, classes[classes.length - 1 - i]);
+			}
+			for (int i = 0; i < 500; i++) {
+				URI x = vf.createURI("urn:test:x" + i);
+				URI y = vf.createURI("urn:test:x" + (i * 7 % 500));
+				con.add(x, RDF.TYPE, classes[i % classes.length]);
+				con.add(x, properties[i % properties.length], y);
+			}
+			con.commit();
+			assertClosure(con);
+		}
+		finally {
+			con.close();
+			repository.shutDown();
+		}
+	}
+
+	private void assertClosure(RepositoryConnection con)
+		throws Exception
+	{
+		ForwardChainingRDFSInferencer inferencer = new ForwardChainingRDFSInferencer(new MemoryStore());
+		inferencer.setParallelism(1);
+		Repository expected = new SailRepository(inferencer);
+		expected.initialize();
+		RepositoryConnection expectedCon = expected.getConnection();
+		try {
+			expectedCon.begin();
+			expectedCon.add(con.getStatements(null, null, null, false));
+			expectedCon.commit();
+			assertEquals(getClosure(expectedCon), getClosure(con));
+		}
+		finally {
+			expectedCon.close();
+			expected.shutDown();
+		}
+	}
+
+	private Set<String> getClosure(RepositoryConnection con)
+		throws Exception
+	{
+		Set<String> closure = new HashSet<String>();
+		for (Statement st : Iterations.asList(con.getStatements(null, null, null, true))) {
+			closure.add(st.getSubject() + " " + st.getPredicate() + " " + st.getObject());
+		}
+		return closure;
+	}
+
 	/**
 	 * Gets an instance of the Sail that should be tested. The returned
 	 * repository must not be initialized.